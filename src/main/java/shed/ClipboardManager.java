@@ -24,11 +24,11 @@ public class ClipboardManager {
     public String yankLine(JTextArea textArea) {
         try {
             int caretPos = textArea.getCaretPosition();
-            String text = textArea.getText();
+            DocumentText text = new DocumentText(textArea.getDocument());
             int lineStart = getLineStart(text, caretPos);
             int lineEnd = getLineEnd(text, caretPos);
 
-            String line = text.substring(lineStart, lineEnd);
+            String line = text.subSequence(lineStart, lineEnd);
             if (lineEnd < text.length() && text.charAt(lineEnd) == '\n') {
                 line += "\n";
             }
@@ -63,11 +63,11 @@ public class ClipboardManager {
     public String deleteLine(JTextArea textArea) {
         try {
             int caretPos = textArea.getCaretPosition();
-            String text = textArea.getText();
+            DocumentText text = new DocumentText(textArea.getDocument());
             int lineStart = getLineStart(text, caretPos);
             int lineEnd = getLineEnd(text, caretPos);
 
-            String line = text.substring(lineStart, lineEnd);
+            String line = text.subSequence(lineStart, lineEnd);
             if (lineEnd < text.length() && text.charAt(lineEnd) == '\n') {
                 line += "\n";
                 lineEnd++;
@@ -80,9 +80,8 @@ public class ClipboardManager {
             systemClipboard.setContents(selection, null);
 
             // Remove line from text
-            String newText = text.substring(0, lineStart) + text.substring(lineEnd);
-            textArea.setText(newText);
-            textArea.setCaretPosition(Math.min(lineStart, newText.length()));
+            textArea.replaceRange("", lineStart, lineEnd);
+            textArea.setCaretPosition(Math.min(lineStart, textArea.getDocument().getLength()));
 
             return line;
         } catch (Exception e) {
@@ -95,16 +94,15 @@ public class ClipboardManager {
     public String deleteChar(JTextArea textArea) {
         try {
             int caretPos = textArea.getCaretPosition();
-            String text = textArea.getText();
+            DocumentText text = new DocumentText(textArea.getDocument());
 
             GraphemeEditRange.Range range = GraphemeEditRange.next(text, caretPos);
             if (!range.empty()) {
-                String deleted = text.substring(range.start(), range.end());
+                String deleted = text.subSequence(range.start(), range.end());
                 this.clipboardBuffer = deleted;
                 this.lastYankWasLine = false;
                 systemClipboard.setContents(new StringSelection(deleted), null);
-                String newText = text.substring(0, range.start()) + text.substring(range.end());
-                textArea.setText(newText);
+                textArea.replaceRange("", range.start(), range.end());
                 textArea.setCaretPosition(range.start());
                 return deleted;
             }
@@ -118,17 +116,16 @@ public class ClipboardManager {
     public String deleteWord(JTextArea textArea) {
         try {
             int caretPos = textArea.getCaretPosition();
-            String text = textArea.getText();
+            DocumentText text = new DocumentText(textArea.getDocument());
             int wordEnd = findWordEnd(text, caretPos);
 
             if (wordEnd > caretPos) {
-                String deleted = text.substring(caretPos, wordEnd);
+                String deleted = text.subSequence(caretPos, wordEnd);
                 this.clipboardBuffer = deleted;
                 this.lastYankWasLine = false;
                 systemClipboard.setContents(new StringSelection(deleted), null);
 
-                String newText = text.substring(0, caretPos) + text.substring(wordEnd);
-                textArea.setText(newText);
+                textArea.replaceRange("", caretPos, wordEnd);
                 textArea.setCaretPosition(caretPos);
                 return deleted;
             }
@@ -142,17 +139,16 @@ public class ClipboardManager {
     public String deleteToEndOfLine(JTextArea textArea) {
         try {
             int caretPos = textArea.getCaretPosition();
-            String text = textArea.getText();
+            DocumentText text = new DocumentText(textArea.getDocument());
             int lineEnd = getLineEnd(text, caretPos);
 
             if (lineEnd > caretPos) {
-                String deleted = text.substring(caretPos, lineEnd);
+                String deleted = text.subSequence(caretPos, lineEnd);
                 this.clipboardBuffer = deleted;
                 this.lastYankWasLine = false;
                 systemClipboard.setContents(new StringSelection(deleted), null);
 
-                String newText = text.substring(0, caretPos) + text.substring(lineEnd);
-                textArea.setText(newText);
+                textArea.replaceRange("", caretPos, lineEnd);
                 textArea.setCaretPosition(caretPos);
                 return deleted;
             }
@@ -165,9 +161,6 @@ public class ClipboardManager {
     // Paste after cursor (P = before cursor)
     public void paste(JTextArea textArea, boolean before) {
         try {
-            String text = textArea.getText();
-            int caretPos = textArea.getCaretPosition();
-
             // Try to get from system clipboard if internal clipboard is empty
             String content = clipboardBuffer;
             if (content.isEmpty()) {
@@ -201,7 +194,7 @@ public class ClipboardManager {
 
     public void pasteContent(JTextArea textArea, String content, boolean lineWise, boolean before) {
         try {
-            String text = textArea.getText();
+            DocumentText text = new DocumentText(textArea.getDocument());
             int caretPos = textArea.getCaretPosition();
             if (content == null) {
                 content = "";
@@ -216,13 +209,11 @@ public class ClipboardManager {
                 }
 
                 int pastePos = before ? lineStart : (lineEnd < text.length() ? lineEnd + 1 : lineEnd);
-                String newText = text.substring(0, pastePos) + content + text.substring(pastePos);
-                textArea.setText(newText);
+                textArea.insert(content, pastePos);
                 textArea.setCaretPosition(pastePos);
             } else {
                 int pastePos = before ? caretPos : (caretPos < text.length() ? caretPos + 1 : caretPos);
-                String newText = text.substring(0, pastePos) + content + text.substring(pastePos);
-                textArea.setText(newText);
+                textArea.insert(content, pastePos);
                 textArea.setCaretPosition(pastePos);
             }
         } catch (Exception e) {
@@ -241,19 +232,19 @@ public class ClipboardManager {
     }
 
     // Helper: Find start of line containing position
-    private int getLineStart(String text, int pos) {
+    private int getLineStart(DocumentText text, int pos) {
         int lineStart = text.lastIndexOf('\n', pos - 1);
         return lineStart == -1 ? 0 : lineStart + 1;
     }
 
     // Helper: Find end of line containing position
-    private int getLineEnd(String text, int pos) {
+    private int getLineEnd(DocumentText text, int pos) {
         int lineEnd = text.indexOf('\n', pos);
         return lineEnd == -1 ? text.length() : lineEnd;
     }
 
     // Helper: Find end of word starting at position
-    private int findWordEnd(String text, int pos) {
+    private int findWordEnd(DocumentText text, int pos) {
         if (pos >= text.length()) return pos;
 
         // Skip current word
@@ -240,8 +240,7 @@ public class CommandHandler {
             return "Error: :e requires filename argument";
         }
         try {
-            editor.openFile(new File(filename));
-            return "Opened: " + filename;
+            return (editor.openFileInBackground(new File(filename)) ? "Opening: " : "Opened: ") + filename;
         } catch (IOException e) {
             return "Error opening file: " + e.getMessage();
         }
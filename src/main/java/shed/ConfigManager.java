@@ -66,6 +66,7 @@ public class ConfigManager {
     private static final String DEFAULT_SESSION_AUTOLOAD = "default";
     private static final boolean DEFAULT_TERMINAL_SESSION_RESTORE = false;
     private static final boolean DEFAULT_WORKSPACE_INDEX_ENABLED = false;
+    private static final boolean DEFAULT_WORKSPACE_INDEX_TRIGRAMS = false;
     private static final long DEFAULT_LARGE_FILE_THRESHOLD_MB = 25L;
     private static final int DEFAULT_LARGE_FILE_LINE_THRESHOLD = 500000;
     private static final int DEFAULT_LARGE_FILE_PREVIEW_LINES = 1000;
@@ -252,6 +253,7 @@ public class ConfigManager {
         defineDefault("landing.remote.cache.path", defaultLandingRemoteCachePath());
         defineDefault("landing.remote.timeout.ms", DEFAULT_LANDING_REMOTE_TIMEOUT_MS);
         defineDefault("workspace.index.enabled", DEFAULT_WORKSPACE_INDEX_ENABLED);
+        defineDefault("workspace.index.trigrams", DEFAULT_WORKSPACE_INDEX_TRIGRAMS);
         defineDefault("large.file.threshold.mb", DEFAULT_LARGE_FILE_THRESHOLD_MB);
         defineDefault("large.file.line.threshold", DEFAULT_LARGE_FILE_LINE_THRESHOLD);
         defineDefault("large.file.preview.lines", DEFAULT_LARGE_FILE_PREVIEW_LINES);
@@ -378,6 +380,7 @@ public class ConfigManager {
             case "landing.remote.cache.path" -> "Local file used to cache an HTTPS landing-page source";
             case "landing.remote.timeout.ms" -> "HTTPS landing-page connection and request timeout";
             case "workspace.index.enabled" -> "Enable persisted Git-ignore-aware workspace indexing";
+            case "workspace.index.trigrams" -> "Keep a trigram content index beside the persisted workspace index for :grep and :rg";
             case "large.file.threshold.mb" -> "Large-file size threshold in megabytes";
             case "large.file.line.threshold" -> "Large-file line-count threshold";
             case "large.file.preview.lines" -> "Lines shown in a large-file preview";
@@ -904,6 +907,10 @@ public class ConfigManager {
         return getBoolean("workspace.index.enabled", DEFAULT_WORKSPACE_INDEX_ENABLED);
     }
 
+    public boolean getWorkspaceTrigramIndexEnabled() {
+        return getBoolean("workspace.index.trigrams", DEFAULT_WORKSPACE_INDEX_TRIGRAMS);
+    }
+
     public ProjectReplacePolicy getProjectReplacePolicy() {
         return new ProjectReplacePolicy(
             getBoolean("project.replace.enabled", DEFAULT_PROJECT_REPLACE_ENABLED),
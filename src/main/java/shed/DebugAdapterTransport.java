@@ -1,6 +1,5 @@
 package shed;
 
-import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
@@ -8,10 +7,6 @@ import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
-import java.nio.ByteBuffer;
-import java.nio.charset.CharacterCodingException;
-import java.nio.charset.CodingErrorAction;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.time.Duration;
 import java.util.Collections;
@@ -61,6 +56,8 @@ final class DebugAdapterTransport implements AutoCloseable {
     private final Map<Integer, CompletableFuture<Response>> pending;
     private final Set<Integer> ignoredResponses;
     private final Object outputLock;
+    // Reused for every outgoing message; guarded by outputLock.
+    private final JsonWriter json;
     private volatile State state;
     private volatile boolean supportsCancelRequest;
 
@@ -77,6 +74,7 @@ final class DebugAdapterTransport implements AutoCloseable {
         this.pending = new ConcurrentHashMap<>();
         this.ignoredResponses = ConcurrentHashMap.newKeySet();
         this.outputLock = new Object();
+        this.json = new JsonWriter();
         this.state = State.RUNNING;
         this.supportsCancelRequest = false;
         startReader();
@@ -188,42 +186,43 @@ final class DebugAdapterTransport implements AutoCloseable {
     }
 
     static void writeMessage(OutputStream output, Map<String, Object> message) throws IOException {
+        writeMessage(output, message, new JsonWriter());
+    }
+
+    private static void writeMessage(OutputStream output, Map<String, Object> message, JsonWriter json) throws IOException {
         if (output == null || message == null) throw new IOException("DAP message output is unavailable");
-        byte[] payload = MiniJson.stringify(message).getBytes(StandardCharsets.UTF_8);
-        if (payload.length > MAX_CONTENT_BYTES) throw new IOException("DAP message exceeds the content limit");
-        output.write(("Content-Length: " + payload.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
-        output.write(payload);
+        json.reset().value(message);
+        if (json.size() > MAX_CONTENT_BYTES) throw new IOException("DAP message exceeds the content limit");
+        json.writeFrame(output);
         output.flush();
     }
 
-    static Map<String, Object> readMessage(InputStream input) throws IOException {
-        if (input == null) throw new IOException("DAP message input is unavailable");
-        ByteArrayOutputStream header = new ByteArrayOutputStream();
-        int previous = -1;
-        while (true) {
-            int current = input.read();
-            if (current < 0) {
-                if (header.size() == 0) return null;
-                throw new IOException("DAP stream ended inside a header");
-            }
-            if (current > 0x7f) throw new IOException("DAP header is not ASCII");
-            header.write(current);
-            if (header.size() > MAX_HEADER_BYTES) throw new IOException("DAP header exceeds the size limit");
-            if (previous == '\r' && current == '\n' && endsWithHeaderSeparator(header)) break;
-            previous = current;
+    // Reads one stream's messages through the framing and parsing the transport's own reader thread uses.
+    static final class MessageReader {
+        private final MessageFrameReader frames;
+
+        MessageReader(InputStream input) {
+            if (input == null) throw new IllegalArgumentException("DAP message input is unavailable");
+            frames = new MessageFrameReader(input, DebugAdapterTransport::contentLength, MAX_HEADER_BYTES, MAX_CONTENT_BYTES);
         }
-        int contentLength = contentLength(header.toString(StandardCharsets.US_ASCII));
-        byte[] payload = input.readNBytes(contentLength);
-        if (payload.length != contentLength) throw new IOException("DAP stream ended inside a message body");
-        String json = decodeUtf8(payload);
-        validateJson(json);
+
+        // The next message, or null when the stream ends cleanly between messages.
+        Map<String, Object> next() throws IOException {
+            return frames.next() ? parseBody(frames.buffer(), frames.bodyOffset(), frames.bodyLength()) : null;
+        }
+    }
+
+    // Validates and parses a body in one pass over its bytes, rejecting anything that is not UTF-8 JSON.
+    private static Map<String, Object> parseBody(byte[] bytes, int offset, int length) throws IOException {
+        Object parsed;
         try {
-            Map<String, Object> message = MiniJson.asObject(MiniJson.parse(json));
-            if (message == null) throw new IOException("DAP message body must be a JSON object");
-            return message;
-        } catch (RuntimeException error) {
+            parsed = JsonReader.parse(bytes, offset, length);
+        } catch (IOException error) {
             throw new IOException("DAP message body is invalid JSON", error);
         }
+        Map<String, Object> message = MiniJson.asObject(parsed);
+        if (message == null) throw new IOException("DAP message body must be a JSON object");
+        return message;
     }
 
     private void cancel(int requestSeq) {
@@ -265,7 +264,7 @@ final class DebugAdapterTransport implements AutoCloseable {
     private void write(Map<String, Object> message) throws IOException {
         if (state != State.RUNNING) throw new IOException("Debug adapter transport is not running");
         try {
-            synchronized (outputLock) { writeMessage(output, message); }
+            synchronized (outputLock) { writeMessage(output, message, json); }
         } catch (IOException error) {
             fail("write-failed", "Writing a DAP message failed", error);
             throw error;
@@ -274,9 +273,10 @@ final class DebugAdapterTransport implements AutoCloseable {
 
     private void startReader() {
         Thread reader = new Thread(() -> {
+            MessageReader messages = new MessageReader(input);
             try {
                 while (state == State.RUNNING) {
-                    Map<String, Object> message = readMessage(input);
+                    Map<String, Object> message = messages.next();
                     if (message == null) {
                         fail("adapter-closed", "The debug adapter closed its protocol stream", new IOException("Adapter protocol stream closed"));
                         return;
@@ -413,26 +413,6 @@ final class DebugAdapterTransport implements AutoCloseable {
         return value;
     }
 
-    private static String decodeUtf8(byte[] payload) throws IOException {
-        try {
-            return StandardCharsets.UTF_8.newDecoder().onMalformedInput(CodingErrorAction.REPORT)
-                .onUnmappableCharacter(CodingErrorAction.REPORT).decode(ByteBuffer.wrap(payload)).toString();
-        } catch (CharacterCodingException error) {
-            throw new IOException("DAP message body is not UTF-8", error);
-        }
-    }
-
-    private static void validateJson(String json) throws IOException {
-        try { new JsonSyntax(json).validate(); }
-        catch (IllegalArgumentException error) { throw new IOException("DAP message body is invalid JSON", error); }
-    }
-
-    private static boolean endsWithHeaderSeparator(ByteArrayOutputStream header) {
-        byte[] bytes = header.toByteArray();
-        int length = bytes.length;
-        return length >= 4 && bytes[length - 4] == '\r' && bytes[length - 3] == '\n' && bytes[length - 2] == '\r' && bytes[length - 1] == '\n';
-    }
-
     private static int positiveInteger(Object value, String field) throws IOException {
         if (!(value instanceof Number number)) throw new IOException("DAP " + field + " must be an integer");
         long integer = number.longValue();
@@ -468,116 +448,4 @@ final class DebugAdapterTransport implements AutoCloseable {
             }
         }
     }
-
-    private static final class JsonSyntax {
-        private final String source;
-        private int index;
-        private int depth;
-
-        private JsonSyntax(String source) { this.source = source == null ? "" : source; }
-
-        private void validate() {
-            whitespace(); value(); whitespace();
-            if (index != source.length()) throw error("trailing content");
-        }
-
-        private void value() {
-            if (index >= source.length()) throw error("missing value");
-            switch (source.charAt(index)) {
-                case '{' -> object();
-                case '[' -> array();
-                case '"' -> string();
-                case 't' -> literal("true");
-                case 'f' -> literal("false");
-                case 'n' -> literal("null");
-                default -> number();
-            }
-        }
-
-        private void object() {
-            nested(); expect('{'); whitespace();
-            if (consume('}')) { depth--; return; }
-            while (true) {
-                string(); whitespace(); expect(':'); whitespace(); value(); whitespace();
-                if (consume('}')) { depth--; return; }
-                expect(','); whitespace();
-            }
-        }
-
-        private void array() {
-            nested(); expect('['); whitespace();
-            if (consume(']')) { depth--; return; }
-            while (true) {
-                value(); whitespace();
-                if (consume(']')) { depth--; return; }
-                expect(','); whitespace();
-            }
-        }
-
-        private void string() {
-            expect('"');
-            while (index < source.length()) {
-                char current = source.charAt(index++);
-                if (current == '"') return;
-                if (current < 0x20) throw error("control character in string");
-                if (current != '\\') continue;
-                if (index >= source.length()) throw error("unfinished escape");
-                char escape = source.charAt(index++);
-                if ("\"\\/bfnrt".indexOf(escape) >= 0) continue;
-                if (escape != 'u') throw error("invalid escape");
-                for (int remaining = 0; remaining < 4; remaining++) {
-                    if (index >= source.length() || Character.digit(source.charAt(index++), 16) < 0) throw error("invalid unicode escape");
-                }
-            }
-            throw error("unterminated string");
-        }
-
-        private void number() {
-            consume('-');
-            if (consume('0')) { }
-            else {
-                if (index >= source.length() || source.charAt(index) < '1' || source.charAt(index) > '9') throw error("invalid number");
-                while (digit()) { }
-            }
-            if (consume('.')) {
-                if (!digit()) throw error("invalid fraction");
-                while (digit()) { }
-            }
-            if (consume('e') || consume('E')) {
-                if (!consume('+')) consume('-');
-                if (!digit()) throw error("invalid exponent");
-                while (digit()) { }
-            }
-        }
-
-        private void literal(String value) {
-            if (!source.startsWith(value, index)) throw error("invalid literal");
-            index += value.length();
-        }
-
-        private void whitespace() {
-            while (index < source.length() && (source.charAt(index) == ' ' || source.charAt(index) == '\t' || source.charAt(index) == '\r' || source.charAt(index) == '\n')) index++;
-        }
-
-        private void nested() {
-            if (++depth > 64) throw error("JSON nesting exceeds the limit");
-        }
-
-        private void expect(char expected) {
-            if (!consume(expected)) throw error("expected '" + expected + "'");
-        }
-
-        private boolean consume(char expected) {
-            if (index < source.length() && source.charAt(index) == expected) { index++; return true; }
-            return false;
-        }
-
-        private boolean digit() {
-            if (index >= source.length() || source.charAt(index) < '0' || source.charAt(index) > '9') return false;
-            index++;
-            return true;
-        }
-
-        private IllegalArgumentException error(String message) { return new IllegalArgumentException(message + " at character " + index); }
-    }
 }
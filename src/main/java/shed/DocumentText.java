@@ -0,0 +1,97 @@
+package shed;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
+
+// The current characters of a Swing document read in place through a partial-return Segment, so motions scan
+// the document's own storage instead of a getText() copy. Take a fresh view after each edit: length is fixed
+// when the view is created and chunks already read are not refreshed.
+final class DocumentText implements CharSequence {
+    // Characters read before a missed index, so a backward scan does not refill the chunk on every step.
+    private static final int READ_BEHIND = 1024;
+
+    private final Document document;
+    private final int length;
+    private final Object revision;
+    private final Segment segment = new Segment();
+    private int chunkStart;
+    private int chunkEnd;
+
+    DocumentText(Document document) {
+        if (document == null) {
+            throw new IllegalArgumentException("document text requires a document");
+        }
+        this.document = document;
+        this.length = document.getLength();
+        // A snapshot document's text is immutable per snapshot, so views of one revision read the same characters.
+        this.revision = document instanceof SnapshotDocument snapshots ? snapshots.content().snapshot() : this;
+        segment.setPartialReturn(true);
+    }
+
+    // Identifies the characters this view reads: the document's snapshot when it keeps one, else this view.
+    Object revision() {
+        return revision;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index=" + index + " length=" + length);
+        }
+        if (index < chunkStart || index >= chunkEnd) {
+            read(Math.max(0, index - READ_BEHIND));
+            if (index < chunkStart || index >= chunkEnd) read(index);
+        }
+        return segment.array[segment.offset + index - chunkStart];
+    }
+
+    // Same contract as String.indexOf(int, int).
+    int indexOf(char value, int from) {
+        for (int index = Math.max(0, from); index < length; index++) {
+            if (charAt(index) == value) return index;
+        }
+        return -1;
+    }
+
+    // Same contract as String.lastIndexOf(int, int).
+    int lastIndexOf(char value, int from) {
+        for (int index = Math.min(from, length - 1); index >= 0; index--) {
+            if (charAt(index) == value) return index;
+        }
+        return -1;
+    }
+
+    @Override
+    public String subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("start=" + start + " end=" + end + " length=" + length);
+        }
+        try {
+            return document.getText(start, end - start);
+        } catch (BadLocationException invalid) {
+            throw new IndexOutOfBoundsException(invalid.getMessage());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length);
+    }
+
+    // A gap buffer returns the characters up to its gap, so one read may end before the document does.
+    private void read(int start) {
+        try {
+            document.getText(start, length - start, segment);
+        } catch (BadLocationException invalid) {
+            throw new IndexOutOfBoundsException(invalid.getMessage());
+        }
+        chunkStart = start;
+        chunkEnd = start + segment.count;
+    }
+}
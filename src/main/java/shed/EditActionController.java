@@ -22,8 +22,13 @@ final class EditActionController {
         this.editor = editor;
     }
 
+    // The document's characters read in place instead of copied; take a new view after each edit.
+    private DocumentText documentText() {
+        return new DocumentText(editor.writingArea.getDocument());
+    }
+
     private void setGraphemeCaret(int offset) {
-        String text = editor.writingArea.getText();
+        CharSequence text = documentText();
         editor.writingArea.setCaretPosition(GraphemeBoundary.floor(text, offset));
     }
 
@@ -47,14 +52,14 @@ final class EditActionController {
                 endLine--;
             }
             String indent = editor.configManager.getExpandTab() ? " ".repeat(editor.writingArea.getTabSize()) : "\t";
-            String text = editor.writingArea.getText();
+            CharSequence text = documentText();
             int replaceStart = editor.writingArea.getLineStartOffset(startLine);
             int replaceEnd = editor.writingArea.getLineEndOffset(endLine);
             StringBuilder sb = new StringBuilder();
             for (int i = startLine; i <= endLine; i++) {
                 int ls = editor.writingArea.getLineStartOffset(i);
                 int le = editor.writingArea.getLineEndOffset(i);
-                String line = text.substring(ls, le);
+                String line = text.subSequence(ls, le).toString();
                 switch (operator) {
                     case '>':
                         sb.append(indent).append(line);
@@ -136,13 +141,13 @@ final class EditActionController {
                 return;
             }
             String prefix = prefixes[0];
-            String text = editor.writingArea.getText();
+            CharSequence text = documentText();
 
             boolean allCommented = true;
             for (int i = startLine; i <= endLine; i++) {
                 int ls = editor.writingArea.getLineStartOffset(i);
                 int le = editor.writingArea.getLineEndOffset(i);
-                String trimmed = text.substring(ls, le).stripLeading();
+                String trimmed = text.subSequence(ls, le).toString().stripLeading();
                 if (!trimmed.isEmpty() && !trimmed.startsWith(prefix)) {
                     allCommented = false;
                     break;
@@ -157,7 +162,7 @@ final class EditActionController {
                 for (int i = startLine; i <= endLine; i++) {
                     int ls = editor.writingArea.getLineStartOffset(i);
                     int le = editor.writingArea.getLineEndOffset(i);
-                    String line = text.substring(ls, le);
+                    String line = text.subSequence(ls, le).toString();
                     int idx = line.indexOf(prefix);
                     if (idx >= 0) {
                         int afterPrefix = idx + prefix.length();
@@ -173,7 +178,7 @@ final class EditActionController {
                 for (int i = startLine; i <= endLine; i++) {
                     int ls = editor.writingArea.getLineStartOffset(i);
                     int le = editor.writingArea.getLineEndOffset(i);
-                    String line = text.substring(ls, le).stripTrailing();
+                    String line = text.subSequence(ls, le).toString().stripTrailing();
                     if (line.isEmpty()) continue;
                     int indent = 0;
                     for (char ch : line.toCharArray()) {
@@ -187,7 +192,7 @@ final class EditActionController {
                 for (int i = startLine; i <= endLine; i++) {
                     int ls = editor.writingArea.getLineStartOffset(i);
                     int le = editor.writingArea.getLineEndOffset(i);
-                    String line = text.substring(ls, le);
+                    String line = text.subSequence(ls, le).toString();
                     if (line.stripTrailing().isEmpty()) {
                         sb.append(line);
                     } else {
@@ -242,37 +247,37 @@ final class EditActionController {
 
 
     void moveLeft() {
-        String text = editor.writingArea.getText();
+        CharSequence text = documentText();
         editor.writingArea.setCaretPosition(GraphemeBoundary.previous(text, editor.writingArea.getCaretPosition()));
     }
 
 
     void moveRight() {
-        String text = editor.writingArea.getText();
+        CharSequence text = documentText();
         editor.writingArea.setCaretPosition(GraphemeBoundary.next(text, editor.writingArea.getCaretPosition()));
     }
 
 
     void moveWordForward() {
-        String text = editor.writingArea.getText();
+        CharSequence text = documentText();
         editor.writingArea.setCaretPosition(motionService.moveWordForward(text, editor.writingArea.getCaretPosition()));
     }
 
 
     void moveWordBackward() {
-        String text = editor.writingArea.getText();
+        CharSequence text = documentText();
         editor.writingArea.setCaretPosition(motionService.moveWordBackward(text, editor.writingArea.getCaretPosition()));
     }
 
 
     void moveWordEnd() {
-        String text = editor.writingArea.getText();
+        CharSequence text = documentText();
         editor.writingArea.setCaretPosition(motionService.moveWordEnd(text, editor.writingArea.getCaretPosition()));
     }
 
 
     void moveWordForwardBig() {
-        String text = editor.writingArea.getText();
+        CharSequence text = documentText();
         int pos = editor.writingArea.getCaretPosition();
         while (pos < text.length() && !Character.isWhitespace(text.charAt(pos))) {
             pos++;
@@ -285,7 +290,7 @@ final class EditActionController {
 
 
     void moveWordBackwardBig() {
-        String text = editor.writingArea.getText();
+        CharSequence text = documentText();
         int pos = editor.writingArea.getCaretPosition();
         if (pos > 0) {
             pos--;
@@ -301,7 +306,7 @@ final class EditActionController {
 
 
     void moveWordEndBig() {
-        String text = editor.writingArea.getText();
+        CharSequence text = documentText();
         int pos = editor.writingArea.getCaretPosition();
         if (pos < text.length()) {
             while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
@@ -329,7 +334,7 @@ final class EditActionController {
 
 
     void moveWordEndBackwardInternal(boolean bigWord) {
-        String text = editor.writingArea.getText();
+        CharSequence text = documentText();
         int pos = Math.max(0, editor.writingArea.getCaretPosition() - 1);
         while (pos > 0 && Character.isWhitespace(text.charAt(pos))) {
             pos--;
@@ -381,12 +386,12 @@ final class EditActionController {
             int line = editor.writingArea.getLineOfOffset(pos);
             int lineStart = editor.writingArea.getLineStartOffset(line);
             int lineEnd = editor.writingArea.getLineEndOffset(line);
-            String lineText = editor.writingArea.getText().substring(lineStart, lineEnd);
+            String lineText = documentText().subSequence(lineStart, lineEnd);
             int offset = 0;
             while (offset < lineText.length() && Character.isWhitespace(lineText.charAt(offset)) && lineText.charAt(offset) != '\n') {
                 offset++;
             }
-            setGraphemeCaret(Math.min(lineStart + offset, editor.writingArea.getText().length()));
+            setGraphemeCaret(Math.min(lineStart + offset, editor.writingArea.getDocument().getLength()));
         } catch (BadLocationException ignored) {
         }
     }
@@ -398,12 +403,12 @@ final class EditActionController {
             int line = editor.writingArea.getLineOfOffset(pos);
             int lineStart = editor.writingArea.getLineStartOffset(line);
             int lineEnd = editor.writingArea.getLineEndOffset(line);
-            String lineText = editor.writingArea.getText().substring(lineStart, lineEnd);
+            String lineText = documentText().subSequence(lineStart, lineEnd);
             int offset = lineText.length() - 1;
             while (offset > 0 && Character.isWhitespace(lineText.charAt(offset))) {
                 offset--;
             }
-            setGraphemeCaret(Math.min(lineStart + offset, Math.max(lineStart, editor.writingArea.getText().length())));
+            setGraphemeCaret(Math.min(lineStart + offset, Math.max(lineStart, editor.writingArea.getDocument().getLength())));
         } catch (BadLocationException ignored) {
         }
     }
@@ -415,7 +420,7 @@ final class EditActionController {
 
 
     void moveFileEnd() {
-        editor.writingArea.setCaretPosition(editor.writingArea.getText().length());
+        editor.writingArea.setCaretPosition(editor.writingArea.getDocument().getLength());
     }
 
 
@@ -452,7 +457,7 @@ final class EditActionController {
 
 
     void moveSentenceForward() {
-        String text = editor.writingArea.getText();
+        CharSequence text = documentText();
         int pos = editor.writingArea.getCaretPosition();
         while (pos < text.length()) {
             char c = text.charAt(pos);
@@ -471,7 +476,7 @@ final class EditActionController {
 
 
     void moveSentenceBackward() {
-        String text = editor.writingArea.getText();
+        CharSequence text = documentText();
         int pos = Math.max(0, editor.writingArea.getCaretPosition() - 1);
         while (pos > 0) {
             char c = text.charAt(pos);
@@ -490,7 +495,7 @@ final class EditActionController {
 
 
     void moveMatchingBracket() {
-        String text = editor.writingArea.getText();
+        CharSequence text = documentText();
         int pos = editor.writingArea.getCaretPosition();
         if (text.isEmpty() || pos < 0 || pos >= text.length()) {
             return;
@@ -536,7 +541,7 @@ final class EditActionController {
 
     void moveToFilePercent(int percent) {
         int clamped = Math.max(0, Math.min(100, percent));
-        String text = editor.writingArea.getText();
+        CharSequence text = documentText();
         int target = (int) Math.round((text.length() * clamped) / 100.0);
         editor.writingArea.setCaretPosition(Math.min(target, text.length()));
     }
@@ -559,7 +564,7 @@ final class EditActionController {
                     break;
             }
             int offset = editor.writingArea.viewToModel2D(new Point(0, y));
-            editor.writingArea.setCaretPosition(Math.min(offset, editor.writingArea.getText().length()));
+            editor.writingArea.setCaretPosition(Math.min(offset, editor.writingArea.getDocument().getLength()));
         } catch (Exception ignored) {
         }
     }
@@ -591,7 +596,7 @@ final class EditActionController {
     String lineText(int line) throws BadLocationException {
         int start = editor.writingArea.getLineStartOffset(line);
         int end = editor.writingArea.getLineEndOffset(line);
-        return editor.writingArea.getText().substring(start, end);
+        return documentText().subSequence(start, end);
     }
 
 
@@ -685,7 +690,7 @@ final class EditActionController {
 
     String goToFileUnderCursor() {
         try {
-            String text = editor.writingArea.getText();
+            CharSequence text = documentText();
             int pos = editor.writingArea.getCaretPosition();
             // Expand from cursor to find a file-path-like string
             int start = pos;
@@ -697,7 +702,7 @@ final class EditActionController {
                 end++;
             }
             if (start == end) return "No file path under cursor";
-            String path = text.substring(start, end);
+            String path = text.subSequence(start, end).toString();
 
             File file = new File(path);
             if (!file.isAbsolute()) {
@@ -718,14 +723,14 @@ final class EditActionController {
 
     String openBrowserUrl() {
         try {
-            String text = editor.writingArea.getText();
+            CharSequence text = documentText();
             int pos = editor.writingArea.getCaretPosition();
             int start = pos;
             int end = pos;
             while (start > 0 && !Character.isWhitespace(text.charAt(start - 1))) start--;
             while (end < text.length() && !Character.isWhitespace(text.charAt(end))) end++;
             if (start == end) return "No URL under cursor";
-            String url = text.substring(start, end);
+            String url = text.subSequence(start, end).toString();
             // Strip surrounding markdown link syntax
             if (url.startsWith("[")) {
                 int urlStart = url.indexOf("](");
@@ -809,7 +814,7 @@ final class EditActionController {
 
 
     String searchWordUnderCursor(boolean forward) {
-        String text = editor.writingArea.getText();
+        CharSequence text = documentText();
         int caret = editor.writingArea.getCaretPosition();
         if (text.isEmpty() || caret >= text.length()) {
             return "No word under cursor";
@@ -827,7 +832,7 @@ final class EditActionController {
             return "No word under cursor";
         }
 
-        String word = text.substring(start, end);
+        String word = text.subSequence(start, end).toString();
         return forward ? editor.searchManager.searchForward(word) : editor.searchManager.searchBackward(word);
     }
 
@@ -869,23 +874,23 @@ final class EditActionController {
             int caretPos = editor.writingArea.getCaretPosition();
             int startLine = editor.writingArea.getLineOfOffset(caretPos);
             int endLine = startLine;
-            String text = editor.writingArea.getText();
+            CharSequence text = documentText();
             // expand to paragraph boundaries (blank lines)
             while (startLine > 0) {
                 int ls = editor.writingArea.getLineStartOffset(startLine - 1);
                 int le = editor.writingArea.getLineEndOffset(startLine - 1);
-                if (text.substring(ls, le).trim().isEmpty()) break;
+                if (text.subSequence(ls, le).toString().trim().isEmpty()) break;
                 startLine--;
             }
             while (endLine < editor.writingArea.getLineCount() - 1) {
                 int ls = editor.writingArea.getLineStartOffset(endLine + 1);
                 int le = editor.writingArea.getLineEndOffset(endLine + 1);
-                if (text.substring(ls, le).trim().isEmpty()) break;
+                if (text.subSequence(ls, le).toString().trim().isEmpty()) break;
                 endLine++;
             }
             int startOff = editor.writingArea.getLineStartOffset(startLine);
             int endOff = editor.writingArea.getLineEndOffset(endLine);
-            String paraRaw = text.substring(startOff, endOff);
+            String paraRaw = text.subSequence(startOff, endOff).toString();
             // preserve leading indent from first line
             String indent = "";
             for (int i2 = 0; i2 < paraRaw.length(); i2++) {
@@ -922,7 +927,7 @@ final class EditActionController {
             int lineH = editor.writingArea.getFontMetrics(editor.writingArea.getFont()).getHeight();
             int newY = (int) r.getY() + lineH;
             int newPos = editor.writingArea.viewToModel2D(new java.awt.geom.Point2D.Double(r.getX(), newY));
-            if (newPos >= 0 && newPos <= editor.writingArea.getText().length()) editor.writingArea.setCaretPosition(newPos);
+            if (newPos >= 0 && newPos <= editor.writingArea.getDocument().getLength()) editor.writingArea.setCaretPosition(newPos);
         } catch (BadLocationException ignored) {}
     }
 
@@ -935,7 +940,7 @@ final class EditActionController {
             int newY = (int) r.getY() - lineH;
             if (newY < 0) return;
             int newPos = editor.writingArea.viewToModel2D(new java.awt.geom.Point2D.Double(r.getX(), newY));
-            if (newPos >= 0 && newPos <= editor.writingArea.getText().length()) editor.writingArea.setCaretPosition(newPos);
+            if (newPos >= 0 && newPos <= editor.writingArea.getDocument().getLength()) editor.writingArea.setCaretPosition(newPos);
         } catch (BadLocationException ignored) {}
     }
 
@@ -977,7 +982,7 @@ final class EditActionController {
             for (int line = endLine; line >= startLine; line--) {
                 int ls = editor.writingArea.getLineStartOffset(line);
                 int le = editor.writingArea.getLineEndOffset(line);
-                String lineText = editor.writingArea.getText().substring(ls, le);
+                String lineText = documentText().subSequence(ls, le);
                 int sc = Math.min(startCol, lineText.length());
                 int ec = Math.min(endCol + 1, lineText.length());
                 if (sc < ec) {
@@ -1003,7 +1008,7 @@ final class EditActionController {
             for (int line = startLine; line <= endLine; line++) {
                 int ls = editor.writingArea.getLineStartOffset(line);
                 int le = editor.writingArea.getLineEndOffset(line);
-                String lineText = editor.writingArea.getText().substring(ls, le);
+                String lineText = documentText().subSequence(ls, le);
                 int sc = Math.min(startCol, lineText.length());
                 int ec = Math.min(endCol + 1, lineText.length());
                 if (line > startLine) yanked.append("\n");
@@ -1043,7 +1048,7 @@ final class EditActionController {
             int col = pos - editor.writingArea.getLineStartOffset(line);
             int prevLineStart = editor.writingArea.getLineStartOffset(line - 1);
             int prevLineEnd = editor.writingArea.getLineEndOffset(line - 1);
-            int newPos = GraphemeBoundary.floor(editor.writingArea.getText(), Math.min(prevLineStart + col, prevLineEnd - 1));
+            int newPos = GraphemeBoundary.floor(documentText(), Math.min(prevLineStart + col, prevLineEnd - 1));
             if (addExtraSelection(MultiSelection.caret(newPos))) {
                 editor.showMessage("Added cursor above (" + (editor.extraSelections.size() + 1) + " total)");
             }
@@ -1060,7 +1065,7 @@ final class EditActionController {
             int col = pos - editor.writingArea.getLineStartOffset(line);
             int nextLineStart = editor.writingArea.getLineStartOffset(line + 1);
             int nextLineEnd = editor.writingArea.getLineEndOffset(line + 1);
-            int newPos = GraphemeBoundary.floor(editor.writingArea.getText(), Math.min(nextLineStart + col, nextLineEnd - 1));
+            int newPos = GraphemeBoundary.floor(documentText(), Math.min(nextLineStart + col, nextLineEnd - 1));
             if (addExtraSelection(MultiSelection.caret(newPos))) {
                 editor.showMessage("Added cursor below (" + (editor.extraSelections.size() + 1) + " total)");
             }
@@ -1199,7 +1204,7 @@ final class EditActionController {
 
     void deleteWordBackwardInsert() {
         try {
-            String text = editor.writingArea.getText();
+            CharSequence text = documentText();
             int pos = editor.writingArea.getCaretPosition();
             if (pos <= 0) return;
             int start = pos - 1;
@@ -1216,7 +1221,7 @@ final class EditActionController {
 
     void deleteToLineStartInsert() {
         try {
-            String text = editor.writingArea.getText();
+            DocumentText text = documentText();
             int pos = editor.writingArea.getCaretPosition();
             int lineStart = text.lastIndexOf('\n', pos - 1) + 1;
             if (pos > lineStart) {
@@ -1231,7 +1236,7 @@ final class EditActionController {
             int line = editor.writingArea.getLineOfOffset(editor.writingArea.getCaretPosition());
             int start = editor.writingArea.getLineStartOffset(line);
             int end = editor.writingArea.getLineEndOffset(line);
-            String lineText = editor.writingArea.getText().substring(start, end);
+            String lineText = documentText().subSequence(start, end);
             StringBuilder builder = new StringBuilder();
             for (int i = 0; i < lineText.length(); i++) {
                 char c = lineText.charAt(i);
@@ -1253,7 +1258,7 @@ final class EditActionController {
             int line = editor.writingArea.getLineOfOffset(editor.writingArea.getCaretPosition());
             int start = editor.writingArea.getLineStartOffset(line);
             int end = editor.writingArea.getLineEndOffset(line);
-            String lineText = editor.writingArea.getText().substring(start, end);
+            String lineText = documentText().subSequence(start, end);
             int offset = 0;
             while (offset < lineText.length() && Character.isWhitespace(lineText.charAt(offset)) && lineText.charAt(offset) != '\n') {
                 offset++;
@@ -1300,7 +1305,7 @@ final class EditActionController {
             int lineEnd = editor.writingArea.getLineEndOffset(line);
             int nextLineStart = editor.writingArea.getLineStartOffset(line + 1);
             int nextLineEnd = editor.writingArea.getLineEndOffset(line + 1);
-            String nextLine = editor.writingArea.getText().substring(nextLineStart, nextLineEnd).stripLeading();
+            String nextLine = documentText().subSequence(nextLineStart, nextLineEnd).stripLeading();
             editor.writingArea.replaceRange(withSpace ? " " + nextLine : nextLine, lineEnd - 1, nextLineEnd);
             editor.markModified();
         } catch (BadLocationException ignored) {
@@ -1313,7 +1318,7 @@ final class EditActionController {
             int line = editor.writingArea.getLineOfOffset(editor.writingArea.getCaretPosition());
             int start = editor.writingArea.getLineStartOffset(line);
             int end = editor.writingArea.getLineEndOffset(line);
-            String text = editor.writingArea.getText().substring(start, end);
+            String text = documentText().subSequence(start, end);
             switch (operator) {
                 case '>':
                     String indent = editor.configManager.getExpandTab() ? " ".repeat(editor.writingArea.getTabSize()) : "\t";
@@ -1351,7 +1356,7 @@ final class EditActionController {
         try {
             int start = editor.writingArea.getLineStartOffset(line);
             int end = editor.writingArea.getLineEndOffset(line);
-            String lineText = editor.writingArea.getText().substring(start, end);
+            String lineText = documentText().subSequence(start, end);
             int count = 0;
             while (count < lineText.length() && Character.isWhitespace(lineText.charAt(count)) && lineText.charAt(count) != '\n') {
                 count++;
@@ -1364,7 +1369,7 @@ final class EditActionController {
 
 
     String findCharacter(char type, char target) {
-        String text = editor.writingArea.getText();
+        DocumentText text = documentText();
         int caret = editor.writingArea.getCaretPosition();
         int lineStart = text.lastIndexOf('\n', caret - 1) + 1;
         int lineEnd = text.indexOf('\n', caret);
@@ -1450,7 +1455,7 @@ final class EditActionController {
             return;
         }
         editor.jumpIndex--;
-        editor.writingArea.setCaretPosition(Math.min(editor.jumpList.get(editor.jumpIndex), editor.writingArea.getText().length()));
+        editor.writingArea.setCaretPosition(Math.min(editor.jumpList.get(editor.jumpIndex), editor.writingArea.getDocument().getLength()));
     }
 
 
@@ -1460,7 +1465,7 @@ final class EditActionController {
             return;
         }
         editor.jumpIndex++;
-        editor.writingArea.setCaretPosition(Math.min(editor.jumpList.get(editor.jumpIndex), editor.writingArea.getText().length()));
+        editor.writingArea.setCaretPosition(Math.min(editor.jumpList.get(editor.jumpIndex), editor.writingArea.getDocument().getLength()));
     }
 
 
@@ -1482,7 +1487,7 @@ final class EditActionController {
             return;
         }
         editor.changeIndex--;
-        editor.writingArea.setCaretPosition(Math.min(editor.changeList.get(editor.changeIndex), editor.writingArea.getText().length()));
+        editor.writingArea.setCaretPosition(Math.min(editor.changeList.get(editor.changeIndex), editor.writingArea.getDocument().getLength()));
     }
 
 
@@ -1492,7 +1497,7 @@ final class EditActionController {
             return;
         }
         editor.changeIndex++;
-        editor.writingArea.setCaretPosition(Math.min(editor.changeList.get(editor.changeIndex), editor.writingArea.getText().length()));
+        editor.writingArea.setCaretPosition(Math.min(editor.changeList.get(editor.changeIndex), editor.writingArea.getDocument().getLength()));
     }
 
 
@@ -1630,7 +1635,7 @@ final class EditActionController {
             int start = editor.writingArea.getCaretPosition();
             int line = editor.writingArea.getLineOfOffset(start);
             int end = editor.writingArea.getLineEndOffset(line);
-            String text = editor.writingArea.getText().substring(start, end);
+            String text = documentText().subSequence(start, end);
             storeYank(consumePendingRegister(), text, false);
             return "Yanked " + text.length() + " characters";
         } catch (BadLocationException e) {
@@ -1641,7 +1646,7 @@ final class EditActionController {
 
     String replaceCharacter(char replacement) {
         int caret = editor.writingArea.getCaretPosition();
-        String text = editor.writingArea.getText();
+        CharSequence text = documentText();
         if (caret >= text.length()) {
             return "No character to replace";
         }
@@ -1668,7 +1673,7 @@ final class EditActionController {
             return "Unsupported target: " + label;
         }
 
-        String selected = editor.writingArea.getText().substring(range.start, Math.min(range.end, editor.writingArea.getText().length()));
+        String selected = documentText().subSequence(range.start, Math.min(range.end, editor.writingArea.getDocument().getLength()));
         switch (operator) {
             case 'y':
                 storeYank(consumePendingRegister(), selected, range.lineWise);
@@ -1677,14 +1682,14 @@ final class EditActionController {
             case 'd':
                 storeDelete(consumePendingRegister(), selected, range.lineWise);
                 editor.writingArea.replaceRange("", range.start, range.end);
-                editor.writingArea.setCaretPosition(Math.min(range.start, editor.writingArea.getText().length()));
+                editor.writingArea.setCaretPosition(Math.min(range.start, editor.writingArea.getDocument().getLength()));
                 editor.lastCommand = "d" + label;
                 editor.markModified();
                 return "Deleted " + selected.length() + " characters";
             case 'c':
                 storeDelete(consumePendingRegister(), selected, range.lineWise);
                 editor.writingArea.replaceRange("", range.start, range.end);
-                editor.writingArea.setCaretPosition(Math.min(range.start, editor.writingArea.getText().length()));
+                editor.writingArea.setCaretPosition(Math.min(range.start, editor.writingArea.getDocument().getLength()));
                 editor.lastInsertedText = "";
                 editor.lastCommand = "c" + label;
                 editor.markModified();
@@ -1724,7 +1729,7 @@ final class EditActionController {
             int start = Math.min(original, target);
             int end = Math.max(original, target);
             if (inclusive) {
-                end = Math.min(end + 1, editor.writingArea.getText().length());
+                end = Math.min(end + 1, editor.writingArea.getDocument().getLength());
             }
             return new MotionRange(start, end, false);
         } catch (BadLocationException e) {
@@ -1881,7 +1886,7 @@ final class EditActionController {
 
 
     MotionRange resolveWordObject(boolean around, boolean bigWord) {
-        String text = editor.writingArea.getText();
+        CharSequence text = documentText();
         if (text.isEmpty()) {
             return null;
         }
@@ -1930,7 +1935,7 @@ final class EditActionController {
 
 
     MotionRange resolveSentenceObject(boolean around) {
-        String text = editor.writingArea.getText();
+        CharSequence text = documentText();
         int caret = editor.writingArea.getCaretPosition();
         int start = caret;
         int end = caret;
@@ -1962,7 +1967,7 @@ final class EditActionController {
 
 
     MotionRange resolveQuoteObject(boolean around, char quote) {
-        String text = editor.writingArea.getText();
+        DocumentText text = documentText();
         int caret = editor.writingArea.getCaretPosition();
         int start = text.lastIndexOf(quote, Math.max(0, caret - 1));
         int end = text.indexOf(quote, caret);
@@ -1974,7 +1979,7 @@ final class EditActionController {
 
 
     MotionRange resolveBracketObject(boolean around, char open, char close) {
-        String text = editor.writingArea.getText();
+        CharSequence text = documentText();
         int caret = editor.writingArea.getCaretPosition();
         int start = -1;
         int depth = 0;
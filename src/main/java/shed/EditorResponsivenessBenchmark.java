@@ -2,18 +2,23 @@ package shed;
 
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 /**
  * Explicit local measurement for Shed's editable-file text model and deferred
- * visual work. It is intentionally not part of the normal Maven test run.
+ * visual work, including a replay of a long typing session against one
+ * snapshot. It is intentionally not part of the normal Maven test run.
  */
 public final class EditorResponsivenessBenchmark {
     static final int DEFAULT_SAMPLES = 25;
     static final int TARGET_LINES = 500_000;
     static final long DEFAULT_MAX_EDIT_P95_MS = 16L;
     static final long DEFAULT_MAX_CONVERGENCE_P95_MS = 250L;
+    static final int SESSION_EDITS = 100_000;
+    static final int SESSION_LOOKUPS = 10_000;
 
     private EditorResponsivenessBenchmark() { }
 
@@ -64,9 +69,45 @@ public final class EditorResponsivenessBenchmark {
             diffSamples.add(convergence.diffNanos());
             convergenceSamples.add(convergence.totalNanos());
         }
+        Session session = replaySession(baseline, SESSION_EDITS, SESSION_LOOKUPS);
         return new Report(baseline.length(), baseline.lineCount(), percentile(editSamples), percentile(caretSamples),
             percentile(convergenceSamples), percentile(syntaxSamples), percentile(symbolSamples), percentile(completionSamples),
-            percentile(diffSamples), arguments.samples());
+            percentile(diffSamples), arguments.samples(), session);
+    }
+
+    // Types, breaks lines, backspaces, and jumps between lines edit after edit, then times caret lookups on the result.
+    static Session replaySession(VersionedTextSnapshot baseline, int edits, int lookups) {
+        Random random = new Random(0x5EED5E55L);
+        VersionedTextSnapshot snapshot = baseline;
+        int caret = baseline.length() / 2;
+        long[] editNanos = new long[edits];
+        long started = System.nanoTime();
+        for (int edit = 0; edit < edits; edit++) {
+            int action = random.nextInt(20);
+            if (action == 0) caret = snapshot.lineStartOffset(random.nextInt(snapshot.lineCount()));
+            long editStarted = System.nanoTime();
+            if (action < 3 && caret > 0) {
+                snapshot = snapshot.replace(--caret, 1, "");
+            } else {
+                snapshot = snapshot.replace(caret++, 0, action == 3 ? "\n" : "x");
+            }
+            editNanos[edit] = System.nanoTime() - editStarted;
+        }
+        long replayNanos = System.nanoTime() - started;
+        long[] lookupNanos = new long[lookups];
+        for (int lookup = 0; lookup < lookups; lookup++) {
+            VersionedTextSnapshot current = snapshot;
+            int offset = random.nextInt(current.length() + 1);
+            int line = random.nextInt(current.lineCount());
+            lookupNanos[lookup] = measureNanos(() -> {
+                VersionedTextSnapshot.Position position = current.positionAt(offset);
+                current.offsetAt(position.line(), position.character());
+                current.lineStartOffset(line);
+            });
+        }
+        int[] leaves = {0};
+        snapshot.forEachChunk(0, snapshot.length(), (text, start, end) -> ++leaves[0] > 0);
+        return new Session(edits, replayNanos, percentile(editNanos), percentile(lookupNanos), leaves[0]);
     }
 
     private static void warm(VersionedTextSnapshot baseline) {
@@ -76,7 +117,7 @@ public final class EditorResponsivenessBenchmark {
 
     private static Convergence converge(VersionedTextSnapshot snapshot) {
         String text = snapshot.text();
-        long syntax = measureNanos(() -> new GrammarHighlightService().highlightViewport(text, FileType.JAVA, 0, 64 * 1024));
+        long syntax = measureNanos(() -> new GrammarHighlightService().highlightViewport(snapshot, FileType.JAVA, 0, 64 * 1024, null));
         long symbols = measureNanos(() -> new SymbolService().collectSymbols(text, FileType.JAVA));
         long completion = measureNanos(() -> new OpenBufferCompletionIndex().build(text));
         long diff = measureNanos(() -> LineNumberPanel.diffMarkers(text, snapshot.replace(0, 0, "// ").text()));
@@ -95,6 +136,12 @@ public final class EditorResponsivenessBenchmark {
         return sorted.get(Math.max(0, (int) Math.ceil(sorted.size() * 0.95d) - 1));
     }
 
+    private static long percentile(long[] samples) {
+        long[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        return sorted[Math.max(0, (int) Math.ceil(sorted.length * 0.95d) - 1)];
+    }
+
     static String fixture() {
         StringBuilder source = new StringBuilder(18 * 1024 * 1024);
         for (int line = 0; line < TARGET_LINES; line++) {
@@ -112,10 +159,13 @@ public final class EditorResponsivenessBenchmark {
     }
 
     record Report(int characters, int lines, long editP95Nanos, long caretP95Nanos, long convergenceP95Nanos,
-                  long syntaxP95Nanos, long symbolP95Nanos, long completionP95Nanos, long diffP95Nanos, int samples) {
+                  long syntaxP95Nanos, long symbolP95Nanos, long completionP95Nanos, long diffP95Nanos, int samples,
+                  Session session) {
         boolean passes(Arguments arguments) {
             return editP95Nanos <= arguments.maxEditP95Ms() * 1_000_000L
                 && caretP95Nanos <= arguments.maxEditP95Ms() * 1_000_000L
+                && session.editP95Nanos() <= arguments.maxEditP95Ms() * 1_000_000L
+                && session.lookupP95Nanos() <= arguments.maxEditP95Ms() * 1_000_000L
                 && convergenceP95Nanos <= arguments.maxConvergenceP95Ms() * 1_000_000L;
         }
 
@@ -129,7 +179,12 @@ public final class EditorResponsivenessBenchmark {
                 + "p95.syntax.ms=" + millis(syntaxP95Nanos) + '\n'
                 + "p95.symbols.ms=" + millis(symbolP95Nanos) + '\n'
                 + "p95.completion-index.ms=" + millis(completionP95Nanos) + '\n'
-                + "p95.diff-gutter.ms=" + millis(diffP95Nanos) + '\n';
+                + "p95.diff-gutter.ms=" + millis(diffP95Nanos) + '\n'
+                + "session.edits=" + session.edits() + '\n'
+                + "session.replay.ms=" + millis(session.replayNanos()) + '\n'
+                + "session.p95.edit.ms=" + millis(session.editP95Nanos()) + '\n'
+                + "session.p95.lookup.ms=" + millis(session.lookupP95Nanos()) + '\n'
+                + "session.leaves=" + session.leaves() + '\n';
         }
 
         private static String millis(long nanos) {
@@ -169,6 +224,8 @@ public final class EditorResponsivenessBenchmark {
         }
     }
 
+    record Session(int edits, long replayNanos, long editP95Nanos, long lookupP95Nanos, int leaves) { }
+
     private record Convergence(long syntaxNanos, long symbolNanos, long completionNanos, long diffNanos) {
         long totalNanos() {
             return Math.max(Math.max(syntaxNanos, symbolNanos), Math.max(completionNanos, diffNanos));
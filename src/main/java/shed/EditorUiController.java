@@ -7,9 +7,8 @@ import javax.swing.event.DocumentListener;
 import javax.swing.plaf.FontUIResource;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.Highlighter;
+import javax.swing.text.JTextComponent;
 import javax.swing.text.Segment;
-import javax.swing.text.TabExpander;
-import javax.swing.text.Utilities;
 import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
@@ -24,6 +23,25 @@ import java.util.regex.Pattern;
 final class EditorUiController {
     private static final int STATUS_REFRESH_DEBOUNCE_MS = 33;
     private final Texteditor editor;
+    private final SyntaxTextAreaUI.Styles syntaxStyles = new SyntaxTextAreaUI.Styles() {
+        @Override
+        public SyntaxSpans syntax(JTextComponent component) {
+            return component == editor.writingArea ? editor.syntaxForegroundSpans : null;
+        }
+
+        @Override
+        public SyntaxSpans semantic(JTextComponent component) {
+            return component == editor.writingArea ? editor.lspSemanticSpans : null;
+        }
+
+        @Override
+        public void painted(JTextComponent component, long startedNanos, int reused, int laidOut) {
+            if (editor.perfService != null && component == editor.writingArea && editor.syntaxForegroundSpans != null) {
+                editor.perfService.recordDuration("syntax.paint", startedNanos, "spans=" + editor.syntaxForegroundSpans.size()
+                    + " semantic=" + editor.lspSemanticSpans.size() + " glyphRunsReused=" + reused + " glyphRunsLaidOut=" + laidOut);
+            }
+        }
+    };
     private final Map<Object, Font> systemUiFonts;
     private final DefaultListModel<String> commandPathModel = new DefaultListModel<>();
     private JPopupMenu commandPathPopup;
@@ -248,6 +266,12 @@ final class EditorUiController {
 
     EditorPane createEditorPane(Dimension screenSize) {
         JTextArea textArea = new JTextArea() {
+            @Override
+            public void updateUI() {
+                // Syntax and semantic colors are drawn by the views the UI's editor kit creates.
+                setUI(new SyntaxTextAreaUI(syntaxStyles));
+            }
+
             @Override
             protected void paintComponent(Graphics g) {
                 super.paintComponent(g);
@@ -271,17 +295,17 @@ final class EditorUiController {
                     Rectangle clip = g.getClipBounds();
                     int startY = clip != null ? clip.y : 0;
                     int endY = clip != null ? clip.y + clip.height : getHeight();
-                    String text = getText();
+                    Segment lineText = new Segment();
                     try {
                         int startLine = getLineOfOffset(viewToModel2D(new Point(0, startY)));
                         int endLine = Math.min(getLineCount() - 1, getLineOfOffset(viewToModel2D(new Point(0, endY))));
                         for (int line = startLine; line <= endLine; line++) {
                             int ls = getLineStartOffset(line);
                             int le = getLineEndOffset(line);
-                            String lineText = text.substring(ls, Math.min(le, text.length()));
+                            getDocument().getText(ls, le - ls, lineText);
                             int indent = 0;
-                            for (int j = 0; j < lineText.length() && (lineText.charAt(j) == ' ' || lineText.charAt(j) == '\t'); j++) {
-                                indent += lineText.charAt(j) == '\t' ? tabSize : 1;
+                            for (int j = 0; j < lineText.count && (lineText.array[lineText.offset + j] == ' ' || lineText.array[lineText.offset + j] == '\t'); j++) {
+                                indent += lineText.array[lineText.offset + j] == '\t' ? tabSize : 1;
                             }
                             Rectangle2D r = modelToView2D(ls);
                             if (r == null) continue;
@@ -294,8 +318,6 @@ final class EditorUiController {
                         }
                     } catch (Exception ignored) {}
                 }
-                paintSyntaxForegroundOverlay(g, this);
-                editor.paintLspSemanticOverlay(g, this);
                 editor.paintLimelightOverlay(g, this);
                 paintDiagnosticOverlay(g, this);
                 paintVisualBlockOverlay(g, this);
@@ -568,7 +590,7 @@ final class EditorUiController {
         }
         editor.editorState.mode = mode;
         FileBuffer buffer = editor.getCurrentBuffer();
-        editor.writingArea.setEditable(mode.isEditable() && (buffer == null || !buffer.isLargeFile()));
+        editor.writingArea.setEditable(mode.isEditable() && (buffer == null || !buffer.isLargeFileReadOnly()));
         editor.writingArea.setBackground(getModeBackground(mode));
         configureCommandPrompt(mode);
         editor.updateZenModeLayout();
@@ -607,7 +629,6 @@ final class EditorUiController {
         StringBuilder status = new StringBuilder();
 
         if (buffer != null) {
-            editor.pollLspNotifications(buffer);
             status.append(buffer.getDisplayName());
             if (buffer.isModified()) {
                 status.append(" [+]");
@@ -1008,111 +1029,6 @@ final class EditorUiController {
     }
 
 
-    void paintSyntaxForegroundOverlay(Graphics g, JTextArea area) {
-        paintForegroundSpans(g, area, editor.syntaxForegroundSpans, "syntax.paint");
-    }
-
-    void paintLspSemanticOverlay(Graphics g, JTextArea area) {
-        paintForegroundSpans(g, area, editor.lspSemanticSpans, "lsp.semantic.paint");
-    }
-
-    private void paintForegroundSpans(Graphics g, JTextArea area, List<SyntaxSpan> spans, String metric) {
-        long started = System.nanoTime();
-        try {
-        if (area == null || area != editor.writingArea || spans.isEmpty()) {
-            return;
-        }
-        int docLength = area.getDocument().getLength();
-        if (docLength <= 0) {
-            return;
-        }
-        int visibleStart = 0;
-        int visibleEnd = docLength;
-        Rectangle clip = g.getClipBounds();
-        if (clip != null) {
-            int start = area.viewToModel2D(new Point(clip.x, clip.y));
-            int end = area.viewToModel2D(new Point(clip.x + clip.width, clip.y + clip.height));
-            if (start < 0) {
-                start = 0;
-            }
-            if (end < start) {
-                end = start;
-            }
-            visibleStart = Math.min(start, docLength);
-            visibleEnd = Math.min(docLength, end + 1);
-        }
-
-        Graphics2D g2 = (Graphics2D) g.create();
-        g2.setFont(area.getFont());
-        FontMetrics metrics = area.getFontMetrics(area.getFont());
-        int ascent = metrics.getAscent();
-        int tabPixels = Math.max(1, area.getTabSize() * metrics.charWidth(' '));
-        TabExpander tabExpander = (x, tabOffset) -> ((int) x / tabPixels + 1) * tabPixels;
-
-        int first = firstVisibleSpan(spans, visibleStart);
-        for (int index = first; index < spans.size(); index++) {
-            SyntaxSpan span = spans.get(index);
-            if (span.start >= visibleEnd) break;
-            if (span.end <= visibleStart || span.start >= visibleEnd) {
-                continue;
-            }
-            int spanStart = Math.max(span.start, visibleStart);
-            int spanEnd = Math.min(span.end, visibleEnd);
-            if (spanEnd <= spanStart) {
-                continue;
-            }
-            try {
-                int startLine = area.getLineOfOffset(spanStart);
-                int endLine = area.getLineOfOffset(Math.max(spanStart, spanEnd - 1));
-                for (int line = startLine; line <= endLine; line++) {
-                    int lineStart = area.getLineStartOffset(line);
-                    int lineEnd = area.getLineEndOffset(line);
-                    int segmentStart = Math.max(spanStart, lineStart);
-                    int segmentEnd = Math.min(spanEnd, lineEnd);
-                    while (segmentEnd > segmentStart) {
-                        char tail = area.getText(segmentEnd - 1, 1).charAt(0);
-                        if (tail == '\n' || tail == '\r') {
-                            segmentEnd--;
-                        } else {
-                            break;
-                        }
-                    }
-                    if (segmentEnd <= segmentStart) {
-                        continue;
-                    }
-                    Rectangle2D rect = area.modelToView2D(segmentStart);
-                    if (rect == null) {
-                        continue;
-                    }
-                    String text = area.getText(segmentStart, segmentEnd - segmentStart);
-                    Segment segment = new Segment(text.toCharArray(), 0, text.length());
-                    int x = (int) Math.round(rect.getX());
-                    int y = (int) Math.round(rect.getY()) + ascent;
-                    g2.setColor(span.color);
-                    Utilities.drawTabbedText(segment, x, y, (Graphics) g2, tabExpander, segmentStart);
-                }
-            } catch (BadLocationException ignored) {
-            }
-        }
-        g2.dispose();
-        } finally {
-            if (editor.perfService != null) {
-                editor.perfService.recordDuration(metric, started, "spans=" + spans.size());
-            }
-        }
-    }
-
-    private int firstVisibleSpan(List<SyntaxSpan> spans, int visibleStart) {
-        int low = 0;
-        int high = spans.size();
-        while (low < high) {
-            int middle = (low + high) >>> 1;
-            if (spans.get(middle).end <= visibleStart) low = middle + 1;
-            else high = middle;
-        }
-        return low;
-    }
-
     void paintLspInlayHintOverlay(Graphics graphics, JTextArea area) {
         if (area == null || area != editor.writingArea || editor.lspInlayHintOverlays.isEmpty()) return;
         Graphics2D g2 = (Graphics2D) graphics.create();
@@ -5,13 +5,8 @@ package shed;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.CharBuffer;
-import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
-import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
-import java.nio.charset.UnsupportedCharsetException;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
@@ -42,22 +37,35 @@ public class FileBuffer {
 
     private File file;
     private String scratchName;
+    // Large files keep their edit state here. Other buffers compare their text with savedText, and this forces them
+    // modified until the next save when the text cannot tell, such as recovered work that matches the file on disk.
     private boolean modified;
     private String encodingName;
     private int lineCount;
     private final BoundedUndoManager undoManager;
-    private final PlainDocument document;
+    private final SnapshotContent documentContent;
+    private final SnapshotDocument document;
+    // The revision last handed to change listeners; documentContent always holds the current one.
     private VersionedTextSnapshot textSnapshot;
     private String lineEnding;
     private FileType fileType;
     private final Map<Character, Integer> marks;
     private long lastKnownModifiedTime;
-    private String savedContent;
+    // The revision last loaded or saved; snapshots are immutable, so this shares the document's leaves.
+    private VersionedTextSnapshot savedText;
+    // The last revision compared with savedText, so repeated checks of one revision are O(1).
+    private SavedTextComparison savedTextComparison;
     private boolean scratch;
     private boolean largeFile;
     private String largeFileTail;
     private LargeFileStore largeFileStore;
+    private LargeFilePieceTable largeFileTable;
     private String largeFileError;
+    private long largeFileWindowFirstLine;
+    private int largeFileWindowRequestedLines;
+    private long largeFileWindowLines;
+    private String largeFileWindowText;
+    private boolean largeFileWindowTruncated;
     private volatile File backupFile;
     private boolean showingPreviewOnly;
     private long fileSizeBytes;
@@ -72,9 +80,10 @@ public class FileBuffer {
     public FileBuffer(File file, ConfigManager configManager) throws IOException {
         this.undoManager = new BoundedUndoManager(configManager == null
             ? UndoHistoryPolicy.defaults() : configManager.getUndoHistoryPolicy());
-        this.document = new PlainDocument();
+        this.document = new SnapshotDocument();
+        this.documentContent = document.content();
         this.document.addUndoableEditListener(undoManager);
-        this.textSnapshot = VersionedTextSnapshot.empty();
+        this.textSnapshot = documentContent.snapshot();
         this.marks = new LinkedHashMap<>();
         this.configManager = configManager;
         this.file = file;
@@ -85,6 +94,7 @@ public class FileBuffer {
         this.largeFile = false;
         this.largeFileTail = null;
         this.largeFileStore = null;
+        this.largeFileTable = null;
         this.largeFileError = null;
         this.showingPreviewOnly = false;
         this.fileSizeBytes = 0L;
@@ -99,9 +109,10 @@ public class FileBuffer {
     FileBuffer(String filename, ConfigManager configManager) {
         this.undoManager = new BoundedUndoManager(configManager == null
             ? UndoHistoryPolicy.defaults() : configManager.getUndoHistoryPolicy());
-        this.document = new PlainDocument();
+        this.document = new SnapshotDocument();
+        this.documentContent = document.content();
         this.document.addUndoableEditListener(undoManager);
-        this.textSnapshot = VersionedTextSnapshot.empty();
+        this.textSnapshot = documentContent.snapshot();
         this.marks = new LinkedHashMap<>();
         this.configManager = configManager;
         this.file = filename == null ? null : new File(filename);
@@ -122,7 +133,7 @@ public class FileBuffer {
         this.fileSizeBytes = 0L;
         this.externalFileStamp = observeExternalFile();
         setDocumentText("", false);
-        this.savedContent = "";
+        this.savedText = VersionedTextSnapshot.empty();
     }
 
     public static FileBuffer createScratch(String name, String content) {
@@ -153,31 +164,31 @@ public class FileBuffer {
         LargeFilePolicy policy = resolveLargeFilePolicy(configManager);
         Path source = file.toPath();
         long sourceBytes = Files.size(source);
-        if (sourceBytes > policy.maxSizeBytes || LargeFileStore.exceedsLineLimit(source, policy.maxLineCount)) {
+        if (sourceBytes > policy.maxSizeBytes) {
             loadLargeFile(source, sourceBytes, policy);
             return;
         }
+        // Reading counts lines as it decodes, so the line limit is checked on the result rather than by a separate scan.
+        SnapshotFileReader.Result loaded = SnapshotFileReader.read(source);
+        if (loaded.bytes() > policy.maxSizeBytes || loaded.text().lineCount() > policy.maxLineCount) {
+            loadLargeFile(source, loaded.bytes(), policy);
+            return;
+        }
 
         this.largeFileStore = null;
+        this.largeFileTable = null;
+        this.largeFileWindowText = null;
         this.largeFileError = null;
-        byte[] bytes = Files.readAllBytes(source);
-        this.fileSizeBytes = bytes.length;
-        DecodedContent decoded = decode(bytes);
-        this.encodingName = decoded.charsetName;
-        this.lineEnding = detectLineEnding(decoded.content);
-        this.fileType = FileType.detect(file, decoded.content);
+        this.fileSizeBytes = loaded.bytes();
+        this.encodingName = loaded.charset().name();
+        this.lineEnding = loaded.lineEnding();
         this.backupFile = null;
         this.lastKnownModifiedTime = file.exists() ? file.lastModified() : 0L;
-
-        String normalized = normalizeLineEndings(decoded.content);
-        int detectedLineCount = countLines(normalized);
         this.largeFile = false;
         this.showingPreviewOnly = false;
         this.largeFileTail = null;
-        setDocumentText(normalized, false);
-
-        updateLineCount();
-        this.savedContent = getFullContent();
+        setDocumentText(loaded.text(), false);
+        this.savedText = loaded.text();
         this.externalFileStamp = observeExternalFile();
     }
 
@@ -188,9 +199,12 @@ public class FileBuffer {
         this.largeFile = true;
         this.showingPreviewOnly = true;
         this.largeFileTail = null;
-        LargeFileStore.OpenResult result = LargeFileStore.open(source, policy.previewLineCount);
+        this.largeFileWindowText = null;
+        this.largeFileWindowTruncated = false;
+        LargeFileStore.OpenResult result = LargeFileStore.open(source, policy.previewLineCount, largeFileIndexCache());
         if (result.opened()) {
             this.largeFileStore = result.store();
+            this.largeFileTable = new LargeFilePieceTable(largeFileStore);
             this.largeFileError = null;
             this.encodingName = StandardCharsets.UTF_8.name();
             this.lineEnding = largeFileStore.lineEnding();
@@ -202,6 +216,7 @@ public class FileBuffer {
             setDocumentText(preview, false);
         } else {
             this.largeFileStore = null;
+            this.largeFileTable = null;
             this.largeFileError = result.error();
             this.encodingName = StandardCharsets.UTF_8.name();
             this.lineEnding = "\n";
@@ -209,10 +224,15 @@ public class FileBuffer {
             setDocumentText("[shed large-file unavailable: " + largeFileError + "]", false);
         }
         updateLineCount();
-        this.savedContent = "";
+        this.savedText = VersionedTextSnapshot.empty();
         this.externalFileStamp = observeExternalFile();
     }
 
+    private LargeFileIndexCache largeFileIndexCache() {
+        return configManager == null ? null
+            : new LargeFileIndexCache(Path.of(configManager.getShedDirectoryPath(), LargeFileIndexCache.DIRECTORY_NAME));
+    }
+
     private LargeFilePolicy resolveLargeFilePolicy(ConfigManager configManager) {
         long maxMb = configManager == null ? DEFAULT_LARGE_FILE_THRESHOLD_MB : configManager.getLargeFileThresholdMb();
         int maxLines = configManager == null ? DEFAULT_LARGE_FILE_LINE_THRESHOLD : configManager.getLargeFileLineThreshold();
@@ -242,91 +262,63 @@ public class FileBuffer {
         return builder.toString();
     }
 
-    private static String normalizeLineEndings(String content) {
-        return content.replace("\r\n", "\n").replace('\r', '\n');
-    }
-
-    private static String detectLineEnding(String content) {
-        if (content.contains("\r\n")) {
-            return "\r\n";
-        }
-        if (content.contains("\r")) {
-            return "\r";
-        }
-        return "\n";
-    }
-
-    private static DecodedContent decode(byte[] bytes) {
-        if (bytes.length >= 3
-            && bytes[0] == (byte) 0xEF
-            && bytes[1] == (byte) 0xBB
-            && bytes[2] == (byte) 0xBF) {
-            return new DecodedContent(new String(bytes, 3, bytes.length - 3, StandardCharsets.UTF_8), StandardCharsets.UTF_8.name());
-        }
-
-        if (bytes.length >= 2) {
-            if (bytes[0] == (byte) 0xFE && bytes[1] == (byte) 0xFF) {
-                return new DecodedContent(new String(bytes, StandardCharsets.UTF_16BE), StandardCharsets.UTF_16BE.name());
-            }
-            if (bytes[0] == (byte) 0xFF && bytes[1] == (byte) 0xFE) {
-                return new DecodedContent(new String(bytes, StandardCharsets.UTF_16LE), StandardCharsets.UTF_16LE.name());
-            }
-        }
-
-        try {
-            CharBuffer decoded = StandardCharsets.UTF_8.newDecoder()
-                .onMalformedInput(CodingErrorAction.REPORT)
-                .onUnmappableCharacter(CodingErrorAction.REPORT)
-                .decode(ByteBuffer.wrap(bytes));
-            return new DecodedContent(decoded.toString(), StandardCharsets.UTF_8.name());
-        } catch (CharacterCodingException ignored) {
-            return new DecodedContent(new String(bytes, StandardCharsets.ISO_8859_1), StandardCharsets.ISO_8859_1.name());
-        }
-    }
-
-    private static int countLines(String text) {
-        if (text == null || text.isEmpty()) {
-            return 0;
-        }
-        return text.split("\n", -1).length;
-    }
-
     // Save content to disk
     public void save() throws IOException {
         if (scratch || file == null) {
             throw new IOException("Scratch buffer has no file path; use :w <file>");
         }
         if (largeFile) {
-            if (largeFileStore == null) {
-                throw new IOException("Large-file source is unavailable");
-            }
-            Path target = file.toPath();
-            AtomicFileWriter.writeStream(target, largeFileStore::writeTo);
-            this.modified = false;
-            this.savedContent = "";
-            this.lastKnownModifiedTime = Files.getLastModifiedTime(target).toMillis();
-            this.fileSizeBytes = Files.size(target);
+            saveLargeFile(file.toPath());
             this.externalFileStamp = observeExternalFile();
             return;
         }
 
-        String textToWrite = getFullContent();
-        String contentWithLineEndings = applyLineEndings(textToWrite);
-        byte[] bytes;
+        SaveRequest request = prepareSave(null);
+        completeSave(request, write(request));
+    }
+
+    // Captures the current revision and where and how to write it; the write itself may then run off the EDT.
+    SaveRequest prepareSave(File target) throws IOException {
+        File destination = target == null ? file : target;
+        if (destination == null || (target == null && scratch)) {
+            throw new IOException("Scratch buffer has no file path; use :w <file>");
+        }
+        if (largeFile) {
+            throw new IllegalStateException("Large-file buffers save through their piece table");
+        }
+        Charset charset;
         try {
-            bytes = encode(contentWithLineEndings);
+            charset = charset();
         } catch (IOException error) {
-            throw new IOException("Save failed for " + file + ": content cannot be encoded. Check the selected encoding and retry.", error);
+            throw new IOException("Save failed for " + destination + ": content cannot be encoded. Check the selected encoding and retry.", error);
         }
+        return new SaveRequest(destination, documentContent.snapshot(), lineEnding, charset);
+    }
 
-        Path target = file.toPath();
-        AtomicFileWriter.write(target, bytes);
+    // Streams the captured revision into the atomic writer. Safe on any thread: it reads only the immutable snapshot.
+    static long write(SaveRequest request) throws IOException {
+        long[] written = {0L};
+        AtomicFileWriter.writeStream(request.file().toPath(), output -> {
+            written[0] = SnapshotFileWriter.write(request.text(), request.lineEnding(), request.charset(), output);
+            return written[0];
+        });
+        return written[0];
+    }
 
+    // Records a finished write. Edits typed while it ran keep the buffer modified.
+    void completeSave(SaveRequest request, long bytes) throws IOException {
+        if (!request.file().equals(file)) {
+            this.file = request.file();
+            this.scratch = false;
+            this.scratchName = request.file().getName();
+            this.backupFile = null;
+        }
+        VersionedTextSnapshot written = request.text();
         this.modified = false;
-        this.savedContent = textToWrite;
-        this.lastKnownModifiedTime = Files.getLastModifiedTime(target).toMillis();
-        this.fileSizeBytes = bytes.length;
-        this.fileType = FileType.detect(file, textToWrite);
+        this.savedText = written;
+        this.lastKnownModifiedTime = Files.getLastModifiedTime(request.file().toPath()).toMillis();
+        this.fileSizeBytes = bytes;
+        this.fileType = FileType.detect(file, written.line(0));
         this.externalFileStamp = observeExternalFile();
     }
 
@@ -336,86 +328,86 @@ public class FileBuffer {
             throw new IOException("Save target is required; use :w <file>");
         }
         if (largeFile) {
-            throw new IOException("Large-file save as is unavailable until bounded editing support is enabled");
-        }
-        File previousFile = this.file;
-        String previousScratchName = this.scratchName;
-        boolean previousScratch = this.scratch;
-        File previousBackupFile = this.backupFile;
-        FileType previousFileType = this.fileType;
-        this.file = newFile;
-        this.scratch = false;
-        this.scratchName = newFile == null ? "[No Name]" : newFile.getName();
-        this.backupFile = null;
-        this.fileType = FileType.detect(newFile, getFullContent());
-        try {
-            save();
-        } catch (IOException error) {
-            this.file = previousFile;
-            this.scratchName = previousScratchName;
-            this.scratch = previousScratch;
-            this.backupFile = previousBackupFile;
-            this.fileType = previousFileType;
-            throw error;
+            saveLargeFile(newFile.toPath());
+            this.file = newFile;
+            this.scratch = false;
+            this.scratchName = newFile.getName();
+            this.backupFile = null;
+            this.externalFileStamp = observeExternalFile();
+            return;
         }
+        SaveRequest request = prepareSave(newFile);
+        completeSave(request, write(request));
     }
 
-    private byte[] encode(String content) throws IOException {
-        try {
-            Charset charset = Charset.forName(encodingName);
-            return content.getBytes(charset);
-        } catch (UnsupportedCharsetException e) {
-            throw new IOException("Unsupported encoding: " + encodingName, e);
+    private void saveLargeFile(Path target) throws IOException {
+        if (largeFileTable == null) {
+            throw new IOException("Large-file source is unavailable");
         }
+        commitLargeFileWindow();
+        boolean edited = largeFileTable.edited();
+        AtomicFileWriter.writeStream(target, largeFileTable::writeTo);
+        if (edited || !target.toAbsolutePath().normalize().equals(largeFileStore.source().toAbsolutePath().normalize())) {
+            // Untouched pieces address the replaced source, so rebind the table to the file just written.
+            LargeFileStore.OpenResult reopened = LargeFileStore.open(target, resolveLargeFilePolicy(configManager).previewLineCount,
+                largeFileIndexCache());
+            if (!reopened.opened()) {
+                throw new IOException("Saved " + target + ", but the large-file index could not be rebuilt: " + reopened.error());
+            }
+            this.largeFileStore = reopened.store();
+            this.largeFileTable = new LargeFilePieceTable(largeFileStore);
+        }
+        this.modified = false;
+        this.savedText = VersionedTextSnapshot.empty();
+        this.lastKnownModifiedTime = Files.getLastModifiedTime(target).toMillis();
+        this.fileSizeBytes = Files.size(target);
     }
 
-    private String applyLineEndings(String text) {
-        if ("\r\n".equals(lineEnding)) {
-            return text.replace("\n", "\r\n");
-        }
-        if ("\r".equals(lineEnding)) {
-            return text.replace("\n", "\r");
+    private Charset charset() throws IOException {
+        try {
+            return Charset.forName(encodingName);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unsupported encoding: " + encodingName, e);
         }
-        return text;
     }
 
-    // Update content and mark as modified
+    // Update content; the buffer is modified while it differs from the saved text
     public void setContent(String content) {
-        setContent(content, true);
+        requireWholeContent();
+        replaceDocumentText(VersionedTextSnapshot.of(content == null ? "" : content));
     }
 
-    // Update content while explicitly controlling modification state
+    // Update content; true keeps the buffer modified until saved even if it matches the saved text, false makes it
+    // the saved text
     public void setContent(String content, boolean modified) {
-        if (largeFile) {
-            throw new IllegalStateException("Large-file editing is unavailable until bounded editing support is enabled");
-        }
+        requireWholeContent();
         String normalized = content == null ? "" : content;
         setDocumentText(normalized, modified);
-        if (!modified) {
-            this.savedContent = normalized;
+    }
+
+    private void requireWholeContent() {
+        if (largeFile) {
+            throw new IllegalStateException("Large-file content is edited through its bounded window, not replaced as a whole");
         }
     }
 
     public String getContent() {
-        try {
-            return document.getText(0, document.getLength());
-        } catch (BadLocationException e) {
-            return "";
-        }
+        return documentContent.snapshot().text();
     }
 
     public String getSavedContent() {
-        return savedContent;
+        return savedText.text();
     }
 
     public String getFullContent() {
         if (largeFile) {
             throw new IllegalStateException("Large-file content is not materialized");
         }
-        String content = getContent();
-        if (textSnapshot.length() != content.length() || !textSnapshot.text().equals(content)) {
-            textSnapshot = VersionedTextSnapshot.of(content);
+        VersionedTextSnapshot current = documentContent.snapshot();
+        if (!textSnapshot.contentEquals(current)) {
+            textSnapshot = current;
         }
+        String content = current.text();
         if (largeFile && largeFileTail != null) {
             String visibleContent = removeLargeFilePreviewMarker(content);
             return visibleContent + (visibleContent.isEmpty() || visibleContent.endsWith("\n") || largeFileTail.startsWith("\n") ? "" : "\n") + largeFileTail;
@@ -439,7 +431,8 @@ public class FileBuffer {
     }
 
     private void updateLineCount() {
-        this.lineCount = countLines(getContent());
+        VersionedTextSnapshot text = documentContent.snapshot();
+        this.lineCount = text.length() == 0 ? 0 : text.lineCount();
     }
 
     public PlainDocument getDocument() {
@@ -450,41 +443,29 @@ public class FileBuffer {
         return textSnapshot;
     }
 
+    // The document already edited its snapshot, so this only publishes it. The change is incremental when the
+    // published revision is the one this edit replaced; a missed event makes it a whole-text change instead.
     DocumentTextChange applyDocumentChange(DocumentEvent event) {
         VersionedTextSnapshot before = textSnapshot;
-        if (event == null || event.getType() == DocumentEvent.EventType.CHANGE) {
-            VersionedTextSnapshot current = VersionedTextSnapshot.of(getContent());
-            textSnapshot = current;
-            return new DocumentTextChange(before, current, 0, 0, "", false);
-        }
-        try {
-            int offset = event.getOffset();
-            int removedLength = event.getType() == DocumentEvent.EventType.REMOVE ? event.getLength() : 0;
-            String insertedText = event.getType() == DocumentEvent.EventType.INSERT
-                ? event.getDocument().getText(offset, event.getLength()) : "";
-            VersionedTextSnapshot after = before.replace(offset, removedLength, insertedText);
-            boolean incremental = after.length() == document.getLength();
-            if (!incremental) {
-                after = VersionedTextSnapshot.of(getContent());
-            }
-            textSnapshot = after;
-            return new DocumentTextChange(before, after, offset, removedLength, insertedText, incremental);
-        } catch (BadLocationException | RuntimeException error) {
-            VersionedTextSnapshot current = VersionedTextSnapshot.of(getContent());
-            textSnapshot = current;
+        VersionedTextSnapshot current = documentContent.snapshot();
+        textSnapshot = current;
+        if (event == null || event.getType() == DocumentEvent.EventType.CHANGE || before != documentContent.previous()) {
             return new DocumentTextChange(before, current, 0, 0, "", false);
         }
+        int offset = event.getOffset();
+        int removedLength = event.getType() == DocumentEvent.EventType.REMOVE ? event.getLength() : 0;
+        String insertedText = event.getType() == DocumentEvent.EventType.INSERT ? current.substring(offset, event.getLength()) : "";
+        return new DocumentTextChange(before, current, offset, removedLength, insertedText, true);
     }
 
     DocumentTextChange reconcileDocumentText() {
-        String current = getContent();
-        if (textSnapshot.length() == current.length() && textSnapshot.text().equals(current)) {
+        VersionedTextSnapshot current = documentContent.snapshot();
+        if (textSnapshot.contentEquals(current)) {
             return null;
         }
         VersionedTextSnapshot before = textSnapshot;
-        VersionedTextSnapshot after = VersionedTextSnapshot.of(current);
-        textSnapshot = after;
-        return new DocumentTextChange(before, after, 0, 0, "", false);
+        textSnapshot = current;
+        return new DocumentTextChange(before, current, 0, 0, "", false);
     }
 
     public String getDisplayName() {
@@ -515,12 +496,33 @@ public class FileBuffer {
         return file != null;
     }
 
+    // Edits and undo both replace the snapshot, so undoing back to the saved text makes the buffer clean again.
     public boolean isModified() {
-        return modified;
+        return modified || !largeFile && !matchesSavedText(documentContent.snapshot());
     }
 
+    // Clearing the flag makes the current text the saved revision; setting it keeps the buffer modified until saved.
     public void setModified(boolean modified) {
         this.modified = modified;
+        if (!modified && !largeFile) {
+            this.savedText = documentContent.snapshot();
+        }
+    }
+
+    VersionedTextSnapshot savedText() {
+        return savedText;
+    }
+
+    // A different length or content hash settles the check in O(1); only text hashing like the saved revision is
+    // compared character by character, once per revision.
+    private boolean matchesSavedText(VersionedTextSnapshot current) {
+        if (current == savedText) return true;
+        SavedTextComparison comparison = savedTextComparison;
+        if (comparison == null || comparison.saved() != savedText || comparison.current() != current) {
+            comparison = new SavedTextComparison(savedText, current, savedText.contentEquals(current));
+            savedTextComparison = comparison;
+        }
+        return comparison.clean();
     }
 
     public File getFile() {
@@ -658,6 +660,14 @@ public class FileBuffer {
         return largeFile && largeFileStore == null;
     }
 
+    public boolean isLargeFileEditable() {
+        return largeFile && largeFileTable != null && largeFileWindowText != null && !largeFileWindowTruncated;
+    }
+
+    public boolean isLargeFileReadOnly() {
+        return largeFile && !isLargeFileEditable();
+    }
+
     public String getLargeFileStatus() {
         if (!largeFile) {
             return "";
@@ -665,23 +675,112 @@ public class FileBuffer {
         if (largeFileError != null) {
             return largeFileError;
         }
+        if (largeFileTable != null && largeFileTable.edited()) {
+            return "bounded edit: " + largeFileTable.byteLength() + " bytes, " + largeFileTable.lineCount() + " lines, "
+                + largeFileTable.pieceCount() + " pieces";
+        }
         return "bounded preview: " + largeFileStore.byteSize() + " bytes, " + largeFileStore.lineCount() + " lines";
     }
 
     public long getLargeFileLineCount() {
-        return largeFileStore == null ? 0L : largeFileStore.lineCount();
+        return largeFileTable == null ? 0L : largeFileTable.lineCount();
     }
 
     void showLargeFileWindow(long firstLine, int requestedLines) throws IOException {
-        if (largeFileStore == null) {
+        if (largeFileTable == null) {
             throw new IOException("Large-file source is unavailable");
         }
-        LargeFileStore.Window window = largeFileStore.readWindow(firstLine, requestedLines);
+        commitLargeFileWindow();
+        loadLargeFileWindow(firstLine, requestedLines);
+    }
+
+    // Folds pending window edits first so background readers see exactly what the user sees.
+    LargeFilePieceTable.Snapshot largeFileSnapshot() throws IOException {
+        if (largeFileTable == null) {
+            throw new IOException("Large-file source is unavailable");
+        }
+        commitLargeFileWindow();
+        return largeFileTable.snapshot();
+    }
+
+    // The committed sequence without pending window edits; lines above the window are the same either way.
+    LargeFilePieceTable.Snapshot committedLargeFileSnapshot() {
+        return largeFileTable == null ? null : largeFileTable.snapshot();
+    }
+
+    private void loadLargeFileWindow(long firstLine, int requestedLines) throws IOException {
+        LargeFileStore.Window window = largeFileTable.readWindow(firstLine, requestedLines);
         String content = window.content();
         if (window.truncated()) {
             content += (content.isEmpty() || content.endsWith("\n") ? "" : "\n") + LARGE_FILE_PREVIEW_MARKER;
         }
-        setDocumentText(content, false);
+        setDocumentText(content, modified);
+        this.largeFileWindowFirstLine = window.firstLine();
+        this.largeFileWindowRequestedLines = requestedLines;
+        this.largeFileWindowLines = coveredLines(window.content());
+        this.largeFileWindowText = content;
+        this.largeFileWindowTruncated = window.truncated();
+    }
+
+    // Folds edits made inside the projected window back into the piece table as one line-range replacement.
+    boolean commitLargeFileWindow() throws IOException {
+        if (!isLargeFileEditable()) {
+            return false;
+        }
+        String current = getContent();
+        if (current.equals(largeFileWindowText)) {
+            return false;
+        }
+        boolean joinedFollowingLine = endsWithLineBreak(largeFileWindowText) && !endsWithLineBreak(current);
+        String stored = "\r\n".equals(lineEnding) ? current.replaceAll("(?<!\r)\n", "\r\n") : current;
+        largeFileTable.replaceLines(largeFileWindowFirstLine, largeFileWindowLines, stored);
+        this.modified = true;
+        if (joinedFollowingLine) {
+            // The last window line now runs into the next stored line, so project the whole joined line.
+            loadLargeFileWindow(largeFileWindowFirstLine, largeFileWindowRequestedLines);
+        } else {
+            this.largeFileWindowText = current;
+            this.largeFileWindowLines = coveredLines(current);
+        }
+        return true;
+    }
+
+    boolean undoLargeFileEdit() throws IOException {
+        return stepLargeFileHistory(false);
+    }
+
+    boolean redoLargeFileEdit() throws IOException {
+        return stepLargeFileHistory(true);
+    }
+
+    private boolean stepLargeFileHistory(boolean forward) throws IOException {
+        if (!isLargeFileEditable()) {
+            return false;
+        }
+        commitLargeFileWindow();
+        if (!(forward ? largeFileTable.redo() : largeFileTable.undo())) {
+            return false;
+        }
+        this.modified = largeFileTable.edited();
+        loadLargeFileWindow(Math.max(1L, Math.min(largeFileWindowFirstLine, largeFileTable.lineCount())),
+            Math.max(1, largeFileWindowRequestedLines));
+        return true;
+    }
+
+    private static long coveredLines(String text) {
+        long breaks = 0L;
+        for (int index = 0; index < text.length(); index++) {
+            char value = text.charAt(index);
+            if (value == '\n' || value == '\r' && (index + 1 >= text.length() || text.charAt(index + 1) != '\n')) {
+                breaks++;
+            }
+        }
+        return text.isEmpty() || endsWithLineBreak(text) ? breaks : breaks + 1L;
+    }
+
+    private static boolean endsWithLineBreak(String text) {
+        char last = text.isEmpty() ? ' ' : text.charAt(text.length() - 1);
+        return last == '\n' || last == '\r';
     }
 
     public boolean isShowingPreviewOnly() {
@@ -718,14 +817,14 @@ public class FileBuffer {
     }
 
     BackupSnapshot captureBackupSnapshot() throws IOException {
-        if (scratch || file == null || !modified || largeFile) {
+        if (scratch || file == null || largeFile || !isModified()) {
             return null;
         }
         BackupPolicy policy = backupPolicy();
         if (!policy.enabled()) {
             return null;
         }
-        return new BackupSnapshot(file.toPath().toAbsolutePath().normalize(), policy, encode(applyLineEndings(getFullContent())));
+        return new BackupSnapshot(file.toPath().toAbsolutePath().normalize(), policy, documentContent.snapshot(), lineEnding, charset());
     }
 
     void writeBackupSnapshot(BackupSnapshot snapshot) throws IOException {
@@ -738,7 +837,7 @@ public class FileBuffer {
         String key = backupKey(snapshot.source());
         Path target = reserveBackupPath(directory, key);
         try {
-            AtomicFileWriter.write(target, snapshot.content());
+            AtomicFileWriter.writeStream(target, output -> SnapshotFileWriter.write(snapshot.text(), snapshot.lineEnding(), snapshot.charset(), output));
         } catch (IOException error) {
             try {
                 Files.deleteIfExists(target);
@@ -762,17 +861,26 @@ public class FileBuffer {
     }
 
     private void setDocumentText(String text, boolean modified) {
-        String value = text == null ? "" : text;
+        setDocumentText(VersionedTextSnapshot.of(text == null ? "" : text), modified);
+    }
+
+    private void setDocumentText(VersionedTextSnapshot text, boolean modified) {
+        replaceDocumentText(text);
+        this.modified = modified;
+        if (!modified && !largeFile) {
+            this.savedText = textSnapshot;
+        }
+    }
+
+    private void replaceDocumentText(VersionedTextSnapshot text) {
         try {
-            document.remove(0, document.getLength());
-            document.insertString(0, value, null);
+            document.setText(text);
         } catch (BadLocationException e) {
             throw new IllegalStateException("Unable to update buffer document", e);
         }
-        textSnapshot = VersionedTextSnapshot.of(value);
+        textSnapshot = documentContent.snapshot();
         undoManager.discardAllEdits();
-        this.modified = modified;
-        this.fileType = FileType.detect(file, largeFile ? getContent() : getFullContent());
+        this.fileType = FileType.detect(file, textSnapshot.line(0));
         updateLineCount();
     }
 
@@ -852,18 +960,15 @@ public class FileBuffer {
         boolean incremental
     ) { }
 
-    record BackupSnapshot(Path source, BackupPolicy policy, byte[] content) {
+    record SaveRequest(File file, VersionedTextSnapshot text, String lineEnding, Charset charset) { }
+
+    // The revision to back up and how to encode it; writing it streams the immutable snapshot off the EDT.
+    record BackupSnapshot(Path source, BackupPolicy policy, VersionedTextSnapshot text, String lineEnding, Charset charset) {
         BackupSnapshot {
             source = source == null ? null : source.toAbsolutePath().normalize();
-            if (source == null || policy == null || content == null) {
+            if (source == null || policy == null || text == null || charset == null) {
                 throw new IllegalArgumentException("backup snapshot is incomplete");
             }
-            content = content.clone();
-        }
-
-        @Override
-        public byte[] content() {
-            return content.clone();
         }
     }
 
@@ -881,16 +986,9 @@ public class FileBuffer {
         UNSUPPORTED
     }
 
-    private record ExternalFileStamp(ExternalFileKind kind, Object fileKey, FileTime creationTime, FileTime modifiedTime, long size) {
+    private record SavedTextComparison(VersionedTextSnapshot saved, VersionedTextSnapshot current, boolean clean) {
     }
 
-    private static class DecodedContent {
-        private final String content;
-        private final String charsetName;
-
-        private DecodedContent(String content, String charsetName) {
-            this.content = content;
-            this.charsetName = charsetName;
-        }
+    private record ExternalFileStamp(ExternalFileKind kind, Object fileKey, FileTime creationTime, FileTime modifiedTime, long size) {
     }
 }
@@ -179,21 +179,47 @@ final class FormatOnSaveController {
             if (buffer == editor.getCurrentBuffer()) editor.persistCurrentBufferState();
             String previous = buffer.getContent();
             String updated = buffer == editor.getCurrentBuffer() ? editor.writingArea.getText() : buffer.getContent();
-            buffer.setContent(updated);
+            if (!buffer.isLargeFile()) buffer.setContent(updated);
             editor.backupBeforeSave(buffer);
-            if (request.targetPath() != null && !request.targetPath().isBlank()) buffer.saveAs(new File(request.targetPath()));
-            else buffer.save();
-            editor.notifyBufferSaved(buffer);
-            String reload = editor.reloadConfigIfSettingsBuffer(buffer, previous, updated);
-            completed++;
-            pending.removeFirst();
-            if (pending.isEmpty() && reload != null && !reload.isBlank()) editor.showMessage(reload);
-            startNext();
+            File target = request.targetPath() != null && !request.targetPath().isBlank() ? new File(request.targetPath()) : null;
+            if (buffer.isLargeFile()) {
+                if (target != null) buffer.saveAs(target);
+                else buffer.save();
+                finishSaved(request, previous, updated);
+                return;
+            }
+            // The snapshot is immutable, so encoding and writing it can leave the EDT while editing continues.
+            FileBuffer.SaveRequest save = buffer.prepareSave(target);
+            editor.asyncJobService.submit("Save " + save.file().getName(), token -> FileBuffer.write(save),
+                (job, bytes, error) -> completeWrite(job, request, save, bytes, error, previous, updated));
         } catch (IOException error) {
             fail("Error saving file: " + error.getMessage());
         }
     }
 
+    private void completeWrite(AsyncJobService.JobSnapshot job, Request request, FileBuffer.SaveRequest save, Long bytes, Exception error,
+                               String previous, String updated) {
+        if (!running || pending.peekFirst() != request) return;
+        if (job.getStatus() == AsyncJobService.Status.CANCELLED) { fail("Save cancelled; " + save.file().getName() + " was not written"); return; }
+        if (error != null || bytes == null) { fail("Error saving file: " + (error == null ? "no bytes were written" : error.getMessage())); return; }
+        try {
+            request.buffer().completeSave(save, bytes);
+            finishSaved(request, previous, updated);
+        } catch (IOException completion) {
+            fail("Error saving file: " + completion.getMessage());
+        }
+    }
+
+    private void finishSaved(Request request, String previous, String updated) {
+        FileBuffer buffer = request.buffer();
+        editor.notifyBufferSaved(buffer);
+        String reload = editor.reloadConfigIfSettingsBuffer(buffer, previous, updated);
+        completed++;
+        pending.removeFirst();
+        if (pending.isEmpty() && reload != null && !reload.isBlank()) editor.showMessage(reload);
+        startNext();
+    }
+
     private void fail(String message) {
         pending.clear();
         running = false;
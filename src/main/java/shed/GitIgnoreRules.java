@@ -0,0 +1,606 @@
+package shed;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+// Evaluates Git's ignore rules in process, as `git check-ignore --no-index` would: .gitignore files from the repository
+// top down to each path, then info/exclude, then core.excludesFile or the default global excludes file. Within one file
+// the last matching pattern wins, a deeper file overrides a shallower one, and nothing below an ignored directory can be
+// re-included. Patterns follow gitignore(5): negation, directory-only patterns, anchoring by slash, and "**".
+final class GitIgnoreRules implements WorkspaceIndexService.IgnoreMatcher {
+    private final Path userHome;
+    private final Path xdgConfigHome;
+
+    GitIgnoreRules() {
+        this(homeDirectory(), xdgConfigDirectory());
+    }
+
+    // Lets tests point the global configuration somewhere other than the real home directory.
+    GitIgnoreRules(Path userHome, Path xdgConfigHome) {
+        this.userHome = userHome;
+        this.xdgConfigHome = xdgConfigHome;
+    }
+
+    // Evaluates a single path from scratch, including whether a directory above it is ignored.
+    @Override
+    public boolean isIgnored(Path workspaceRoot, Path relativePath) {
+        Evaluator evaluator = evaluator(workspaceRoot);
+        String path = relativePath.toString().replace(java.io.File.separatorChar, '/');
+        for (int slash = path.indexOf('/'); slash >= 0; slash = path.indexOf('/', slash + 1)) {
+            if (evaluator.isIgnored(path.substring(0, slash), true)) {
+                return true;
+            }
+        }
+        return evaluator.isIgnored(path, Files.isDirectory(workspaceRoot.resolve(relativePath), LinkOption.NOFOLLOW_LINKS));
+    }
+
+    // Reads the rules that apply from outside the workspace once; .gitignore files inside it load as they are needed.
+    Evaluator evaluator(Path workspaceRoot) {
+        Path root = workspaceRoot.toAbsolutePath().normalize();
+        Path top = null;
+        Path gitDirectory = null;
+        for (Path candidate = root; candidate != null && gitDirectory == null; candidate = candidate.getParent()) {
+            gitDirectory = gitDirectory(candidate.resolve(".git"));
+            top = candidate;
+        }
+        if (gitDirectory == null) {
+            top = root;
+        }
+        List<Path> sources = new ArrayList<>();
+        List<List<Rule>> outer = new ArrayList<>();
+        String prefix = relative(top, root);
+        // .gitignore files between the repository top and the workspace root, nearest first.
+        for (Path directory = root.getParent(); directory != null && directory.startsWith(top) && !directory.equals(root);
+             directory = directory.getParent()) {
+            Path file = directory.resolve(".gitignore");
+            sources.add(file);
+            outer.add(read(file, relative(top, directory)));
+            if (directory.equals(top)) {
+                break;
+            }
+        }
+        Path excludesFile;
+        if (gitDirectory != null) {
+            Path common = commonDirectory(gitDirectory);
+            Path exclude = common.resolve("info").resolve("exclude");
+            sources.add(exclude);
+            outer.add(read(exclude, ""));
+            excludesFile = configuredExcludesFile(common.resolve("config"), sources);
+        } else {
+            excludesFile = configuredExcludesFile(null, sources);
+        }
+        if (excludesFile == null && xdgConfigHome != null) {
+            excludesFile = xdgConfigHome.resolve("git").resolve("ignore");
+        }
+        if (excludesFile != null) {
+            sources.add(excludesFile);
+            outer.add(read(excludesFile, ""));
+        }
+        return new Evaluator(root, prefix, outer, sources);
+    }
+
+    // The rules for one workspace root, caching each directory's .gitignore as it is first needed. Walker threads share it.
+    static final class Evaluator {
+        private final Path root;
+        private final String prefix;
+        private final Scope rootParent;
+        private final List<Path> sources;
+        private final Map<String, Scope> scopes = new ConcurrentHashMap<>();
+
+        private Evaluator(Path root, String prefix, List<List<Rule>> outer, List<Path> sources) {
+            this.root = root;
+            this.prefix = prefix;
+            this.sources = List.copyOf(sources);
+            // A workspace inside an ignored directory of its repository is ignored throughout.
+            boolean ignored = false;
+            for (int slash = prefix.indexOf('/'); !prefix.isEmpty() && !ignored; slash = prefix.indexOf('/', slash + 1)) {
+                String directory = slash < 0 ? prefix : prefix.substring(0, slash);
+                ignored = new Scope(applicableTo(directory, outer), "", false).decide(directory, true) == Boolean.TRUE;
+                if (slash < 0) {
+                    break;
+                }
+            }
+            this.rootParent = new Scope(nonEmpty(outer), prefix, ignored);
+        }
+
+        // Files outside the workspace whose changes can change any result.
+        List<Path> sources() {
+            return sources;
+        }
+
+        // Whether a workspace-relative path is ignored, given that no directory above it is.
+        boolean isIgnored(String relativePath, boolean directory) {
+            int slash = relativePath.lastIndexOf('/');
+            return scope(slash < 0 ? "" : relativePath.substring(0, slash)).isIgnored(relativePath, directory);
+        }
+
+        // The rules that apply to the children of a workspace-relative directory.
+        Scope scope(String directory) {
+            Scope scope = scopes.get(directory);
+            if (scope == null) {
+                Scope parent;
+                Path file;
+                if (directory.isEmpty()) {
+                    parent = rootParent;
+                    file = root.resolve(".gitignore");
+                } else {
+                    int slash = directory.lastIndexOf('/');
+                    parent = scope(slash < 0 ? "" : directory.substring(0, slash));
+                    file = root.resolve(directory).resolve(".gitignore");
+                }
+                List<Rule> own = read(file, prefix.isEmpty() ? directory : directory.isEmpty() ? prefix : prefix + "/" + directory);
+                scope = own.isEmpty() ? parent : parent.with(own);
+                Scope raced = scopes.putIfAbsent(directory, scope);
+                if (raced != null) {
+                    scope = raced;
+                }
+            }
+            return scope;
+        }
+
+        // Rules from .gitignore files at or below a directory outside the workspace do not apply to that directory.
+        private static List<List<Rule>> applicableTo(String directoryFromTop, List<List<Rule>> outer) {
+            List<List<Rule>> applicable = new ArrayList<>();
+            for (List<Rule> rules : nonEmpty(outer)) {
+                String base = rules.getFirst().base;
+                if (base.isEmpty() || directoryFromTop.startsWith(base + "/")) {
+                    applicable.add(rules);
+                }
+            }
+            return applicable;
+        }
+
+        private static List<List<Rule>> nonEmpty(List<List<Rule>> sets) {
+            List<List<Rule>> nonEmpty = new ArrayList<>();
+            for (List<Rule> rules : sets) {
+                if (!rules.isEmpty()) {
+                    nonEmpty.add(rules);
+                }
+            }
+            return nonEmpty;
+        }
+    }
+
+    // The ignore files that apply inside one directory, nearest first, so a check never looks up its parents.
+    static final class Scope {
+        private final List<List<Rule>> sets;
+        private final String prefix;
+        private final boolean ignored;
+
+        private Scope(List<List<Rule>> sets, String prefix, boolean ignored) {
+            this.sets = List.copyOf(sets);
+            this.prefix = prefix;
+            this.ignored = ignored;
+        }
+
+        private Scope with(List<Rule> nearest) {
+            List<List<Rule>> combined = new ArrayList<>(sets.size() + 1);
+            combined.add(nearest);
+            combined.addAll(sets);
+            return new Scope(combined, prefix, ignored);
+        }
+
+        // Whether a workspace-relative path directly inside this scope's directory is ignored.
+        boolean isIgnored(String relativePath, boolean directory) {
+            if (ignored) {
+                return true;
+            }
+            return decide(prefix.isEmpty() ? relativePath : prefix + "/" + relativePath, directory) == Boolean.TRUE;
+        }
+
+        private Boolean decide(String path, boolean directory) {
+            String name = path.substring(path.lastIndexOf('/') + 1);
+            for (List<Rule> rules : sets) {
+                for (int index = rules.size() - 1; index >= 0; index--) {
+                    Rule rule = rules.get(index);
+                    if (rule.matches(path, name, directory)) {
+                        return !rule.negated;
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
+    // One pattern line, matched against a path relative to the repository top.
+    static final class Rule {
+        private enum Kind { LITERAL, SUFFIX, REGEX }
+
+        private final String base;
+        private final boolean negated;
+        private final boolean directoryOnly;
+        private final boolean basename;
+        private final Kind kind;
+        private final String text;
+        private final Pattern regex;
+
+        private Rule(String base, boolean negated, boolean directoryOnly, boolean basename, String pattern) {
+            this.base = base;
+            this.negated = negated;
+            this.directoryOnly = directoryOnly;
+            this.basename = basename;
+            if (!hasWildcard(pattern, 0)) {
+                kind = Kind.LITERAL;
+                text = pattern;
+                regex = null;
+            } else if (basename && pattern.startsWith("*") && !hasWildcard(pattern, 1)) {
+                kind = Kind.SUFFIX;
+                text = pattern.substring(1);
+                regex = null;
+            } else {
+                kind = Kind.REGEX;
+                text = pattern;
+                regex = Pattern.compile(toRegex(pattern), Pattern.DOTALL);
+            }
+        }
+
+        // Parses one line of an ignore file, or returns null for blank lines and comments.
+        static Rule parse(String line, String base) {
+            String pattern = trimTrailingSpaces(line);
+            if (pattern.isEmpty() || pattern.startsWith("#")) {
+                return null;
+            }
+            boolean negated = pattern.startsWith("!");
+            if (negated) {
+                pattern = pattern.substring(1);
+            }
+            boolean directoryOnly = pattern.endsWith("/");
+            if (directoryOnly) {
+                pattern = pattern.substring(0, pattern.length() - 1);
+            }
+            boolean basename = pattern.indexOf('/') < 0;
+            if (pattern.startsWith("/")) {
+                pattern = pattern.substring(1);
+            }
+            return pattern.isEmpty() ? null : new Rule(base, negated, directoryOnly, basename, pattern);
+        }
+
+        boolean matches(String path, String name, boolean directory) {
+            if (directoryOnly && !directory) {
+                return false;
+            }
+            String subject;
+            if (basename) {
+                subject = name;
+            } else if (base.isEmpty()) {
+                subject = path;
+            } else {
+                if (path.length() <= base.length() + 1 || path.charAt(base.length()) != '/' || !path.startsWith(base)) {
+                    return false;
+                }
+                subject = path.substring(base.length() + 1);
+            }
+            return switch (kind) {
+                case LITERAL -> subject.equals(text);
+                case SUFFIX -> subject.endsWith(text);
+                case REGEX -> regex.matcher(subject).matches();
+            };
+        }
+
+        // Git trims trailing spaces unless a backslash escapes them.
+        private static String trimTrailingSpaces(String line) {
+            int end = line.length();
+            while (end > 0 && line.charAt(end - 1) == ' ') {
+                int backslashes = 0;
+                for (int index = end - 2; index >= 0 && line.charAt(index) == '\\'; index--) {
+                    backslashes++;
+                }
+                if (backslashes % 2 == 1) {
+                    break;
+                }
+                end--;
+            }
+            return line.substring(0, end);
+        }
+
+        private static boolean hasWildcard(String pattern, int from) {
+            for (int index = from; index < pattern.length(); index++) {
+                char current = pattern.charAt(index);
+                if (current == '*' || current == '?' || current == '[' || current == '\\') {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // Translates wildmatch with WM_PATHNAME: '*', '?', and brackets stop at '/', and "**" spans directories only
+        // as a whole path component.
+        static String toRegex(String pattern) {
+            StringBuilder regex = new StringBuilder();
+            StringBuilder literal = new StringBuilder();
+            int length = pattern.length();
+            int index = 0;
+            while (index < length) {
+                char current = pattern.charAt(index);
+                if (current == '\\') {
+                    if (index + 1 >= length) {
+                        return "(?!)";
+                    }
+                    literal.append(pattern.charAt(index + 1));
+                    index += 2;
+                    continue;
+                }
+                if (current != '*' && current != '?' && current != '[') {
+                    literal.append(current);
+                    index++;
+                    continue;
+                }
+                if (!literal.isEmpty()) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                if (current == '?') {
+                    regex.append("[^/]");
+                    index++;
+                } else if (current == '*') {
+                    int stars = index;
+                    while (index < length && pattern.charAt(index) == '*') {
+                        index++;
+                    }
+                    boolean component = index - stars > 1 && (stars == 0 || pattern.charAt(stars - 1) == '/')
+                        && (index == length || pattern.charAt(index) == '/');
+                    if (!component) {
+                        regex.append("[^/]*");
+                    } else if (index == length) {
+                        regex.append(".*");
+                    } else {
+                        regex.append("(?:.*/)?");
+                        index++;
+                    }
+                } else {
+                    int end = bracket(pattern, index, regex);
+                    if (end < 0) {
+                        return "(?!)";
+                    }
+                    index = end;
+                }
+            }
+            if (!literal.isEmpty()) {
+                regex.append(Pattern.quote(literal.toString()));
+            }
+            return regex.toString();
+        }
+
+        // Appends a bracket expression starting at '[' and returns the index after its ']', or -1 when it is unterminated.
+        private static int bracket(String pattern, int start, StringBuilder regex) {
+            int index = start + 1;
+            boolean negated = index < pattern.length() && (pattern.charAt(index) == '!' || pattern.charAt(index) == '^');
+            if (negated) {
+                index++;
+            }
+            StringBuilder items = new StringBuilder();
+            boolean first = true;
+            while (index < pattern.length()) {
+                char current = pattern.charAt(index);
+                if (current == ']' && !first) {
+                    regex.append("(?!/)[").append(negated ? "^" : "").append(items).append(']');
+                    return index + 1;
+                }
+                first = false;
+                if (current == '[' && index + 1 < pattern.length() && pattern.charAt(index + 1) == ':') {
+                    int close = pattern.indexOf(":]", index + 2);
+                    if (close < 0) {
+                        return -1;
+                    }
+                    String property = characterClass(pattern.substring(index + 2, close));
+                    if (property == null) {
+                        return -1;
+                    }
+                    items.append(property);
+                    index = close + 2;
+                    continue;
+                }
+                if (current == '\\') {
+                    index++;
+                    if (index >= pattern.length()) {
+                        return -1;
+                    }
+                    current = pattern.charAt(index);
+                }
+                index++;
+                if (index + 1 < pattern.length() && pattern.charAt(index) == '-' && pattern.charAt(index + 1) != ']') {
+                    char last = pattern.charAt(index + 1);
+                    index += 2;
+                    if (last == '\\') {
+                        if (index >= pattern.length()) {
+                            return -1;
+                        }
+                        last = pattern.charAt(index++);
+                    }
+                    // Wildmatch compares the first character on its own before it sees the range, so a reversed
+                    // range still matches that character; Java would reject it outright.
+                    if (last >= current) {
+                        items.append(escaped(current)).append('-').append(escaped(last));
+                    } else {
+                        items.append(escaped(current));
+                    }
+                } else {
+                    items.append(escaped(current));
+                }
+            }
+            return -1;
+        }
+
+        private static String characterClass(String name) {
+            return switch (name) {
+                case "alnum" -> "\\p{Alnum}";
+                case "alpha" -> "\\p{Alpha}";
+                case "blank" -> "\\p{Blank}";
+                case "cntrl" -> "\\p{Cntrl}";
+                case "digit" -> "\\p{Digit}";
+                case "graph" -> "\\p{Graph}";
+                case "lower" -> "\\p{Lower}";
+                case "print" -> "\\p{Print}";
+                case "punct" -> "\\p{Punct}";
+                case "space" -> "\\p{Space}";
+                case "upper" -> "\\p{Upper}";
+                case "xdigit" -> "\\p{XDigit}";
+                default -> null;
+            };
+        }
+
+        private static String escaped(char character) {
+            return "\\x{" + Integer.toHexString(character) + "}";
+        }
+    }
+
+    // Reads one ignore file's rules, treating a missing or unreadable file as empty.
+    private static List<Rule> read(Path file, String base) {
+        String content;
+        try {
+            content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        } catch (IOException | SecurityException error) {
+            return List.of();
+        }
+        List<Rule> rules = new ArrayList<>();
+        int start = content.startsWith("\uFEFF") ? 1 : 0;
+        while (start < content.length()) {
+            int end = content.indexOf('\n', start);
+            if (end < 0) {
+                end = content.length();
+            }
+            // Git drops the carriage return of a CRLF line ending before parsing the pattern.
+            int lineEnd = end > start && content.charAt(end - 1) == '\r' ? end - 1 : end;
+            Rule rule = Rule.parse(content.substring(start, lineEnd), base);
+            if (rule != null) {
+                rules.add(rule);
+            }
+            start = end + 1;
+        }
+        return rules;
+    }
+
+    // The repository directory a .git entry names: the directory itself, or the target of a "gitdir:" file.
+    private static Path gitDirectory(Path dotGit) {
+        if (Files.isDirectory(dotGit, LinkOption.NOFOLLOW_LINKS)) {
+            return dotGit;
+        }
+        if (!Files.isRegularFile(dotGit, LinkOption.NOFOLLOW_LINKS)) {
+            return null;
+        }
+        try {
+            String content = Files.readString(dotGit, StandardCharsets.UTF_8).trim();
+            return content.startsWith("gitdir:") ? dotGit.getParent().resolve(content.substring("gitdir:".length()).trim()).normalize() : null;
+        } catch (IOException | SecurityException error) {
+            return null;
+        }
+    }
+
+    // A worktree keeps info/exclude and config in the repository's common directory.
+    private static Path commonDirectory(Path gitDirectory) {
+        try {
+            String common = Files.readString(gitDirectory.resolve("commondir"), StandardCharsets.UTF_8).trim();
+            return common.isEmpty() ? gitDirectory : gitDirectory.resolve(common).normalize();
+        } catch (IOException | SecurityException error) {
+            return gitDirectory;
+        }
+    }
+
+    // core.excludesFile from the global and repository configuration, the later file winning.
+    private Path configuredExcludesFile(Path repositoryConfig, List<Path> sources) {
+        List<Path> configs = new ArrayList<>();
+        if (xdgConfigHome != null) {
+            configs.add(xdgConfigHome.resolve("git").resolve("config"));
+        }
+        if (userHome != null) {
+            configs.add(userHome.resolve(".gitconfig"));
+        }
+        if (repositoryConfig != null) {
+            configs.add(repositoryConfig);
+        }
+        String value = null;
+        for (Path config : configs) {
+            sources.add(config);
+            String configured = excludesFileSetting(config);
+            if (configured != null) {
+                value = configured;
+            }
+        }
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        if (value.startsWith("~/") && userHome != null) {
+            return userHome.resolve(value.substring(2));
+        }
+        return Path.of(value);
+    }
+
+    // Reads core.excludesFile from one config file's [core] section; includes are not followed.
+    private static String excludesFileSetting(Path config) {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(config, StandardCharsets.UTF_8);
+        } catch (IOException | SecurityException error) {
+            return null;
+        }
+        boolean core = false;
+        String value = null;
+        for (String raw : lines) {
+            String line = raw.trim();
+            if (line.startsWith("[")) {
+                int close = line.indexOf(']');
+                core = close > 0 && line.substring(1, close).trim().toLowerCase(Locale.ROOT).equals("core");
+                line = close > 0 ? line.substring(close + 1).trim() : "";
+                if (line.isEmpty()) {
+                    continue;
+                }
+            }
+            int equals = line.indexOf('=');
+            if (!core || equals < 0 || !line.substring(0, equals).trim().equalsIgnoreCase("excludesfile")) {
+                continue;
+            }
+            value = configValue(line.substring(equals + 1));
+        }
+        return value;
+    }
+
+    private static String configValue(String raw) {
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int index = 0; index < raw.length(); index++) {
+            char current = raw.charAt(index);
+            if (current == '"') {
+                quoted = !quoted;
+            } else if (current == '\\' && index + 1 < raw.length()) {
+                char escaped = raw.charAt(++index);
+                value.append(switch (escaped) {
+                    case 'n' -> '\n';
+                    case 't' -> '\t';
+                    default -> escaped;
+                });
+            } else if (!quoted && (current == '#' || current == ';')) {
+                break;
+            } else {
+                value.append(current);
+            }
+        }
+        return value.toString().trim();
+    }
+
+    private static String relative(Path from, Path to) {
+        return from.equals(to) ? "" : from.relativize(to).toString().replace(java.io.File.separatorChar, '/');
+    }
+
+    private static Path homeDirectory() {
+        String home = System.getProperty("user.home");
+        return home == null || home.isBlank() ? null : Path.of(home);
+    }
+
+    private static Path xdgConfigDirectory() {
+        String configured = System.getenv("XDG_CONFIG_HOME");
+        if (configured != null && !configured.isBlank()) {
+            return Path.of(configured);
+        }
+        Path home = homeDirectory();
+        return home == null ? null : home.resolve(".config");
+    }
+}
@@ -0,0 +1,125 @@
+package shed;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Laid-out colored glyph runs of recently painted line pieces, reused while their text, colors, and font are unchanged.
+final class GlyphRunCache {
+    static final int DEFAULT_CAPACITY = 2048;
+
+    // A piece's characters and its color runs, as end offsets relative to the piece, with what its layout depends on. The
+    // document offset is left out, so text that moved with an edit above it is reused. x is the piece's start position,
+    // which fixes where its tab stops fall. A lookup key may view a reused buffer; retain copies it before storing.
+    static final class Key {
+        private final char[] text;
+        private final int offset;
+        private final int length;
+        private final int[] runEnds;
+        private final Color[] runColors;
+        private final Font font;
+        private final FontRenderContext context;
+        private final float x;
+        private final int hash;
+
+        Key(char[] text, int offset, int length, int[] runEnds, Color[] runColors, Font font, FontRenderContext context, float x) {
+            this.text = text;
+            this.offset = offset;
+            this.length = length;
+            this.runEnds = runEnds;
+            this.runColors = runColors;
+            this.font = font;
+            this.context = context;
+            this.x = x;
+            int result = 1;
+            for (int index = offset; index < offset + length; index++) {
+                result = 31 * result + text[index];
+            }
+            result = 31 * result + Arrays.hashCode(runEnds);
+            result = 31 * result + Arrays.hashCode(runColors);
+            result = 31 * result + font.hashCode();
+            result = 31 * result + context.hashCode();
+            this.hash = 31 * result + Float.hashCode(x);
+        }
+
+        Key retain() {
+            return new Key(Arrays.copyOfRange(text, offset, offset + length), 0, length, runEnds, runColors, font, context, x);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key key && hash == key.hash && length == key.length && Float.compare(x, key.x) == 0
+                && Arrays.equals(text, offset, offset + length, key.text, key.offset, key.offset + key.length)
+                && Arrays.equals(runEnds, key.runEnds) && Arrays.equals(runColors, key.runColors)
+                && font.equals(key.font) && context.equals(key.context);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    // One tab-free single-color piece, positioned relative to the start of the entry.
+    record Run(GlyphVector glyphs, Color color, float x) { }
+
+    record Entry(Run[] runs, float advance) { }
+
+    private final int capacity;
+    private final Map<Key, Entry> entries;
+    private int hits;
+    private int misses;
+
+    GlyphRunCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("glyph run cache capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(Math.min(capacity, 256), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > GlyphRunCache.this.capacity;
+            }
+        };
+    }
+
+    Entry get(Key key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return entry;
+    }
+
+    void put(Key key, Entry entry) {
+        entries.put(key, entry);
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    int hits() {
+        return hits;
+    }
+
+    int misses() {
+        return misses;
+    }
+
+    void resetCounts() {
+        hits = 0;
+        misses = 0;
+    }
+
+    void clear() {
+        entries.clear();
+        resetCounts();
+    }
+}
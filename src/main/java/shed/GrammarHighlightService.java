@@ -1,5 +1,6 @@
 package shed;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.EnumMap;
@@ -15,8 +16,12 @@ import java.util.Set;
 final class GrammarHighlightService {
     enum Scope { KEYWORD, STRING, COMMENT, NUMBER, TYPE, FUNCTION, CONSTANT, ANNOTATION }
     record Token(int start, int end, Scope scope) {}
+    private static final Scope[] SCOPES = Scope.values();
+    static final int VIEWPORT_CHECKPOINT_LINES = 256;
 
     private final Map<FileBuffer, Cache> caches = new IdentityHashMap<>();
+    private final Map<FileBuffer, LargeFileSyntaxCheckpoints> largeFileCheckpoints = new IdentityHashMap<>();
+    private final Map<FileBuffer, ViewportCheckpoints> viewportCheckpoints = new IdentityHashMap<>();
     private final Map<FileType, Set<String>> keywords = new EnumMap<>(FileType.class);
 
     GrammarHighlightService() {
@@ -26,23 +31,50 @@ final class GrammarHighlightService {
         }
     }
 
-    List<Token> highlight(FileBuffer buffer, String text, FileType fileType) {
-        if (buffer == null || text == null || text.isEmpty()) return List.of();
+    TokenBuffer highlight(FileBuffer buffer, String text, FileType fileType) {
+        if (buffer == null || text == null || text.isEmpty()) return new TokenBuffer();
+        return cache(buffer, fileType).rebuild(text);
+    }
+
+    /** Highlights a buffer revision, re-lexing only the lines touched by edits recorded since the cached one. */
+    TokenBuffer highlight(FileBuffer buffer, VersionedTextSnapshot text, FileType fileType) {
+        if (buffer == null || text == null || text.length() == 0) return new TokenBuffer();
+        return cache(buffer, fileType).highlight(text);
+    }
+
+    /**
+     * Returns the per-buffer line cache, replacing it when the file type
+     * changes. Look it up on the EDT; background jobs then call
+     * {@link Cache#highlight(VersionedTextSnapshot)} on it directly.
+     */
+    Cache cache(FileBuffer buffer, FileType fileType) {
+        FileType type = fileType == null ? FileType.TEXT : fileType;
         Cache cache = caches.get(buffer);
-        if (cache == null || cache.fileType != fileType) {
-            cache = new Cache(fileType);
+        if (cache == null || cache.fileType != type) {
+            cache = new Cache(type);
             caches.put(buffer, cache);
         }
-        return cache.update(text);
+        return cache;
     }
 
     /** Lexes an immutable background snapshot without sharing an editor cache across threads. */
-    List<Token> highlightSnapshot(String text, FileType fileType) {
-        if (text == null || text.isEmpty()) return List.of();
+    TokenBuffer highlightSnapshot(String text, FileType fileType) {
+        return highlightFrom(text, fileType, State.normal());
+    }
+
+    /** Lexes text whose first line starts in the given state, such as a large-file window below a checkpoint. */
+    TokenBuffer highlightFrom(String text, FileType fileType, State initial) {
+        TokenBuffer tokens = new TokenBuffer();
+        highlightInto(text, fileType, initial, tokens);
+        return tokens;
+    }
+
+    /** Appends the runs {@link #highlightFrom} returns to tokens, which only receive add and addAll calls. */
+    void highlightInto(String text, FileType fileType, State initial, TokenBuffer tokens) {
+        if (text == null || text.isEmpty()) return;
         FileType type = fileType == null ? FileType.TEXT : fileType;
-        List<Token> tokens = new ArrayList<>();
         if (type != FileType.HTML && type != FileType.MARKDOWN) {
-            State state = State.normal();
+            State state = initial;
             int lineStart = 0;
             while (lineStart <= text.length()) {
                 int lineEnd = text.indexOf('\n', lineStart);
@@ -51,21 +83,20 @@ final class GrammarHighlightService {
                 if (lineEnd == text.length()) break;
                 lineStart = lineEnd + 1;
             }
-            return List.copyOf(tokens);
+            return;
         }
-        List<Token> lineTokens = new ArrayList<>(8);
-        State state = State.normal();
+        TokenBuffer lineTokens = new TokenBuffer(8);
+        State state = initial;
         int lineStart = 0;
         while (lineStart <= text.length()) {
             int lineEnd = text.indexOf('\n', lineStart);
             if (lineEnd < 0) lineEnd = text.length();
             lineTokens.clear();
             state = tokenizeLine(text.substring(lineStart, lineEnd), type, state, lineTokens);
-            for (Token token : lineTokens) tokens.add(new Token(lineStart + token.start(), lineStart + token.end(), token.scope()));
+            tokens.addAll(lineTokens, lineStart);
             if (lineEnd == text.length()) break;
             lineStart = lineEnd + 1;
         }
-        return List.copyOf(tokens);
     }
 
     /**
@@ -73,85 +104,320 @@ final class GrammarHighlightService {
      * the preceding lines. This bounds token allocation for very large editable
      * files while retaining correct multiline comment and string state.
      */
-    List<Token> highlightViewport(String text, FileType fileType, int visibleStart, int visibleEnd) {
-        if (text == null || text.isEmpty()) return List.of();
+    TokenBuffer highlightViewport(String text, FileType fileType, int visibleStart, int visibleEnd) {
+        return highlightViewport(VersionedTextSnapshot.of(text), fileType, visibleStart, visibleEnd, null);
+    }
+
+    /**
+     * Same as {@link #highlightViewport(String, FileType, int, int)}, but resumes
+     * from the nearest lexical checkpoint recorded for this text revision and
+     * copies only the lines it lexes out of the snapshot, so the cost follows
+     * the viewport size rather than its distance from the top.
+     */
+    TokenBuffer highlightViewport(VersionedTextSnapshot text, FileType fileType, int visibleStart, int visibleEnd,
+                                  ViewportCheckpoints checkpoints) {
+        if (text == null || text.length() == 0) return new TokenBuffer();
         FileType type = fileType == null ? FileType.TEXT : fileType;
-        if (type == FileType.HTML || type == FileType.MARKDOWN) return highlightSnapshot(text, type);
+        if (type == FileType.HTML || type == FileType.MARKDOWN) return highlightSnapshot(text.text(), type);
         int start = Math.max(0, Math.min(visibleStart, text.length()));
         int end = Math.max(start, Math.min(visibleEnd, text.length()));
-        int firstLine = text.lastIndexOf("\n", Math.max(0, start - 1)) + 1;
-        int lastLine = text.indexOf('\n', end);
-        if (lastLine < 0) lastLine = text.length();
-        State state = State.normal();
+        int firstLine = text.lineStartOffset(text.positionAt(start).line());
+        int lastLine = text.lineEndOffset(text.positionAt(end).line());
+        State state;
+        int base;
+        if (checkpoints != null && checkpoints.fileType == type) {
+            Checkpoint resumed = checkpoints.advanceTo(text, firstLine);
+            state = resumed.state();
+            base = resumed.offset();
+        } else {
+            state = State.normal();
+            base = 0;
+        }
+        String region = text.substring(base, lastLine - base);
         int lineStart = 0;
-        while (lineStart < firstLine) {
-            int lineEnd = text.indexOf('\n', lineStart);
-            if (lineEnd < 0) lineEnd = text.length();
-            state = code(text, lineStart, lineEnd, type, state.mode, null).withEmbedded(state.embedded, state.marker);
+        while (lineStart < firstLine - base) {
+            int lineEnd = region.indexOf('\n', lineStart);
+            if (lineEnd < 0) lineEnd = region.length();
+            state = code(region, lineStart, lineEnd, type, state.mode, null).withEmbedded(state.embedded, state.marker);
             lineStart = lineEnd + 1;
         }
-        List<Token> tokens = new ArrayList<>();
-        while (lineStart <= lastLine) {
-            int lineEnd = text.indexOf('\n', lineStart);
-            if (lineEnd < 0 || lineEnd > lastLine) lineEnd = lastLine;
-            state = code(text, lineStart, lineEnd, type, state.mode, tokens).withEmbedded(state.embedded, state.marker);
-            if (lineEnd == lastLine) break;
+        TokenBuffer tokens = new TokenBuffer();
+        while (lineStart <= region.length()) {
+            int lineEnd = region.indexOf('\n', lineStart);
+            if (lineEnd < 0) lineEnd = region.length();
+            state = code(region, lineStart, lineEnd, type, state.mode, tokens).withEmbedded(state.embedded, state.marker);
+            if (lineEnd == region.length()) break;
             lineStart = lineEnd + 1;
         }
-        return List.copyOf(tokens);
+        if (base == 0) return tokens;
+        TokenBuffer shifted = new TokenBuffer(tokens.size());
+        shifted.addAll(tokens, base);
+        return shifted;
+    }
+
+    /** Advances lexical state over one line without collecting its tokens. */
+    State advanceLine(String line, FileType fileType, State state) {
+        return tokenizeLine(line, fileType == null ? FileType.TEXT : fileType, state, null);
+    }
+
+    /** Returns the per-buffer lexer checkpoints for a large-file projection, replacing them when the file type changes. */
+    LargeFileSyntaxCheckpoints largeFileCheckpoints(FileBuffer buffer, FileType fileType) {
+        FileType type = fileType == null ? FileType.TEXT : fileType;
+        LargeFileSyntaxCheckpoints checkpoints = largeFileCheckpoints.get(buffer);
+        if (checkpoints == null || checkpoints.fileType() != type) {
+            checkpoints = new LargeFileSyntaxCheckpoints(this, type);
+            largeFileCheckpoints.put(buffer, checkpoints);
+        }
+        return checkpoints;
+    }
+
+    /**
+     * Returns the per-buffer viewport checkpoints bound to the given revision,
+     * replacing them when the file type changes and clearing them when the text
+     * changed without a recorded edit.
+     */
+    ViewportCheckpoints viewportCheckpoints(FileBuffer buffer, FileType fileType, VersionedTextSnapshot revision) {
+        FileType type = fileType == null ? FileType.TEXT : fileType;
+        ViewportCheckpoints checkpoints = viewportCheckpoints.get(buffer);
+        if (checkpoints == null || checkpoints.fileType != type) {
+            checkpoints = new ViewportCheckpoints(type);
+            viewportCheckpoints.put(buffer, checkpoints);
+        }
+        checkpoints.sync(revision);
+        return checkpoints;
+    }
+
+    /**
+     * Drops only the viewport checkpoints that an incremental document edit can
+     * affect, and queues the edit for the buffer's line cache.
+     */
+    void recordEdit(FileBuffer buffer, FileBuffer.DocumentTextChange change) {
+        if (buffer == null || change == null) return;
+        ViewportCheckpoints checkpoints = viewportCheckpoints.get(buffer);
+        if (checkpoints != null) checkpoints.recordEdit(change);
+        Cache cache = caches.get(buffer);
+        if (cache != null) cache.recordEdit(change);
     }
 
     void invalidate(FileBuffer buffer) {
-        if (buffer != null) caches.remove(buffer);
+        if (buffer != null) {
+            caches.remove(buffer);
+            largeFileCheckpoints.remove(buffer);
+            viewportCheckpoints.remove(buffer);
+        }
     }
 
-    private final class Cache {
+    /**
+     * Lexical state at the start of every {@link #VIEWPORT_CHECKPOINT_LINES}th
+     * line of one text revision. Background viewport jobs extend it while the
+     * EDT trims it after edits, so the list is only touched under its lock.
+     */
+    final class ViewportCheckpoints {
         private final FileType fileType;
-        private List<Line> lines = List.of();
+        private final List<Checkpoint> checkpoints = new ArrayList<>();
+        private VersionedTextSnapshot revision;
 
-        private Cache(FileType fileType) {
+        private ViewportCheckpoints(FileType fileType) {
             this.fileType = fileType;
+            checkpoints.add(new Checkpoint(0, State.normal()));
+        }
+
+        synchronized int size() {
+            return checkpoints.size();
         }
 
-        private List<Token> update(String source) {
-            List<String> next = Arrays.asList(source.split("\\n", -1));
-            int prefix = 0;
-            while (prefix < lines.size() && prefix < next.size() && lines.get(prefix).text.equals(next.get(prefix))) prefix++;
-            int suffix = 0;
-            while (suffix < lines.size() - prefix && suffix < next.size() - prefix
-                && lines.get(lines.size() - 1 - suffix).text.equals(next.get(next.size() - 1 - suffix))) suffix++;
-            List<Line> updated = new ArrayList<>(next.size());
-            for (int index = 0; index < prefix; index++) updated.add(lines.get(index));
-            State state = prefix == 0 ? State.normal() : updated.get(prefix - 1).end;
-            int oldDelta = lines.size() - next.size();
-            for (int index = prefix; index < next.size(); index++) {
-                int oldIndex = index + oldDelta;
-                if (index >= next.size() - suffix && oldIndex >= lines.size() - suffix && oldIndex >= 0
-                    && state.equals(lines.get(oldIndex).start)) {
-                    for (int tail = oldIndex; tail < lines.size(); tail++) updated.add(lines.get(tail));
-                    break;
+        private synchronized void recordEdit(FileBuffer.DocumentTextChange change) {
+            if (change.before() != revision || !change.incremental()) {
+                reset(change.after());
+                return;
+            }
+            // A checkpoint depends only on the lines above it, so one at or before the edit offset survives.
+            int keep = checkpoints.size();
+            while (keep > 1 && checkpoints.get(keep - 1).offset() > change.offset()) keep--;
+            checkpoints.subList(keep, checkpoints.size()).clear();
+            revision = change.after();
+        }
+
+        private synchronized void sync(VersionedTextSnapshot textRevision) {
+            if (textRevision != revision) reset(textRevision);
+        }
+
+        // Returns a checkpoint at or before lineStart, recording every checkpoint passed beyond the known ones.
+        private Checkpoint advanceTo(VersionedTextSnapshot text, int lineStart) {
+            Checkpoint checkpoint;
+            int known;
+            synchronized (this) {
+                // A revision the EDT has already moved past gets no help and leaves no trace.
+                if (text != revision) return new Checkpoint(0, State.normal());
+                int index = nearest(lineStart);
+                checkpoint = checkpoints.get(index);
+                known = checkpoints.size();
+                if (index < known - 1) return checkpoint;
+            }
+            // Lex outside the lock so an edit on the EDT never waits for a long first pass.
+            List<Checkpoint> passed = new ArrayList<>();
+            State state = checkpoint.state();
+            int base = checkpoint.offset();
+            String region = text.substring(base, Math.max(0, lineStart - base));
+            int offset = 0;
+            int lines = 0;
+            while (offset < region.length()) {
+                int lineEnd = region.indexOf('\n', offset);
+                if (lineEnd < 0) break;
+                state = code(region, offset, lineEnd, fileType, state.mode, null).withEmbedded(state.embedded, state.marker);
+                offset = lineEnd + 1;
+                if (++lines == VIEWPORT_CHECKPOINT_LINES) {
+                    passed.add(new Checkpoint(base + offset, state));
+                    lines = 0;
                 }
-                List<Token> tokens = new ArrayList<>();
-                State end = tokenizeLine(next.get(index), fileType, state, tokens);
-                updated.add(new Line(next.get(index), state, end, List.copyOf(tokens)));
-                state = end;
             }
-            lines = List.copyOf(updated);
-            return flatten(lines);
+            synchronized (this) {
+                if (text == revision && checkpoints.size() == known) checkpoints.addAll(passed);
+            }
+            return new Checkpoint(base + offset, state);
+        }
+
+        private int nearest(int offset) {
+            int low = 0;
+            int high = checkpoints.size() - 1;
+            while (low < high) {
+                int middle = (low + high + 1) >>> 1;
+                if (checkpoints.get(middle).offset() <= offset) low = middle;
+                else high = middle - 1;
+            }
+            return low;
+        }
+
+        private void reset(VersionedTextSnapshot textRevision) {
+            checkpoints.subList(1, checkpoints.size()).clear();
+            revision = textRevision;
         }
     }
 
-    private List<Token> flatten(List<Line> lines) {
-        List<Token> tokens = new ArrayList<>();
+    /**
+     * Start state, end state, and line-relative tokens for every line of one
+     * text revision. The EDT only queues edits; the next highlight pass applies
+     * them by re-lexing the damaged lines until the lexical state converges
+     * with the cached one, so a keystroke costs the edit, not the file.
+     */
+    final class Cache {
+        private static final int MAX_PENDING_EDITS = 256;
+
+        private final FileType fileType;
+        private final List<Line> lines = new ArrayList<>();
+        private final ArrayDeque<FileBuffer.DocumentTextChange> pending = new ArrayDeque<>();
+        private VersionedTextSnapshot revision;
+        private final TokenBuffer scratch = new TokenBuffer(8);
+        private TokenBuffer tokens = new TokenBuffer();
+
+        private Cache(FileType fileType) {
+            this.fileType = fileType;
+        }
+
+        private void recordEdit(FileBuffer.DocumentTextChange change) {
+            synchronized (pending) {
+                // Past the cap a full pass is cheaper than replaying, and the broken chain forces one.
+                if (pending.size() == MAX_PENDING_EDITS) pending.clear();
+                pending.addLast(change);
+            }
+        }
+
+        // The returned buffer is never modified again, so the EDT may paint it while the next pass runs.
+        synchronized TokenBuffer highlight(VersionedTextSnapshot text) {
+            FileBuffer.DocumentTextChange change;
+            while (revision != text && (change = nextEdit()) != null) {
+                if (revision != null && change.before() == revision && change.incremental()) apply(change);
+                else revision = null;
+            }
+            if (revision != text) return rebuild(text.text(), text);
+            // Flattened once per pass, however many queued edits it replayed.
+            if (tokens == null) tokens = flatten(lines);
+            return tokens;
+        }
+
+        private synchronized TokenBuffer rebuild(String source) {
+            return rebuild(source, null);
+        }
+
+        private TokenBuffer rebuild(String source, VersionedTextSnapshot textRevision) {
+            lines.clear();
+            State state = State.normal();
+            int lineStart = 0;
+            while (lineStart <= source.length()) {
+                int lineEnd = source.indexOf('\n', lineStart);
+                if (lineEnd < 0) lineEnd = source.length();
+                state = lex(source.substring(lineStart, lineEnd), state, lines);
+                if (lineEnd == source.length()) break;
+                lineStart = lineEnd + 1;
+            }
+            revision = textRevision;
+            tokens = flatten(lines);
+            return tokens;
+        }
+
+        private void apply(FileBuffer.DocumentTextChange change) {
+            VersionedTextSnapshot before = change.before();
+            VersionedTextSnapshot after = change.after();
+            if (lines.size() != before.lineCount()) {
+                revision = null;
+                return;
+            }
+            int inserted = change.insertedText() == null ? 0 : change.insertedText().length();
+            int first = before.positionAt(change.offset()).line();
+            int oldNext = before.positionAt(change.offset() + change.removedLength()).line() + 1;
+            int newNext = after.positionAt(change.offset() + inserted).line() + 1;
+            List<Line> relexed = new ArrayList<>(newNext - first + 1);
+            State state = lines.get(first).start;
+            for (int line = first; line < newNext; line++) state = lex(after.line(line), state, relexed);
+            // Lines below the edit keep their text; re-lex them only while they would start in a different state.
+            while (oldNext < lines.size() && !lines.get(oldNext).start.equals(state)) {
+                state = lex(after.line(newNext++), state, relexed);
+                oldNext++;
+            }
+            lines.subList(first, oldNext).clear();
+            lines.addAll(first, relexed);
+            revision = after;
+            tokens = null;
+        }
+
+        private FileBuffer.DocumentTextChange nextEdit() {
+            synchronized (pending) {
+                return pending.pollFirst();
+            }
+        }
+
+        private State lex(String text, State state, List<Line> target) {
+            scratch.clear();
+            State end = tokenizeLine(text, fileType, state, scratch);
+            target.add(new Line(text.length(), state, end, scratch.trimmed()));
+            return end;
+        }
+    }
+
+    private TokenBuffer flatten(List<Line> lines) {
+        int count = 0;
+        for (Line line : lines) count += line.tokens.size();
+        TokenBuffer tokens = new TokenBuffer(count);
         int offset = 0;
         for (Line line : lines) {
-            for (Token token : line.tokens) tokens.add(new Token(offset + token.start, offset + token.end, token.scope));
-            offset += line.text.length() + 1;
+            tokens.addAll(line.tokens, offset);
+            offset += line.length + 1;
         }
+        return tokens;
+    }
+
+    /** Unpacks runs into records for callers that want scopes rather than style indexes. */
+    static List<Token> unpack(TokenBuffer runs) {
+        List<Token> tokens = new ArrayList<>(runs.size());
+        for (int index = 0; index < runs.size(); index++) tokens.add(new Token(runs.start(index), runs.end(index), scope(runs.style(index))));
         return List.copyOf(tokens);
     }
 
-    private State tokenizeLine(String text, FileType type, State state, List<Token> tokens) {
+    static Scope scope(int style) {
+        return SCOPES[style];
+    }
+
+    private State tokenizeLine(String text, FileType type, State state, TokenBuffer tokens) {
         return switch (type) {
             case HTML -> html(text, state, tokens);
             case MARKDOWN -> markdown(text, state, tokens);
@@ -159,7 +425,7 @@ final class GrammarHighlightService {
         };
     }
 
-    private State markdown(String text, State state, List<Token> tokens) {
+    private State markdown(String text, State state, TokenBuffer tokens) {
         if (state.mode == Mode.FENCE) {
             String trimmed = text.stripLeading();
             if (trimmed.startsWith(state.marker)) {
@@ -208,7 +474,7 @@ final class GrammarHighlightService {
         };
     }
 
-    private void inlineMarkdownCode(String text, List<Token> tokens) {
+    private void inlineMarkdownCode(String text, TokenBuffer tokens) {
         int start = -1;
         for (int index = 0; index < text.length(); index++) {
             if (text.charAt(index) != '`' || (index > 0 && text.charAt(index - 1) == '\\')) continue;
@@ -220,7 +486,7 @@ final class GrammarHighlightService {
         }
     }
 
-    private State html(String text, State state, List<Token> tokens) {
+    private State html(String text, State state, TokenBuffer tokens) {
         int index = 0;
         if (state.mode == Mode.HTML_EMBEDDED) {
             int close = indexOfIgnoreCase(text, "</" + state.marker, 0);
@@ -264,7 +530,7 @@ final class GrammarHighlightService {
         return State.normal();
     }
 
-    private TagResult tag(String text, int start, List<Token> tokens) {
+    private TagResult tag(String text, int start, TokenBuffer tokens) {
         int index = start + 1;
         boolean closing = index < text.length() && text.charAt(index) == '/';
         if (closing) index++;
@@ -295,7 +561,7 @@ final class GrammarHighlightService {
         return new TagResult(index, name, closing, embedded);
     }
 
-    private State code(String text, int from, int to, FileType type, Mode initial, List<Token> tokens) {
+    private State code(String text, int from, int to, FileType type, Mode initial, TokenBuffer tokens) {
         int index = from;
         Mode mode = initial;
         if (mode == Mode.BLOCK_COMMENT) {
@@ -525,13 +791,14 @@ final class GrammarHighlightService {
         return -1;
     }
 
-    private static void add(List<Token> tokens, int start, int end, Scope scope) {
-        if (tokens != null && start >= 0 && end > start) tokens.add(new Token(start, end, scope));
+    private static void add(TokenBuffer tokens, int start, int end, Scope scope) {
+        if (tokens != null && start >= 0 && end > start) tokens.add(start, end, scope.ordinal());
     }
 
-    private record Line(String text, State start, State end, List<Token> tokens) {}
+    private record Line(int length, State start, State end, TokenBuffer tokens) {}
+    private record Checkpoint(int offset, State state) {}
     private record TagResult(int end, String name, boolean closing, FileType embedded) {}
-    private record State(Mode mode, FileType embedded, Mode innerMode, String marker) {
+    record State(Mode mode, FileType embedded, Mode innerMode, String marker) {
         static State normal() { return new State(Mode.NORMAL, FileType.TEXT, Mode.NORMAL, ""); }
         State withEmbedded(FileType type, String marker) { return new State(mode, type, Mode.NORMAL, marker); }
     }
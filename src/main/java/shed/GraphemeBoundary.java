@@ -1,83 +1,171 @@
 package shed;
 
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+
+// Grapheme cluster boundaries found by walking forward from a nearby offset that is a boundary in any context,
+// so each query costs the text around it rather than everything before it.
 final class GraphemeBoundary {
+    // Boundaries kept per segmented window before it is restarted from a fresh anchor.
+    private static final int MAX_WINDOW_BOUNDARIES = 4096;
+    // Furthest a window is walked forward to reach a target before restarting from an anchor near it instead.
+    private static final int MAX_EXTENSION = 1024;
+    private static final ThreadLocal<Window> WINDOW = ThreadLocal.withInitial(Window::new);
+
     private GraphemeBoundary() {
     }
 
-    static int previous(String text, int offset) {
-        if (text == null || text.isEmpty()) {
+    static int previous(CharSequence text, int offset) {
+        if (text == null || text.length() == 0) {
             return 0;
         }
         int target = clamp(text, offset);
         if (target == 0) {
             return 0;
         }
-        int boundary = 0;
-        while (boundary < target) {
-            int next = nextBoundary(text, boundary);
-            if (next >= target) {
-                return boundary;
-            }
-            boundary = next;
-        }
-        return boundary;
+        return window(text, target - 1).floor(target - 1);
     }
 
-    static int next(String text, int offset) {
-        if (text == null || text.isEmpty()) {
+    static int next(CharSequence text, int offset) {
+        if (text == null || text.length() == 0) {
             return 0;
         }
         int target = clamp(text, offset);
         if (target >= text.length()) {
             return text.length();
         }
-        if (!isBoundary(text, target)) {
-            return ceiling(text, target);
+        Window window = window(text, target);
+        int ceiling = window.ceiling(target);
+        if (ceiling != target) {
+            return ceiling;
         }
-        return nextBoundary(text, target);
+        return window(text, target + 1).ceiling(target + 1);
     }
 
-    static int floor(String text, int offset) {
-        if (text == null || text.isEmpty()) {
+    static int floor(CharSequence text, int offset) {
+        if (text == null || text.length() == 0) {
             return 0;
         }
         int target = clamp(text, offset);
-        int boundary = 0;
-        while (boundary < target) {
-            int next = nextBoundary(text, boundary);
-            if (next > target) {
-                return boundary;
-            }
-            boundary = next;
-        }
-        return boundary;
+        return window(text, target).floor(target);
     }
 
-    static int ceiling(String text, int offset) {
-        if (text == null || text.isEmpty()) {
+    static int ceiling(CharSequence text, int offset) {
+        if (text == null || text.length() == 0) {
             return 0;
         }
         int target = clamp(text, offset);
-        int boundary = 0;
-        while (boundary < target) {
-            boundary = nextBoundary(text, boundary);
-        }
-        return boundary;
+        return window(text, target).ceiling(target);
     }
 
-    static boolean isBoundary(String text, int offset) {
-        if (text == null || text.isEmpty()) {
+    static boolean isBoundary(CharSequence text, int offset) {
+        if (text == null || text.length() == 0) {
             return offset == 0;
         }
         int target = clamp(text, offset);
-        int boundary = 0;
-        while (boundary < target) {
-            boundary = nextBoundary(text, boundary);
+        return window(text, target).floor(target) == target;
+    }
+
+    // The calling thread's segmented window, extended or restarted so it covers target.
+    private static Window window(CharSequence text, int target) {
+        Window window = WINDOW.get();
+        Object source = source(text);
+        if (!window.covers(source, target)) {
+            if (window.source() == source && window.count > 0 && target >= window.boundaries[0]
+                && target - window.boundaries[window.count - 1] <= MAX_EXTENSION && window.count < MAX_WINDOW_BOUNDARIES) {
+                window.extend(text, target);
+            } else {
+                window.restart(source, text, anchor(text, target), target);
+            }
+        }
+        return window;
+    }
+
+    // The nearest offset at or before target that every walk from 0 also stops at.
+    static int anchor(CharSequence text, int target) {
+        if (target >= text.length()) {
+            return text.length();
+        }
+        for (int offset = target; offset > 0; offset--) {
+            if (Character.isHighSurrogate(text.charAt(offset - 1)) && Character.isLowSurrogate(text.charAt(offset))) {
+                continue;
+            }
+            int previous = Character.codePointBefore(text, offset);
+            int current = codePointAt(text, offset);
+            if (breaksInAnyContext(previous, current)) {
+                return offset;
+            }
+        }
+        return 0;
+    }
+
+    // Pairs that split regardless of the cluster state before them: after or before a control other than CR LF,
+    // and between two code points below the combining marks, none of which extend, join, or prepend.
+    private static boolean breaksInAnyContext(int previous, int current) {
+        if (previous == '\r' || isSurrogate(previous) || isSurrogate(current)) {
+            return false;
+        }
+        return isControl(previous) || isControl(current) || previous < 0x0300 && current < 0x0300;
+    }
+
+    // What a window's boundaries were computed from. Document views are fresh per action, so they are matched on
+    // the document revision they read; any other text is matched on its own identity.
+    private static Object source(CharSequence text) {
+        return text instanceof DocumentText view ? view.revision() : text;
+    }
+
+    // Consecutive boundaries from an anchor, the last one at or after the furthest target queried.
+    private static final class Window {
+        private WeakReference<Object> source = new WeakReference<>(null);
+        private int[] boundaries = new int[64];
+        private int count;
+
+        Object source() {
+            return source.get();
+        }
+
+        boolean covers(Object source, int target) {
+            return source() == source && count > 0 && boundaries[0] <= target && target <= boundaries[count - 1];
+        }
+
+        void restart(Object source, CharSequence text, int anchor, int target) {
+            this.source = new WeakReference<>(source);
+            count = 0;
+            append(anchor);
+            extend(text, target);
+        }
+
+        void extend(CharSequence text, int target) {
+            int boundary = boundaries[count - 1];
+            while (boundary < target) {
+                boundary = nextBoundary(text, boundary);
+                append(boundary);
+            }
+        }
+
+        int floor(int target) {
+            int index = search(target);
+            return index >= 0 ? boundaries[index] : boundaries[-index - 2];
+        }
+
+        int ceiling(int target) {
+            int index = search(target);
+            return index >= 0 ? boundaries[index] : boundaries[-index - 1];
+        }
+
+        private int search(int target) {
+            return Arrays.binarySearch(boundaries, 0, count, target);
+        }
+
+        private void append(int boundary) {
+            if (count == boundaries.length) {
+                boundaries = Arrays.copyOf(boundaries, count * 2);
+            }
+            boundaries[count++] = boundary;
         }
-        return boundary == target;
     }
 
-    private static int nextBoundary(String text, int start) {
+    private static int nextBoundary(CharSequence text, int start) {
         if (start >= text.length()) {
             return text.length();
         }
@@ -132,16 +220,16 @@ final class GraphemeBoundary {
         return isRegionalIndicator(previous) && isRegionalIndicator(current) && regionalIndicators % 2 == 1;
     }
 
-    private static int codePointAt(String text, int offset) {
-        return text.codePointAt(offset);
+    private static int codePointAt(CharSequence text, int offset) {
+        return Character.codePointAt(text, offset);
     }
 
     private static int width(int codePoint) {
         return Character.charCount(codePoint);
     }
 
-    private static int clamp(String text, int offset) {
-        if (text == null || text.isEmpty()) {
+    private static int clamp(CharSequence text, int offset) {
+        if (text == null || text.length() == 0) {
             return 0;
         }
         return Math.max(0, Math.min(offset, text.length()));
@@ -0,0 +1,149 @@
+package shed;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+
+/**
+ * Explicit local measurement of grapheme-aware caret and word motions near the
+ * start, middle, and end of the {@link EditorResponsivenessBenchmark} fixture.
+ * Each motion should cost the same wherever the caret is, including motions
+ * read through a {@link DocumentText} view of an editor document the way the
+ * edit actions read it. It is intentionally not part of the normal Maven test run.
+ */
+public final class GraphemeMotionBenchmark {
+    static final int DEFAULT_SAMPLES = 5;
+    static final int MOTIONS = 500;
+
+    private GraphemeMotionBenchmark() { }
+
+    public static void main(String[] args) {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    static int run(String[] args, PrintStream output, PrintStream error) {
+        int samples = DEFAULT_SAMPLES;
+        for (String value : args == null ? new String[0] : args) {
+            if ("--help".equals(value)) {
+                output.println(usage());
+                return 0;
+            }
+            if (!value.startsWith("--samples=")) {
+                error.println("Unknown argument: " + value);
+                error.println(usage());
+                return 2;
+            }
+            try {
+                samples = Integer.parseInt(value.substring("--samples=".length()));
+            } catch (NumberFormatException invalid) {
+                samples = 0;
+            }
+            if (samples < 1) {
+                error.println("--samples= must be a positive integer");
+                error.println(usage());
+                return 2;
+            }
+        }
+        output.print(measure(EditorResponsivenessBenchmark.fixture(), samples).format());
+        return 0;
+    }
+
+    static Report measure(String fixture, int samples) {
+        if (fixture == null || fixture.length() < 2 || samples < 1) {
+            throw new IllegalArgumentException("grapheme motion benchmark requires a fixture and at least one sample");
+        }
+        MotionService motions = new MotionService();
+        SnapshotDocument document = new SnapshotDocument();
+        try {
+            document.insertString(0, fixture, null);
+        } catch (BadLocationException impossible) {
+            throw new IllegalStateException(impossible);
+        }
+        int[] offsets = {Math.min(fixture.length() - 1, 64), fixture.length() / 2, fixture.length() - 1};
+        String[] names = {"start", "middle", "end"};
+        // Warm every path so the first sample does not pay for class loading and compilation.
+        for (int offset : offsets) sample(motions, fixture, document, offset);
+        List<Site> sites = new ArrayList<>();
+        for (int site = 0; site < offsets.length; site++) {
+            Cost best = null;
+            for (int sample = 0; sample < samples; sample++) {
+                Cost cost = sample(motions, fixture, document, offsets[site]);
+                best = best == null ? cost : best.fastest(cost);
+            }
+            sites.add(new Site(names[site], offsets[site], best));
+        }
+        return new Report(fixture.length(), samples, List.copyOf(sites));
+    }
+
+    // Chained motions from offset, plus isolated floor queries that must restart segmentation from an anchor.
+    private static Cost sample(MotionService motions, String text, Document document, int offset) {
+        long started = System.nanoTime();
+        int position = offset;
+        for (int motion = 0; motion < MOTIONS; motion++) position = motions.moveWordBackward(text, position);
+        long wordBackward = System.nanoTime() - started;
+
+        started = System.nanoTime();
+        position = offset;
+        for (int motion = 0; motion < MOTIONS; motion++) position = motions.moveWordForward(text, position);
+        long wordForward = System.nanoTime() - started;
+
+        started = System.nanoTime();
+        position = offset;
+        for (int motion = 0; motion < MOTIONS; motion++) position = GraphemeBoundary.previous(text, position);
+        long characterBackward = System.nanoTime() - started;
+
+        started = System.nanoTime();
+        for (int query = 0; query < MOTIONS; query++) {
+            GraphemeBoundary.floor(text, query % 2 == 0 ? offset : text.length() - 1 - offset);
+        }
+        long isolated = System.nanoTime() - started;
+
+        // A new view per motion, as each keystroke takes one.
+        started = System.nanoTime();
+        position = offset;
+        for (int motion = 0; motion < MOTIONS; motion++) position = motions.moveWordBackward(new DocumentText(document), position);
+        long documentWordBackward = System.nanoTime() - started;
+        return new Cost(wordBackward / MOTIONS, wordForward / MOTIONS, characterBackward / MOTIONS, isolated / MOTIONS,
+            documentWordBackward / MOTIONS);
+    }
+
+    static String usage() {
+        return "Usage: shed.GraphemeMotionBenchmark [--samples=N]";
+    }
+
+    record Cost(long wordBackwardNanos, long wordForwardNanos, long characterBackwardNanos, long isolatedFloorNanos,
+                long documentWordBackwardNanos) {
+        Cost fastest(Cost other) {
+            return new Cost(Math.min(wordBackwardNanos, other.wordBackwardNanos), Math.min(wordForwardNanos, other.wordForwardNanos),
+                Math.min(characterBackwardNanos, other.characterBackwardNanos), Math.min(isolatedFloorNanos, other.isolatedFloorNanos),
+                Math.min(documentWordBackwardNanos, other.documentWordBackwardNanos));
+        }
+    }
+
+    record Site(String name, int offset, Cost cost) { }
+
+    record Report(int characters, int samples, List<Site> sites) {
+        String format() {
+            StringBuilder output = new StringBuilder();
+            output.append("workload.characters=").append(characters).append('\n');
+            output.append("workload.samples=").append(samples).append('\n');
+            output.append("workload.motionsPerSample=").append(MOTIONS).append('\n');
+            for (Site site : sites) {
+                output.append(site.name()).append(".offset=").append(site.offset()).append('\n');
+                append(output, site.name() + ".wordBackward", site.cost().wordBackwardNanos());
+                append(output, site.name() + ".wordForward", site.cost().wordForwardNanos());
+                append(output, site.name() + ".characterBackward", site.cost().characterBackwardNanos());
+                append(output, site.name() + ".isolatedFloor", site.cost().isolatedFloorNanos());
+                append(output, site.name() + ".documentWordBackward", site.cost().documentWordBackwardNanos());
+            }
+            return output.toString();
+        }
+
+        private static void append(StringBuilder output, String name, long nanos) {
+            output.append(name).append(".us=").append(String.format(Locale.ROOT, "%.3f", nanos / 1_000d)).append('\n');
+        }
+    }
+}
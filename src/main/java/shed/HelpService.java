@@ -71,7 +71,7 @@ public class HelpService {
                    "  :tree rename a b Rename path a -> b\n" +
                    "  :tree rm p     Delete file/empty directory\n" +
                    "  :buffers       Buffer finder\n" +
-                   "  :grep text     Grep finder\n" +
+                   "  :grep [-i] [-E] text Grep finder; -i ignores case, -E regex\n" +
                    "  :projectreplace ... Preview/apply selected project replacements\n" +
                    "  :copen         Open quickfix list\n" +
                    "  :cnext/:cprev  Next/previous quickfix entry\n" +
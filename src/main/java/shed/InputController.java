@@ -58,6 +58,11 @@ final class InputController {
         this.emacsPrefix = EmacsKeymap.Prefix.NONE;
     }
 
+    // The document's characters read in place instead of copied; take a new view after each edit.
+    private DocumentText documentText() {
+        return new DocumentText(editor.writingArea.getDocument());
+    }
+
     void onDocumentChanged(DocumentEvent event) {
         scheduleOpenBufferWordIndex();
         if (!editor.configManager.getLspCompletionAutoShow() || editor.editorState.mode != EditorMode.INSERT) {
@@ -300,7 +305,7 @@ final class InputController {
 
     private void killEmacsLine() {
         int start = editor.writingArea.getCaretPosition();
-        String text = editor.writingArea.getText();
+        DocumentText text = documentText();
         int end = text.indexOf('\n', start);
         if (end >= 0) {
             end++;
@@ -308,7 +313,7 @@ final class InputController {
             end = text.length();
         }
         if (end > start) {
-            editor.clipboardManager.yankSelection(text.substring(start, end));
+            editor.clipboardManager.yankSelection(text.subSequence(start, end));
             editor.writingArea.replaceRange("", start, end);
             editor.markModified();
         }
@@ -678,7 +683,7 @@ final class InputController {
             return;
         } else if (c == 'v') {
             editor.setMode(EditorMode.VISUAL);
-            int start = GraphemeBoundary.floor(editor.writingArea.getText(), editor.writingArea.getCaretPosition());
+            int start = GraphemeBoundary.floor(documentText(), editor.writingArea.getCaretPosition());
             editor.writingArea.setCaretPosition(start);
             editor.editorState.visualStartPos = start;
             return;
@@ -833,7 +838,7 @@ final class InputController {
             for (int i = 0; i < count; i++) {
                 int pos = editor.writingArea.getCaretPosition();
                 if (pos <= 0) break;
-                String text = editor.writingArea.getText();
+                CharSequence text = documentText();
                 GraphemeEditRange.Range range = GraphemeEditRange.previous(text, pos);
                 if (range.empty()) break;
                 deleted.insert(0, text, range.start(), range.end());
@@ -899,22 +904,30 @@ final class InputController {
             editor.editorState.pendingCount = "";
             if (editor.undoManager.canUndo()) {
                 editor.undoManager.undo();
+            } else {
+                editor.stepLargeFileHistory(false);
             }
         } else if (e.isControlDown() && c == 'r') {
             editor.editorState.pendingCount = "";
             if (editor.undoManager.canRedo()) {
                 editor.undoManager.redo();
+            } else {
+                editor.stepLargeFileHistory(true);
             }
         }
 
         // Search navigation
         else if (c == 'n') {
             editor.editorState.pendingCount = "";
-            String result = editor.searchManager.nextMatch();
+            String result = editor.largeFileSearchController.handles(editor.getCurrentBuffer())
+                ? editor.largeFileSearchController.nextMatch()
+                : editor.searchManager.nextMatch();
             editor.showMessage(result);
         } else if (c == 'N') {
             editor.editorState.pendingCount = "";
-            String result = editor.searchManager.prevMatch();
+            String result = editor.largeFileSearchController.handles(editor.getCurrentBuffer())
+                ? editor.largeFileSearchController.prevMatch()
+                : editor.searchManager.prevMatch();
             editor.showMessage(result);
         } else if (c == '*') {
             editor.editorState.pendingCount = "";
@@ -1191,12 +1204,12 @@ final class InputController {
                 editor.showMessage(editor.showOutline());
             } else if (c == 'v') {
                 if (editor.editorState.lastVisualStart >= 0 && editor.editorState.lastVisualEnd >= 0
-                        && editor.editorState.lastVisualStart <= editor.writingArea.getText().length()
-                        && editor.editorState.lastVisualEnd <= editor.writingArea.getText().length()) {
+                        && editor.editorState.lastVisualStart <= editor.writingArea.getDocument().getLength()
+                        && editor.editorState.lastVisualEnd <= editor.writingArea.getDocument().getLength()) {
                     EditorMode vm = editor.editorState.lastVisualMode != null ? editor.editorState.lastVisualMode : EditorMode.VISUAL;
-                    editor.editorState.visualStartPos = GraphemeBoundary.floor(editor.writingArea.getText(), editor.editorState.lastVisualStart);
+                    editor.editorState.visualStartPos = GraphemeBoundary.floor(documentText(), editor.editorState.lastVisualStart);
                     editor.setMode(vm);
-                    editor.writingArea.setCaretPosition(GraphemeBoundary.ceiling(editor.writingArea.getText(), editor.editorState.lastVisualEnd));
+                    editor.writingArea.setCaretPosition(GraphemeBoundary.ceiling(documentText(), editor.editorState.lastVisualEnd));
                     if (vm == EditorMode.VISUAL) {
                         selectGraphemeRange(editor.editorState.lastVisualStart, editor.editorState.lastVisualEnd);
                     } else {
@@ -1254,7 +1267,7 @@ final class InputController {
                     String deleted = editor.writingArea.getText(startOffset, endOffset - startOffset);
                     editor.storeDelete(editor.consumePendingRegister(), deleted, true);
                     editor.writingArea.replaceRange("", startOffset, endOffset);
-                    editor.writingArea.setCaretPosition(Math.min(startOffset, editor.writingArea.getText().length()));
+                    editor.writingArea.setCaretPosition(Math.min(startOffset, editor.writingArea.getDocument().getLength()));
                     editor.markModified();
                     editor.showMessage(count > 1 ? count + " lines deleted" : "Line deleted");
                 } catch (BadLocationException ex) {
@@ -1303,7 +1316,7 @@ final class InputController {
                     String deleted = editor.writingArea.getText(startOffset, endOffset - startOffset);
                     editor.storeDelete(editor.consumePendingRegister(), deleted, true);
                     editor.writingArea.replaceRange("", startOffset, endOffset);
-                    editor.writingArea.setCaretPosition(Math.min(startOffset, editor.writingArea.getText().length()));
+                    editor.writingArea.setCaretPosition(Math.min(startOffset, editor.writingArea.getDocument().getLength()));
                     editor.markModified();
                 } catch (BadLocationException ex) {}
                 editor.lastInsertedText = "";
@@ -1370,13 +1383,13 @@ final class InputController {
                     editor.recordJumpPosition();
                     if (editor.editorState.pendingKey == '\'') {
                         try {
-                            int line = editor.writingArea.getLineOfOffset(Math.min(offset, editor.writingArea.getText().length()));
+                            int line = editor.writingArea.getLineOfOffset(Math.min(offset, editor.writingArea.getDocument().getLength()));
                             editor.writingArea.setCaretPosition(editor.writingArea.getLineStartOffset(line));
                         } catch (BadLocationException e) {
-                            editor.writingArea.setCaretPosition(Math.min(offset, editor.writingArea.getText().length()));
+                            editor.writingArea.setCaretPosition(Math.min(offset, editor.writingArea.getDocument().getLength()));
                         }
                     } else {
-                        editor.writingArea.setCaretPosition(Math.min(offset, editor.writingArea.getText().length()));
+                        editor.writingArea.setCaretPosition(Math.min(offset, editor.writingArea.getDocument().getLength()));
                     }
                 } else {
                     editor.showMessage("Mark not set: " + c);
@@ -1557,7 +1570,7 @@ final class InputController {
         }
         if ((code == KeyEvent.VK_BACK_SPACE || code == KeyEvent.VK_DELETE) && editor.extraSelections.isEmpty()
             && !e.isControlDown() && !e.isAltDown() && !e.isMetaDown()) {
-            String text = editor.writingArea.getText();
+            CharSequence text = documentText();
             int selectionStart = editor.writingArea.getSelectionStart();
             int selectionEnd = editor.writingArea.getSelectionEnd();
             GraphemeEditRange.Range range = selectionStart == selectionEnd
@@ -1574,7 +1587,7 @@ final class InputController {
             return;
         }
         if (code == KeyEvent.VK_BACK_SPACE && editor.configManager.getAutoPairs()) {
-            String text = editor.writingArea.getText();
+            CharSequence text = documentText();
             int pos = editor.writingArea.getCaretPosition();
             if (pos > 0 && pos < text.length()) {
                 char before = text.charAt(pos - 1);
@@ -1653,7 +1666,7 @@ final class InputController {
                         });
                     } else if (editor.isClosingPairChar(c)) {
                         // skip over if next char matches
-                        String text = editor.writingArea.getText();
+                        CharSequence text = documentText();
                         int p = editor.writingArea.getCaretPosition();
                         if (p < text.length() && text.charAt(p) == c) {
                             editor.writingArea.setCaretPosition(p + 1);
@@ -1824,7 +1837,7 @@ final class InputController {
     }
 
     private void selectGraphemeRange(int start, int end) {
-        GraphemeEditRange.Range range = GraphemeEditRange.selection(editor.writingArea.getText(), start, end);
+        GraphemeEditRange.Range range = GraphemeEditRange.selection(documentText(), start, end);
         editor.writingArea.setSelectionStart(range.start());
         editor.writingArea.setSelectionEnd(range.end());
     }
@@ -1841,7 +1854,7 @@ final class InputController {
             char c = e.getKeyChar();
             if (c != KeyEvent.CHAR_UNDEFINED && c != '\n') {
                 int pos = editor.writingArea.getCaretPosition();
-                String text = editor.writingArea.getText();
+                CharSequence text = documentText();
 
                 if (pos < text.length()) {
                     // Replace character
@@ -2009,7 +2022,7 @@ final class InputController {
 
         if (code == KeyEvent.VK_ESCAPE) {
             // Restore cursor to pre-search position
-            if (editor.editorState.searchStartPos >= 0 && editor.editorState.searchStartPos <= editor.writingArea.getText().length()) {
+            if (editor.editorState.searchStartPos >= 0 && editor.editorState.searchStartPos <= editor.writingArea.getDocument().getLength()) {
                 editor.writingArea.setCaretPosition(editor.editorState.searchStartPos);
             }
             editor.searchManager.clearHighlights();
@@ -2020,7 +2033,16 @@ final class InputController {
 
         if (code == KeyEvent.VK_ENTER) {
             String pattern = editor.editorState.commandBuffer.length() > 1 ? editor.editorState.commandBuffer.substring(1) : "";
-            String result = editor.editorState.searchForward ? editor.searchManager.searchForward(pattern) : editor.searchManager.searchBackward(pattern);
+            String result;
+            if (editor.largeFileSearchController.handles(editor.getCurrentBuffer())) {
+                // The window only holds a slice of a large file, so the whole-file scan runs in the background.
+                if (editor.editorState.searchStartPos >= 0 && editor.editorState.searchStartPos <= editor.writingArea.getDocument().getLength()) {
+                    editor.writingArea.setCaretPosition(editor.editorState.searchStartPos);
+                }
+                result = editor.largeFileSearchController.search(pattern, editor.editorState.searchForward);
+            } else {
+                result = editor.editorState.searchForward ? editor.searchManager.searchForward(pattern) : editor.searchManager.searchBackward(pattern);
+            }
             if (!result.isEmpty()) {
                 editor.showMessage(result);
             }
@@ -2047,7 +2069,7 @@ final class InputController {
                 editor.editorState.commandBuffer = editor.editorState.commandBuffer.substring(0, editor.editorState.commandBuffer.length() - 1);
             } else {
                 editor.editorState.commandBuffer = "";
-                if (editor.editorState.searchStartPos >= 0 && editor.editorState.searchStartPos <= editor.writingArea.getText().length()) {
+                if (editor.editorState.searchStartPos >= 0 && editor.editorState.searchStartPos <= editor.writingArea.getDocument().getLength()) {
                     editor.writingArea.setCaretPosition(editor.editorState.searchStartPos);
                 }
                 editor.searchManager.clearHighlights();
@@ -2068,7 +2090,7 @@ final class InputController {
         String pattern = editor.editorState.commandBuffer.length() > 1 ? editor.editorState.commandBuffer.substring(1) : "";
         if (pattern.isEmpty()) {
             editor.searchManager.clearHighlights();
-            if (editor.editorState.searchStartPos >= 0 && editor.editorState.searchStartPos <= editor.writingArea.getText().length()) {
+            if (editor.editorState.searchStartPos >= 0 && editor.editorState.searchStartPos <= editor.writingArea.getDocument().getLength()) {
                 editor.writingArea.setCaretPosition(editor.editorState.searchStartPos);
             }
             return;
@@ -2574,11 +2596,11 @@ final class InputController {
         FileBuffer buffer = editor.getCurrentBuffer();
         if (buffer == null) return "No buffer";
         int caret = editor.writingArea.getCaretPosition();
-        String text = editor.writingArea.getText();
+        CharSequence text = documentText();
         int start = caret;
         while (start > 0 && isSnippetTriggerCharacter(text.charAt(start - 1))) start--;
         if (start == caret) return "No trigger word";
-        String trigger = text.substring(start, caret);
+        String trigger = text.subSequence(start, caret).toString();
         SnippetService.Snippet snippet = editor.snippetService.findExact(buffer.getFileType(), trigger);
         if (snippet == null) return "No snippet: " + trigger;
         SnippetExpansion.Result expansion = SnippetExpansion.parse(snippet.body, snippetVariables(buffer));
@@ -0,0 +1,440 @@
+package shed;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Strict pull parser over UTF-8 JSON bytes. Callers walk objects and arrays field by field and read only the values
+// they need, so a payload is validated and decoded in one pass without first becoming a String or a tree; readValue()
+// builds the same LinkedHashMap/ArrayList/String/Long/Double tree as MiniJson for the parts a caller keeps generic.
+// Malformed UTF-8 inside strings is rejected unless the reader is made to replace it, as new String(bytes, UTF_8) does.
+final class JsonReader {
+    enum Kind { OBJECT, ARRAY, STRING, NUMBER, BOOLEAN, NULL }
+
+    // Nesting accepted unless a caller asks for another limit.
+    static final int MAX_DEPTH = 64;
+
+    private final byte[] bytes;
+    private final int end;
+    private final boolean replaceMalformed;
+    private final int maxDepth;
+    private int index;
+    private int depth;
+    // Whether the open container at each depth has yielded a member yet, so the next one must follow a comma.
+    private boolean[] started = new boolean[MAX_DEPTH + 1];
+    private int nameStart;
+    private int nameEnd;
+    private boolean nameEscaped;
+    private char[] chars = new char[64];
+
+    JsonReader(byte[] bytes, int offset, int length) {
+        this(bytes, offset, length, false);
+    }
+
+    JsonReader(byte[] bytes, int offset, int length, boolean replaceMalformed) {
+        this(bytes, offset, length, replaceMalformed, MAX_DEPTH);
+    }
+
+    JsonReader(byte[] bytes, int offset, int length, boolean replaceMalformed, int maxDepth) {
+        if (maxDepth < 1) {
+            throw new IllegalArgumentException("JSON nesting limit must be positive");
+        }
+        this.bytes = bytes;
+        this.index = offset;
+        this.end = offset + length;
+        this.replaceMalformed = replaceMalformed;
+        this.maxDepth = maxDepth;
+    }
+
+    static Object parse(byte[] bytes, int offset, int length) throws IOException {
+        JsonReader json = new JsonReader(bytes, offset, length);
+        Object value = json.readValue();
+        json.finish();
+        return value;
+    }
+
+    Kind peek() throws IOException {
+        skipWhitespace();
+        if (index >= end) throw error("missing value");
+        return switch (bytes[index]) {
+            case '{' -> Kind.OBJECT;
+            case '[' -> Kind.ARRAY;
+            case '"' -> Kind.STRING;
+            case 't', 'f' -> Kind.BOOLEAN;
+            case 'n' -> Kind.NULL;
+            default -> Kind.NUMBER;
+        };
+    }
+
+    // Offset of the next value's first byte, so a caller can keep a value's raw bytes after skipping it.
+    int valueStart() throws IOException {
+        skipWhitespace();
+        return index;
+    }
+
+    int position() {
+        return index;
+    }
+
+    byte[] bytes() {
+        return bytes;
+    }
+
+    void beginObject() throws IOException {
+        open('{');
+    }
+
+    // Moves to the next field's value and returns true, or consumes the closing brace and returns false.
+    boolean nextField() throws IOException {
+        if (!nextMember('}')) return false;
+        if (index >= end || bytes[index] != '"') throw error("expected a field name");
+        index++;
+        nameStart = index;
+        nameEscaped = scanString();
+        nameEnd = index - 1;
+        skipWhitespace();
+        expect(':');
+        return true;
+    }
+
+    // Compares the current field name with an ASCII name without decoding it.
+    boolean fieldIs(String name) {
+        if (nameEscaped) return name.equals(fieldName());
+        int length = nameEnd - nameStart;
+        if (length != name.length()) return false;
+        for (int offset = 0; offset < length; offset++) {
+            if (bytes[nameStart + offset] != name.charAt(offset)) return false;
+        }
+        return true;
+    }
+
+    String fieldName() {
+        return decode(nameStart, nameEnd, nameEscaped);
+    }
+
+    void beginArray() throws IOException {
+        open('[');
+    }
+
+    // Moves to the next element and returns true, or consumes the closing bracket and returns false.
+    boolean nextElement() throws IOException {
+        return nextMember(']');
+    }
+
+    String readString() throws IOException {
+        skipWhitespace();
+        expect('"');
+        int start = index;
+        boolean escaped = scanString();
+        return decode(start, index - 1, escaped);
+    }
+
+    // Reads a JSON number as MiniJson does: Long without a fraction or exponent, Double otherwise.
+    Number readNumber() throws IOException {
+        skipWhitespace();
+        int start = index;
+        boolean negative = index < end && bytes[index] == '-';
+        if (negative) index++;
+        long value = 0;
+        int digits = 0;
+        if (index < end && bytes[index] == '0') {
+            index++;
+            digits = 1;
+        } else {
+            while (index < end && bytes[index] >= '0' && bytes[index] <= '9') {
+                value = value * 10 + (bytes[index++] - '0');
+                digits++;
+            }
+        }
+        if (digits == 0) throw error("invalid number");
+        boolean integral = true;
+        if (index < end && bytes[index] == '.') {
+            integral = false;
+            index++;
+            if (!skipDigits()) throw error("invalid fraction");
+        }
+        if (index < end && (bytes[index] == 'e' || bytes[index] == 'E')) {
+            integral = false;
+            index++;
+            if (index < end && (bytes[index] == '+' || bytes[index] == '-')) index++;
+            if (!skipDigits()) throw error("invalid exponent");
+        }
+        if (integral && digits <= 18) return negative ? -value : value;
+        String raw = new String(bytes, start, index - start, StandardCharsets.US_ASCII);
+        if (integral) {
+            try {
+                return Long.parseLong(raw);
+            } catch (NumberFormatException beyondLong) {
+                // Integers past the long range keep their magnitude as a double.
+            }
+        }
+        return Double.parseDouble(raw);
+    }
+
+    int readInt() throws IOException {
+        return readNumber().intValue();
+    }
+
+    boolean readBoolean() throws IOException {
+        skipWhitespace();
+        if (literal("true")) return true;
+        if (literal("false")) return false;
+        throw error("expected a boolean");
+    }
+
+    // Consumes a null and returns true, or leaves any other value in place and returns false.
+    boolean skipNull() throws IOException {
+        skipWhitespace();
+        return literal("null");
+    }
+
+    // These read a value of the expected kind, or skip any other value and return null, as MiniJson's as* helpers do.
+    String optionalString() throws IOException {
+        if (peek() == Kind.STRING) return readString();
+        skipValue();
+        return null;
+    }
+
+    Integer optionalInt() throws IOException {
+        if (peek() == Kind.NUMBER) return readInt();
+        skipValue();
+        return null;
+    }
+
+    Boolean optionalBoolean() throws IOException {
+        if (peek() == Kind.BOOLEAN) return readBoolean();
+        skipValue();
+        return null;
+    }
+
+    void skipValue() throws IOException {
+        switch (peek()) {
+            case OBJECT -> {
+                beginObject();
+                while (nextField()) skipValue();
+            }
+            case ARRAY -> {
+                beginArray();
+                while (nextElement()) skipValue();
+            }
+            case STRING -> {
+                index++;
+                scanString();
+            }
+            case NUMBER -> readNumber();
+            case BOOLEAN -> readBoolean();
+            case NULL -> {
+                if (!skipNull()) throw error("invalid literal");
+            }
+        }
+    }
+
+    Object readValue() throws IOException {
+        switch (peek()) {
+            case OBJECT -> {
+                Map<String, Object> object = new LinkedHashMap<>();
+                beginObject();
+                while (nextField()) {
+                    String name = fieldName();
+                    object.put(name, readValue());
+                }
+                return object;
+            }
+            case ARRAY -> {
+                List<Object> array = new ArrayList<>();
+                beginArray();
+                while (nextElement()) array.add(readValue());
+                return array;
+            }
+            case STRING -> {
+                return readString();
+            }
+            case NUMBER -> {
+                return readNumber();
+            }
+            case BOOLEAN -> {
+                return readBoolean();
+            }
+            default -> {
+                if (!skipNull()) throw error("invalid literal");
+                return null;
+            }
+        }
+    }
+
+    // Checks that only whitespace follows the value.
+    void finish() throws IOException {
+        skipWhitespace();
+        if (index != end) throw error("trailing content");
+    }
+
+    private void open(char bracket) throws IOException {
+        skipWhitespace();
+        expect(bracket);
+        if (++depth > maxDepth) throw error("nesting exceeds the limit");
+        if (depth == started.length) started = Arrays.copyOf(started, Math.min(maxDepth, depth * 2) + 1);
+        started[depth] = false;
+    }
+
+    private boolean nextMember(char close) throws IOException {
+        skipWhitespace();
+        if (index < end && bytes[index] == close) {
+            if (depth == 0) throw error("unbalanced '" + close + "'");
+            index++;
+            depth--;
+            return false;
+        }
+        if (started[depth]) {
+            expect(',');
+            skipWhitespace();
+        }
+        started[depth] = true;
+        return true;
+    }
+
+    // Moves past a string's closing quote, checking escapes, control characters, and UTF-8; returns whether it has escapes.
+    private boolean scanString() throws IOException {
+        boolean escaped = false;
+        while (index < end) {
+            int current = bytes[index++];
+            if (current == '"') return escaped;
+            if (current == '\\') {
+                escaped = true;
+                if (index >= end) break;
+                byte escape = bytes[index++];
+                if (escape == 'u') {
+                    for (int digit = 0; digit < 4; digit++) {
+                        if (index >= end || Character.digit(bytes[index++], 16) < 0) throw error("invalid unicode escape");
+                    }
+                } else if ("\"\\/bfnrt".indexOf(escape) < 0) {
+                    throw error("invalid escape");
+                }
+            } else if (current >= 0 && current < 0x20) {
+                throw error("control character in string");
+            } else if (current < 0 && !replaceMalformed) {
+                index = utf8End(index - 1);
+            }
+        }
+        throw error("unterminated string");
+    }
+
+    // Returns the end of the well-formed UTF-8 sequence starting at start.
+    private int utf8End(int start) throws IOException {
+        int lead = bytes[start] & 0xff;
+        int length;
+        int minimum;
+        if (lead >= 0xc2 && lead <= 0xdf) {
+            length = 2;
+            minimum = 0x80;
+        } else if (lead >= 0xe0 && lead <= 0xef) {
+            length = 3;
+            minimum = 0x800;
+        } else if (lead >= 0xf0 && lead <= 0xf4) {
+            length = 4;
+            minimum = 0x10000;
+        } else {
+            throw error("malformed UTF-8");
+        }
+        if (start + length > end) throw error("malformed UTF-8");
+        int codePoint = lead & (0x7f >> length);
+        for (int offset = 1; offset < length; offset++) {
+            int continuation = bytes[start + offset] & 0xff;
+            if ((continuation & 0xc0) != 0x80) throw error("malformed UTF-8");
+            codePoint = codePoint << 6 | continuation & 0x3f;
+        }
+        if (codePoint < minimum || codePoint > 0x10ffff || codePoint >= 0xd800 && codePoint <= 0xdfff) throw error("malformed UTF-8");
+        return start + length;
+    }
+
+    // Decodes a scanned string body; plain ASCII, the common case, copies straight into a Latin-1 String.
+    private String decode(int start, int stop, boolean escaped) {
+        if (!escaped) {
+            boolean ascii = true;
+            for (int offset = start; offset < stop && ascii; offset++) ascii = bytes[offset] >= 0;
+            if (ascii) return new String(bytes, start, stop - start, StandardCharsets.ISO_8859_1);
+            if (!containsBackslash(start, stop)) return new String(bytes, start, stop - start, StandardCharsets.UTF_8);
+        }
+        if (chars.length < stop - start) chars = new char[Math.max(stop - start, chars.length * 2)];
+        int length = 0;
+        int offset = start;
+        while (offset < stop) {
+            int current = bytes[offset];
+            if (current == '\\') {
+                byte escape = bytes[offset + 1];
+                offset += 2;
+                chars[length++] = switch (escape) {
+                    case 'b' -> '\b';
+                    case 'f' -> '\f';
+                    case 'n' -> '\n';
+                    case 'r' -> '\r';
+                    case 't' -> '\t';
+                    case 'u' -> {
+                        char unit = (char) Integer.parseInt(new String(bytes, offset, 4, StandardCharsets.US_ASCII), 16);
+                        offset += 4;
+                        yield unit;
+                    }
+                    default -> (char) escape;
+                };
+            } else if (current >= 0) {
+                chars[length++] = (char) current;
+                offset++;
+            } else {
+                int next = nextNonAscii(offset, stop);
+                String run = new String(bytes, offset, next - offset, StandardCharsets.UTF_8);
+                run.getChars(0, run.length(), chars, length);
+                length += run.length();
+                offset = next;
+            }
+        }
+        return new String(chars, 0, length);
+    }
+
+    private boolean containsBackslash(int start, int stop) {
+        for (int offset = start; offset < stop; offset++) {
+            if (bytes[offset] == '\\') return true;
+        }
+        return false;
+    }
+
+    private int nextNonAscii(int start, int stop) {
+        int offset = start;
+        while (offset < stop && bytes[offset] < 0) offset++;
+        return offset;
+    }
+
+    private boolean skipDigits() {
+        int start = index;
+        while (index < end && bytes[index] >= '0' && bytes[index] <= '9') index++;
+        return index > start;
+    }
+
+    private boolean literal(String value) {
+        if (end - index < value.length()) return false;
+        for (int offset = 0; offset < value.length(); offset++) {
+            if (bytes[index + offset] != value.charAt(offset)) return false;
+        }
+        index += value.length();
+        return true;
+    }
+
+    private void skipWhitespace() {
+        while (index < end) {
+            byte current = bytes[index];
+            if (current != ' ' && current != '\n' && current != '\r' && current != '\t') return;
+            index++;
+        }
+    }
+
+    private void expect(char expected) throws IOException {
+        if (index >= end || bytes[index] != expected) throw error("expected '" + expected + "'");
+        index++;
+    }
+
+    private IOException error(String message) {
+        return new IOException("malformed JSON: " + message + " at byte " + index);
+    }
+}
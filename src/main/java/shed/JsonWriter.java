@@ -0,0 +1,157 @@
+package shed;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+// Serializes MiniJson-style trees (maps, lists, strings, numbers, booleans, null) as UTF-8 into one reusable buffer,
+// so a transport frames each message without building its JSON String or a fresh byte array. Raw values are copied in
+// verbatim, letting a client echo a payload it received without decoding it.
+final class JsonWriter {
+    // Already-validated JSON, such as a completion item kept as received for completionItem/resolve.
+    record Raw(byte[] json) { }
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final int STRING_CHUNK = 4 * 1024;
+    private static final int INITIAL_BUFFER = 8 * 1024;
+    private static final int MAX_RETAINED_BUFFER = 1024 * 1024;
+
+    private byte[] buffer = new byte[INITIAL_BUFFER];
+    private int size;
+
+    // Starts the next message, letting go of a buffer grown for one huge message such as a large didOpen.
+    JsonWriter reset() {
+        if (buffer.length > MAX_RETAINED_BUFFER) buffer = new byte[INITIAL_BUFFER];
+        size = 0;
+        return this;
+    }
+
+    int size() {
+        return size;
+    }
+
+    JsonWriter value(Object value) {
+        if (value == null) {
+            ascii("null");
+        } else if (value instanceof String text) {
+            string(text);
+        } else if (value instanceof Number || value instanceof Boolean) {
+            ascii(value.toString());
+        } else if (value instanceof Map<?, ?> map) {
+            append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                if (!first) append(',');
+                first = false;
+                string(String.valueOf(entry.getKey()));
+                append(':');
+                value(entry.getValue());
+            }
+            append('}');
+        } else if (value instanceof List<?> list) {
+            append('[');
+            for (int index = 0; index < list.size(); index++) {
+                if (index > 0) append(',');
+                value(list.get(index));
+            }
+            append(']');
+        } else if (value instanceof Raw raw) {
+            ensure(raw.json().length);
+            System.arraycopy(raw.json(), 0, buffer, size, raw.json().length);
+            size += raw.json().length;
+        } else {
+            string(String.valueOf(value));
+        }
+        return this;
+    }
+
+    // Writes the buffered JSON as one Content-Length frame.
+    void writeFrame(OutputStream output) throws IOException {
+        output.write(("Content-Length: " + size + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        output.write(buffer, 0, size);
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    private void string(String text) {
+        int length = text.length();
+        append('"');
+        int chunk = 0;
+        while (chunk < length) {
+            int stop = Math.min(length, chunk + STRING_CHUNK);
+            if (stop < length && Character.isHighSurrogate(text.charAt(stop - 1))) stop++;
+            // Six bytes covers the longest form of any one char, the escape for a control character.
+            ensure((stop - chunk) * 6);
+            size = encode(text, chunk, stop);
+            chunk = stop;
+        }
+        append('"');
+    }
+
+    // Encodes text[from, to) at the end of the buffer and returns the new size.
+    private int encode(String text, int from, int to) {
+        byte[] out = buffer;
+        int position = size;
+        for (int index = from; index < to; index++) {
+            char current = text.charAt(index);
+            if (current >= 0x20 && current < 0x80) {
+                if (current == '"' || current == '\\') out[position++] = '\\';
+                out[position++] = (byte) current;
+            } else if (current < 0x20) {
+                out[position++] = '\\';
+                switch (current) {
+                    case '\b' -> out[position++] = 'b';
+                    case '\f' -> out[position++] = 'f';
+                    case '\n' -> out[position++] = 'n';
+                    case '\r' -> out[position++] = 'r';
+                    case '\t' -> out[position++] = 't';
+                    default -> {
+                        out[position++] = 'u';
+                        out[position++] = '0';
+                        out[position++] = '0';
+                        out[position++] = HEX[current >> 4];
+                        out[position++] = HEX[current & 0xf];
+                    }
+                }
+            } else if (current < 0x800) {
+                out[position++] = (byte) (0xc0 | current >> 6);
+                out[position++] = (byte) (0x80 | current & 0x3f);
+            } else if (Character.isHighSurrogate(current) && index + 1 < to && Character.isLowSurrogate(text.charAt(index + 1))) {
+                int codePoint = Character.toCodePoint(current, text.charAt(++index));
+                out[position++] = (byte) (0xf0 | codePoint >> 18);
+                out[position++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+                out[position++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+                out[position++] = (byte) (0x80 | codePoint & 0x3f);
+            } else {
+                // A lone surrogate has no UTF-8 form; write U+FFFD as String.getBytes would.
+                char unit = Character.isSurrogate(current) ? '\uFFFD' : current;
+                out[position++] = (byte) (0xe0 | unit >> 12);
+                out[position++] = (byte) (0x80 | unit >> 6 & 0x3f);
+                out[position++] = (byte) (0x80 | unit & 0x3f);
+            }
+        }
+        return position;
+    }
+
+    private void ascii(String text) {
+        ensure(text.length());
+        for (int index = 0; index < text.length(); index++) buffer[size++] = (byte) text.charAt(index);
+    }
+
+    private void append(char character) {
+        ensure(1);
+        buffer[size++] = (byte) character;
+    }
+
+    private void ensure(int extra) {
+        if (buffer.length - size >= extra) return;
+        long needed = (long) size + extra;
+        if (needed > Integer.MAX_VALUE - 8) throw new IllegalStateException("JSON message is too large");
+        buffer = Arrays.copyOf(buffer, (int) Math.max(needed, Math.min(Integer.MAX_VALUE - 8L, buffer.length * 2L)));
+    }
+}
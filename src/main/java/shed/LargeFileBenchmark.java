@@ -177,7 +177,14 @@ public final class LargeFileBenchmark {
     private static void measureEdit(FileBuffer buffer, int iteration, Map<String, List<Sample>> samples,
                                     Map<String, String> unavailable, List<Failure> failures) {
         if (buffer.isLargeFile()) {
-            markUnavailable(unavailable, "edit", "large-file bounded editing is unavailable");
+            if (!buffer.isLargeFileEditable()) {
+                markUnavailable(unavailable, "edit", "large-file window is clipped at the preview cap");
+                return;
+            }
+            measure("edit", iteration, samples, failures, () -> {
+                buffer.getDocument().insertString(0, " ", null);
+                return buffer.commitLargeFileWindow();
+            });
             return;
         }
         measure("edit", iteration, samples, failures, () -> {
@@ -0,0 +1,141 @@
+package shed;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+// Persists the sparse line checkpoints of validated large files so an unchanged source reopens without a rescan.
+final class LargeFileIndexCache {
+    static final String DIRECTORY_NAME = "large-file-index";
+    static final int MAX_ENTRIES = 32;
+    private static final int MAGIC = 0x53484c49;
+    private static final int VERSION = 1;
+
+    private final Path storageDirectory;
+
+    LargeFileIndexCache(Path storageDirectory) {
+        this.storageDirectory = Objects.requireNonNull(storageDirectory, "storageDirectory").toAbsolutePath().normalize();
+    }
+
+    Path storageDirectory() {
+        return storageDirectory;
+    }
+
+    Path entryPath(Path source) throws IOException {
+        return storageDirectory.resolve("index-" + sha256(source.toString()).substring(0, 16) + ".bin");
+    }
+
+    Entry load(Path source, BasicFileAttributes attributes) {
+        try {
+            Path target = entryPath(source);
+            if (!Files.isRegularFile(target)) {
+                return null;
+            }
+            try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(target)))) {
+                if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                    return null;
+                }
+                Identity stored = new Identity(input.readUTF(), input.readLong(), input.readLong(), input.readUTF());
+                if (!stored.equals(Identity.of(source, attributes))) {
+                    return null;
+                }
+                long lineCount = input.readLong();
+                String lineEnding = input.readUTF();
+                int checkpointCount = input.readInt();
+                if (lineCount < 0L || checkpointCount < 1 || checkpointCount - 1L > lineCount / LargeFileStore.CHECKPOINT_LINES) {
+                    return null;
+                }
+                long[] offsets = new long[checkpointCount];
+                for (int index = 0; index < checkpointCount; index++) {
+                    offsets[index] = input.readLong();
+                    if (offsets[index] < 0L || offsets[index] > attributes.size() || index > 0 && offsets[index] <= offsets[index - 1]) {
+                        return null;
+                    }
+                }
+                return new Entry(lineCount, lineEnding, offsets);
+            }
+        } catch (IOException | SecurityException error) {
+            // A missing, foreign, or truncated sidecar only costs a rescan.
+            return null;
+        }
+    }
+
+    void store(Path source, BasicFileAttributes attributes, Entry entry) {
+        try {
+            Files.createDirectories(storageDirectory);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + entry.checkpointOffsets().length * Long.BYTES);
+            try (DataOutputStream output = new DataOutputStream(bytes)) {
+                Identity identity = Identity.of(source, attributes);
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeUTF(identity.path());
+                output.writeLong(identity.byteSize());
+                output.writeLong(identity.modifiedMillis());
+                output.writeUTF(identity.fileKey());
+                output.writeLong(entry.lineCount());
+                output.writeUTF(entry.lineEnding());
+                output.writeInt(entry.checkpointOffsets().length);
+                for (long offset : entry.checkpointOffsets()) {
+                    output.writeLong(offset);
+                }
+            }
+            AtomicFileWriter.write(entryPath(source), bytes.toByteArray());
+            prune();
+        } catch (IOException | SecurityException ignored) {
+            // The index is an accelerator; the opened store is already complete without it.
+        }
+    }
+
+    private void prune() throws IOException {
+        List<Path> entries;
+        try (Stream<Path> paths = Files.list(storageDirectory)) {
+            entries = paths.filter(path -> path.getFileName().toString().startsWith("index-"))
+                .filter(path -> path.getFileName().toString().endsWith(".bin"))
+                .sorted(Comparator.comparing(LargeFileIndexCache::modifiedMillis).reversed())
+                .toList();
+        }
+        for (int index = MAX_ENTRIES; index < entries.size(); index++) {
+            Files.deleteIfExists(entries.get(index));
+        }
+    }
+
+    private static long modifiedMillis(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException error) {
+            return 0L;
+        }
+    }
+
+    private static String sha256(String value) throws IOException {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException error) {
+            throw new IOException("SHA-256 is unavailable", error);
+        }
+    }
+
+    record Entry(long lineCount, String lineEnding, long[] checkpointOffsets) {
+    }
+
+    private record Identity(String path, long byteSize, long modifiedMillis, String fileKey) {
+        static Identity of(Path source, BasicFileAttributes attributes) {
+            Object key = attributes.fileKey();
+            return new Identity(source.toString(), attributes.size(), attributes.lastModifiedTime().toMillis(),
+                key == null ? "" : key.toString());
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package shed;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+
+// Walks logical lines of a large-file snapshot page by page, holding one page plus one line of at most 1 MiB.
+final class LargeFileLineReader {
+    static final int MAX_LINE_BYTES = LargeFilePieceTable.MAX_WINDOW_BYTES;
+
+    interface Visitor {
+        // Receives a line without its terminator, or one chunk of an overlong line; returns false to stop the walk.
+        boolean visit(long line, byte[] bytes, int length, int charsBefore) throws IOException;
+    }
+
+    private final LargeFilePieceTable.Snapshot snapshot;
+    private final byte[] page = new byte[LargeFileStore.PAGE_BYTES];
+    private byte[] line = new byte[4096];
+    private int lineLength;
+    private int lineCharsBefore;
+    private boolean stopped;
+
+    LargeFileLineReader(LargeFilePieceTable.Snapshot snapshot) {
+        if (snapshot == null) {
+            throw new IllegalArgumentException("line reader requires a large-file snapshot");
+        }
+        this.snapshot = snapshot;
+    }
+
+    // Visits the lines in [start, end), numbering the first one firstLine; returns false when stopped or cancelled.
+    boolean read(long start, long end, long firstLine, BooleanSupplier cancelled, Visitor visitor) throws IOException {
+        long position = start;
+        long currentLine = firstLine;
+        boolean pendingCarriageReturn = false;
+        lineLength = 0;
+        lineCharsBefore = 0;
+        stopped = false;
+        while (position < end && !stopped) {
+            if (cancelled != null && cancelled.getAsBoolean()) {
+                return false;
+            }
+            int read = snapshot.read(position, page, (int) Math.min(page.length, end - position));
+            if (read <= 0) {
+                break;
+            }
+            position += read;
+            int index = 0;
+            while (index < read && !stopped) {
+                if (pendingCarriageReturn) {
+                    pendingCarriageReturn = false;
+                    if (page[index] == '\n') {
+                        index++;
+                        continue;
+                    }
+                }
+                int lineEnd = index;
+                while (lineEnd < read && page[lineEnd] != '\n' && page[lineEnd] != '\r') {
+                    lineEnd++;
+                }
+                append(currentLine, index, lineEnd, visitor);
+                if (stopped || lineEnd == read) {
+                    break;
+                }
+                stopped = !visitor.visit(currentLine, line, lineLength, lineCharsBefore);
+                currentLine++;
+                lineLength = 0;
+                lineCharsBefore = 0;
+                pendingCarriageReturn = page[lineEnd] == '\r';
+                index = lineEnd + 1;
+            }
+        }
+        if (!stopped && (lineLength > 0 || position == start)) {
+            stopped = !visitor.visit(currentLine, line, lineLength, lineCharsBefore);
+        }
+        return !stopped;
+    }
+
+    private void append(long currentLine, int from, int to, Visitor visitor) throws IOException {
+        int next = from;
+        while (next < to && !stopped) {
+            if (lineLength == MAX_LINE_BYTES) {
+                flushChunk(currentLine, visitor);
+            }
+            int count = Math.min(to - next, MAX_LINE_BYTES - lineLength);
+            if (lineLength + count > line.length) {
+                line = Arrays.copyOf(line, Math.min(MAX_LINE_BYTES, Math.max(lineLength + count, line.length * 2)));
+            }
+            System.arraycopy(page, next, line, lineLength, count);
+            lineLength += count;
+            next += count;
+        }
+    }
+
+    // Hands an overlong line over in bounded chunks cut before a UTF-8 lead byte.
+    private void flushChunk(long currentLine, Visitor visitor) throws IOException {
+        int cut = lineLength;
+        while (cut > 0 && (line[cut - 1] & 0xc0) == 0x80) {
+            cut--;
+        }
+        if (cut > 0 && (line[cut - 1] & 0xff) >= 0xc0) {
+            cut--;
+        }
+        if (cut == 0) {
+            cut = lineLength;
+        }
+        int tail = lineLength - cut;
+        stopped = !visitor.visit(currentLine, line, cut, lineCharsBefore);
+        lineCharsBefore += charCount(line, 0, cut);
+        System.arraycopy(line, cut, line, 0, tail);
+        lineLength = tail;
+    }
+
+    // Counts UTF-16 chars in well-formed UTF-8: one per lead byte, two for four-byte sequences.
+    static int charCount(byte[] bytes, int from, int to) {
+        int count = 0;
+        for (int index = from; index < to; index++) {
+            int value = bytes[index] & 0xff;
+            if ((value & 0xc0) != 0x80) {
+                count += value >= 0xf0 ? 2 : 1;
+            }
+        }
+        return count;
+    }
+
+    static String decode(byte[] bytes, int length) throws IOException {
+        try {
+            return StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT)
+                .decode(ByteBuffer.wrap(bytes, 0, length))
+                .toString();
+        } catch (CharacterCodingException error) {
+            throw new IOException("large-file source is no longer valid UTF-8", error);
+        }
+    }
+}
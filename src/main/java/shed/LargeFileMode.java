@@ -20,11 +20,15 @@ final class LargeFileMode {
         report.append("Available\n");
         report.append("- bounded viewport scrolling, caret movement, and resize\n");
         report.append("- reload and external-change detection\n");
-        report.append("- streamed atomic save of unchanged source content\n\n");
+        report.append("- editing inside the bounded window, backed by a piece table over the source\n");
+        report.append("- undo/redo of committed window edits\n");
+        report.append("- background / and ? search with n/N, streamed from the piece sequence\n");
+        report.append("- syntax highlighting of the projected window, resumed from lexer checkpoints\n");
+        report.append("- streamed atomic save and save-as of the edited piece sequence\n\n");
         report.append("Unavailable\n");
-        report.append("- editing, undo/redo, save-as, backups, and recovery snapshots\n");
-        report.append("- LSP synchronization, Markdown preview, full-document search, and syntax analysis\n\n");
-        report.append("Reason: these operations require a bounded piece-table or incremental implementation not yet available.\n");
+        report.append("- editing a window clipped at the preview cap, backups, and recovery snapshots\n");
+        report.append("- LSP synchronization, Markdown preview, and whole-document syntax analysis such as symbols\n\n");
+        report.append("Reason: these operations require whole-document text or an incremental implementation not yet available.\n");
         report.append("Remediation: use the supported viewport/save path, or work on a smaller file below configured limits.\n");
         return report.toString();
     }
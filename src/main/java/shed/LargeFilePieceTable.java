@@ -0,0 +1,346 @@
+package shed;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+final class LargeFilePieceTable {
+    static final int MAX_WINDOW_BYTES = LargeFileStore.MAX_PREVIEW_CHARS * 4;
+    static final int MAX_UNDO_EDITS = 1000;
+
+    private final LargeFileStore store;
+    private final Deque<List<Piece>> undo = new ArrayDeque<>();
+    private final Deque<List<Piece>> redo = new ArrayDeque<>();
+    private List<Piece> pieces;
+    private byte[] added = new byte[0];
+    private int addedLength;
+
+    LargeFilePieceTable(LargeFileStore store) {
+        if (store == null) {
+            throw new IllegalArgumentException("piece table requires a large-file store");
+        }
+        this.store = store;
+        this.pieces = store.byteSize() == 0L
+            ? List.of()
+            : List.of(Piece.source(0L, store.byteSize(), 1L, store.lineCount()));
+    }
+
+    long byteLength() {
+        return snapshot().byteLength();
+    }
+
+    long lineCount() {
+        return snapshot().lineCount();
+    }
+
+    // Pieces are immutable and the add buffer is append-only, so a snapshot stays readable off the EDT while edits continue.
+    Snapshot snapshot() {
+        return new Snapshot(store, pieces, added);
+    }
+
+    int pieceCount() {
+        return pieces.size();
+    }
+
+    long addedBytes() {
+        return addedLength;
+    }
+
+    boolean edited() {
+        return pieces.size() != 1 || pieces.get(0).added() || pieces.get(0).length() != store.byteSize();
+    }
+
+    LargeFileStore.Window readWindow(long firstLine, int requestedLines) throws IOException {
+        if (firstLine < 1L || requestedLines < 1) {
+            throw new IllegalArgumentException("invalid large-file window");
+        }
+        Snapshot snapshot = snapshot();
+        long lineCount = snapshot.lineCount();
+        if (lineCount == 0L || firstLine > lineCount) {
+            return new LargeFileStore.Window(Math.min(firstLine, lineCount + 1L), "", false);
+        }
+        long start = snapshot.lineOffset(firstLine);
+        long end = snapshot.lineOffset(firstLine + requestedLines);
+        boolean truncated = end - start > MAX_WINDOW_BYTES;
+        byte[] bytes = new byte[truncated ? MAX_WINDOW_BYTES : (int) (end - start)];
+        snapshot.read(start, bytes, bytes.length);
+        String content = decode(bytes, truncated);
+        if (content.length() > LargeFileStore.MAX_PREVIEW_CHARS) {
+            content = content.substring(0, LargeFileStore.MAX_PREVIEW_CHARS);
+            truncated = true;
+        }
+        return new LargeFileStore.Window(firstLine, content, truncated);
+    }
+
+    void replaceLines(long firstLine, long replacedLines, String text) throws IOException {
+        if (firstLine < 1L || replacedLines < 0L) {
+            throw new IllegalArgumentException("invalid large-file edit range");
+        }
+        Snapshot snapshot = snapshot();
+        Position start = snapshot.locateLine(firstLine);
+        Position end = snapshot.locateLine(firstLine + replacedLines);
+        byte[] bytes = (text == null ? "" : text).getBytes(StandardCharsets.UTF_8);
+        List<Piece> updated = new ArrayList<>(pieces.size() + 2);
+        for (int index = 0; index < start.pieceIndex(); index++) {
+            updated.add(pieces.get(index));
+        }
+        if (start.pieceIndex() < pieces.size() && start.offset() > 0L) {
+            updated.add(split(pieces.get(start.pieceIndex()), start, true));
+        }
+        if (bytes.length > 0) {
+            updated.add(Piece.added(append(bytes), bytes.length, countLineBreaks(bytes, 0, bytes.length)));
+        }
+        if (end.pieceIndex() < pieces.size() && end.offset() < pieces.get(end.pieceIndex()).length()) {
+            updated.add(split(pieces.get(end.pieceIndex()), end, false));
+        }
+        for (int index = end.pieceIndex() + 1; index < pieces.size(); index++) {
+            updated.add(pieces.get(index));
+        }
+        undo.push(pieces);
+        while (undo.size() > MAX_UNDO_EDITS) {
+            undo.removeLast();
+        }
+        redo.clear();
+        pieces = List.copyOf(updated);
+    }
+
+    boolean canUndo() {
+        return !undo.isEmpty();
+    }
+
+    boolean canRedo() {
+        return !redo.isEmpty();
+    }
+
+    boolean undo() {
+        if (undo.isEmpty()) {
+            return false;
+        }
+        redo.push(pieces);
+        pieces = undo.pop();
+        return true;
+    }
+
+    boolean redo() {
+        if (redo.isEmpty()) {
+            return false;
+        }
+        undo.push(pieces);
+        pieces = redo.pop();
+        return true;
+    }
+
+    long writeTo(FileChannel output) throws IOException {
+        long written = 0L;
+        for (Piece piece : pieces) {
+            if (piece.added()) {
+                ByteBuffer bytes = ByteBuffer.wrap(added, (int) piece.start(), (int) piece.length());
+                while (bytes.hasRemaining()) {
+                    written += output.write(bytes);
+                }
+            } else {
+                written += store.transferRange(piece.start(), piece.length(), output);
+            }
+        }
+        return written;
+    }
+
+    private static Piece split(Piece piece, Position position, boolean left) {
+        long offset = position.offset();
+        if (left) {
+            return piece.added()
+                ? Piece.added(piece.start(), offset, position.breakInPiece())
+                : Piece.source(piece.start(), offset, piece.firstLine(), piece.firstLine() + position.breakInPiece());
+        }
+        return piece.added()
+            ? Piece.added(piece.start() + offset, piece.length() - offset, piece.lineBreaks() - position.breakInPiece())
+            : Piece.source(piece.start() + offset, piece.length() - offset, piece.firstLine() + position.breakInPiece(),
+                piece.firstLine() + piece.lineBreaks());
+    }
+
+    private static String decode(byte[] bytes, boolean truncated) throws IOException {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+        CharBuffer characters = CharBuffer.allocate(bytes.length);
+        ByteBuffer input = ByteBuffer.wrap(bytes);
+        try {
+            CoderResult result = decoder.decode(input, characters, !truncated);
+            if (result.isError()) {
+                result.throwException();
+            }
+        } catch (CharacterCodingException error) {
+            throw new IOException("large-file source is no longer valid UTF-8", error);
+        }
+        characters.flip();
+        return characters.toString();
+    }
+
+    private long append(byte[] bytes) {
+        if (addedLength + (long) bytes.length > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("large-file add buffer is full; save and reopen the file");
+        }
+        if (addedLength + bytes.length > added.length) {
+            added = Arrays.copyOf(added, Math.max(addedLength + bytes.length, Math.max(4096, added.length * 2)));
+        }
+        System.arraycopy(bytes, 0, added, addedLength, bytes.length);
+        long start = addedLength;
+        addedLength += bytes.length;
+        return start;
+    }
+
+    static long countLineBreaks(byte[] bytes, int from, int to) {
+        long breaks = 0L;
+        for (int index = from; index < to; index++) {
+            byte value = bytes[index];
+            if (value == '\n' || value == '\r' && (index + 1 >= to || bytes[index + 1] != '\n')) {
+                breaks++;
+            }
+        }
+        return breaks;
+    }
+
+    static final class Snapshot {
+        private final LargeFileStore store;
+        private final List<Piece> pieces;
+        private final byte[] added;
+
+        private Snapshot(LargeFileStore store, List<Piece> pieces, byte[] added) {
+            this.store = store;
+            this.pieces = pieces;
+            this.added = added;
+        }
+
+        boolean sameSequence(Snapshot other) {
+            return other != null && store == other.store && pieces == other.pieces;
+        }
+
+        // Line breaks inside the leading pieces both snapshots share; every line up to one past them is unchanged.
+        long sharedLineBreaks(Snapshot other) {
+            if (other == null || store != other.store) {
+                return 0L;
+            }
+            long breaks = 0L;
+            int shared = Math.min(pieces.size(), other.pieces.size());
+            for (int index = 0; index < shared; index++) {
+                Piece piece = pieces.get(index);
+                Piece candidate = other.pieces.get(index);
+                if (!piece.equals(candidate)) {
+                    // A piece trimmed by an edit still shares its leading bytes with the untrimmed one.
+                    if (piece.added() == candidate.added() && piece.start() == candidate.start()) {
+                        breaks += Math.min(piece.lineBreaks(), candidate.lineBreaks());
+                    }
+                    break;
+                }
+                breaks += piece.lineBreaks();
+            }
+            return breaks;
+        }
+
+        long byteLength() {
+            long length = 0L;
+            for (Piece piece : pieces) {
+                length += piece.length();
+            }
+            return length;
+        }
+
+        long lineCount() {
+            long breaks = 0L;
+            for (Piece piece : pieces) {
+                breaks += piece.lineBreaks();
+            }
+            return pieces.isEmpty() ? 0L : breaks + 1L;
+        }
+
+        long lineOffset(long line) throws IOException {
+            return locateLine(line).byteOffset();
+        }
+
+        // Fills up to length bytes from the edited sequence and returns how many were available.
+        int read(long position, byte[] target, int length) throws IOException {
+            int copied = 0;
+            long pieceStart = 0L;
+            for (Piece piece : pieces) {
+                if (copied >= length) {
+                    break;
+                }
+                long pieceEnd = pieceStart + piece.length();
+                if (pieceEnd > position + copied) {
+                    long from = position + copied - pieceStart;
+                    int count = (int) Math.min(length - copied, piece.length() - from);
+                    if (piece.added()) {
+                        System.arraycopy(added, (int) (piece.start() + from), target, copied, count);
+                    } else {
+                        store.readRange(piece.start() + from, ByteBuffer.wrap(target, copied, count));
+                    }
+                    copied += count;
+                }
+                pieceStart = pieceEnd;
+            }
+            return copied;
+        }
+
+        private Position locateLine(long line) throws IOException {
+            long breaksBefore = Math.max(0L, line - 1L);
+            if (breaksBefore == 0L) {
+                return new Position(0, 0L, 0L, 0L);
+            }
+            long byteOffset = 0L;
+            long breaks = 0L;
+            for (int index = 0; index < pieces.size(); index++) {
+                Piece piece = pieces.get(index);
+                if (breaks + piece.lineBreaks() >= breaksBefore) {
+                    long breakInPiece = breaksBefore - breaks;
+                    long offset = breakOffset(piece, breakInPiece);
+                    return new Position(index, offset, breakInPiece, byteOffset + offset);
+                }
+                breaks += piece.lineBreaks();
+                byteOffset += piece.length();
+            }
+            return new Position(pieces.size(), 0L, 0L, byteOffset);
+        }
+
+        private long breakOffset(Piece piece, long breakInPiece) throws IOException {
+            if (!piece.added()) {
+                return store.lineOffset(piece.firstLine() + breakInPiece) - piece.start();
+            }
+            long breaks = 0L;
+            int end = (int) (piece.start() + piece.length());
+            for (int index = (int) piece.start(); index < end; index++) {
+                byte value = added[index];
+                if (value == '\r' && index + 1 < end && added[index + 1] == '\n') {
+                    continue;
+                }
+                if ((value == '\r' || value == '\n') && ++breaks == breakInPiece) {
+                    return index + 1L - piece.start();
+                }
+            }
+            return piece.length();
+        }
+    }
+
+    private record Position(int pieceIndex, long offset, long breakInPiece, long byteOffset) {
+    }
+
+    private record Piece(boolean added, long start, long length, long firstLine, long lineBreaks) {
+        static Piece source(long start, long length, long firstLine, long endLine) {
+            return new Piece(false, start, length, firstLine, endLine - firstLine);
+        }
+
+        static Piece added(long start, long length, long lineBreaks) {
+            return new Piece(true, start, length, 0L, lineBreaks);
+        }
+    }
+}
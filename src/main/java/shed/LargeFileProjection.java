@@ -47,6 +47,12 @@ final class LargeFileProjection {
         return true;
     }
 
+    void centerOn(long line, int visibleLines) throws IOException {
+        int lines = Math.max(MINIMUM_WINDOW_LINES, visibleLines + MARGIN_LINES * 2);
+        firstLine = Math.max(1L, line - lines / 2);
+        render(visibleLines);
+    }
+
     boolean ensureCaretMargin(int localLine, int localLineCount, int visibleLines) throws IOException {
         if (rendering || localLineCount <= 0) {
             return false;
@@ -0,0 +1,158 @@
+package shed;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+// Streams matches out of a large-file snapshot line by line without holding more than one page and one line.
+final class LargeFileSearch {
+    static final int MAX_MATCHES = 10_000;
+
+    private LargeFileSearch() {
+    }
+
+    interface Sink {
+        void accept(Match match);
+    }
+
+    // Scans from just after the given position to the end, then wraps from line 1 back to it.
+    static Summary scan(LargeFilePieceTable.Snapshot snapshot, Query query, long fromLine, int fromColumn,
+                        BooleanSupplier cancelled, Sink sink) throws IOException {
+        if (snapshot == null || query == null || sink == null) {
+            throw new IllegalArgumentException("large-file search requires a snapshot, query, and sink");
+        }
+        long lineCount = snapshot.lineCount();
+        if (lineCount == 0L) {
+            return new Summary(0, true);
+        }
+        long startLine = Math.max(1L, Math.min(fromLine, lineCount));
+        Scanner scanner = new Scanner(snapshot, query, cancelled, sink);
+        scanner.run(snapshot.lineOffset(startLine), snapshot.byteLength(), startLine, startLine, fromColumn, false);
+        scanner.run(0L, snapshot.lineOffset(startLine + 1L), 1L, startLine, fromColumn, true);
+        return new Summary(scanner.matches, !scanner.stopped());
+    }
+
+    static int indexOf(byte[] bytes, int from, int to, byte[] needle) {
+        if (needle.length == 0) {
+            return -1;
+        }
+        byte first = needle[0];
+        int last = to - needle.length;
+        for (int index = from; index <= last; index++) {
+            if (bytes[index] != first) {
+                continue;
+            }
+            int matched = 1;
+            while (matched < needle.length && bytes[index + matched] == needle[matched]) {
+                matched++;
+            }
+            if (matched == needle.length) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    record Query(String text, Pattern pattern, byte[] literal) {
+        static Query of(String text) {
+            if (text == null || text.isEmpty()) {
+                throw new IllegalArgumentException("search pattern is empty");
+            }
+            if (SearchManager.containsRegexMeta(text)) {
+                try {
+                    return new Query(text, Pattern.compile(text), null);
+                } catch (PatternSyntaxException ignored) {
+                    // Same fallback as the in-memory search: an invalid regex is matched literally.
+                }
+            }
+            return new Query(text, null, text.getBytes(StandardCharsets.UTF_8));
+        }
+
+        boolean regex() {
+            return pattern != null;
+        }
+    }
+
+    // Column and length count UTF-16 chars within the line, matching the projected document.
+    record Match(long line, int column, int length, boolean wrapped) {
+    }
+
+    record Summary(int matches, boolean complete) {
+    }
+
+    private static final class Scanner {
+        private final LargeFileLineReader reader;
+        private final Query query;
+        private final BooleanSupplier cancelled;
+        private final Sink sink;
+        private int matches;
+        private boolean capped;
+        private boolean interrupted;
+
+        Scanner(LargeFilePieceTable.Snapshot snapshot, Query query, BooleanSupplier cancelled, Sink sink) {
+            this.reader = new LargeFileLineReader(snapshot);
+            this.query = query;
+            this.cancelled = cancelled == null ? () -> false : cancelled;
+            this.sink = sink;
+        }
+
+        boolean stopped() {
+            return capped || interrupted;
+        }
+
+        void run(long start, long end, long firstLine, long boundaryLine, int boundaryColumn, boolean wrapped) throws IOException {
+            if (stopped()) {
+                return;
+            }
+            boolean finished = reader.read(start, end, firstLine, cancelled, (line, bytes, length, charsBefore) ->
+                searchLine(line, bytes, length, charsBefore, boundaryLine, boundaryColumn, wrapped));
+            interrupted = !finished && !capped;
+        }
+
+        // Matches spanning the cut between chunks of an overlong line are missed.
+        private boolean searchLine(long line, byte[] bytes, int lineLength, int charsBefore, long boundaryLine, int boundaryColumn,
+                                   boolean wrapped) throws IOException {
+            if (query.regex()) {
+                Matcher matcher = query.pattern().matcher(LargeFileLineReader.decode(bytes, lineLength));
+                while (matcher.find()) {
+                    if (!emit(line, charsBefore + matcher.start(), matcher.end() - matcher.start(), boundaryLine, boundaryColumn, wrapped)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            byte[] literal = query.literal();
+            int length = query.text().length();
+            int from = 0;
+            int columnBytes = 0;
+            int column = charsBefore;
+            int found;
+            while ((found = indexOf(bytes, from, lineLength, literal)) >= 0) {
+                column += LargeFileLineReader.charCount(bytes, columnBytes, found);
+                columnBytes = found;
+                if (!emit(line, column, length, boundaryLine, boundaryColumn, wrapped)) {
+                    return false;
+                }
+                from = found + literal.length;
+            }
+            return true;
+        }
+
+        // The first pass skips matches at or before the boundary on its line; the wrapped pass keeps only those.
+        private boolean emit(long line, int column, int length, long boundaryLine, int boundaryColumn, boolean wrapped) {
+            if (line == boundaryLine && (column > boundaryColumn) == wrapped) {
+                return true;
+            }
+            if (matches >= MAX_MATCHES) {
+                capped = true;
+                return false;
+            }
+            matches++;
+            sink.accept(new Match(line, column, length, wrapped));
+            return true;
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package shed;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+import javax.swing.text.BadLocationException;
+
+// Runs / and ? over the whole large file in the background and walks the streamed hits with n and N.
+final class LargeFileSearchController {
+    static final int STREAM_BATCH = 256;
+
+    private final Texteditor editor;
+    private Session session;
+    private int jobId = -1;
+
+    LargeFileSearchController(Texteditor editor) {
+        this.editor = editor;
+    }
+
+    boolean handles(FileBuffer buffer) {
+        return buffer != null && buffer.isLargeFile() && !buffer.isLargeFileUnavailable();
+    }
+
+    String search(String pattern, boolean forward) {
+        FileBuffer buffer = editor.getCurrentBuffer();
+        EditorPane pane = editor.getActivePane();
+        if (!handles(buffer) || pane == null || pane.getLargeFileProjection() == null) {
+            return "Large-file search is unavailable";
+        }
+        if (pattern == null || pattern.isEmpty()) {
+            return "Error: Empty search pattern";
+        }
+        LargeFilePieceTable.Snapshot snapshot;
+        try {
+            snapshot = snapshot(buffer);
+        } catch (IOException | IllegalStateException error) {
+            return "Large-file search failed: " + error.getMessage();
+        }
+        cancel();
+        JTextArea area = pane.getTextArea();
+        long line;
+        int column;
+        try {
+            int localLine = area.getLineOfOffset(area.getCaretPosition());
+            line = pane.getLargeFileProjection().firstLine() + localLine;
+            column = area.getCaretPosition() - area.getLineStartOffset(localLine);
+        } catch (BadLocationException error) {
+            line = pane.getLargeFileProjection().firstLine();
+            column = 0;
+        }
+        Session started = new Session(buffer, snapshot, LargeFileSearch.Query.of(pattern), forward);
+        session = started;
+        // Matches at the caret count as ahead of it, as in the in-memory search.
+        long fromLine = line;
+        int fromColumn = column - 1;
+        jobId = editor.asyncJobService.submit("Large-file search", token -> {
+            List<LargeFileSearch.Match> pending = new ArrayList<>();
+            int[] published = {0};
+            LargeFileSearch.Summary summary = LargeFileSearch.scan(snapshot, started.query, fromLine, fromColumn,
+                token::isCancelled, match -> {
+                    pending.add(match);
+                    if (pending.size() >= STREAM_BATCH || published[0] == 0) {
+                        List<LargeFileSearch.Match> batch = List.copyOf(pending);
+                        pending.clear();
+                        published[0] += batch.size();
+                        SwingUtilities.invokeLater(() -> receive(started, batch));
+                    }
+                });
+            return new ScanResult(summary, List.copyOf(pending));
+        }, (job, result, error) -> finish(started, job, result, error));
+        return "Searching " + buffer.getDisplayName() + " for " + pattern + "...";
+    }
+
+    String nextMatch() {
+        return step(true);
+    }
+
+    String prevMatch() {
+        return step(false);
+    }
+
+    void cancel() {
+        if (jobId >= 0) {
+            editor.asyncJobService.cancel(jobId);
+            jobId = -1;
+        }
+    }
+
+    private String step(boolean forward) {
+        Session current = session;
+        FileBuffer buffer = editor.getCurrentBuffer();
+        if (current == null || current.buffer != buffer) {
+            return "No search pattern";
+        }
+        try {
+            if (!current.snapshot.sameSequence(snapshot(buffer))) {
+                // The text changed under the stored hits, so search again from the caret.
+                return search(current.query.text(), forward);
+            }
+        } catch (IOException | IllegalStateException error) {
+            return "Large-file search failed: " + error.getMessage();
+        }
+        if (current.matches.isEmpty()) {
+            return current.complete ? "Pattern not found: " + current.query.text() : "Searching...";
+        }
+        int next = current.index + (forward ? 1 : -1);
+        boolean wrapped = false;
+        if (next >= current.matches.size() || next < 0) {
+            if (!current.complete) {
+                return "Still searching; " + current.matches.size() + " matches so far";
+            }
+            next = next < 0 ? current.matches.size() - 1 : 0;
+            wrapped = current.matches.size() > 1;
+        }
+        return jump(current, next, wrapped);
+    }
+
+    private void receive(Session started, List<LargeFileSearch.Match> batch) {
+        if (started != session) {
+            return;
+        }
+        boolean first = started.matches.isEmpty();
+        started.matches.addAll(batch);
+        if (first && started.forward && !batch.isEmpty()) {
+            editor.showMessage(jump(started, 0, batch.get(0).wrapped()));
+        }
+    }
+
+    private void finish(Session started, AsyncJobService.JobSnapshot job, ScanResult result, Exception error) {
+        if (started != session) {
+            return;
+        }
+        jobId = -1;
+        if (error != null || job == null || job.getStatus() != AsyncJobService.Status.SUCCEEDED || result == null) {
+            if (job == null || job.getStatus() != AsyncJobService.Status.CANCELLED) {
+                editor.showMessage("Large-file search failed: " + (error == null ? "no result" : error.getMessage()));
+            }
+            return;
+        }
+        receive(started, result.tail());
+        started.complete = true;
+        started.capped = !result.summary().complete();
+        if (started.matches.isEmpty()) {
+            editor.showMessage("Pattern not found: " + started.query.text());
+        } else if (!started.forward && started.index < 0) {
+            int last = started.matches.size() - 1;
+            editor.showMessage(jump(started, last, !started.matches.get(last).wrapped()));
+        } else {
+            editor.showMessage(message(started, false));
+        }
+    }
+
+    private String jump(Session current, int index, boolean wrapped) {
+        current.index = index;
+        LargeFileSearch.Match match = current.matches.get(index);
+        EditorPane pane = editor.getActivePane();
+        if (editor.getCurrentBuffer() != current.buffer || !editor.paneBufferController.revealLargeFileLine(pane, match.line(), match.column())) {
+            return message(current, wrapped);
+        }
+        // Paint the hits that fall inside the freshly projected window.
+        editor.searchManager.searchForward(current.query.text());
+        return message(current, wrapped) + " (line " + match.line() + ")";
+    }
+
+    private LargeFilePieceTable.Snapshot snapshot(FileBuffer buffer) throws IOException {
+        LargeFilePieceTable.Snapshot[] snapshot = new LargeFilePieceTable.Snapshot[1];
+        editor.paneBufferController.withSuppressedDocumentEvents(() -> {
+            try {
+                snapshot[0] = buffer.largeFileSnapshot();
+            } catch (IOException error) {
+                throw new IllegalStateException(error.getMessage(), error);
+            }
+        });
+        return snapshot[0];
+    }
+
+    private static String message(Session current, boolean wrapped) {
+        String total = current.matches.size() + (current.capped ? "+" : "") + (current.complete ? "" : "+ so far");
+        String base = "Match " + (current.index + 1) + " of " + total;
+        return wrapped ? base + " (wrapped)" : base;
+    }
+
+    private static final class Session {
+        private final FileBuffer buffer;
+        private final LargeFilePieceTable.Snapshot snapshot;
+        private final LargeFileSearch.Query query;
+        private final boolean forward;
+        private final List<LargeFileSearch.Match> matches = new ArrayList<>();
+        private int index = -1;
+        private boolean complete;
+        private boolean capped;
+
+        Session(FileBuffer buffer, LargeFilePieceTable.Snapshot snapshot, LargeFileSearch.Query query, boolean forward) {
+            this.buffer = buffer;
+            this.snapshot = snapshot;
+            this.query = query;
+            this.forward = forward;
+        }
+    }
+
+    private record ScanResult(LargeFileSearch.Summary summary, List<LargeFileSearch.Match> tail) {
+    }
+}
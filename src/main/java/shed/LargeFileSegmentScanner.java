@@ -0,0 +1,271 @@
+package shed;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// Indexes a large source from memory-mapped segments scanned in parallel, eight bytes at a time.
+final class LargeFileSegmentScanner {
+    static final long MIN_SOURCE_BYTES = 64L * 1024L * 1024L;
+    static final int SEGMENT_BYTES = 32 * 1024 * 1024;
+
+    private static final long LOW_BITS = 0x7f7f7f7f7f7f7f7fL;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final long LINE_FEEDS = 0x0a0a0a0a0a0a0a0aL;
+    private static final long CARRIAGE_RETURNS = 0x0d0d0d0d0d0d0d0dL;
+    private static final long LAST_BYTE_HIGH_BIT = 0x8000000000000000L;
+
+    private LargeFileSegmentScanner() {
+    }
+
+    static Result scan(FileChannel channel, long byteSize) throws IOException {
+        return scan(channel, byteSize, SEGMENT_BYTES);
+    }
+
+    static Result scan(FileChannel channel, long byteSize, int segmentBytes) throws IOException {
+        if (segmentBytes < Long.BYTES) {
+            throw new IllegalArgumentException("segment must hold at least one word");
+        }
+        List<Callable<Segment>> counts = new ArrayList<>();
+        for (Range range : split(channel, byteSize, segmentBytes)) {
+            counts.add(() -> range.count(channel));
+        }
+        List<Segment> segments = invokeAll(counts);
+
+        // Segment start lines follow from the merged counts; a CR ending one segment resolves against the next one.
+        List<Callable<long[]>> placements = new ArrayList<>(segments.size());
+        long line = 1L;
+        boolean crLf = false;
+        boolean carriageReturn = false;
+        for (int index = 0; index < segments.size(); index++) {
+            Segment segment = segments.get(index);
+            boolean pendingCarriageReturn = index > 0 && segments.get(index - 1).lastByte() == '\r';
+            long startLine = line;
+            placements.add(() -> segment.checkpoints(startLine, pendingCarriageReturn));
+            if (pendingCarriageReturn && segment.firstByte() != '\n') {
+                line++;
+            }
+            crLf |= segment.crLf() || pendingCarriageReturn && segment.firstByte() == '\n';
+            carriageReturn |= segment.carriageReturn();
+            line += segment.lineBreaks();
+        }
+        boolean trailingCarriageReturn = !segments.isEmpty() && segments.get(segments.size() - 1).lastByte() == '\r';
+        long lineBreaks = line - 1L + (trailingCarriageReturn ? 1L : 0L);
+
+        List<long[]> placed = invokeAll(placements);
+        boolean trailingCheckpoint = trailingCarriageReturn && lineBreaks % LargeFileStore.CHECKPOINT_LINES == 0L;
+        int checkpointCount = 1 + (trailingCheckpoint ? 1 : 0);
+        for (long[] offsets : placed) {
+            checkpointCount += offsets.length;
+        }
+        long[] checkpoints = new long[checkpointCount];
+        int next = 1;
+        for (long[] offsets : placed) {
+            System.arraycopy(offsets, 0, checkpoints, next, offsets.length);
+            next += offsets.length;
+        }
+        if (trailingCheckpoint) {
+            checkpoints[next] = byteSize;
+        }
+        boolean hasContent = byteSize > (startsWithByteOrderMark(channel, byteSize) ? 3L : 0L);
+        String lineEnding = crLf ? "\r\n" : carriageReturn ? "\r" : "\n";
+        return new Result(hasContent ? lineBreaks + 1L : 0L, lineEnding, checkpoints);
+    }
+
+    private static List<Range> split(FileChannel channel, long byteSize, int segmentBytes) throws IOException {
+        List<Range> ranges = new ArrayList<>();
+        ByteBuffer probe = ByteBuffer.allocate(3);
+        long start = 0L;
+        while (start < byteSize) {
+            long end = Math.min(byteSize, start + segmentBytes);
+            if (end < byteSize) {
+                // Cut before a UTF-8 lead byte so every segment validates on its own.
+                probe.clear();
+                channel.read(probe, end);
+                for (int index = 0; index < probe.position() && (probe.get(index) & 0xc0) == 0x80; index++) {
+                    end++;
+                }
+            }
+            ranges.add(new Range(start, end));
+            start = end;
+        }
+        return ranges;
+    }
+
+    private static boolean startsWithByteOrderMark(FileChannel channel, long byteSize) throws IOException {
+        if (byteSize < 3L) {
+            return false;
+        }
+        ByteBuffer head = ByteBuffer.allocate(3);
+        while (head.hasRemaining() && channel.read(head, head.position()) >= 0) {
+            // Positional reads may return short counts.
+        }
+        return (head.get(0) & 0xff) == 0xef && (head.get(1) & 0xff) == 0xbb && (head.get(2) & 0xff) == 0xbf;
+    }
+
+    private static <T> List<T> invokeAll(List<Callable<T>> tasks) throws IOException {
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            for (Future<T> future : ForkJoinPool.commonPool().invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+            throw new IOException("large-file indexing was interrupted", error);
+        } catch (ExecutionException error) {
+            // Fork/join may rewrap a worker's exception, so report the first I/O cause it carries.
+            for (Throwable cause = error.getCause(); cause != null; cause = cause.getCause()) {
+                if (cause instanceof IOException io) {
+                    throw io;
+                }
+            }
+            throw new IOException("large-file indexing failed", error.getCause());
+        }
+        return results;
+    }
+
+    static long matches(long word, long pattern) {
+        long difference = word ^ pattern;
+        return ~(((difference & LOW_BITS) + LOW_BITS) | difference | LOW_BITS);
+    }
+
+    // High bit per byte that ends a line: every LF, and every CR whose following byte is not LF.
+    static long lineBreakMask(long word, boolean nextIsLineFeed) {
+        long lineFeeds = matches(word, LINE_FEEDS);
+        long followedByLineFeed = (lineFeeds >>> 8) | (nextIsLineFeed ? LAST_BYTE_HIGH_BIT : 0L);
+        return lineFeeds | (matches(word, CARRIAGE_RETURNS) & ~followedByLineFeed);
+    }
+
+    record Result(long lineCount, String lineEnding, long[] checkpointOffsets) {
+    }
+
+    private record Range(long start, long end) {
+        Segment count(FileChannel channel) throws IOException {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            ByteBuffer view = mapped.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            int length = view.limit();
+            int wordBytes = length - length % Long.BYTES;
+            long breaks = 0L;
+            long highBits = 0L;
+            boolean pairs = false;
+            boolean returns = false;
+            for (int offset = 0; offset < wordBytes; offset += Long.BYTES) {
+                long value = view.getLong(offset);
+                highBits |= value;
+                long carriageReturns = matches(value, CARRIAGE_RETURNS);
+                if (carriageReturns == 0L) {
+                    breaks += Long.bitCount(matches(value, LINE_FEEDS));
+                    continue;
+                }
+                returns = true;
+                boolean inside = offset + Long.BYTES < length;
+                boolean nextIsLineFeed = inside && view.get(offset + Long.BYTES) == '\n';
+                long followedByLineFeed = (matches(value, LINE_FEEDS) >>> 8) | (nextIsLineFeed ? LAST_BYTE_HIGH_BIT : 0L);
+                pairs |= (carriageReturns & followedByLineFeed) != 0L;
+                // A CR in the last byte of the segment stays pending until the next segment's first byte is known.
+                breaks += Long.bitCount(lineBreakMask(value, nextIsLineFeed || !inside));
+            }
+            for (int index = wordBytes; index < length; index++) {
+                byte value = view.get(index);
+                highBits |= value;
+                if (value == '\n') {
+                    breaks++;
+                } else if (value == '\r') {
+                    returns = true;
+                    if (index + 1 < length) {
+                        if (view.get(index + 1) == '\n') {
+                            pairs = true;
+                        } else {
+                            breaks++;
+                        }
+                    }
+                }
+            }
+            if ((highBits & HIGH_BITS) != 0L) {
+                validate(mapped);
+            }
+            return new Segment(start, mapped, view.get(0), view.get(length - 1), breaks, pairs, returns);
+        }
+
+        private static void validate(ByteBuffer segment) throws CharacterCodingException {
+            CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+            ByteBuffer input = segment.duplicate();
+            CharBuffer scratch = CharBuffer.allocate(LargeFileStore.PAGE_BYTES);
+            CoderResult result;
+            do {
+                result = decoder.decode(input, scratch, true);
+                if (result.isError()) {
+                    result.throwException();
+                }
+                scratch.clear();
+            } while (result.isOverflow());
+            do {
+                result = decoder.flush(scratch);
+                scratch.clear();
+            } while (result.isOverflow());
+        }
+    }
+
+    private record Segment(long start, MappedByteBuffer bytes, byte firstByte, byte lastByte, long lineBreaks, boolean crLf,
+                           boolean carriageReturn) {
+        long[] checkpoints(long startLine, boolean pendingCarriageReturn) {
+            ByteBuffer view = bytes.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            int length = view.limit();
+            int wordBytes = length - length % Long.BYTES;
+            long line = startLine;
+            long nextCheckpoint = line + LargeFileStore.CHECKPOINT_LINES - (line - 1L) % LargeFileStore.CHECKPOINT_LINES;
+            List<Long> offsets = new ArrayList<>();
+            if (pendingCarriageReturn && firstByte != '\n' && ++line == nextCheckpoint) {
+                offsets.add(start);
+                nextCheckpoint += LargeFileStore.CHECKPOINT_LINES;
+            }
+            for (int offset = 0; offset < wordBytes; offset += Long.BYTES) {
+                long value = view.getLong(offset);
+                boolean inside = offset + Long.BYTES < length;
+                long breaks = lineBreakMask(value, !inside || view.get(offset + Long.BYTES) == '\n');
+                int count = Long.bitCount(breaks);
+                if (line + count < nextCheckpoint) {
+                    line += count;
+                    continue;
+                }
+                while (breaks != 0L) {
+                    int bit = Long.numberOfTrailingZeros(breaks);
+                    breaks &= breaks - 1L;
+                    if (++line == nextCheckpoint) {
+                        offsets.add(start + offset + bit / 8 + 1L);
+                        nextCheckpoint += LargeFileStore.CHECKPOINT_LINES;
+                    }
+                }
+            }
+            for (int index = wordBytes; index < length; index++) {
+                byte value = view.get(index);
+                boolean lineBreak = value == '\n' || value == '\r' && index + 1 < length && view.get(index + 1) != '\n';
+                if (lineBreak && ++line == nextCheckpoint) {
+                    offsets.add(start + index + 1L);
+                    nextCheckpoint += LargeFileStore.CHECKPOINT_LINES;
+                }
+            }
+            long[] result = new long[offsets.size()];
+            for (int index = 0; index < result.length; index++) {
+                result[index] = offsets.get(index);
+            }
+            return result;
+        }
+    }
+}
@@ -77,6 +77,10 @@ final class LargeFileStore {
     }
 
     static OpenResult open(Path input, int previewLines) {
+        return open(input, previewLines, null);
+    }
+
+    static OpenResult open(Path input, int previewLines, LargeFileIndexCache indexCache) {
         if (previewLines < 1) {
             return OpenResult.failure("preview line limit must be positive");
         }
@@ -86,13 +90,35 @@ final class LargeFileStore {
             if (!attributes.isRegularFile() || attributes.isSymbolicLink()) {
                 return OpenResult.failure("large-file path requires a regular non-symlink file");
             }
+            LargeFileIndexCache.Entry cached = indexCache == null ? null : indexCache.load(source, attributes);
+            if (cached != null) {
+                return OpenResult.success(fromIndex(source, attributes.size(), previewLines, cached));
+            }
+            if (attributes.size() >= LargeFileSegmentScanner.MIN_SOURCE_BYTES) {
+                LargeFileSegmentScanner.Result segmented;
+                try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+                    segmented = LargeFileSegmentScanner.scan(channel, attributes.size());
+                }
+                LargeFileIndexCache.Entry entry = new LargeFileIndexCache.Entry(segmented.lineCount(), segmented.lineEnding(),
+                    segmented.checkpointOffsets());
+                if (indexCache != null) {
+                    indexCache.store(source, attributes, entry);
+                }
+                return OpenResult.success(fromIndex(source, attributes.size(), previewLines, entry));
+            }
             Scan scan;
             try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
                 scan = scan(channel, previewLines);
             }
-            List<Checkpoint> checkpoints = buildCheckpoints(source);
+            if (indexCache != null) {
+                long[] offsets = new long[scan.checkpoints().size()];
+                for (int index = 0; index < offsets.length; index++) {
+                    offsets[index] = scan.checkpoints().get(index).byteOffset();
+                }
+                indexCache.store(source, attributes, new LargeFileIndexCache.Entry(scan.lineCount(), scan.lineEnding(), offsets));
+            }
             return OpenResult.success(new LargeFileStore(source, attributes.size(), scan.lineCount(), scan.preview(),
-                scan.previewTruncated(), scan.lineEnding(), checkpoints));
+                scan.previewTruncated(), scan.lineEnding(), scan.checkpoints()));
         } catch (CharacterCodingException error) {
             return OpenResult.failure("large-file path requires well-formed UTF-8");
         } catch (IOException | SecurityException error) {
@@ -101,6 +127,7 @@ final class LargeFileStore {
         }
     }
 
+    // One pass validates UTF-8, fills the preview, and records checkpoints from the raw bytes before decoding.
     private static Scan scan(FileChannel channel, int previewLines) throws IOException {
         CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
             .onMalformedInput(CodingErrorAction.REPORT)
@@ -108,63 +135,34 @@ final class LargeFileStore {
         ByteBuffer bytes = ByteBuffer.allocate(PAGE_BYTES + 4);
         CharBuffer characters = CharBuffer.allocate(PAGE_BYTES);
         ScanBuilder builder = new ScanBuilder(previewLines);
+        CheckpointBuilder checkpoints = new CheckpointBuilder();
         boolean endOfInput = false;
         while (!endOfInput) {
+            int start = bytes.position();
             int read = channel.read(bytes);
             endOfInput = read < 0;
+            for (int index = start; index < bytes.position(); index++) {
+                checkpoints.accept(bytes.get(index));
+            }
             bytes.flip();
             decode(decoder, bytes, characters, endOfInput, builder);
             bytes.compact();
         }
         flush(decoder, characters, builder);
-        return builder.build();
+        return builder.build(checkpoints.finish());
     }
 
-    private static List<Checkpoint> buildCheckpoints(Path source) throws IOException {
-        List<Checkpoint> checkpoints = new ArrayList<>();
-        checkpoints.add(new Checkpoint(1L, 0L));
-        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
-            ByteBuffer page = ByteBuffer.allocate(PAGE_BYTES);
-            long byteOffset = 0L;
-            long line = 1L;
-            boolean pendingCarriageReturn = false;
-            while (channel.read(page) >= 0) {
-                page.flip();
-                while (page.hasRemaining()) {
-                    byte value = page.get();
-                    byteOffset++;
-                    if (pendingCarriageReturn) {
-                        if (value == '\n') {
-                            line++;
-                            addCheckpoint(checkpoints, line, byteOffset);
-                            pendingCarriageReturn = false;
-                            continue;
-                        }
-                        line++;
-                        addCheckpoint(checkpoints, line, byteOffset - 1L);
-                        pendingCarriageReturn = false;
-                    }
-                    if (value == '\r') {
-                        pendingCarriageReturn = true;
-                    } else if (value == '\n') {
-                        line++;
-                        addCheckpoint(checkpoints, line, byteOffset);
-                    }
-                }
-                page.clear();
-            }
-            if (pendingCarriageReturn) {
-                line++;
-                addCheckpoint(checkpoints, line, byteOffset);
-            }
-        }
-        return checkpoints;
-    }
-
-    private static void addCheckpoint(List<Checkpoint> checkpoints, long line, long byteOffset) {
-        if ((line - 1L) % CHECKPOINT_LINES == 0L) {
-            checkpoints.add(new Checkpoint(line, byteOffset));
+    private static LargeFileStore fromIndex(Path source, long byteSize, int previewLines, LargeFileIndexCache.Entry entry)
+        throws IOException {
+        List<Checkpoint> checkpoints = new ArrayList<>(entry.checkpointOffsets().length);
+        for (int index = 0; index < entry.checkpointOffsets().length; index++) {
+            checkpoints.add(new Checkpoint(1L + (long) index * CHECKPOINT_LINES, entry.checkpointOffsets()[index]));
         }
+        LargeFileStore indexed = new LargeFileStore(source, byteSize, entry.lineCount(), "", false, entry.lineEnding(), checkpoints);
+        Window window = indexed.readWindow(1L, previewLines);
+        String preview = window.content().startsWith("\ufeff") ? window.content().substring(1) : window.content();
+        boolean truncated = window.truncated() || indexed.lineOffset(previewLines + 1L) < byteSize;
+        return new LargeFileStore(source, byteSize, entry.lineCount(), preview, truncated, entry.lineEnding(), checkpoints);
     }
 
     private static void decode(CharsetDecoder decoder, ByteBuffer bytes, CharBuffer characters, boolean endOfInput,
@@ -273,6 +271,73 @@ final class LargeFileStore {
         return new Window(firstLine, builder.content(), builder.truncated());
     }
 
+    long lineOffset(long line) throws IOException {
+        if (line <= 1L || lineCount == 0L) {
+            return 0L;
+        }
+        if (line > lineCount) {
+            return byteSize;
+        }
+        Checkpoint checkpoint = checkpoints.get(Math.min(checkpoints.size() - 1, (int) ((line - 1L) / CHECKPOINT_LINES)));
+        if (checkpoint.line() == line) {
+            return checkpoint.byteOffset();
+        }
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            channel.position(checkpoint.byteOffset());
+            ByteBuffer page = ByteBuffer.allocate(PAGE_BYTES);
+            long byteOffset = checkpoint.byteOffset();
+            long currentLine = checkpoint.line();
+            boolean pendingCarriageReturn = false;
+            while (channel.read(page) >= 0) {
+                page.flip();
+                while (page.hasRemaining()) {
+                    byte value = page.get();
+                    if (pendingCarriageReturn) {
+                        pendingCarriageReturn = false;
+                        if (value != '\n' && ++currentLine == line) {
+                            return byteOffset;
+                        }
+                    }
+                    byteOffset++;
+                    if (value == '\r') {
+                        pendingCarriageReturn = true;
+                    } else if (value == '\n' && ++currentLine == line) {
+                        return byteOffset;
+                    }
+                }
+                page.clear();
+            }
+        }
+        return byteSize;
+    }
+
+    void readRange(long byteOffset, ByteBuffer target) throws IOException {
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            long position = byteOffset;
+            while (target.hasRemaining()) {
+                int read = channel.read(target, position);
+                if (read < 0) {
+                    throw new IOException("large-file source ended before offset " + position);
+                }
+                position += read;
+            }
+        }
+    }
+
+    long transferRange(long byteOffset, long length, FileChannel output) throws IOException {
+        long written = 0L;
+        try (FileChannel input = FileChannel.open(source, StandardOpenOption.READ)) {
+            while (written < length) {
+                long transferred = input.transferTo(byteOffset + written, length - written, output);
+                if (transferred <= 0L) {
+                    throw new IOException("large-file source ended before offset " + (byteOffset + written));
+                }
+                written += transferred;
+            }
+        }
+        return written;
+    }
+
     long writeTo(FileChannel output) throws IOException {
         long written = 0L;
         ByteBuffer page = ByteBuffer.allocate(PAGE_BYTES);
@@ -302,7 +367,7 @@ final class LargeFileStore {
         }
     }
 
-    private record Scan(long lineCount, String preview, boolean previewTruncated, String lineEnding) {
+    private record Scan(long lineCount, String preview, boolean previewTruncated, String lineEnding, List<Checkpoint> checkpoints) {
     }
 
     record Window(long firstLine, String content, boolean truncated) {
@@ -334,7 +399,8 @@ final class LargeFileStore {
                 }
             }
             hasContent = true;
-            long currentLine = lineBreaks + 1L;
+            // The LF of a CRLF pair belongs to the line its CR ended.
+            long currentLine = value == '\n' && previousCarriageReturn ? lineBreaks : lineBreaks + 1L;
             if (currentLine <= previewLines && preview.length() < MAX_PREVIEW_CHARS) {
                 preview.append(value);
             } else {
@@ -358,8 +424,51 @@ final class LargeFileStore {
             }
         }
 
-        private Scan build() {
-            return new Scan(hasContent ? lineBreaks + 1L : 0L, preview.toString(), previewTruncated, lineEnding);
+        private Scan build(List<Checkpoint> checkpoints) {
+            return new Scan(hasContent ? lineBreaks + 1L : 0L, preview.toString(), previewTruncated, lineEnding, checkpoints);
+        }
+    }
+
+    private static final class CheckpointBuilder {
+        private final List<Checkpoint> checkpoints = new ArrayList<>();
+        private long byteOffset;
+        private long line = 1L;
+        private boolean pendingCarriageReturn;
+
+        private CheckpointBuilder() {
+            checkpoints.add(new Checkpoint(1L, 0L));
+        }
+
+        private void accept(byte value) {
+            byteOffset++;
+            if (pendingCarriageReturn) {
+                pendingCarriageReturn = false;
+                if (value == '\n') {
+                    lineStarted(byteOffset);
+                    return;
+                }
+                lineStarted(byteOffset - 1L);
+            }
+            if (value == '\r') {
+                pendingCarriageReturn = true;
+            } else if (value == '\n') {
+                lineStarted(byteOffset);
+            }
+        }
+
+        private void lineStarted(long offset) {
+            line++;
+            if ((line - 1L) % CHECKPOINT_LINES == 0L) {
+                checkpoints.add(new Checkpoint(line, offset));
+            }
+        }
+
+        private List<Checkpoint> finish() {
+            if (pendingCarriageReturn) {
+                pendingCarriageReturn = false;
+                lineStarted(byteOffset);
+            }
+            return checkpoints;
         }
     }
 
@@ -378,7 +487,8 @@ final class LargeFileStore {
         }
 
         private void append(char value) {
-            if (currentLine >= firstLine) {
+            long owningLine = value == '\n' && previousCarriageReturn ? currentLine - 1L : currentLine;
+            if (owningLine >= firstLine && owningLine < endLineExclusive) {
                 if (content.length() < MAX_PREVIEW_CHARS) {
                     content.append(value);
                 } else {
@@ -399,7 +509,7 @@ final class LargeFileStore {
         }
 
         private boolean complete() {
-            return currentLine >= endLineExclusive || truncated;
+            return currentLine >= endLineExclusive && !previousCarriageReturn || truncated;
         }
 
         private String content() {
@@ -0,0 +1,79 @@
+package shed;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+// Lexer state at every large-file checkpoint line, so any window lexes forward from the nearest checkpoint.
+final class LargeFileSyntaxCheckpoints {
+    private final GrammarHighlightService grammar;
+    private final FileType fileType;
+    // states.get(k) is the state at the start of line 1 + k * CHECKPOINT_LINES.
+    private final List<GrammarHighlightService.State> states = new ArrayList<>();
+    private LargeFilePieceTable.Snapshot snapshot;
+
+    LargeFileSyntaxCheckpoints(GrammarHighlightService grammar, FileType fileType) {
+        if (grammar == null) {
+            throw new IllegalArgumentException("syntax checkpoints require a grammar");
+        }
+        this.grammar = grammar;
+        this.fileType = fileType == null ? FileType.TEXT : fileType;
+        states.add(GrammarHighlightService.State.normal());
+    }
+
+    FileType fileType() {
+        return fileType;
+    }
+
+    synchronized int checkpointCount() {
+        return states.size();
+    }
+
+    // Returns the state at the start of line, or null when cancelled; checkpoints passed on the way are kept either way.
+    synchronized GrammarHighlightService.State stateAt(LargeFilePieceTable.Snapshot source, long line, BooleanSupplier cancelled)
+        throws IOException {
+        rebase(source);
+        long target = Math.max(1L, Math.min(line, Math.max(1L, source.lineCount())));
+        int nearest = (int) Math.min(states.size() - 1L, (target - 1L) / LargeFileStore.CHECKPOINT_LINES);
+        long fromLine = 1L + (long) nearest * LargeFileStore.CHECKPOINT_LINES;
+        GrammarHighlightService.State[] state = {states.get(nearest)};
+        long start = source.lineOffset(fromLine);
+        long end = source.lineOffset(target);
+        if (start < end) {
+            LargeFileLineReader reader = new LargeFileLineReader(source);
+            long[] lexedLine = {0L};
+            boolean finished = reader.read(start, end, fromLine, cancelled, (current, bytes, length, charsBefore) -> {
+                if (current != lexedLine[0]) {
+                    lexedLine[0] = current;
+                    record(current, state[0]);
+                }
+                // Chunks of an overlong line are lexed as separate lines.
+                state[0] = grammar.advanceLine(LargeFileLineReader.decode(bytes, length), fileType, state[0]);
+                return true;
+            });
+            if (!finished) {
+                return null;
+            }
+        }
+        record(target, state[0]);
+        return state[0];
+    }
+
+    private void record(long line, GrammarHighlightService.State state) {
+        if ((line - 1L) % LargeFileStore.CHECKPOINT_LINES == 0L && (line - 1L) / LargeFileStore.CHECKPOINT_LINES == states.size()) {
+            states.add(state);
+        }
+    }
+
+    // Keeps only checkpoints whose preceding lines are unchanged in the new snapshot.
+    private void rebase(LargeFilePieceTable.Snapshot source) {
+        if (snapshot != null && !snapshot.sameSequence(source)) {
+            long valid = source.sharedLineBreaks(snapshot) / LargeFileStore.CHECKPOINT_LINES + 1L;
+            while (states.size() > valid) {
+                states.remove(states.size() - 1);
+            }
+        }
+        snapshot = source;
+    }
+}
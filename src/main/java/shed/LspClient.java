@@ -1,11 +1,12 @@
 package shed;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -14,9 +15,14 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class LspClient {
     private static final List<String> STANDARD_SEMANTIC_TOKEN_TYPES = List.of(
@@ -56,7 +62,8 @@ public class LspClient {
         private final String sortText;
         private final boolean preselect;
         private final List<String> commitCharacters;
-        private final Map<String, Object> resolvePayload;
+        // The item as the server sent it, returned for completionItem/resolve: a map, or raw JSON from the typed reader.
+        private final Object resolvePayload;
 
         public CompletionItem(String label, String detail, Integer kind) {
             this(label, detail, kind, "");
@@ -68,12 +75,12 @@ public class LspClient {
 
         public CompletionItem(String label, String detail, Integer kind, String documentation, String insertText,
                               boolean snippet, List<CompletionTextEdit> textEdits) {
-            this(label, detail, kind, documentation, insertText, snippet, textEdits, label, label, false, List.of(), Map.of());
+            this(label, detail, kind, documentation, insertText, snippet, textEdits, label, label, false, List.of(), null);
         }
 
         private CompletionItem(String label, String detail, Integer kind, String documentation, String insertText,
                                boolean snippet, List<CompletionTextEdit> textEdits, String filterText, String sortText,
-                               boolean preselect, List<String> commitCharacters, Map<String, Object> resolvePayload) {
+                               boolean preselect, List<String> commitCharacters, Object resolvePayload) {
             this.label = label;
             this.detail = detail == null ? "" : detail;
             this.kind = kind;
@@ -85,8 +92,8 @@ public class LspClient {
             this.sortText = sortText == null ? "" : sortText;
             this.preselect = preselect;
             this.commitCharacters = commitCharacters == null ? List.of() : List.copyOf(commitCharacters);
-            this.resolvePayload = resolvePayload == null || resolvePayload.isEmpty() ? Map.of()
-                : Collections.unmodifiableMap(new LinkedHashMap<>(resolvePayload));
+            this.resolvePayload = resolvePayload instanceof Map<?, ?> map
+                ? (map.isEmpty() ? null : Collections.unmodifiableMap(new LinkedHashMap<>(map))) : resolvePayload;
         }
 
         public String getLabel() {
@@ -125,7 +132,7 @@ public class LspClient {
 
         public List<String> getCommitCharacters() { return commitCharacters; }
 
-        Map<String, Object> getResolvePayload() { return resolvePayload; }
+        Object getResolvePayload() { return resolvePayload; }
 
         @Override
         public String toString() {
@@ -511,16 +518,34 @@ public class LspClient {
         }
     }
 
+    // Queued after the last message so the writer thread closes the server's input once everything before it is sent.
+    private static final Map<String, Object> END_OF_OUTPUT = Collections.unmodifiableMap(new HashMap<>());
+    private static final String PUBLISH_DIAGNOSTICS = "textDocument/publishDiagnostics";
+    private static final int MAX_HEADER_BYTES = 16 * 1024;
+    private static final int MAX_CONTENT_BYTES = 256 * 1024 * 1024;
+    // Far deeper than the debug adapter's limit: a hierarchical documentSymbol result for deeply nested JSON or HTML
+    // nests several levels per symbol. The bound only keeps a hostile body from overflowing the reader's stack.
+    private static final int MAX_MESSAGE_DEPTH = 1024;
+
+    // Decodes a response's result straight from the message bytes into whatever the waiting request wants.
+    private interface ResultReader {
+        Object read(JsonReader json) throws IOException;
+    }
+
+    private record PendingRequest(CompletableFuture<Map<String, Object>> response, ResultReader resultReader) { }
+
     private final Process process;
-    private final BufferedOutputStream stdin;
-    private final BlockingQueue<Map<String, Object>> messageQueue;
-    private final List<Map<String, Object>> deferredMessages;
+    private final InputStream serverOutput;
+    private final OutputStream serverInput;
+    private final BlockingQueue<Map<String, Object>> outgoing;
+    // Requests awaiting a response by id; the reader thread completes them in whatever order the server answers.
+    private final Map<Integer, PendingRequest> pending;
     private final Map<String, List<Diagnostic>> diagnostics;
-    private final Set<Integer> staleRequestIds;
     private final LspFeatureSettings featureSettings;
-    private WorkspaceEditHandler workspaceEditHandler;
-    private Runnable diagnosticsChangedHandler;
-    private int requestId;
+    private final AtomicInteger requestIds;
+    private volatile WorkspaceEditHandler workspaceEditHandler;
+    private volatile Runnable diagnosticsChangedHandler;
+    private volatile boolean running;
     private boolean initialized;
     private LspCapabilityModel capabilityModel;
     private DocumentSyncKind documentSyncKind;
@@ -533,6 +558,42 @@ public class LspClient {
     }
 
     LspClient(String command, String[] args, Path rootPath, LspFeatureSettings featureSettings) throws IOException {
+        this(startServer(command, args, rootPath), rootPath, featureSettings);
+    }
+
+    private LspClient(Process process, Path rootPath, LspFeatureSettings featureSettings) throws IOException {
+        this(process, process.getInputStream(), process.getOutputStream(), rootPath, featureSettings);
+    }
+
+    private LspClient(Process process, InputStream serverOutput, OutputStream serverInput, Path rootPath,
+                      LspFeatureSettings featureSettings) throws IOException {
+        this.process = process;
+        this.serverOutput = serverOutput;
+        this.serverInput = serverInput;
+        this.outgoing = new LinkedBlockingQueue<>();
+        this.pending = new ConcurrentHashMap<>();
+        this.diagnostics = new ConcurrentHashMap<>();
+        this.featureSettings = featureSettings == null ? LspFeatureSettings.defaults() : featureSettings;
+        this.requestIds = new AtomicInteger();
+        this.running = true;
+        this.initialized = false;
+        this.capabilityModel = LspCapabilityModel.uninitialized();
+        this.documentSyncKind = DocumentSyncKind.FULL;
+        this.semanticTokenTypes = List.of();
+        this.completionTriggerCharacters = Set.of();
+        this.completionResolveSupported = false;
+        startReaderThread();
+        startWriterThread();
+        initialize(rootPath);
+    }
+
+    // Speaks to a server over the given streams instead of a process, as tests do with an in-process server.
+    static LspClient forStreams(InputStream serverOutput, OutputStream serverInput, Path rootPath,
+                                LspFeatureSettings featureSettings) throws IOException {
+        return new LspClient(null, serverOutput, serverInput, rootPath, featureSettings);
+    }
+
+    private static Process startServer(String command, String[] args, Path rootPath) throws IOException {
         List<String> commandLine = new ArrayList<>();
         commandLine.add(command);
         if (args != null) {
@@ -545,22 +606,7 @@ public class LspClient {
 
         ProcessBuilder processBuilder = new ProcessBuilder(commandLine);
         processBuilder.directory(rootPath.toFile());
-        this.process = processBuilder.start();
-        this.stdin = new BufferedOutputStream(process.getOutputStream());
-        this.messageQueue = new LinkedBlockingQueue<>();
-        this.deferredMessages = new ArrayList<>();
-        this.diagnostics = new ConcurrentHashMap<>();
-        this.staleRequestIds = ConcurrentHashMap.newKeySet();
-        this.featureSettings = featureSettings == null ? LspFeatureSettings.defaults() : featureSettings;
-        this.requestId = 0;
-        this.initialized = false;
-        this.capabilityModel = LspCapabilityModel.uninitialized();
-        this.documentSyncKind = DocumentSyncKind.FULL;
-        this.semanticTokenTypes = List.of();
-        this.completionTriggerCharacters = Set.of();
-        this.completionResolveSupported = false;
-        startReaderThread();
-        initialize(rootPath);
+        return processBuilder.start();
     }
 
     public void setWorkspaceEditHandler(WorkspaceEditHandler workspaceEditHandler) {
@@ -572,7 +618,7 @@ public class LspClient {
     }
 
     public boolean isAlive() {
-        return initialized && process.isAlive();
+        return initialized && running && (process == null || process.isAlive());
     }
 
     public boolean supports(LspCapability capability) {
@@ -657,12 +703,12 @@ public class LspClient {
             return List.of();
         }
         Map<String, Object> params = completionParameters(uri, line, character, triggerKind, triggerCharacter);
-        Map<String, Object> response = sendRequest("textDocument/completion", params, 2000L);
+        Map<String, Object> response = sendRequest("textDocument/completion", params, 2000L, LspClient::readCompletionItems);
         if (response == null) {
             return List.of();
         }
-
-        return parseCompletionItems(response.get("result"));
+        Object result = response.get("result");
+        return result instanceof CompletionItems decoded ? decoded.items() : parseCompletionItems(result);
     }
 
     static Map<String, Object> completionParameters(String uri, int line, int character, CompletionTriggerKind triggerKind,
@@ -708,30 +754,189 @@ public class LspClient {
 
     private static CompletionItem parseCompletionItem(Map<String, Object> itemObject) {
         if (itemObject == null) return null;
-        String label = MiniJson.asString(itemObject.get("label"));
-        if (label == null || label.isEmpty()) return null;
-        String detail = completionDetail(itemObject);
-        Integer kind = MiniJson.asInt(itemObject.get("kind"));
-        String insertText = MiniJson.asString(itemObject.get("insertText"));
-        Integer insertTextFormat = MiniJson.asInt(itemObject.get("insertTextFormat"));
-        String filterText = MiniJson.asString(itemObject.get("filterText"));
-        String sortText = MiniJson.asString(itemObject.get("sortText"));
-        boolean preselect = Boolean.TRUE.equals(itemObject.get("preselect"));
-        return new CompletionItem(label, detail, kind, completionDocumentation(itemObject.get("documentation")),
-            insertText == null ? label : insertText, Integer.valueOf(2).equals(insertTextFormat), completionTextEdits(itemObject),
-            filterText == null ? label : filterText, sortText == null ? "" : sortText, preselect,
-            completionStringList(itemObject.get("commitCharacters")), itemObject);
-    }
-
-    private static String completionDetail(Map<String, Object> itemObject) {
-        String detail = MiniJson.asString(itemObject.get("detail"));
+        CompletionFields fields = new CompletionFields();
+        fields.label = MiniJson.asString(itemObject.get("label"));
+        fields.detail = MiniJson.asString(itemObject.get("detail"));
         Map<String, Object> labelDetails = MiniJson.asObject(itemObject.get("labelDetails"));
-        String labelDetail = MiniJson.asString(labelDetails == null ? null : labelDetails.get("detail"));
-        String description = MiniJson.asString(labelDetails == null ? null : labelDetails.get("description"));
-        if (detail == null || detail.isBlank()) detail = labelDetail;
-        if (description == null || description.isBlank()) return detail;
-        if (detail == null || detail.isBlank()) return description;
-        return detail.contains(description) ? detail : detail + " — " + description;
+        fields.labelDetail = MiniJson.asString(labelDetails == null ? null : labelDetails.get("detail"));
+        fields.labelDescription = MiniJson.asString(labelDetails == null ? null : labelDetails.get("description"));
+        fields.kind = MiniJson.asInt(itemObject.get("kind"));
+        fields.documentation = completionDocumentation(itemObject.get("documentation"));
+        fields.insertText = MiniJson.asString(itemObject.get("insertText"));
+        fields.insertTextFormat = MiniJson.asInt(itemObject.get("insertTextFormat"));
+        fields.filterText = MiniJson.asString(itemObject.get("filterText"));
+        fields.sortText = MiniJson.asString(itemObject.get("sortText"));
+        fields.preselect = Boolean.TRUE.equals(itemObject.get("preselect"));
+        fields.commitCharacters = completionStringList(itemObject.get("commitCharacters"));
+        fields.textEdit = completionTextEdit(MiniJson.asObject(itemObject.get("textEdit")));
+        List<Object> additional = MiniJson.asArray(itemObject.get("additionalTextEdits"));
+        if (additional != null) {
+            for (Object value : additional) {
+                CompletionTextEdit edit = completionTextEdit(MiniJson.asObject(value));
+                if (edit != null) fields.additionalTextEdits.add(edit);
+            }
+        }
+        return fields.toItem(itemObject);
+    }
+
+    // Decodes a completion result on the reader thread without building its tree. Each item keeps its own JSON bytes
+    // as the resolve payload, which is all a large list needs until one item is resolved.
+    private static CompletionItems readCompletionItems(JsonReader json) throws IOException {
+        List<CompletionItem> completions = new ArrayList<>();
+        JsonReader.Kind kind = json.peek();
+        if (kind == JsonReader.Kind.OBJECT) {
+            json.beginObject();
+            while (json.nextField()) {
+                if (json.fieldIs("items") && json.peek() == JsonReader.Kind.ARRAY) {
+                    readCompletionArray(json, completions);
+                } else {
+                    json.skipValue();
+                }
+            }
+        } else if (kind == JsonReader.Kind.ARRAY) {
+            readCompletionArray(json, completions);
+        } else {
+            json.skipValue();
+        }
+        return new CompletionItems(completions);
+    }
+
+    private static void readCompletionArray(JsonReader json, List<CompletionItem> completions) throws IOException {
+        byte[] bytes = json.bytes();
+        json.beginArray();
+        while (json.nextElement()) {
+            if (json.peek() != JsonReader.Kind.OBJECT) {
+                json.skipValue();
+                continue;
+            }
+            int start = json.valueStart();
+            CompletionFields fields = new CompletionFields();
+            json.beginObject();
+            while (json.nextField()) {
+                if (json.fieldIs("label")) fields.label = json.optionalString();
+                else if (json.fieldIs("detail")) fields.detail = json.optionalString();
+                else if (json.fieldIs("labelDetails")) readLabelDetails(json, fields);
+                else if (json.fieldIs("kind")) fields.kind = json.optionalInt();
+                else if (json.fieldIs("documentation")) fields.documentation = readDocumentation(json);
+                else if (json.fieldIs("insertText")) fields.insertText = json.optionalString();
+                else if (json.fieldIs("insertTextFormat")) fields.insertTextFormat = json.optionalInt();
+                else if (json.fieldIs("filterText")) fields.filterText = json.optionalString();
+                else if (json.fieldIs("sortText")) fields.sortText = json.optionalString();
+                else if (json.fieldIs("preselect")) fields.preselect = Boolean.TRUE.equals(json.optionalBoolean());
+                else if (json.fieldIs("commitCharacters")) fields.commitCharacters = readStringList(json);
+                else if (json.fieldIs("textEdit")) fields.textEdit = readCompletionTextEdit(json);
+                else if (json.fieldIs("additionalTextEdits") && json.peek() == JsonReader.Kind.ARRAY) {
+                    json.beginArray();
+                    while (json.nextElement()) {
+                        CompletionTextEdit edit = readCompletionTextEdit(json);
+                        if (edit != null) fields.additionalTextEdits.add(edit);
+                    }
+                } else {
+                    json.skipValue();
+                }
+            }
+            CompletionItem completion = fields.toItem(new JsonWriter.Raw(Arrays.copyOfRange(bytes, start, json.position())));
+            if (completion != null) completions.add(completion);
+        }
+    }
+
+    private static void readLabelDetails(JsonReader json, CompletionFields fields) throws IOException {
+        if (json.peek() != JsonReader.Kind.OBJECT) {
+            json.skipValue();
+            return;
+        }
+        json.beginObject();
+        while (json.nextField()) {
+            if (json.fieldIs("detail")) fields.labelDetail = json.optionalString();
+            else if (json.fieldIs("description")) fields.labelDescription = json.optionalString();
+            else json.skipValue();
+        }
+    }
+
+    private static String readDocumentation(JsonReader json) throws IOException {
+        JsonReader.Kind kind = json.peek();
+        if (kind == JsonReader.Kind.STRING) return json.readString();
+        String value = null;
+        if (kind == JsonReader.Kind.OBJECT) {
+            json.beginObject();
+            while (json.nextField()) {
+                if (json.fieldIs("value")) value = json.optionalString();
+                else json.skipValue();
+            }
+        } else {
+            json.skipValue();
+        }
+        return value == null ? "" : value;
+    }
+
+    private static List<String> readStringList(JsonReader json) throws IOException {
+        if (json.peek() != JsonReader.Kind.ARRAY) {
+            json.skipValue();
+            return List.of();
+        }
+        List<String> parsed = new ArrayList<>();
+        json.beginArray();
+        while (json.nextElement()) {
+            String text = json.optionalString();
+            if (text != null && !text.isEmpty()) parsed.add(text);
+        }
+        return List.copyOf(parsed);
+    }
+
+    private static CompletionTextEdit readCompletionTextEdit(JsonReader json) throws IOException {
+        if (json.peek() != JsonReader.Kind.OBJECT) {
+            json.skipValue();
+            return null;
+        }
+        JsonRange range = null;
+        JsonRange replace = null;
+        String newText = null;
+        json.beginObject();
+        while (json.nextField()) {
+            if (json.fieldIs("range")) range = JsonRange.read(json);
+            else if (json.fieldIs("replace")) replace = JsonRange.read(json);
+            else if (json.fieldIs("newText")) newText = json.optionalString();
+            else json.skipValue();
+        }
+        return completionTextEdit(range != null ? range : replace, newText);
+    }
+
+    private record CompletionItems(List<CompletionItem> items) { }
+
+    // One completion item's fields, filled from a parsed tree or straight from the response JSON.
+    private static final class CompletionFields {
+        private String label;
+        private String detail;
+        private String labelDetail;
+        private String labelDescription;
+        private Integer kind;
+        private String documentation = "";
+        private String insertText;
+        private Integer insertTextFormat;
+        private String filterText;
+        private String sortText;
+        private boolean preselect;
+        private List<String> commitCharacters = List.of();
+        private CompletionTextEdit textEdit;
+        private final List<CompletionTextEdit> additionalTextEdits = new ArrayList<>();
+
+        private CompletionItem toItem(Object resolvePayload) {
+            if (label == null || label.isEmpty()) return null;
+            List<CompletionTextEdit> edits = new ArrayList<>();
+            if (textEdit != null) edits.add(textEdit);
+            edits.addAll(additionalTextEdits);
+            return new CompletionItem(label, completionDetail(), kind, documentation,
+                insertText == null ? label : insertText, Integer.valueOf(2).equals(insertTextFormat), edits,
+                filterText == null ? label : filterText, sortText == null ? "" : sortText, preselect,
+                commitCharacters, resolvePayload);
+        }
+
+        private String completionDetail() {
+            String shown = detail == null || detail.isBlank() ? labelDetail : detail;
+            if (labelDescription == null || labelDescription.isBlank()) return shown;
+            if (shown == null || shown.isBlank()) return labelDescription;
+            return shown.contains(labelDescription) ? shown : shown + " — " + labelDescription;
+        }
     }
 
     private static List<String> completionStringList(Object value) {
@@ -752,7 +957,7 @@ public class LspClient {
     public boolean supportsCompletionResolve() { return completionResolveSupported; }
 
     public CompletionItem resolveCompletionItem(CompletionItem item) {
-        if (item == null || !completionResolveSupported || item.getResolvePayload().isEmpty()) return item;
+        if (item == null || !completionResolveSupported || item.getResolvePayload() == null) return item;
         Map<String, Object> response = sendRequest("completionItem/resolve", item.getResolvePayload(), 2000L);
         if (response == null) return item;
         CompletionItem resolved = parseCompletionItem(MiniJson.asObject(response.get("result")));
@@ -769,33 +974,58 @@ public class LspClient {
         return value == null ? "" : value;
     }
 
-    private static List<CompletionTextEdit> completionTextEdits(Map<String, Object> item) {
-        List<CompletionTextEdit> edits = new ArrayList<>();
-        CompletionTextEdit primary = completionTextEdit(item == null ? null : MiniJson.asObject(item.get("textEdit")));
-        if (primary != null) edits.add(primary);
-        List<Object> additional = MiniJson.asArray(item == null ? null : item.get("additionalTextEdits"));
-        if (additional != null) {
-            for (Object value : additional) {
-                CompletionTextEdit edit = completionTextEdit(MiniJson.asObject(value));
-                if (edit != null) edits.add(edit);
-            }
-        }
-        return edits;
-    }
-
     private static CompletionTextEdit completionTextEdit(Map<String, Object> edit) {
         if (edit == null) return null;
         Map<String, Object> range = MiniJson.asObject(edit.get("range"));
         if (range == null) range = MiniJson.asObject(edit.get("replace"));
-        Map<String, Object> start = range == null ? null : MiniJson.asObject(range.get("start"));
-        Map<String, Object> end = range == null ? null : MiniJson.asObject(range.get("end"));
-        Integer startLine = start == null ? null : MiniJson.asInt(start.get("line"));
-        Integer startCharacter = start == null ? null : MiniJson.asInt(start.get("character"));
-        Integer endLine = end == null ? null : MiniJson.asInt(end.get("line"));
-        Integer endCharacter = end == null ? null : MiniJson.asInt(end.get("character"));
-        String newText = MiniJson.asString(edit.get("newText"));
-        if (startLine == null || startCharacter == null || endLine == null || endCharacter == null || newText == null) return null;
-        return new CompletionTextEdit(startLine, startCharacter, endLine, endCharacter, newText);
+        return completionTextEdit(range == null ? null : JsonRange.of(range), MiniJson.asString(edit.get("newText")));
+    }
+
+    private static CompletionTextEdit completionTextEdit(JsonRange range, String newText) {
+        if (range == null || range.startLine() == null || range.startCharacter() == null || range.endLine() == null
+            || range.endCharacter() == null || newText == null) return null;
+        return new CompletionTextEdit(range.startLine(), range.startCharacter(), range.endLine(), range.endCharacter(), newText);
+    }
+
+    // A range's four numbers, each null when missing or not a number, read from a tree or straight from JSON.
+    private record JsonRange(Integer startLine, Integer startCharacter, Integer endLine, Integer endCharacter) {
+        static JsonRange of(Map<String, Object> range) {
+            Map<String, Object> start = MiniJson.asObject(range.get("start"));
+            Map<String, Object> end = MiniJson.asObject(range.get("end"));
+            return new JsonRange(start == null ? null : MiniJson.asInt(start.get("line")),
+                start == null ? null : MiniJson.asInt(start.get("character")),
+                end == null ? null : MiniJson.asInt(end.get("line")),
+                end == null ? null : MiniJson.asInt(end.get("character")));
+        }
+
+        // Returns null, after skipping the value, when it is not an object.
+        static JsonRange read(JsonReader json) throws IOException {
+            if (json.peek() != JsonReader.Kind.OBJECT) {
+                json.skipValue();
+                return null;
+            }
+            Integer[] numbers = new Integer[4];
+            json.beginObject();
+            while (json.nextField()) {
+                if (json.fieldIs("start")) readPosition(json, numbers, 0);
+                else if (json.fieldIs("end")) readPosition(json, numbers, 2);
+                else json.skipValue();
+            }
+            return new JsonRange(numbers[0], numbers[1], numbers[2], numbers[3]);
+        }
+
+        private static void readPosition(JsonReader json, Integer[] numbers, int at) throws IOException {
+            if (json.peek() != JsonReader.Kind.OBJECT) {
+                json.skipValue();
+                return;
+            }
+            json.beginObject();
+            while (json.nextField()) {
+                if (json.fieldIs("line")) numbers[at] = json.optionalInt();
+                else if (json.fieldIs("character")) numbers[at + 1] = json.optionalInt();
+                else json.skipValue();
+            }
+        }
     }
 
     public String hover(String uri, int line, int character) {
@@ -866,30 +1096,74 @@ public class LspClient {
         textDocument.put("uri", uri);
         Map<String, Object> params = new LinkedHashMap<>();
         params.put("textDocument", textDocument);
-        Map<String, Object> response = sendRequest("textDocument/semanticTokens/full", params, 2500L);
-        return parseSemanticTokens(response == null ? null : response.get("result"));
+        Map<String, Object> response = sendRequest("textDocument/semanticTokens/full", params, 2500L, LspClient::readSemanticTokenData);
+        Object result = response == null ? null : response.get("result");
+        return result instanceof SemanticTokenData decoded ? semanticTokens(decoded.data()) : parseSemanticTokens(result);
     }
 
     static List<SemanticToken> parseSemanticTokens(Object value) {
         Map<String, Object> result = MiniJson.asObject(value);
         List<Object> data = MiniJson.asArray(result == null ? null : result.get("data"));
-        if (data == null || data.size() % 5 != 0) return List.of();
-        List<SemanticToken> tokens = new ArrayList<>();
+        if (data == null) return List.of();
+        int[] numbers = new int[data.size()];
+        for (int i = 0; i < numbers.length; i++) {
+            Integer number = MiniJson.asInt(data.get(i));
+            if (number == null) return List.of();
+            numbers[i] = number;
+        }
+        return semanticTokens(numbers);
+    }
+
+    // Reads the result's data array straight into an int[] on the reader thread; null data stands for a malformed array.
+    private static SemanticTokenData readSemanticTokenData(JsonReader json) throws IOException {
+        if (json.peek() != JsonReader.Kind.OBJECT) {
+            json.skipValue();
+            return new SemanticTokenData(null);
+        }
+        int[] data = null;
+        json.beginObject();
+        while (json.nextField()) {
+            if (!json.fieldIs("data") || json.peek() != JsonReader.Kind.ARRAY) {
+                json.skipValue();
+                continue;
+            }
+            int[] numbers = new int[256];
+            int count = 0;
+            boolean numeric = true;
+            json.beginArray();
+            while (json.nextElement()) {
+                if (json.peek() != JsonReader.Kind.NUMBER) {
+                    json.skipValue();
+                    numeric = false;
+                    continue;
+                }
+                if (count == numbers.length) numbers = Arrays.copyOf(numbers, count * 2);
+                numbers[count++] = json.readInt();
+            }
+            data = numeric ? Arrays.copyOf(numbers, count) : null;
+        }
+        return new SemanticTokenData(data);
+    }
+
+    private static List<SemanticToken> semanticTokens(int[] data) {
+        if (data == null || data.length % 5 != 0) return List.of();
+        List<SemanticToken> tokens = new ArrayList<>(data.length / 5);
         int line = 0;
         int character = 0;
-        for (int i = 0; i < data.size(); i += 5) {
-            Integer lineDelta = MiniJson.asInt(data.get(i));
-            Integer characterDelta = MiniJson.asInt(data.get(i + 1));
-            Integer length = MiniJson.asInt(data.get(i + 2));
-            Integer type = MiniJson.asInt(data.get(i + 3));
-            if (lineDelta == null || characterDelta == null || length == null || type == null || lineDelta < 0 || characterDelta < 0 || length < 0) return List.of();
+        for (int i = 0; i < data.length; i += 5) {
+            int lineDelta = data[i];
+            int characterDelta = data[i + 1];
+            int length = data[i + 2];
+            if (lineDelta < 0 || characterDelta < 0 || length < 0) return List.of();
             line += lineDelta;
             character = lineDelta == 0 ? character + characterDelta : characterDelta;
-            tokens.add(new SemanticToken(line, character, length, type));
+            tokens.add(new SemanticToken(line, character, length, data[i + 3]));
         }
         return tokens;
     }
 
+    private record SemanticTokenData(int[] data) { }
+
     public List<InlayHint> inlayHints(String uri, int endLine, int endCharacter) {
         if (!supports(LspCapability.INLAY_HINTS)) return List.of();
         Map<String, Object> textDocument = new LinkedHashMap<>();
@@ -1196,13 +1470,11 @@ public class LspClient {
     }
 
     public List<Diagnostic> getDiagnostics(String uri) {
-        drainNotifications();
         List<Diagnostic> entries = diagnostics.get(uri);
         return entries == null ? List.of() : new ArrayList<>(entries);
     }
 
     public Map<String, List<Diagnostic>> diagnosticsSnapshot() {
-        drainNotifications();
         Map<String, List<Diagnostic>> snapshot = new LinkedHashMap<>();
         for (Map.Entry<String, List<Diagnostic>> entry : diagnostics.entrySet()) {
             snapshot.put(entry.getKey(), List.copyOf(entry.getValue()));
@@ -1222,33 +1494,18 @@ public class LspClient {
         return parseNavigationSymbols(response == null ? null : response.get("result"), "", false);
     }
 
-    public void drainNotifications() {
-        while (true) {
-            Map<String, Object> message = messageQueue.poll();
-            if (message == null) {
-                return;
-            }
-            if (message.containsKey("method")) {
-                handleIncomingMethod(message);
-            } else {
-                Integer responseId = MiniJson.asInt(message.get("id"));
-                if (responseId != null && staleRequestIds.remove(responseId)) {
-                    continue;
-                }
-                synchronized (deferredMessages) {
-                    deferredMessages.add(message);
-                }
-            }
-        }
-    }
-
     public void stop() {
         try {
             sendRequest("shutdown", null, 1000L);
             sendNotification("exit", null);
         } catch (Exception ignored) {
         }
-        process.destroy();
+        running = false;
+        outgoing.offer(END_OF_OUTPUT);
+        failPending(new IOException("LSP client stopped"));
+        if (process != null) {
+            process.destroy();
+        }
     }
 
     private void initialize(Path rootPath) throws IOException {
@@ -1439,22 +1696,60 @@ public class LspClient {
         return sendRequest(method, params, timeoutMs);
     }
 
-    private synchronized Map<String, Object> sendRequest(String method, Object params, long timeoutMs) {
-        int id = nextRequestId();
+    private Map<String, Object> sendRequest(String method, Object params, long timeoutMs) {
+        return sendRequest(method, params, timeoutMs, null);
+    }
+
+    // Blocks only for this request's own response; other threads' requests stay in flight alongside it. A request that
+    // times out or is interrupted is cancelled, which tells the server to drop it. With a result reader, the response's
+    // result is whatever that reader decoded instead of a parsed tree.
+    private Map<String, Object> sendRequest(String method, Object params, long timeoutMs, ResultReader resultReader) {
+        CompletableFuture<Map<String, Object>> response = request(method, params, resultReader);
+        try {
+            return response.get(Math.max(1L, timeoutMs), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (TimeoutException | ExecutionException | CancellationException ignored) {
+        }
+        response.cancel(false);
+        return null;
+    }
+
+    // Sends a request without waiting. The future completes with the response message on the reader thread, fails if
+    // the server goes away, and cancelling it sends $/cancelRequest; a late response to it is dropped.
+    CompletableFuture<Map<String, Object>> request(String method, Object params) {
+        return request(method, params, null);
+    }
+
+    private CompletableFuture<Map<String, Object>> request(String method, Object params, ResultReader resultReader) {
+        int id = requestIds.incrementAndGet();
+        CompletableFuture<Map<String, Object>> response = new CompletableFuture<>();
+        pending.put(id, new PendingRequest(response, resultReader));
         Map<String, Object> request = new LinkedHashMap<>();
         request.put("jsonrpc", "2.0");
         request.put("id", id);
         request.put("method", method);
         request.put("params", params);
-        writeMessage(request);
-        Map<String, Object> response = waitForResponse(id, timeoutMs);
-        if (response == null) {
-            markRequestStale(id);
-            sendCancelRequest(id);
+        // Checking running again after registering catches a shutdown whose failPending pass ran before the request was
+        // visible in pending; removing it first keeps a response that already arrived from being overridden.
+        if (!writeMessage(request) || !running) {
+            if (pending.remove(id) != null) {
+                response.completeExceptionally(new IOException("LSP server is not running"));
+            }
+            return response;
         }
+        response.whenComplete((message, error) -> {
+            if (response.isCancelled() && pending.remove(id) != null) {
+                sendCancelRequest(id);
+            }
+        });
         return response;
     }
 
+    int pendingRequestCount() {
+        return pending.size();
+    }
+
     private void sendNotification(String method, Object params) {
         Map<String, Object> notification = new LinkedHashMap<>();
         notification.put("jsonrpc", "2.0");
@@ -1469,88 +1764,57 @@ public class LspClient {
         sendNotification("$/cancelRequest", params);
     }
 
-    private void markRequestStale(int id) {
-        staleRequestIds.add(id);
-    }
-
-    private synchronized void writeMessage(Map<String, Object> body) {
-        try {
-            byte[] payload = MiniJson.stringify(body).getBytes(StandardCharsets.UTF_8);
-            stdin.write(("Content-Length: " + payload.length + "\r\n\r\n").getBytes(StandardCharsets.UTF_8));
-            stdin.write(payload);
-            stdin.flush();
-        } catch (IOException ignored) {
+    // Leaves serializing and writing to the writer thread, so a server that is slow to read never blocks the editor.
+    // Messages go out in the order they were queued; they are built fresh for each send and not touched once queued.
+    private boolean writeMessage(Map<String, Object> body) {
+        if (!running) {
+            return false;
         }
+        return outgoing.offer(body);
     }
 
-    private Map<String, Object> waitForResponse(int id, long timeoutMs) {
-        Map<String, Object> deferred = removeDeferredResponse(id);
-        if (deferred != null) {
-            return deferred;
+    private void dispatch(Map<String, Object> message) {
+        if (message.containsKey("method")) {
+            handleIncomingMethod(message);
+            return;
         }
-
-        long deadline = System.currentTimeMillis() + timeoutMs;
-        while (System.currentTimeMillis() < deadline) {
-            long remaining = Math.max(1L, deadline - System.currentTimeMillis());
-            Map<String, Object> message;
-            try {
-                message = messageQueue.poll(remaining, TimeUnit.MILLISECONDS);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                return null;
-            }
-            if (message == null) {
-                continue;
-            }
-            Integer responseId = MiniJson.asInt(message.get("id"));
-            if (responseId != null && responseId == id) {
-                staleRequestIds.remove(id);
-                return message;
-            }
-            if (responseId != null && staleRequestIds.remove(responseId)) {
-                continue;
-            }
-            if (message.containsKey("method")) {
-                handleIncomingMethod(message);
-            } else {
-                synchronized (deferredMessages) {
-                    deferredMessages.add(message);
-                }
-            }
+        Integer responseId = MiniJson.asInt(message.get("id"));
+        PendingRequest request = responseId == null ? null : pending.remove(responseId);
+        if (request != null) {
+            request.response().complete(message);
         }
-        return null;
     }
 
-    private Map<String, Object> removeDeferredResponse(int id) {
-        synchronized (deferredMessages) {
-            for (int i = 0; i < deferredMessages.size(); i++) {
-                Map<String, Object> candidate = deferredMessages.get(i);
-                Integer responseId = MiniJson.asInt(candidate.get("id"));
-                if (responseId != null && responseId == id) {
-                    return deferredMessages.remove(i);
-                }
-                if (responseId != null && staleRequestIds.remove(responseId)) {
-                    deferredMessages.remove(i);
-                    i--;
-                }
+    private void failPending(IOException error) {
+        for (Integer id : List.copyOf(pending.keySet())) {
+            PendingRequest request = pending.remove(id);
+            if (request != null) {
+                request.response().completeExceptionally(error);
             }
         }
-        return null;
     }
 
     private void handleNotification(Map<String, Object> message) {
         String method = MiniJson.asString(message.get("method"));
-        if (!"textDocument/publishDiagnostics".equals(method)) {
+        if (!PUBLISH_DIAGNOSTICS.equals(method)) {
             return;
         }
-        Map<String, Object> params = MiniJson.asObject(message.get("params"));
-        if (params == null) {
+        Object params = message.get("params");
+        PublishedDiagnostics published = params instanceof PublishedDiagnostics decoded
+            ? decoded : parsePublishedDiagnostics(MiniJson.asObject(params));
+        if (published == null) {
             return;
         }
-        String uri = MiniJson.asString(params.get("uri"));
-        List<Object> diagnosticObjects = MiniJson.asArray(params.get("diagnostics"));
+        diagnostics.put(published.uri(), published.diagnostics());
+        Runnable handler = diagnosticsChangedHandler;
+        if (handler != null) handler.run();
+    }
+
+    private static PublishedDiagnostics parsePublishedDiagnostics(Map<String, Object> params) {
+        String uri = params == null ? null : MiniJson.asString(params.get("uri"));
+        List<Object> diagnosticObjects = params == null ? null : MiniJson.asArray(params.get("diagnostics"));
         if (uri == null || diagnosticObjects == null) {
-            return;
+            return null;
         }
         List<Diagnostic> parsed = new ArrayList<>();
         for (Object diagnosticObject : diagnosticObjects) {
@@ -1559,21 +1823,61 @@ public class LspClient {
                 continue;
             }
             Map<String, Object> range = MiniJson.asObject(entry.get("range"));
-            Map<String, Object> start = range == null ? null : MiniJson.asObject(range.get("start"));
-            Map<String, Object> end = range == null ? null : MiniJson.asObject(range.get("end"));
-            int line = start == null || MiniJson.asInt(start.get("line")) == null ? 0 : MiniJson.asInt(start.get("line"));
-            int character = start == null || MiniJson.asInt(start.get("character")) == null ? 0 : MiniJson.asInt(start.get("character"));
-            int endLine = end == null || MiniJson.asInt(end.get("line")) == null ? line : MiniJson.asInt(end.get("line"));
-            int endCharacter = end == null || MiniJson.asInt(end.get("character")) == null ? character + 1 : MiniJson.asInt(end.get("character"));
-            int severity = MiniJson.asInt(entry.get("severity")) == null ? 0 : MiniJson.asInt(entry.get("severity"));
-            String messageText = MiniJson.asString(entry.get("message"));
-            parsed.add(new Diagnostic(line, character, endLine, endCharacter, severity, messageText == null ? "" : messageText));
-        }
-        diagnostics.put(uri, parsed);
-        Runnable handler = diagnosticsChangedHandler;
-        if (handler != null) handler.run();
+            parsed.add(diagnostic(range == null ? null : JsonRange.of(range), MiniJson.asInt(entry.get("severity")),
+                MiniJson.asString(entry.get("message"))));
+        }
+        return new PublishedDiagnostics(uri, parsed);
     }
 
+    // Decodes publishDiagnostics params on the reader thread; a notification that is not shaped as expected reads as null.
+    private static PublishedDiagnostics readPublishedDiagnostics(JsonReader json) throws IOException {
+        if (json.peek() != JsonReader.Kind.OBJECT) {
+            json.skipValue();
+            return null;
+        }
+        String uri = null;
+        List<Diagnostic> parsed = null;
+        json.beginObject();
+        while (json.nextField()) {
+            if (json.fieldIs("uri")) {
+                uri = json.optionalString();
+            } else if (json.fieldIs("diagnostics") && json.peek() == JsonReader.Kind.ARRAY) {
+                parsed = new ArrayList<>();
+                json.beginArray();
+                while (json.nextElement()) {
+                    if (json.peek() != JsonReader.Kind.OBJECT) {
+                        json.skipValue();
+                        continue;
+                    }
+                    JsonRange range = null;
+                    Integer severity = null;
+                    String text = null;
+                    json.beginObject();
+                    while (json.nextField()) {
+                        if (json.fieldIs("range")) range = JsonRange.read(json);
+                        else if (json.fieldIs("severity")) severity = json.optionalInt();
+                        else if (json.fieldIs("message")) text = json.optionalString();
+                        else json.skipValue();
+                    }
+                    parsed.add(diagnostic(range, severity, text));
+                }
+            } else {
+                json.skipValue();
+            }
+        }
+        return uri == null || parsed == null ? null : new PublishedDiagnostics(uri, parsed);
+    }
+
+    private static Diagnostic diagnostic(JsonRange range, Integer severity, String message) {
+        int line = range == null || range.startLine() == null ? 0 : range.startLine();
+        int character = range == null || range.startCharacter() == null ? 0 : range.startCharacter();
+        int endLine = range == null || range.endLine() == null ? line : range.endLine();
+        int endCharacter = range == null || range.endCharacter() == null ? character + 1 : range.endCharacter();
+        return new Diagnostic(line, character, endLine, endCharacter, severity == null ? 0 : severity, message == null ? "" : message);
+    }
+
+    private record PublishedDiagnostics(String uri, List<Diagnostic> diagnostics) { }
+
     private void handleIncomingMethod(Map<String, Object> message) {
         if (message == null) {
             return;
@@ -1797,55 +2101,122 @@ public class LspClient {
         }
     }
 
-    private synchronized int nextRequestId() {
-        requestId += 1;
-        return requestId;
-    }
-
+    // Routes responses to their requests and handles notifications and server requests as they arrive. When the
+    // server's output ends, every outstanding request fails at once instead of waiting out its timeout.
     private void startReaderThread() {
         Thread reader = new Thread(() -> {
-            try (BufferedInputStream stdout = new BufferedInputStream(process.getInputStream())) {
-                while (true) {
-                    int contentLength = readContentLength(stdout);
-                    if (contentLength < 0) {
-                        return;
+            MessageFrameReader frames = new MessageFrameReader(serverOutput, LspClient::contentLength, MAX_HEADER_BYTES, MAX_CONTENT_BYTES);
+            try (serverOutput) {
+                while (frames.next()) {
+                    // Stray bytes that are not UTF-8 decode as U+FFFD instead of ending the session. A body that still
+                    // does not decode is skipped: its frame was read whole, so the next message starts where it should.
+                    Map<String, Object> message;
+                    try {
+                        message = readMessage(new JsonReader(frames.buffer(), frames.bodyOffset(), frames.bodyLength(), true, MAX_MESSAGE_DEPTH));
+                    } catch (IOException malformed) {
+                        continue;
                     }
-                    byte[] body = stdout.readNBytes(contentLength);
-                    if (body.length != contentLength) {
-                        return;
-                    }
-                    Object parsed = MiniJson.parse(new String(body, StandardCharsets.UTF_8));
-                    Map<String, Object> message = MiniJson.asObject(parsed);
                     if (message != null) {
-                        messageQueue.offer(message);
+                        dispatch(message);
                     }
                 }
             } catch (IOException ignored) {
+            } finally {
+                running = false;
+                outgoing.offer(END_OF_OUTPUT);
+                failPending(new IOException("LSP server closed its output"));
             }
         }, "shed-lsp-reader");
         reader.setDaemon(true);
         reader.start();
     }
 
-    private int readContentLength(BufferedInputStream stream) throws IOException {
-        StringBuilder headers = new StringBuilder();
-        int previous = -1;
-        int current;
-        while ((current = stream.read()) != -1) {
-            headers.append((char) current);
-            if (previous == '\r' && current == '\n' && headers.toString().endsWith("\r\n\r\n")) {
-                break;
-            }
-            previous = current;
+    // Reads the message envelope field by field. A result the waiting request can decode itself, and diagnostics, are
+    // read straight from the bytes; everything else becomes the usual tree. Typed decoding needs the id or method to
+    // come first, as servers send them, and otherwise falls back to the tree the callers also accept. A response that
+    // does not decode fails the request whose id it carried, so that caller hears of it instead of timing out.
+    private Map<String, Object> readMessage(JsonReader json) throws IOException {
+        if (json.peek() != JsonReader.Kind.OBJECT) {
+            json.skipValue();
+            json.finish();
+            return null;
         }
-        if (headers.length() == 0) {
-            return -1;
+        Map<String, Object> message = new LinkedHashMap<>();
+        Integer responseId = null;
+        ResultReader resultReader = null;
+        String method = null;
+        try {
+            json.beginObject();
+            while (json.nextField()) {
+                if (json.fieldIs("id")) {
+                    Object id = json.readValue();
+                    responseId = MiniJson.asInt(id);
+                    PendingRequest request = responseId == null ? null : pending.get(responseId);
+                    resultReader = request == null ? null : request.resultReader();
+                    message.put("id", id);
+                } else if (json.fieldIs("method")) {
+                    Object value = json.readValue();
+                    method = MiniJson.asString(value);
+                    message.put("method", value);
+                } else if (json.fieldIs("result") && method == null && resultReader != null) {
+                    message.put("result", resultReader.read(json));
+                } else if (json.fieldIs("params") && PUBLISH_DIAGNOSTICS.equals(method)) {
+                    message.put("params", readPublishedDiagnostics(json));
+                } else {
+                    String name = json.fieldName();
+                    message.put(name, json.readValue());
+                }
+            }
+            json.finish();
+        } catch (IOException malformed) {
+            PendingRequest request = method != null || responseId == null ? null : pending.remove(responseId);
+            if (request != null) {
+                request.response().completeExceptionally(malformed);
+            }
+            throw malformed;
         }
-        for (String line : headers.toString().split("\r\n")) {
+        return message;
+    }
+
+    // Serializes each message into one reused buffer and flushes once the queue runs dry, so a burst of messages
+    // reaches the server in as few writes as possible.
+    private void startWriterThread() {
+        Thread writer = new Thread(() -> {
+            JsonWriter json = new JsonWriter();
+            try (BufferedOutputStream stdin = new BufferedOutputStream(serverInput)) {
+                while (true) {
+                    Map<String, Object> message = outgoing.take();
+                    if (message == END_OF_OUTPUT) {
+                        return;
+                    }
+                    json.reset().value(message).writeFrame(stdin);
+                    if (outgoing.isEmpty()) {
+                        stdin.flush();
+                    }
+                }
+            } catch (IOException ignored) {
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                running = false;
+                failPending(new IOException("LSP server input closed"));
+            }
+        }, "shed-lsp-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Finds Content-Length among the header lines, ignoring any others such as Content-Type.
+    static int contentLength(String header) throws IOException {
+        for (String line : header.split("\r\n")) {
             if (line.regionMatches(true, 0, "Content-Length:", 0, "Content-Length:".length())) {
-                return Integer.parseInt(line.substring("Content-Length:".length()).trim());
+                try {
+                    return Integer.parseInt(line.substring("Content-Length:".length()).trim());
+                } catch (NumberFormatException e) {
+                    throw new IOException("invalid Content-Length header", e);
+                }
             }
         }
-        return -1;
+        throw new IOException("message header has no Content-Length");
     }
 }
@@ -1111,9 +1111,11 @@ final class LspController {
     }
 
 
+    // Runs on the client's reader thread, so the review buffer opens on the EDT and the server gets its answer at once.
     LspClient.WorkspaceEditResponse applyWorkspaceEditFromServer(String label, List<LspClient.WorkspaceEditOperation> operations) {
-        editor.showScratchBuffer("[lsp workspace edit review]", buildWorkspaceEditPreview(label, operations, new WorkspaceEditApplyResult())
-            + "\nServer-originated workspace edits require review and were not applied.\n");
+        String preview = buildWorkspaceEditPreview(label, operations, new WorkspaceEditApplyResult())
+            + "\nServer-originated workspace edits require review and were not applied.\n";
+        SwingUtilities.invokeLater(() -> editor.showScratchBuffer("[lsp workspace edit review]", preview));
         return new LspClient.WorkspaceEditResponse(false, "workspace edit requires user review");
     }
 
@@ -2172,9 +2174,9 @@ final class LspController {
                 Color color = semanticTokenColor(request.client().semanticTokenTypeName(token.type()));
                 int start = offsetForPosition(request.text(), token.line(), token.character());
                 int end = Math.min(request.text().length(), start + Math.max(0, token.length()));
-                if (color != null && end > start) editor.lspSemanticSpans.add(new SyntaxSpan(start, end, color));
+                if (color != null && end > start) editor.lspSemanticSpans.add(start, end, color);
             }
-            editor.lspSemanticSpans.sort(Comparator.comparingInt(span -> span.start));
+            editor.lspSemanticSpans.sortByStart();
         }
         editor.lspInlayHintOverlays.clear();
         if (request.inlayEnabled()) {
@@ -2249,14 +2251,6 @@ final class LspController {
     }
 
 
-    void pollLspNotifications(FileBuffer buffer) {
-        LspClient client = existingLspClient(buffer);
-        if (client != null) {
-            client.drainNotifications();
-        }
-    }
-
-
     LspClient existingLspClient(FileBuffer buffer) {
         if (buffer == null || !buffer.hasFilePath()) {
             return null;
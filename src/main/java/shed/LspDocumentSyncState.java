@@ -25,7 +25,7 @@ final class LspDocumentSyncState {
             return false;
         }
         VersionedTextSnapshot updated = snapshot.replace(offset, removedLength, inserted);
-        if (!updated.text().equals(current)) {
+        if (!updated.contentEquals(current)) {
             resetTo(current);
             return false;
         }
@@ -50,7 +50,7 @@ final class LspDocumentSyncState {
 
     void reconcile(String currentText) {
         String current = currentText == null ? "" : currentText;
-        if (!snapshot.text().equals(current)) {
+        if (!snapshot.contentEquals(current)) {
             resetTo(current);
         }
     }
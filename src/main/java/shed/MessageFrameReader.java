@@ -0,0 +1,114 @@
+package shed;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+// Reads Content-Length framed messages, as LSP and DAP send them, through one reusable buffer. Headers are found by
+// scanning the buffer rather than reading a byte at a time, and a body that arrived with its header is parsed where
+// it lies, so most messages are never copied between the stream and the JSON reader.
+final class MessageFrameReader {
+    interface HeaderParser {
+        // Returns the body length for a complete header, including its terminating blank line.
+        int contentLength(String header) throws IOException;
+    }
+
+    private static final int INITIAL_BUFFER = 64 * 1024;
+    private static final int MAX_RETAINED_BUFFER = 1024 * 1024;
+
+    private final InputStream input;
+    private final HeaderParser headerParser;
+    private final int maxHeaderBytes;
+    private final int maxContentBytes;
+    private byte[] buffer = new byte[INITIAL_BUFFER];
+    // Unread input is buffer[start, end); the current body is buffer[bodyOffset, bodyOffset + bodyLength).
+    private int start;
+    private int end;
+    private int bodyOffset;
+    private int bodyLength;
+
+    MessageFrameReader(InputStream input, HeaderParser headerParser, int maxHeaderBytes, int maxContentBytes) {
+        this.input = input;
+        this.headerParser = headerParser;
+        this.maxHeaderBytes = maxHeaderBytes;
+        this.maxContentBytes = maxContentBytes;
+    }
+
+    // Reads the next frame and returns true, or returns false when the stream ends cleanly between frames.
+    boolean next() throws IOException {
+        start = bodyOffset + bodyLength;
+        if (start == end) {
+            // Nothing is left unread, so begin again at the front and let go of a buffer grown for one huge message.
+            if (buffer.length > MAX_RETAINED_BUFFER) buffer = new byte[INITIAL_BUFFER];
+            start = 0;
+            end = 0;
+        }
+        bodyOffset = start;
+        bodyLength = 0;
+        int scanned = 0;
+        int headerLength;
+        while ((headerLength = headerEnd(scanned)) < 0) {
+            scanned = Math.max(0, end - start - 3);
+            if (end - start > maxHeaderBytes) throw new IOException("message header exceeds the size limit");
+            if (!fill(0)) {
+                if (end == start) return false;
+                throw new IOException("stream ended inside a message header");
+            }
+        }
+        if (headerLength > maxHeaderBytes) throw new IOException("message header exceeds the size limit");
+        for (int offset = start; offset < start + headerLength; offset++) {
+            if (buffer[offset] < 0) throw new IOException("message header is not ASCII");
+        }
+        int contentLength = headerParser.contentLength(new String(buffer, start, headerLength, StandardCharsets.US_ASCII));
+        if (contentLength < 0 || contentLength > maxContentBytes) throw new IOException("message length is outside the allowed range");
+        int frameLength = headerLength + contentLength;
+        while (end - start < frameLength) {
+            if (!fill(frameLength)) throw new IOException("stream ended inside a message body");
+        }
+        bodyOffset = start + headerLength;
+        bodyLength = contentLength;
+        return true;
+    }
+
+    byte[] buffer() {
+        return buffer;
+    }
+
+    int bodyOffset() {
+        return bodyOffset;
+    }
+
+    int bodyLength() {
+        return bodyLength;
+    }
+
+    // Length of the header through its blank line, searching unread input from the given relative offset, or -1.
+    private int headerEnd(int from) {
+        for (int offset = start + from; offset + 3 < end; offset++) {
+            if (buffer[offset] == '\r' && buffer[offset + 1] == '\n' && buffer[offset + 2] == '\r' && buffer[offset + 3] == '\n') {
+                return offset + 4 - start;
+            }
+        }
+        return -1;
+    }
+
+    // Reads more input after moving unread bytes to the front, growing the buffer until frameLength bytes fit.
+    private boolean fill(int frameLength) throws IOException {
+        int unread = end - start;
+        if (end == buffer.length || buffer.length - start < frameLength) {
+            byte[] target = buffer;
+            if (buffer.length < Math.max(frameLength, unread + 1)) {
+                target = new byte[Math.max(frameLength, buffer.length * 2)];
+            }
+            System.arraycopy(buffer, start, target, 0, unread);
+            buffer = target;
+            start = 0;
+            end = unread;
+            bodyOffset = 0;
+        }
+        int read = input.read(buffer, end, buffer.length - end);
+        if (read < 0) return false;
+        end += read;
+        return true;
+    }
+}
@@ -12,39 +12,39 @@ public class MotionService {
         return Character.isWhitespace(codePoint) ? 0 : 2;
     }
 
-    public int moveWordForward(String text, int position) {
-        if (text == null || text.isEmpty()) {
+    public int moveWordForward(CharSequence text, int position) {
+        if (text == null || text.length() == 0) {
             return 0;
         }
         int pos = GraphemeBoundary.isBoundary(text, position) ? position : GraphemeBoundary.ceiling(text, position);
         if (pos >= text.length()) {
             return text.length();
         }
-        int category = charClass(text.codePointAt(pos));
+        int category = charClass(Character.codePointAt(text, pos));
         if (category > 0) {
-            while (pos < text.length() && charClass(text.codePointAt(pos)) == category) {
+            while (pos < text.length() && charClass(Character.codePointAt(text, pos)) == category) {
                 pos = GraphemeBoundary.next(text, pos);
             }
         }
-        while (pos < text.length() && Character.isWhitespace(text.codePointAt(pos))) {
+        while (pos < text.length() && Character.isWhitespace(Character.codePointAt(text, pos))) {
             pos = GraphemeBoundary.next(text, pos);
         }
         return pos;
     }
 
-    public int moveWordBackward(String text, int position) {
-        if (text == null || text.isEmpty()) {
+    public int moveWordBackward(CharSequence text, int position) {
+        if (text == null || text.length() == 0) {
             return 0;
         }
         int pos = GraphemeBoundary.isBoundary(text, position) ? GraphemeBoundary.previous(text, position)
             : GraphemeBoundary.floor(text, position);
-        while (pos > 0 && Character.isWhitespace(text.codePointAt(pos))) {
+        while (pos > 0 && Character.isWhitespace(Character.codePointAt(text, pos))) {
             pos = GraphemeBoundary.previous(text, pos);
         }
-        int category = charClass(text.codePointAt(pos));
+        int category = charClass(Character.codePointAt(text, pos));
         while (pos > 0) {
             int previous = GraphemeBoundary.previous(text, pos);
-            if (charClass(text.codePointAt(previous)) != category) {
+            if (charClass(Character.codePointAt(text, previous)) != category) {
                 break;
             }
             pos = previous;
@@ -52,8 +52,8 @@ public class MotionService {
         return pos;
     }
 
-    public int moveWordEnd(String text, int position) {
-        if (text == null || text.isEmpty()) {
+    public int moveWordEnd(CharSequence text, int position) {
+        if (text == null || text.length() == 0) {
             return 0;
         }
         int pos = GraphemeBoundary.isBoundary(text, position) ? position : GraphemeBoundary.ceiling(text, position);
@@ -61,15 +61,15 @@ public class MotionService {
             return GraphemeBoundary.previous(text, pos);
         }
         pos = GraphemeBoundary.next(text, pos);
-        while (pos < text.length() && Character.isWhitespace(text.codePointAt(pos))) {
+        while (pos < text.length() && Character.isWhitespace(Character.codePointAt(text, pos))) {
             pos = GraphemeBoundary.next(text, pos);
         }
         if (pos >= text.length()) {
             return GraphemeBoundary.previous(text, pos);
         }
-        int category = charClass(text.codePointAt(pos));
+        int category = charClass(Character.codePointAt(text, pos));
         while (GraphemeBoundary.next(text, pos) < text.length()
-            && charClass(text.codePointAt(GraphemeBoundary.next(text, pos))) == category) {
+            && charClass(Character.codePointAt(text, GraphemeBoundary.next(text, pos))) == category) {
             pos = GraphemeBoundary.next(text, pos);
         }
         return pos;
@@ -23,12 +23,13 @@ final class MultiSelectionEditService {
 
     private static List<MultiSelection> replace(JTextArea area, List<MultiSelection> selections, String replacement,
                                                 boolean backward, boolean forward) {
-        validate(area.getText(), selections);
+        validate(new DocumentText(area.getDocument()), selections);
         List<MultiSelection> ordered = new ArrayList<>(selections);
         ordered.sort(Comparator.comparingInt(MultiSelection::start).reversed().thenComparing(Comparator.comparingInt(MultiSelection::end).reversed()));
         List<MultiSelection> updated = new ArrayList<>();
         for (MultiSelection selection : ordered) {
-            String text = area.getText();
+            // A fresh view each time, as the previous replacement changed the document.
+            DocumentText text = new DocumentText(area.getDocument());
             GraphemeEditRange.Range range = resolve(text, selection, backward, forward);
             int delta = replacement.length() - (range.end() - range.start());
             area.replaceRange(replacement, range.start(), range.end());
@@ -42,7 +43,7 @@ final class MultiSelectionEditService {
         return updated;
     }
 
-    private static void validate(String text, List<MultiSelection> selections) {
+    private static void validate(CharSequence text, List<MultiSelection> selections) {
         List<MultiSelection> ordered = new ArrayList<>(selections);
         ordered.sort(Comparator.comparingInt(MultiSelection::start).thenComparingInt(MultiSelection::end));
         MultiSelection previous = null;
@@ -59,7 +60,7 @@ final class MultiSelectionEditService {
         }
     }
 
-    private static GraphemeEditRange.Range resolve(String text, MultiSelection selection, boolean backward, boolean forward) {
+    private static GraphemeEditRange.Range resolve(CharSequence text, MultiSelection selection, boolean backward, boolean forward) {
         if (!selection.collapsed()) {
             return GraphemeEditRange.selection(text, selection.start(), selection.end());
         }
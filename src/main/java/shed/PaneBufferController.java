@@ -33,6 +33,7 @@ final class PaneBufferController {
             FileBuffer buffer = getCurrentBuffer();
             FileBuffer.DocumentTextChange textChange = buffer != null && event != null && event.getDocument() == buffer.getDocument()
                 ? buffer.applyDocumentChange(event) : null;
+            editor.grammarHighlightService.recordEdit(buffer, textChange);
             markModified(event, textChange);
             editor.updateCurrentLineHighlight();
             editor.scheduleSyntaxHighlighting();
@@ -113,7 +114,7 @@ final class PaneBufferController {
             }
         }
         withSuppressedDocumentEvents(() -> pane.getTextArea().setDocument(buffer.getDocument()));
-        pane.getTextArea().setEditable(!buffer.isLargeFile() && editor.editorState.mode.isEditable());
+        pane.getTextArea().setEditable(!buffer.isLargeFileReadOnly() && editor.editorState.mode.isEditable());
         pane.getTextArea().setCaretPosition(Math.min(caretPosition, pane.getTextArea().getDocument().getLength()));
         if (replacedTerminalPane) {
             editor.renderWindowLayout();
@@ -161,13 +162,18 @@ final class PaneBufferController {
     private void markModified(DocumentEvent event, FileBuffer.DocumentTextChange textChange) {
         FileBuffer buffer = getCurrentBuffer();
         if (buffer != null && buffer.isLargeFile()) {
+            EditorPane pane = editor.getActivePane();
+            boolean rendering = pane != null && pane.getLargeFileProjection() != null && pane.getLargeFileProjection().rendering();
+            if (!rendering && buffer.isLargeFileEditable()) {
+                buffer.setModified(true);
+                editor.requestStatusBarRefresh();
+            }
             return;
         }
         if (buffer != null) {
             if (event == null && textChange == null) {
                 textChange = buffer.reconcileDocumentText();
             }
-            buffer.setModified(true);
             editor.invalidateGitBlame(buffer);
             scheduleIdleBackup(buffer);
             editor.recordChangePosition();
@@ -258,6 +264,7 @@ final class PaneBufferController {
                     && pane.getLargeFileProjection().moveForward(visibleLines(pane));
             if (changed) {
                 bar.setValue(Math.max(0, (bar.getMaximum() - bar.getVisibleAmount()) / 2));
+                refreshLargeFileEditable(pane);
             }
         } catch (IOException error) {
             editor.showMessage("Large-file window failed: " + error.getMessage());
@@ -273,6 +280,8 @@ final class PaneBufferController {
             int localLine = area.getLineOfOffset(area.getCaretPosition());
             if (pane.getLargeFileProjection().ensureCaretMargin(localLine, area.getLineCount(), visibleLines(pane))) {
                 area.setCaretPosition(Math.min(area.getDocument().getLength(), area.getCaretPosition()));
+                refreshLargeFileEditable(pane);
+                editor.scheduleSyntaxHighlighting();
             }
         } catch (BadLocationException | IOException error) {
             editor.showMessage("Large-file window failed: " + error.getMessage());
@@ -283,18 +292,84 @@ final class PaneBufferController {
         if (pane != null && pane.getLargeFileProjection() != null) {
             try {
                 withSuppressedDocumentEvents(() -> renderLargeFileProjection(pane));
+                editor.scheduleSyntaxHighlighting();
             } catch (RuntimeException error) {
                 editor.showMessage("Large-file window failed: " + error.getMessage());
             }
         }
     }
 
+    // Recenters the projection on an absolute line and places the caret at a column of it.
+    boolean revealLargeFileLine(EditorPane pane, long line, int column) {
+        if (pane == null || pane.getLargeFileProjection() == null) {
+            return false;
+        }
+        LargeFileProjection projection = pane.getLargeFileProjection();
+        try {
+            withSuppressedDocumentEvents(() -> {
+                try {
+                    projection.centerOn(line, visibleLines(pane));
+                } catch (IOException error) {
+                    throw new IllegalStateException(error.getMessage(), error);
+                }
+            });
+            JTextArea area = pane.getTextArea();
+            int localLine = (int) Math.max(0L, Math.min(area.getLineCount() - 1L, line - projection.firstLine()));
+            int start = area.getLineStartOffset(localLine);
+            area.setCaretPosition(Math.min(start + Math.max(0, column), area.getLineEndOffset(localLine)));
+        } catch (IllegalStateException | BadLocationException error) {
+            editor.showMessage("Large-file window failed: " + error.getMessage());
+            return false;
+        }
+        refreshLargeFileEditable(pane);
+        editor.scheduleSyntaxHighlighting();
+        return true;
+    }
+
     private void renderLargeFileProjection(EditorPane pane) {
         try {
             pane.getLargeFileProjection().render(visibleLines(pane));
         } catch (IOException error) {
             throw new IllegalStateException(error.getMessage(), error);
         }
+        refreshLargeFileEditable(pane);
+    }
+
+    // A window clipped at the preview cap cannot be folded back exactly, so it stays read-only.
+    private void refreshLargeFileEditable(EditorPane pane) {
+        FileBuffer buffer = pane.getBuffer();
+        if (buffer != null && buffer.isLargeFile()) {
+            pane.getTextArea().setEditable(!buffer.isLargeFileReadOnly() && editor.editorState.mode.isEditable());
+        }
+    }
+
+    boolean stepLargeFileHistory(boolean forward) {
+        FileBuffer buffer = getCurrentBuffer();
+        if (buffer == null || !buffer.isLargeFileEditable()) {
+            return false;
+        }
+        boolean[] stepped = new boolean[1];
+        try {
+            withSuppressedDocumentEvents(() -> {
+                try {
+                    stepped[0] = forward ? buffer.redoLargeFileEdit() : buffer.undoLargeFileEdit();
+                } catch (IOException error) {
+                    throw new IllegalStateException(error.getMessage(), error);
+                }
+            });
+        } catch (IllegalStateException error) {
+            editor.showMessage("Large-file " + (forward ? "redo" : "undo") + " failed: " + error.getMessage());
+            return false;
+        }
+        if (stepped[0]) {
+            EditorPane pane = editor.getActivePane();
+            if (pane != null) {
+                refreshLargeFileEditable(pane);
+            }
+            editor.applySyntaxHighlighting();
+            editor.requestStatusBarRefresh();
+        }
+        return stepped[0];
     }
 
     private int visibleLines(EditorPane pane) {
@@ -306,11 +381,11 @@ final class PaneBufferController {
     void updateDiffGutter(FileBuffer buffer) {
         if (editor.lineNumberPanel == null || buffer == null || buffer.isLargeFile()) return;
         VersionedTextSnapshot text = buffer.textSnapshot();
-        DiffGutterRequest request = new DiffGutterRequest(buffer, text, buffer.getSavedContent(), ++diffGutterGeneration);
+        DiffGutterRequest request = new DiffGutterRequest(buffer, text, buffer.savedText(), ++diffGutterGeneration);
         if (diffGutterJobId >= 0) editor.asyncJobService.cancel(diffGutterJobId);
         diffGutterJobId = editor.asyncJobService.submit("Diff gutter", token -> {
             long started = System.nanoTime();
-            LineNumberPanel.DiffMarkers markers = LineNumberPanel.diffMarkers(request.savedContent(), request.text().text());
+            LineNumberPanel.DiffMarkers markers = LineNumberPanel.diffMarkers(request.saved().text(), request.text().text());
             if (editor.perfService != null) {
                 editor.perfService.recordDuration("diff.gutter", started, request.buffer().getDisplayName());
             }
@@ -342,7 +417,7 @@ final class PaneBufferController {
         diffGutterTimer.restart();
     }
 
-    private record DiffGutterRequest(FileBuffer buffer, VersionedTextSnapshot text, String savedContent, long generation) { }
+    private record DiffGutterRequest(FileBuffer buffer, VersionedTextSnapshot text, VersionedTextSnapshot saved, long generation) { }
     private record DiffGutterResult(DiffGutterRequest request, LineNumberPanel.DiffMarkers markers) { }
 
 
@@ -354,7 +429,7 @@ final class PaneBufferController {
         if (result == JFileChooser.APPROVE_OPTION) {
             File file = fileChooser.getSelectedFile();
             try {
-                openFile(file);
+                openFileInBackground(file);
             } catch (Exception e) {
                 editor.showMessage("Error opening file: " + e.getMessage());
             }
@@ -440,6 +515,49 @@ final class PaneBufferController {
 
     public void openFile(File file) throws IOException {
         persistCurrentBufferState();
+        String projectConfigMessage = applyProjectConfigForFile(file);
+        if (showOpenBuffer(file, projectConfigMessage)) {
+            return;
+        }
+
+        FileBuffer buffer;
+        if (file.exists()) {
+            buffer = new FileBuffer(file, editor.configManager);
+        } else {
+            buffer = new FileBuffer(file.getAbsolutePath(), editor.configManager);
+        }
+        installOpenedBuffer(file, buffer, projectConfigMessage);
+    }
+
+
+    // Files big enough to decode in segments are read by a background job and shown when it completes, so opening
+    // them leaves the EDT free. Returns true when the buffer is still loading, false when the file opened right away.
+    boolean openFileInBackground(File file) throws IOException {
+        if (!file.isFile() || file.length() < SnapshotFileReader.SEGMENT_BYTES || findBufferByPath(file) != null) {
+            openFile(file);
+            return false;
+        }
+        persistCurrentBufferState();
+        String projectConfigMessage = applyProjectConfigForFile(file);
+        editor.asyncJobService.submit("Open " + file.getName(), token -> new FileBuffer(file, editor.configManager),
+            (job, buffer, error) -> {
+                if (job.getStatus() == AsyncJobService.Status.CANCELLED) {
+                    return;
+                }
+                if (error != null || buffer == null) {
+                    editor.showMessage("Error opening file: " + (error == null ? "nothing was read" : error.getMessage()));
+                    return;
+                }
+                persistCurrentBufferState();
+                if (!showOpenBuffer(file, projectConfigMessage)) {
+                    installOpenedBuffer(file, buffer, projectConfigMessage);
+                }
+            });
+        return true;
+    }
+
+
+    private String applyProjectConfigForFile(File file) {
         boolean trustedForLocalExecution = editor.ensureProjectTrustForFile(file);
         String projectConfigMessage = "";
         if (trustedForLocalExecution) {
@@ -454,23 +572,24 @@ final class PaneBufferController {
                 editor.applyRuntimeConfigFromSettings();
             }
         }
+        return projectConfigMessage;
+    }
 
+
+    private boolean showOpenBuffer(File file, String projectConfigMessage) {
         FileBuffer existing = findBufferByPath(file);
-        if (existing != null) {
-            loadBufferIntoEditor(existing);
-            if (projectConfigMessage != null && !projectConfigMessage.isEmpty()) {
-                editor.showMessage(projectConfigMessage);
-            }
-            return;
+        if (existing == null) {
+            return false;
         }
-
-        FileBuffer buffer;
-        if (file.exists()) {
-            buffer = new FileBuffer(file, editor.configManager);
-        } else {
-            buffer = new FileBuffer(file.getAbsolutePath(), editor.configManager);
+        loadBufferIntoEditor(existing);
+        if (projectConfigMessage != null && !projectConfigMessage.isEmpty()) {
+            editor.showMessage(projectConfigMessage);
         }
+        return true;
+    }
+
 
+    private void installOpenedBuffer(File file, FileBuffer buffer, String projectConfigMessage) {
         if (shouldReplaceSingleLandingBuffer()) {
             editor.buffers.set(0, buffer);
         } else {
@@ -592,6 +711,7 @@ final class PaneBufferController {
         }
         editor.closeTerminalSession(buffer);
         editor.buffers.remove(buffer);
+        editor.grammarHighlightService.invalidate(buffer);
         editor.persistRecoverySnapshotsSafely();
         if (editor.buffers.isEmpty()) {
             openLandingPage();
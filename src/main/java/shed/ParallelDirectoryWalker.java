@@ -0,0 +1,157 @@
+package shed;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BooleanSupplier;
+
+// Walks a directory tree on a bounded fork/join pool. Each directory is listed by one task, which forks a task for
+// every subdirectory it wants walked, so idle workers steal whole subtrees. Results stay attached to a tree of nodes
+// that the caller reads in whatever order it needs, depth-first or breadth-first, waiting only on the nodes it reaches;
+// output order therefore never depends on timing. Tasks stop starting new directories once the walk is closed, a
+// visit fails, or the cancellation fires.
+final class ParallelDirectoryWalker {
+    private static final int MAX_DEFAULT_PARALLELISM = 8;
+
+    interface Visitor<D, R> {
+        // Lists one directory and returns its result, adding the subdirectories to walk to children in reading order.
+        R visit(D directory, List<D> children) throws IOException;
+    }
+
+    private ParallelDirectoryWalker() {
+    }
+
+    // Directory reads overlap well even on a few cores, but past eight threads they mostly queue in the file system.
+    static int defaultParallelism() {
+        return Math.max(1, Math.min(MAX_DEFAULT_PARALLELISM, Runtime.getRuntime().availableProcessors()));
+    }
+
+    static <D, R> Walk<R> start(D root, Visitor<D, R> visitor, int parallelism, BooleanSupplier cancelled) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        Walk<R> walk = new Walk<>(new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true), cancelled);
+        walk.pool.execute(walk.new Task<>(root, visitor, walk.root));
+        return walk;
+    }
+
+    // One running walk. Closing it stops tasks that have not started and lets the pool's threads go.
+    static final class Walk<R> implements AutoCloseable {
+        private final ForkJoinPool pool;
+        private final BooleanSupplier cancelled;
+        private final Node<R> root = new Node<>();
+        private volatile boolean stopped;
+
+        private Walk(ForkJoinPool pool, BooleanSupplier cancelled) {
+            this.pool = pool;
+            this.cancelled = cancelled;
+        }
+
+        Node<R> root() {
+            return root;
+        }
+
+        @Override
+        public void close() {
+            stopped = true;
+            pool.shutdown();
+        }
+
+        private boolean stopping() {
+            return stopped || cancelled.getAsBoolean();
+        }
+
+        // Asynchronous mode runs forked tasks first in, first out, so the walk fans out a level at a time and a
+        // breadth-first reader that stops early leaves little finished work behind.
+        private final class Task<D> extends RecursiveAction {
+            private final D directory;
+            private final Visitor<D, R> visitor;
+            private final Node<R> node;
+
+            private Task(D directory, Visitor<D, R> visitor, Node<R> node) {
+                this.directory = directory;
+                this.visitor = visitor;
+                this.node = node;
+            }
+
+            @Override
+            protected void compute() {
+                if (stopping()) {
+                    node.complete(null, List.of(), null);
+                    return;
+                }
+                List<D> children = new ArrayList<>();
+                R result;
+                try {
+                    result = visitor.visit(directory, children);
+                } catch (Throwable failure) {
+                    stopped = true;
+                    node.complete(null, List.of(), failure);
+                    return;
+                }
+                List<Node<R>> nodes = new ArrayList<>(children.size());
+                for (int index = 0; index < children.size(); index++) {
+                    nodes.add(new Node<>());
+                }
+                node.complete(result, nodes, null);
+                for (int index = 0; index < children.size(); index++) {
+                    new Task<>(children.get(index), visitor, nodes.get(index)).fork();
+                }
+            }
+        }
+    }
+
+    // A directory's result and its children's nodes, in the order the visitor listed them.
+    static final class Node<R> {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private R result;
+        private List<Node<R>> children;
+        private Throwable failure;
+
+        private void complete(R result, List<Node<R>> children, Throwable failure) {
+            this.result = result;
+            this.children = children;
+            this.failure = failure;
+            done.countDown();
+        }
+
+        // Waits for the directory's visit; null when the walk stopped before reaching it. A failed visit rethrows.
+        R result() throws IOException {
+            await();
+            if (failure instanceof IOException error) {
+                throw error;
+            }
+            if (failure instanceof UncheckedIOException error) {
+                throw error.getCause();
+            }
+            if (failure instanceof RuntimeException error) {
+                throw error;
+            }
+            if (failure instanceof Error error) {
+                throw error;
+            }
+            if (failure != null) {
+                throw new IOException(failure);
+            }
+            return result;
+        }
+
+        List<Node<R>> children() throws IOException {
+            await();
+            return children;
+        }
+
+        private void await() throws IOException {
+            try {
+                done.await();
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+                throw new IOException("directory walk interrupted", interrupted);
+            }
+        }
+    }
+}
@@ -8,6 +8,8 @@ import java.util.List;
 import java.util.Objects;
 
 final class ProjectFileScanBenchmark {
+    static final List<Integer> THREAD_COUNTS = List.of(1, 2, 4, 8);
+
     private final ProjectFileScanner scanner;
 
     ProjectFileScanBenchmark(ProjectFileScanner scanner) {
@@ -26,8 +28,18 @@ final class ProjectFileScanBenchmark {
         Collections.sort(legacySorted);
         List<String> optimizedSorted = new ArrayList<>(optimized.files());
         Collections.sort(optimizedSorted);
+        // The same scan again with each thread count; every run must return the same files in the same order.
+        List<ThreadScaling> scaling = new ArrayList<>();
+        boolean sameOrder = true;
+        for (int threads : THREAD_COUNTS) {
+            long startedAt = System.nanoTime();
+            ProjectFileScanner.ScanResult result = scanner.withParallelism(threads).scan(normalizedRoot, normalizedRoot, limit,
+                ProjectFileScanner.Cancellation.NONE);
+            scaling.add(new ThreadScaling(threads, System.nanoTime() - startedAt, result.files().size()));
+            sameOrder &= result.files().equals(optimized.files());
+        }
         return new Report(normalizedRoot.toString(), limit, legacyDuration, optimizedDuration, legacy.size(), optimized.files().size(),
-            legacySorted.equals(optimizedSorted), optimized.scannedDirectories());
+            legacySorted.equals(optimizedSorted), optimized.scannedDirectories(), scaling, sameOrder);
     }
 
     private static List<String> legacyScan(File root, String rootPath, int limit) {
@@ -62,13 +74,25 @@ final class ProjectFileScanBenchmark {
         }
     }
 
+    record ThreadScaling(int threads, long durationNanos, int files) {
+    }
+
     record Report(String root, int limit, long legacyDurationNanos, long optimizedDurationNanos, int legacyFiles,
-                  int optimizedFiles, boolean equivalentFileSet, int optimizedDirectories) {
+                  int optimizedFiles, boolean equivalentFileSet, int optimizedDirectories, List<ThreadScaling> threadScaling,
+                  boolean sameOrderAcrossThreads) {
+        Report {
+            threadScaling = List.copyOf(threadScaling);
+        }
+
         String format() {
-            return "root=" + root + "\nlimit=" + limit + "\nlegacyDurationNanos=" + legacyDurationNanos
+            StringBuilder report = new StringBuilder("root=" + root + "\nlimit=" + limit + "\nlegacyDurationNanos=" + legacyDurationNanos
                 + "\noptimizedDurationNanos=" + optimizedDurationNanos + "\nlegacyFiles=" + legacyFiles
                 + "\noptimizedFiles=" + optimizedFiles + "\nequivalentFileSet=" + equivalentFileSet
-                + "\noptimizedDirectories=" + optimizedDirectories + "\n";
+                + "\noptimizedDirectories=" + optimizedDirectories + "\n");
+            for (ThreadScaling scaling : threadScaling) {
+                report.append("threads").append(scaling.threads()).append("DurationNanos=").append(scaling.durationNanos()).append('\n');
+            }
+            return report.append("sameOrderAcrossThreads=").append(sameOrderAcrossThreads).append('\n').toString();
         }
     }
 }
@@ -12,6 +12,25 @@ import java.util.Objects;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 final class ProjectFileScanner {
+    private final int parallelism;
+
+    ProjectFileScanner() {
+        this(ParallelDirectoryWalker.defaultParallelism());
+    }
+
+    ProjectFileScanner(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        this.parallelism = parallelism;
+    }
+
+    ProjectFileScanner withParallelism(int threads) {
+        return new ProjectFileScanner(threads);
+    }
+
+    // Directories are listed in parallel but read back breadth-first, each one's files in name order, so the result and
+    // where the limit cuts it off are the same for any number of threads.
     ScanResult scan(Path directory, Path root, int limit, Cancellation cancellation) {
         Path start = Objects.requireNonNull(directory, "directory").toAbsolutePath().normalize();
         Path workspaceRoot = Objects.requireNonNull(root, "root").toAbsolutePath().normalize();
@@ -21,35 +40,52 @@ final class ProjectFileScanner {
         if (effectiveLimit == 0 || !Files.isDirectory(start)) {
             return new ScanResult(List.of(), false, 0);
         }
-        ArrayDeque<Path> directories = new ArrayDeque<>();
-        directories.add(start);
+        ParallelDirectoryWalker.Visitor<Path, List<String>> visitor = (current, subdirectories) -> listFiles(current, workspaceRoot, subdirectories);
         int scannedDirectories = 0;
-        while (!directories.isEmpty() && files.size() < effectiveLimit) {
-            if (effectiveCancellation.isCancelled()) {
-                return new ScanResult(List.copyOf(files), true, scannedDirectories);
-            }
-            Path current = directories.removeFirst();
-            List<Path> children = children(current);
-            scannedDirectories++;
-            for (Path child : children) {
+        try (ParallelDirectoryWalker.Walk<List<String>> walk = ParallelDirectoryWalker.start(start, visitor, parallelism,
+            effectiveCancellation::isCancelled)) {
+            ArrayDeque<ParallelDirectoryWalker.Node<List<String>>> directories = new ArrayDeque<>();
+            directories.add(walk.root());
+            while (!directories.isEmpty() && files.size() < effectiveLimit) {
                 if (effectiveCancellation.isCancelled()) {
                     return new ScanResult(List.copyOf(files), true, scannedDirectories);
                 }
-                String name = child.getFileName().toString();
-                if (excluded(name)) {
-                    continue;
+                ParallelDirectoryWalker.Node<List<String>> current = directories.removeFirst();
+                List<String> listed = current.result();
+                if (listed == null) {
+                    return new ScanResult(List.copyOf(files), true, scannedDirectories);
                 }
-                if (Files.isRegularFile(child)) {
-                    files.add(relativePath(workspaceRoot, child));
+                scannedDirectories++;
+                for (String file : listed) {
+                    files.add(file);
                     if (files.size() >= effectiveLimit) {
                         break;
                     }
-                } else if (Files.isDirectory(child)) {
-                    directories.addLast(child);
                 }
+                directories.addAll(current.children());
+            }
+            return new ScanResult(List.copyOf(files), false, scannedDirectories);
+        } catch (IOException error) {
+            // Listing failures are skipped per directory, so only an interrupted wait ends up here.
+            return new ScanResult(List.copyOf(files), true, scannedDirectories);
+        }
+    }
+
+    // Lists one directory on a walker thread: its files in name order, and its subdirectories to walk in name order.
+    private static List<String> listFiles(Path directory, Path workspaceRoot, List<Path> subdirectories) {
+        List<String> files = new ArrayList<>();
+        for (Path child : children(directory)) {
+            String name = child.getFileName().toString();
+            if (excluded(name)) {
+                continue;
+            }
+            if (Files.isRegularFile(child)) {
+                files.add(relativePath(workspaceRoot, child));
+            } else if (Files.isDirectory(child)) {
+                subdirectories.add(child);
             }
         }
-        return new ScanResult(List.copyOf(files), false, scannedDirectories);
+        return files;
     }
 
     private static List<Path> children(Path directory) {
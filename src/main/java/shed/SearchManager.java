@@ -81,7 +81,7 @@ public class SearchManager {
     public int getMatchCount() { return matchPositions.size(); }
     public String getSearchPattern() { return searchPattern; }
 
-    private static boolean containsRegexMeta(String pattern) {
+    static boolean containsRegexMeta(String pattern) {
         // only treat as regex if it has unambiguous regex constructs (not just '.' or '$')
         for (int i = 0; i < pattern.length(); i++) {
             char c = pattern.charAt(i);
@@ -0,0 +1,311 @@
+package shed;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.UndoableEdit;
+
+/**
+ * Swing document storage backed by a {@link VersionedTextSnapshot}, so the
+ * editor's document and its background snapshot are the same text rather than
+ * two copies kept in step. Every edit replaces the snapshot with the next
+ * revision, and any thread may take the current one with {@link #snapshot()}
+ * without copying. Positions follow edits the way {@code GapContent} moves its
+ * marks: marks sit in one array sorted by offset, split at the last edit, with
+ * marks before the split holding their offset and marks after it holding their
+ * distance from the end, so an edit only touches the marks it crosses.
+ */
+final class SnapshotContent implements AbstractDocument.Content {
+    // Released positions tolerated before the mark array is compacted.
+    private static final int MIN_RELEASED_BEFORE_COMPACT = 64;
+
+    private volatile VersionedTextSnapshot snapshot;
+    private volatile VersionedTextSnapshot previous;
+    private final ReferenceQueue<Handle> released = new ReferenceQueue<>();
+    private int releasedCount;
+    // marks[0, gapStart) hold offsets and marks[gapEnd, length) hold distances from the end; both halves are sorted.
+    private Mark[] marks = new Mark[16];
+    private int gapStart;
+    private int gapEnd = marks.length;
+
+    SnapshotContent() {
+        this.snapshot = VersionedTextSnapshot.empty();
+    }
+
+    // The current text, without the trailing newline Swing keeps after it.
+    VersionedTextSnapshot snapshot() {
+        return snapshot;
+    }
+
+    // The revision the most recent edit replaced, or null before the first edit.
+    VersionedTextSnapshot previous() {
+        return previous;
+    }
+
+    @Override
+    public Position createPosition(int offset) throws BadLocationException {
+        if (offset < 0 || offset > length()) throw new BadLocationException("Invalid position", offset);
+        collectReleased();
+        Handle handle = new Handle();
+        int index = fitsAtGap(offset) ? gapStart : firstAtOrAfter(offset);
+        moveGap(index);
+        if (gapStart == gapEnd) grow();
+        handle.mark.value = offset;
+        handle.mark.fromEnd = false;
+        marks[gapStart++] = handle.mark;
+        return handle;
+    }
+
+    @Override
+    public int length() {
+        return snapshot.length() + 1;
+    }
+
+    @Override
+    public UndoableEdit insertString(int where, String str) throws BadLocationException {
+        if (where < 0 || where >= length()) throw new BadLocationException("Invalid insert", where);
+        if (str == null || str.isEmpty()) return null;
+        insertText(where, str, null);
+        return new Edit(where, str, true);
+    }
+
+    @Override
+    public UndoableEdit remove(int where, int nitems) throws BadLocationException {
+        if (where < 0 || nitems < 0 || where + nitems >= length()) throw new BadLocationException("Invalid remove", where + nitems);
+        if (nitems == 0) return null;
+        String removed = snapshot.substring(where, nitems);
+        Edit edit = new Edit(where, removed, false);
+        edit.positions = removeText(where, nitems);
+        return edit;
+    }
+
+    @Override
+    public String getString(int where, int len) throws BadLocationException {
+        check(where, len);
+        VersionedTextSnapshot text = snapshot;
+        if (where + len <= text.length()) return text.substring(where, len);
+        return text.substring(where, len - 1) + '\n';
+    }
+
+    // A partial return stops at the end of the leaf holding where, so callers scanning in chunks copy one leaf at a time.
+    @Override
+    public void getChars(int where, int len, Segment txt) throws BadLocationException {
+        check(where, len);
+        VersionedTextSnapshot text = snapshot;
+        int textEnd = Math.min(where + len, text.length());
+        if (txt.isPartialReturn() && where < textEnd) {
+            text.forEachChunk(where, textEnd, (chunk, start, end) -> {
+                txt.array = new char[end - start];
+                chunk.getChars(start, end, txt.array, 0);
+                return false;
+            });
+            txt.offset = 0;
+            txt.count = txt.array.length;
+            return;
+        }
+        char[] chars = new char[len];
+        int[] filled = {0};
+        text.forEachChunk(where, textEnd, (chunk, start, end) -> {
+            chunk.getChars(start, end, chars, filled[0]);
+            filled[0] += end - start;
+            return true;
+        });
+        if (filled[0] < len) chars[filled[0]] = '\n';
+        txt.array = chars;
+        txt.offset = 0;
+        txt.count = len;
+    }
+
+    // Fills empty content with text as insertString(0, ...) would, adopting the snapshot's leaves without copying them.
+    void load(VersionedTextSnapshot text) {
+        if (snapshot.length() > 0) throw new IllegalStateException("only empty content can load a snapshot");
+        moveGap(firstAtOrAfter(1));
+        previous = snapshot;
+        snapshot = text;
+    }
+
+    private void check(int where, int len) throws BadLocationException {
+        if (where < 0 || len < 0 || where + len > length()) throw new BadLocationException("Invalid range", where + len);
+    }
+
+    // Marks at or after where move with the inserted text, except marks at 0, which stay at the start.
+    private void insertText(int where, String text, List<Restore> positions) {
+        moveGap(firstAtOrAfter(where == 0 ? 1 : where));
+        previous = snapshot;
+        snapshot = snapshot.replace(where, 0, text);
+        if (positions != null) restore(where, text.length(), positions);
+    }
+
+    // Collapses marks inside the removed range onto where and returns every mark in [where, where + length] with its
+    // offset, so undoing the removal can put line and caret positions back where they were.
+    private List<Restore> removeText(int where, int length) {
+        int first = firstAtOrAfter(where);
+        int last = firstAtOrAfter(where + length + 1);
+        List<Restore> positions = new ArrayList<>(last - first);
+        for (int index = first; index < last; index++) positions.add(new Restore(markAt(index), offset(markAt(index))));
+        int inside = firstAtOrAfter(where + length);
+        moveGap(inside);
+        for (int index = first; index < inside; index++) marks[index].value = where;
+        previous = snapshot;
+        snapshot = snapshot.replace(where, length, "");
+        return positions;
+    }
+
+    // After re-inserting removed text, every mark it captured sits together at one offset; reset them and re-sort that run.
+    private void restore(int where, int length, List<Restore> positions) {
+        int collapsed = where == 0 ? 0 : where + length;
+        int first = firstAtOrAfter(collapsed);
+        int last = firstAtOrAfter(collapsed + 1);
+        moveGap(last);
+        for (Restore position : positions) {
+            position.mark.value = position.offset;
+            position.mark.fromEnd = false;
+        }
+        Arrays.sort(marks, first, last, Comparator.comparingInt(mark -> mark.value));
+    }
+
+    private int offset(Mark mark) {
+        return mark.fromEnd ? length() - mark.value : mark.value;
+    }
+
+    // Positions still tracked, including released ones not yet compacted away.
+    int markCount() {
+        return gapStart + marks.length - gapEnd;
+    }
+
+    private Mark markAt(int index) {
+        return marks[index < gapStart ? index : index + gapEnd - gapStart];
+    }
+
+    // Positions created in ascending order, as a document's line elements are, belong at the gap without a search.
+    private boolean fitsAtGap(int offset) {
+        return (gapStart == 0 || offset(marks[gapStart - 1]) < offset) && (gapEnd == marks.length || offset(marks[gapEnd]) >= offset);
+    }
+
+    // Index of the first mark whose offset is at least offset.
+    private int firstAtOrAfter(int offset) {
+        int low = 0;
+        int high = markCount();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (offset(markAt(middle)) < offset) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    // Moves the split to index, converting the crossed marks between offsets and distances from the end.
+    private void moveGap(int index) {
+        int length = length();
+        while (gapStart > index) {
+            Mark mark = marks[--gapStart];
+            marks[gapStart] = null;
+            mark.value = length - mark.value;
+            mark.fromEnd = true;
+            marks[--gapEnd] = mark;
+        }
+        while (gapStart < index) {
+            Mark mark = marks[gapEnd];
+            marks[gapEnd++] = null;
+            mark.value = length - mark.value;
+            mark.fromEnd = false;
+            marks[gapStart++] = mark;
+        }
+    }
+
+    private void grow() {
+        Mark[] grown = new Mark[marks.length * 2];
+        int after = marks.length - gapEnd;
+        System.arraycopy(marks, 0, grown, 0, gapStart);
+        System.arraycopy(marks, gapEnd, grown, grown.length - after, after);
+        marks = grown;
+        gapEnd = grown.length - after;
+    }
+
+    // Drops marks whose positions are no longer referenced once enough of them have piled up.
+    private void collectReleased() {
+        while (released.poll() != null) releasedCount++;
+        if (releasedCount < Math.max(MIN_RELEASED_BEFORE_COMPACT, markCount() / 2)) return;
+        moveGap(markCount());
+        int kept = 0;
+        for (int index = 0; index < gapStart; index++) {
+            if (marks[index].get() != null) marks[kept++] = marks[index];
+        }
+        Arrays.fill(marks, kept, gapStart, null);
+        gapStart = kept;
+        releasedCount = 0;
+    }
+
+    private final class Handle implements Position {
+        private final Mark mark = new Mark(this, released);
+
+        @Override
+        public int getOffset() {
+            return offset(mark);
+        }
+
+        @Override
+        public String toString() {
+            return Integer.toString(getOffset());
+        }
+    }
+
+    private static final class Mark extends WeakReference<Handle> {
+        int value;
+        boolean fromEnd;
+
+        Mark(Handle handle, ReferenceQueue<Handle> queue) {
+            super(handle, queue);
+        }
+    }
+
+    private record Restore(Mark mark, int offset) { }
+
+    // Undoes an insert by removing its text and a removal by inserting it back along with the positions it collapsed.
+    private final class Edit extends AbstractUndoableEdit {
+        private static final long serialVersionUID = 1L;
+
+        private final int offset;
+        private final String text;
+        private final boolean insert;
+        private List<Restore> positions;
+
+        Edit(int offset, String text, boolean insert) {
+            this.offset = offset;
+            this.text = text;
+            this.insert = insert;
+        }
+
+        @Override
+        public void undo() throws CannotUndoException {
+            super.undo();
+            if (insert) {
+                positions = removeText(offset, text.length());
+            } else {
+                insertText(offset, text, positions);
+                positions = null;
+            }
+        }
+
+        @Override
+        public void redo() throws CannotRedoException {
+            super.redo();
+            if (insert) {
+                insertText(offset, text, positions);
+                positions = null;
+            } else {
+                positions = removeText(offset, text.length());
+            }
+        }
+    }
+}
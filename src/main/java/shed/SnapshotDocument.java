@@ -0,0 +1,97 @@
+package shed;
+
+import java.awt.Font;
+import java.awt.font.TextAttribute;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.event.DocumentEvent;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.PlainDocument;
+
+/**
+ * Plain document stored in a {@link SnapshotContent} that can take a whole
+ * snapshot in one step: the content adopts the snapshot's leaves as they are
+ * and the line elements come from its newlines, so loading a file copies no
+ * text through Swing's string-based insert path.
+ */
+final class SnapshotDocument extends PlainDocument {
+    private static final long serialVersionUID = 1L;
+    // AbstractDocument's property names for text that needs bidi or complex layout and for text beyond Latin-1.
+    private static final String I18N_PROPERTY = "i18n";
+    private static final String MULTI_BYTE_PROPERTY = "multiByte";
+
+    SnapshotDocument() {
+        super(new SnapshotContent());
+    }
+
+    SnapshotContent content() {
+        return (SnapshotContent) getContent();
+    }
+
+    // Replaces all text as one removal and one insertion. Text that needs bidi or complex layout takes the stock
+    // insert path, which also builds the bidi structure that layout reads.
+    void setText(VersionedTextSnapshot text) throws BadLocationException {
+        writeLock();
+        try {
+            if (getLength() > 0) remove(0, getLength());
+            if (text.length() == 0) return;
+            if (Boolean.TRUE.equals(getProperty(I18N_PROPERTY))
+                || TextAttribute.RUN_DIRECTION_RTL.equals(getProperty(TextAttribute.RUN_DIRECTION))
+                || requiresLayout(text)) {
+                insertString(0, text.text(), null);
+                return;
+            }
+            content().load(text);
+            DefaultDocumentEvent event = new DefaultDocumentEvent(0, text.length(), DocumentEvent.EventType.INSERT);
+            BranchElement root = (BranchElement) getDefaultRootElement();
+            Element[] removed = {root.getElement(0)};
+            Element[] added = lines(root, text);
+            root.replace(0, removed.length, added);
+            event.addEdit(new ElementEdit(root, 0, removed, added));
+            if (!text.forEachChunk(0, text.length(), SnapshotDocument::latin1)) {
+                putProperty(MULTI_BYTE_PROPERTY, Boolean.TRUE);
+            }
+            event.end();
+            fireInsertUpdate(event);
+        } finally {
+            writeUnlock();
+        }
+    }
+
+    private Element[] lines(BranchElement root, VersionedTextSnapshot text) {
+        List<Element> lines = new ArrayList<>(text.lineCount());
+        int[] offsets = {0, 0};
+        text.forEachChunk(0, text.length(), (chunk, start, end) -> {
+            int base = offsets[0] - start;
+            for (int newline = chunk.indexOf('\n', start); newline >= 0 && newline < end; newline = chunk.indexOf('\n', newline + 1)) {
+                lines.add(createLeafElement(root, null, offsets[1], base + newline + 1));
+                offsets[1] = base + newline + 1;
+            }
+            offsets[0] += end - start;
+            return true;
+        });
+        lines.add(createLeafElement(root, null, offsets[1], text.length() + 1));
+        return lines.toArray(new Element[0]);
+    }
+
+    // Layout only changes for characters from U+0300 on, so leaves below that skip the copy Font needs.
+    private static boolean requiresLayout(VersionedTextSnapshot text) {
+        return !text.forEachChunk(0, text.length(), (chunk, start, end) -> {
+            for (int index = start; index < end; index++) {
+                if (chunk.charAt(index) >= 0x300) {
+                    char[] leaf = chunk.substring(start, end).toCharArray();
+                    return !Font.textRequiresLayout(leaf, 0, leaf.length);
+                }
+            }
+            return true;
+        });
+    }
+
+    private static boolean latin1(String chunk, int start, int end) {
+        for (int index = start; index < end; index++) {
+            if (chunk.charAt(index) > 0xff) return false;
+        }
+        return true;
+    }
+}
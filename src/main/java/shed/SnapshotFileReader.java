@@ -0,0 +1,216 @@
+package shed;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// Decodes an editable file from segments straight into text snapshot leaves, turning CR and CRLF into '\n' on the
+// way, so loading never holds the file's bytes, decoded text, or normalized text as whole arrays. Segments are cut
+// before UTF-8 lead bytes and never inside a CRLF, so each decodes on its own on the common pool. Segments are read
+// into a heap buffer rather than mapped: a mapping stays open until it is collected, and on Windows an open mapping
+// keeps a later save from replacing the same file.
+final class SnapshotFileReader {
+    static final int SEGMENT_BYTES = 1024 * 1024;
+    private static final int CHAR_BUFFER_SIZE = 16 * 1024;
+    private static final int BYTE_BUFFER_SIZE = 64 * 1024;
+
+    record Result(VersionedTextSnapshot text, Charset charset, String lineEnding, long bytes) { }
+
+    private SnapshotFileReader() {
+    }
+
+    static Result read(Path source) throws IOException {
+        return read(source, SEGMENT_BYTES);
+    }
+
+    // A UTF-8 BOM is dropped and a UTF-16 BOM kept as text; without a BOM the file is strict UTF-8, else ISO-8859-1.
+    static Result read(Path source, int segmentBytes) throws IOException {
+        if (segmentBytes < 4) {
+            throw new IllegalArgumentException("segment must hold at least one UTF-8 sequence");
+        }
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer head = ByteBuffer.allocate(3);
+            while (head.hasRemaining() && channel.read(head, head.position()) >= 0) {
+                // Positional reads may return short counts.
+            }
+            int first = head.position() > 0 ? head.get(0) & 0xff : -1;
+            int second = head.position() > 1 ? head.get(1) & 0xff : -1;
+            if (first == 0xef && second == 0xbb && head.position() > 2 && (head.get(2) & 0xff) == 0xbf) {
+                return decode(channel, 3L, size, StandardCharsets.UTF_8, false, segmentBytes);
+            }
+            // UTF-16 has no lead bytes to cut at, so it decodes as one segment.
+            if (first == 0xfe && second == 0xff) {
+                return decode(channel, 0L, size, StandardCharsets.UTF_16BE, false, Integer.MAX_VALUE);
+            }
+            if (first == 0xff && second == 0xfe) {
+                return decode(channel, 0L, size, StandardCharsets.UTF_16LE, false, Integer.MAX_VALUE);
+            }
+            try {
+                return decode(channel, 0L, size, StandardCharsets.UTF_8, true, segmentBytes);
+            } catch (CharacterCodingException malformed) {
+                return decode(channel, 0L, size, StandardCharsets.ISO_8859_1, false, segmentBytes);
+            }
+        }
+    }
+
+    private static Result decode(FileChannel channel, long start, long end, Charset charset, boolean strict, int segmentBytes)
+        throws IOException {
+        List<Callable<Segment>> tasks = new ArrayList<>();
+        for (Range range : split(channel, start, end, segmentBytes)) {
+            tasks.add(() -> range.decode(channel, charset, strict));
+        }
+        List<Segment> segments = tasks.size() == 1 ? List.of(call(tasks.get(0))) : invokeAll(tasks);
+        List<VersionedTextSnapshot> parts = new ArrayList<>(segments.size());
+        boolean crLf = false;
+        boolean carriageReturn = false;
+        for (Segment segment : segments) {
+            parts.add(segment.text);
+            crLf |= segment.crLf;
+            carriageReturn |= segment.carriageReturn;
+        }
+        String lineEnding = crLf ? "\r\n" : carriageReturn ? "\r" : "\n";
+        return new Result(VersionedTextSnapshot.concat(parts), charset, lineEnding, end);
+    }
+
+    private static List<Range> split(FileChannel channel, long start, long end, int segmentBytes) throws IOException {
+        List<Range> ranges = new ArrayList<>();
+        ByteBuffer probe = ByteBuffer.allocate(4);
+        long from = start;
+        while (from < end || ranges.isEmpty()) {
+            long to = Math.min(end, from + segmentBytes);
+            if (to < end) {
+                // Move the cut past continuation bytes, or past the LF when it would fall inside a CRLF.
+                probe.clear();
+                channel.read(probe, to - 1L);
+                int skipped = 0;
+                while (skipped + 1 < probe.position() && (probe.get(skipped + 1) & 0xc0) == 0x80) {
+                    skipped++;
+                }
+                if (skipped == 0 && probe.position() > 1 && probe.get(0) == '\r' && probe.get(1) == '\n') {
+                    skipped++;
+                }
+                to += skipped;
+            }
+            ranges.add(new Range(from, to));
+            from = to;
+        }
+        return ranges;
+    }
+
+    private static Segment call(Callable<Segment> task) throws IOException {
+        try {
+            return task.call();
+        } catch (IOException | RuntimeException error) {
+            throw error;
+        } catch (Exception error) {
+            throw new IOException("file decoding failed", error);
+        }
+    }
+
+    private static List<Segment> invokeAll(List<Callable<Segment>> tasks) throws IOException {
+        List<Segment> results = new ArrayList<>(tasks.size());
+        try {
+            for (Future<Segment> future : ForkJoinPool.commonPool().invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+            throw new IOException("file decoding was interrupted", error);
+        } catch (ExecutionException error) {
+            // Fork/join may rewrap a worker's exception; a malformed segment must surface as its coding exception.
+            for (Throwable cause = error.getCause(); cause != null; cause = cause.getCause()) {
+                if (cause instanceof IOException io) {
+                    throw io;
+                }
+            }
+            throw new IOException("file decoding failed", error.getCause());
+        }
+        return results;
+    }
+
+    private record Range(long start, long end) {
+        Segment decode(FileChannel channel, Charset charset, boolean strict) throws IOException {
+            CodingErrorAction action = strict ? CodingErrorAction.REPORT : CodingErrorAction.REPLACE;
+            CharsetDecoder decoder = charset.newDecoder().onMalformedInput(action).onUnmappableCharacter(action);
+            ByteBuffer bytes = ByteBuffer.allocate((int) Math.min(BYTE_BUFFER_SIZE, end - start));
+            CharBuffer chars = CharBuffer.allocate(CHAR_BUFFER_SIZE);
+            Segment segment = new Segment();
+            CoderResult result;
+            long position = start;
+            boolean endOfInput;
+            do {
+                // Fills the buffer behind any partial sequence the last pass left, without reading past the range.
+                bytes.limit(bytes.position() + (int) Math.min(bytes.remaining(), end - position));
+                while (bytes.hasRemaining()) {
+                    int read = channel.read(bytes, position);
+                    if (read < 0) {
+                        throw new IOException("file shrank while it was read");
+                    }
+                    position += read;
+                }
+                endOfInput = position == end;
+                bytes.flip();
+                do {
+                    result = decoder.decode(bytes, chars, endOfInput);
+                    if (result.isError()) {
+                        result.throwException();
+                    }
+                    segment.append(chars);
+                } while (result.isOverflow());
+                bytes.compact();
+            } while (!endOfInput);
+            do {
+                result = decoder.flush(chars);
+                segment.append(chars);
+            } while (result.isOverflow());
+            segment.text = segment.builder.build();
+            return segment;
+        }
+    }
+
+    private static final class Segment {
+        private final VersionedTextSnapshot.Builder builder = new VersionedTextSnapshot.Builder();
+        private VersionedTextSnapshot text;
+        private boolean crLf;
+        private boolean carriageReturn;
+        private boolean afterCarriageReturn;
+
+        // Compacts the decoded characters in place, dropping the LF of each CRLF and turning every CR into '\n'.
+        void append(CharBuffer chars) {
+            char[] array = chars.array();
+            int kept = 0;
+            for (int index = 0; index < chars.position(); index++) {
+                char character = array[index];
+                if (character == '\n' && afterCarriageReturn) {
+                    crLf = true;
+                    afterCarriageReturn = false;
+                    continue;
+                }
+                afterCarriageReturn = character == '\r';
+                if (afterCarriageReturn) {
+                    carriageReturn = true;
+                    character = '\n';
+                }
+                array[kept++] = character;
+            }
+            builder.append(array, 0, kept);
+            chars.clear();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package shed;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+// Encodes a text snapshot leaf by leaf into a channel, writing each '\n' as the requested line ending on the way,
+// so saving never builds the translated text or its bytes in full. Unmappable characters become the charset's
+// replacement, as String.getBytes does.
+final class SnapshotFileWriter {
+    private static final int CHAR_BUFFER_SIZE = 16 * 1024;
+    private static final int BYTE_BUFFER_SIZE = 64 * 1024;
+
+    private final CharsetEncoder encoder;
+    private final WritableByteChannel output;
+    private final String lineEnding;
+    private final CharBuffer chars = CharBuffer.allocate(CHAR_BUFFER_SIZE);
+    private final ByteBuffer bytes;
+    private long written;
+
+    private SnapshotFileWriter(Charset charset, String lineEnding, WritableByteChannel output) {
+        this.encoder = charset.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.lineEnding = lineEnding;
+        this.output = output;
+        this.bytes = ByteBuffer.allocate(Math.max(BYTE_BUFFER_SIZE, (int) Math.ceil(CHAR_BUFFER_SIZE * encoder.maxBytesPerChar())));
+    }
+
+    // Returns the number of bytes written.
+    static long write(VersionedTextSnapshot text, String lineEnding, Charset charset, WritableByteChannel output) throws IOException {
+        if (text == null || charset == null || output == null) {
+            throw new IllegalArgumentException("snapshot write requires text, a charset, and an output channel");
+        }
+        String ending = "\r\n".equals(lineEnding) || "\r".equals(lineEnding) ? lineEnding : "\n";
+        SnapshotFileWriter writer = new SnapshotFileWriter(charset, ending, output);
+        try {
+            text.forEachChunk(0, text.length(), (chunk, start, end) -> {
+                try {
+                    writer.append(chunk, start, end);
+                } catch (IOException error) {
+                    throw new UncheckedIOException(error);
+                }
+                return true;
+            });
+        } catch (UncheckedIOException error) {
+            throw error.getCause();
+        }
+        writer.finish();
+        return writer.written;
+    }
+
+    private void append(String chunk, int start, int end) throws IOException {
+        int position = start;
+        while (position < end) {
+            int newline = "\n".equals(lineEnding) ? -1 : chunk.indexOf('\n', position);
+            int runEnd = newline < 0 || newline >= end ? end : newline;
+            while (position < runEnd) {
+                if (!chars.hasRemaining()) encode(false);
+                int count = Math.min(chars.remaining(), runEnd - position);
+                chars.put(chunk, position, position + count);
+                position += count;
+            }
+            if (position < end) {
+                if (chars.remaining() < lineEnding.length()) encode(false);
+                chars.put(lineEnding);
+                position++;
+            }
+        }
+    }
+
+    private void finish() throws IOException {
+        encode(true);
+        while (true) {
+            CoderResult result = encoder.flush(bytes);
+            drain();
+            if (!result.isOverflow()) break;
+        }
+    }
+
+    // A high surrogate left at the end of the buffer stays behind until its pair arrives with the next chunk.
+    private void encode(boolean endOfInput) throws IOException {
+        chars.flip();
+        while (true) {
+            CoderResult result = encoder.encode(chars, bytes, endOfInput);
+            if (result.isError()) result.throwException();
+            if (!result.isOverflow()) break;
+            drain();
+        }
+        chars.compact();
+        drain();
+    }
+
+    private void drain() throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) written += output.write(bytes);
+        bytes.clear();
+    }
+}
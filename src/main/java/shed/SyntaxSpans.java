@@ -0,0 +1,90 @@
+package shed;
+
+import java.awt.Color;
+import java.util.Arrays;
+
+// Foreground color runs painted over the editor: packed token runs plus the palette their styles index.
+final class SyntaxSpans {
+    private static final Color[] NO_COLORS = new Color[0];
+
+    private TokenBuffer runs = new TokenBuffer();
+    private Color[] palette = NO_COLORS;
+    // Adopted runs belong to the lexer that produced them and are copied before the first add.
+    private boolean shared;
+
+    // Takes runs without copying; a style with no palette color is not painted.
+    void set(TokenBuffer tokens, Color[] colors) {
+        if (tokens == null || colors == null) {
+            throw new IllegalArgumentException("syntax spans require runs and a palette");
+        }
+        runs = tokens;
+        palette = colors;
+        shared = true;
+    }
+
+    void add(int start, int end, Color color) {
+        if (color == null || end <= start) {
+            return;
+        }
+        if (shared) {
+            runs = runs.trimmed();
+            palette = palette.clone();
+            shared = false;
+        }
+        runs.add(start, end, styleOf(color));
+    }
+
+    void sortByStart() {
+        if (shared) {
+            runs = runs.trimmed();
+            shared = false;
+        }
+        runs.sortByStart();
+    }
+
+    void clear() {
+        if (shared) {
+            runs = new TokenBuffer();
+        } else {
+            runs.clear();
+        }
+        palette = NO_COLORS;
+        shared = false;
+    }
+
+    int size() {
+        return runs.size();
+    }
+
+    boolean isEmpty() {
+        return runs.isEmpty();
+    }
+
+    int start(int index) {
+        return runs.start(index);
+    }
+
+    int end(int index) {
+        return runs.end(index);
+    }
+
+    Color color(int index) {
+        int style = runs.style(index);
+        return style < palette.length ? palette[style] : null;
+    }
+
+    int firstEndingAfter(int offset) {
+        return runs.firstEndingAfter(offset);
+    }
+
+    private int styleOf(Color color) {
+        for (int style = 0; style < palette.length; style++) {
+            if (color.equals(palette[style])) {
+                return style;
+            }
+        }
+        palette = Arrays.copyOf(palette, palette.length + 1);
+        palette[palette.length - 1] = color;
+        return palette.length - 1;
+    }
+}
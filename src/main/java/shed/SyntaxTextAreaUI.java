@@ -0,0 +1,243 @@
+package shed;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.Toolkit;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import javax.swing.JTextArea;
+import javax.swing.plaf.basic.BasicTextAreaUI;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultEditorKit;
+import javax.swing.text.Document;
+import javax.swing.text.EditorKit;
+import javax.swing.text.Element;
+import javax.swing.text.JTextComponent;
+import javax.swing.text.PlainView;
+import javax.swing.text.Segment;
+import javax.swing.text.TabExpander;
+import javax.swing.text.Utilities;
+import javax.swing.text.View;
+import javax.swing.text.ViewFactory;
+import javax.swing.text.WrappedPlainView;
+
+/**
+ * Text area UI whose editor kit creates plain and wrapped views that draw
+ * each visible line once, in the colors of the packed syntax and semantic
+ * runs, reading characters through a reused {@link Segment}. Laid-out glyph
+ * runs are cached per line piece, so caret blinks and scrolls that repaint
+ * unchanged lines skip measuring and shaping them again.
+ */
+final class SyntaxTextAreaUI extends BasicTextAreaUI {
+    interface Styles {
+        // Syntax runs painted in this component, or null when it shows none.
+        SyntaxSpans syntax(JTextComponent component);
+
+        // Semantic runs drawn over syntax runs, or null when there are none.
+        SyntaxSpans semantic(JTextComponent component);
+
+        // Reports one paint pass with how many line pieces reused cached glyph runs and how many were laid out.
+        void painted(JTextComponent component, long startedNanos, int reused, int laidOut);
+    }
+
+    private final Styles styles;
+    private final EditorKit kit;
+    private final GlyphRunCache glyphRuns = new GlyphRunCache(GlyphRunCache.DEFAULT_CAPACITY);
+
+    SyntaxTextAreaUI(Styles styles) {
+        if (styles == null) {
+            throw new IllegalArgumentException("syntax text area requires styles");
+        }
+        this.styles = styles;
+        this.kit = new Kit();
+    }
+
+    @Override
+    public EditorKit getEditorKit(JTextComponent component) {
+        return kit;
+    }
+
+    private void paintedPass(JTextComponent component, long started) {
+        styles.painted(component, started, glyphRuns.hits(), glyphRuns.misses());
+        glyphRuns.resetCounts();
+    }
+
+    private final class Kit extends DefaultEditorKit {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public ViewFactory getViewFactory() {
+            return this::create;
+        }
+
+        private View create(Element element) {
+            JTextComponent component = getComponent();
+            Document document = element.getDocument();
+            // Bidirectional and complex text keeps the stock paragraph views, uncolored.
+            if (Boolean.TRUE.equals(document.getProperty("i18n"))) {
+                return SyntaxTextAreaUI.this.create(element);
+            }
+            if (component instanceof JTextArea area && area.getLineWrap()) {
+                return new WrappedView(element, area.getWrapStyleWord());
+            }
+            return new LineView(element);
+        }
+    }
+
+    private final class LineView extends PlainView {
+        private final Segment segment = new Segment();
+
+        LineView(Element element) {
+            super(element);
+        }
+
+        @Override
+        public void paint(Graphics graphics, Shape allocation) {
+            long started = System.nanoTime();
+            super.paint(graphics, allocation);
+            paintedPass((JTextComponent) getContainer(), started);
+        }
+
+        @Override
+        protected float drawUnselectedText(Graphics2D graphics, float x, float y, int p0, int p1) throws BadLocationException {
+            return drawRuns(this, this, segment, graphics, x, y, p0, p1);
+        }
+    }
+
+    private final class WrappedView extends WrappedPlainView {
+        private final Segment segment = new Segment();
+
+        WrappedView(Element element, boolean wordWrap) {
+            super(element, wordWrap);
+        }
+
+        @Override
+        public void paint(Graphics graphics, Shape allocation) {
+            long started = System.nanoTime();
+            super.paint(graphics, allocation);
+            paintedPass((JTextComponent) getContainer(), started);
+        }
+
+        @Override
+        protected float drawUnselectedText(Graphics2D graphics, float x, float y, int p0, int p1) throws BadLocationException {
+            return drawRuns(this, this, segment, graphics, x, y, p0, p1);
+        }
+    }
+
+    // Draws [p0, p1) from cached glyph runs, laying them out first when the text, colors, font, or position changed.
+    private float drawRuns(View view, TabExpander tabs, Segment segment, Graphics2D graphics, float x, float y, int p0, int p1)
+        throws BadLocationException {
+        JTextComponent component = (JTextComponent) view.getContainer();
+        Color plain = component.isEnabled() ? component.getForeground() : component.getDisabledTextColor();
+        view.getDocument().getText(p0, p1 - p0, segment);
+        ColorRuns colors = colorRuns(p0, p1, plain, styles.syntax(component), styles.semantic(component));
+        Object antialiasing = graphics.getRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING);
+        Object contrast = graphics.getRenderingHint(RenderingHints.KEY_TEXT_LCD_CONTRAST);
+        // Glyph vectors bypass the text hints Swing applies around drawChars, so apply the desktop's here.
+        if (Toolkit.getDefaultToolkit().getDesktopProperty("awt.font.desktophints") instanceof Map<?, ?> hints) {
+            graphics.addRenderingHints(hints);
+        }
+        try {
+            GlyphRunCache.Key key = new GlyphRunCache.Key(segment.array, segment.offset, segment.count, colors.ends(), colors.colors(),
+                graphics.getFont(), graphics.getFontRenderContext(), x);
+            GlyphRunCache.Entry entry = glyphRuns.get(key);
+            if (entry == null) {
+                entry = layout(tabs, segment, graphics, x, p0, colors);
+                glyphRuns.put(key.retain(), entry);
+            }
+            for (GlyphRunCache.Run run : entry.runs()) {
+                graphics.setColor(run.color());
+                graphics.drawGlyphVector(run.glyphs(), x + run.x(), y);
+            }
+            return x + entry.advance();
+        } finally {
+            graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, antialiasing);
+            if (contrast != null) graphics.setRenderingHint(RenderingHints.KEY_TEXT_LCD_CONTRAST, contrast);
+        }
+    }
+
+    // Single-color pieces of a drawn range: each ends at an offset relative to the range start.
+    private record ColorRuns(int[] ends, Color[] colors) { }
+
+    // Splits [p0, p1) where its color changes, a semantic run winning over the syntax run beneath it.
+    private static ColorRuns colorRuns(int p0, int p1, Color plain, SyntaxSpans syntax, SyntaxSpans semantic) {
+        int[] ends = new int[4];
+        Color[] colors = new Color[4];
+        int count = 0;
+        int syntaxIndex = syntax == null ? 0 : syntax.firstEndingAfter(p0);
+        int semanticIndex = semantic == null ? 0 : semantic.firstEndingAfter(p0);
+        int position = p0;
+        while (position < p1) {
+            while (syntax != null && syntaxIndex < syntax.size() && syntax.end(syntaxIndex) <= position) syntaxIndex++;
+            while (semantic != null && semanticIndex < semantic.size() && semantic.end(semanticIndex) <= position) semanticIndex++;
+            int next = p1;
+            Color color = null;
+            if (semantic != null && semanticIndex < semantic.size()) {
+                if (semantic.start(semanticIndex) <= position) {
+                    color = semantic.color(semanticIndex);
+                    next = Math.min(next, semantic.end(semanticIndex));
+                } else {
+                    next = Math.min(next, semantic.start(semanticIndex));
+                }
+            }
+            if (syntax != null && syntaxIndex < syntax.size()) {
+                if (syntax.start(syntaxIndex) <= position) {
+                    if (color == null) color = syntax.color(syntaxIndex);
+                    next = Math.min(next, syntax.end(syntaxIndex));
+                } else {
+                    next = Math.min(next, syntax.start(syntaxIndex));
+                }
+            }
+            if (count == ends.length) {
+                ends = Arrays.copyOf(ends, count * 2);
+                colors = Arrays.copyOf(colors, count * 2);
+            }
+            ends[count] = next - p0;
+            colors[count++] = color == null ? plain : color;
+            position = next;
+        }
+        return new ColorRuns(Arrays.copyOf(ends, count), Arrays.copyOf(colors, count));
+    }
+
+    // Lays out each color run of [p0, p0 + text.count), split again at tabs.
+    private GlyphRunCache.Entry layout(TabExpander tabs, Segment text, Graphics2D graphics, float x, int p0, ColorRuns colors) {
+        Font font = graphics.getFont();
+        FontMetrics metrics = graphics.getFontMetrics(font);
+        FontRenderContext context = graphics.getFontRenderContext();
+        Segment piece = new Segment();
+        List<GlyphRunCache.Run> runs = new ArrayList<>();
+        float current = x;
+        int position = p0;
+        for (int run = 0; run < colors.ends().length; run++) {
+            int next = p0 + colors.ends()[run];
+            while (position < next) {
+                int start = text.offset + position - p0;
+                int end = start;
+                while (end < text.offset + next - p0 && text.array[end] != '\t') end++;
+                if (end > start) {
+                    piece.array = text.array;
+                    piece.offset = start;
+                    piece.count = end - start;
+                    GlyphVector glyphs = font.layoutGlyphVector(context, text.array, start, end, Font.LAYOUT_LEFT_TO_RIGHT);
+                    runs.add(new GlyphRunCache.Run(glyphs, colors.colors()[run], current - x));
+                    current += Utilities.getTabbedTextWidth(piece, metrics, current, tabs, position);
+                    position += end - start;
+                }
+                if (position < next) {
+                    current = tabs.nextTabStop(current, position);
+                    position++;
+                }
+            }
+        }
+        return new GlyphRunCache.Entry(runs.toArray(new GlyphRunCache.Run[0]), current - x);
+    }
+}
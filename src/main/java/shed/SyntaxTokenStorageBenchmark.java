@@ -0,0 +1,188 @@
+package shed;
+
+import java.awt.Color;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * Explicit local measurement of syntax token storage on the
+ * {@link EditorResponsivenessBenchmark} fixture. It highlights the whole file
+ * into packed runs, and separately runs the same lexer through the former
+ * pipeline: one Token record per run in a list, {@code List.copyOf}, then one
+ * colored span object per painted run. It reports allocation, retained heap,
+ * and GC activity for both. It is intentionally not part of the normal Maven
+ * test run.
+ */
+public final class SyntaxTokenStorageBenchmark {
+    static final int DEFAULT_SAMPLES = 3;
+
+    private SyntaxTokenStorageBenchmark() { }
+
+    public static void main(String[] args) {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    static int run(String[] args, PrintStream output, PrintStream error) {
+        int samples = DEFAULT_SAMPLES;
+        for (String value : args == null ? new String[0] : args) {
+            if ("--help".equals(value)) {
+                output.println(usage());
+                return 0;
+            }
+            if (!value.startsWith("--samples=")) {
+                error.println("Unknown argument: " + value);
+                error.println(usage());
+                return 2;
+            }
+            try {
+                samples = Integer.parseInt(value.substring("--samples=".length()));
+            } catch (NumberFormatException invalid) {
+                samples = 0;
+            }
+            if (samples < 1) {
+                error.println("--samples= must be a positive integer");
+                error.println(usage());
+                return 2;
+            }
+        }
+        output.print(measure(EditorResponsivenessBenchmark.fixture(), samples).format());
+        return 0;
+    }
+
+    static Report measure(String fixture, int samples) {
+        if (fixture == null || samples < 1) {
+            throw new IllegalArgumentException("token storage benchmark requires a fixture and at least one sample");
+        }
+        Color[] palette = palette();
+        // Warm both paths so the first sample does not pay for class loading and compilation.
+        retainObjects(fixture, palette);
+        Cost packed = null;
+        Cost objects = null;
+        for (int sample = 0; sample < samples; sample++) {
+            Cost packedSample = cost(() -> new GrammarHighlightService().highlightSnapshot(fixture, FileType.JAVA));
+            Cost objectSample = cost(() -> retainObjects(fixture, palette));
+            packed = packed == null || packedSample.durationNanos() < packed.durationNanos() ? packedSample : packed;
+            objects = objects == null || objectSample.durationNanos() < objects.durationNanos() ? objectSample : objects;
+        }
+        int tokens = new GrammarHighlightService().highlightSnapshot(fixture, FileType.JAVA).size();
+        return new Report(fixture.length(), tokens, samples, packed, objects);
+    }
+
+    // The former pipeline: the lexer appends a Token record per run to a list that is copied once lexing ends, and the
+    // syntax job turns each painted token into a colored span.
+    private static List<ObjectSpan> retainObjects(String fixture, Color[] palette) {
+        TokenRecords records = new TokenRecords();
+        new GrammarHighlightService().highlightInto(fixture, FileType.JAVA, GrammarHighlightService.State.normal(), records);
+        List<GrammarHighlightService.Token> tokens = List.copyOf(records.tokens);
+        List<ObjectSpan> spans = new ArrayList<>();
+        for (GrammarHighlightService.Token token : tokens) {
+            Color color = palette[token.scope().ordinal()];
+            if (color != null) spans.add(new ObjectSpan(token.start(), token.end(), color));
+        }
+        return List.copyOf(spans);
+    }
+
+    private static Color[] palette() {
+        GrammarHighlightService.Scope[] scopes = GrammarHighlightService.Scope.values();
+        Color[] colors = new Color[scopes.length];
+        for (int index = 0; index < colors.length; index++) colors[index] = new Color(0x203040 + index * 0x101010);
+        return colors;
+    }
+
+    private static Cost cost(Supplier<Object> operation) {
+        long heapBefore = settledHeapBytes();
+        long collectionsBefore = collections();
+        long collectionMillisBefore = collectionMillis();
+        long allocatedBefore = allocatedBytes();
+        long started = System.nanoTime();
+        Object result = operation.get();
+        long duration = System.nanoTime() - started;
+        long allocated = allocatedBefore < 0L ? -1L : allocatedBytes() - allocatedBefore;
+        long collections = collections() - collectionsBefore;
+        long collectionMillis = collectionMillis() - collectionMillisBefore;
+        long retained = settledHeapBytes() - heapBefore;
+        if (result == null) throw new IllegalStateException("benchmark operation produced no result");
+        return new Cost(duration, allocated, Math.max(0L, retained), collections, collectionMillis);
+    }
+
+    private static long settledHeapBytes() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int attempt = 0; attempt < 3; attempt++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    // Bytes allocated by this thread so far, or -1 on JVMs that do not track it.
+    private static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+            && threads.isThreadAllocatedMemorySupported()) {
+            return threads.getCurrentThreadAllocatedBytes();
+        }
+        return -1L;
+    }
+
+    private static long collections() {
+        long total = 0L;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) total += Math.max(0L, collector.getCollectionCount());
+        return total;
+    }
+
+    private static long collectionMillis() {
+        long total = 0L;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) total += Math.max(0L, collector.getCollectionTime());
+        return total;
+    }
+
+    static String usage() {
+        return "Usage: shed.SyntaxTokenStorageBenchmark [--samples=N]";
+    }
+
+    // allocatedBytes is -1 when the JVM does not report per-thread allocation.
+    record Cost(long durationNanos, long allocatedBytes, long retainedBytes, long collections, long collectionMillis) { }
+
+    record Report(int characters, int tokens, int samples, Cost packed, Cost objects) {
+        String format() {
+            StringBuilder output = new StringBuilder();
+            output.append("workload.characters=").append(characters).append('\n');
+            output.append("workload.tokens=").append(tokens).append('\n');
+            output.append("workload.samples=").append(samples).append('\n');
+            append(output, "packed", packed);
+            append(output, "objects", objects);
+            if (packed.retainedBytes() > 0L) {
+                output.append("retained.ratio=")
+                    .append(String.format(Locale.ROOT, "%.2f", objects.retainedBytes() / (double) packed.retainedBytes())).append('\n');
+            }
+            return output.toString();
+        }
+
+        private static void append(StringBuilder output, String name, Cost cost) {
+            output.append(name).append(".ms=").append(String.format(Locale.ROOT, "%.3f", cost.durationNanos() / 1_000_000d)).append('\n');
+            output.append(name).append(".allocatedBytes=").append(cost.allocatedBytes()).append('\n');
+            output.append(name).append(".retainedBytes=").append(cost.retainedBytes()).append('\n');
+            output.append(name).append(".gcCount=").append(cost.collections()).append('\n');
+            output.append(name).append(".gcMs=").append(cost.collectionMillis()).append('\n');
+        }
+    }
+
+    private record ObjectSpan(int start, int end, Color color) { }
+
+    private static final class TokenRecords extends TokenBuffer {
+        private final List<GrammarHighlightService.Token> tokens = new ArrayList<>();
+
+        @Override
+        void add(int start, int end, int style) {
+            tokens.add(new GrammarHighlightService.Token(start, end, GrammarHighlightService.scope(style)));
+        }
+
+        @Override
+        void addAll(TokenBuffer other, int offset) {
+            for (int index = 0; index < other.size(); index++) {
+                add(other.start(index) + offset, other.end(index) + offset, other.style(index));
+            }
+        }
+    }
+}
@@ -9,6 +9,7 @@ import java.awt.*;
 import java.io.File;
 import java.util.*;
 import java.util.List;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -28,6 +29,7 @@ final class SyntaxUiController {
     private List<SymbolService.Symbol> cachedSymbols = List.of();
     private int syntaxJobId = -1;
     private long syntaxGeneration;
+    private long largeFileSyntaxFirstLine;
     private int symbolJobId = -1;
     private long symbolGeneration;
     private int bracketJobId = -1;
@@ -295,14 +297,14 @@ final class SyntaxUiController {
 
     String findCurrentScopeHeuristic() {
         try {
-            String text = editor.writingArea.getText();
+            DocumentText text = new DocumentText(editor.writingArea.getDocument());
             int caret = editor.writingArea.getCaretPosition();
             int line = editor.writingArea.getLineOfOffset(caret);
             // Search backward from current line for a function/class/method definition
             for (int i = line; i >= Math.max(0, line - 200); i--) {
                 int ls = editor.writingArea.getLineStartOffset(i);
                 int le = editor.writingArea.getLineEndOffset(i);
-                String lineText = text.substring(ls, le).trim();
+                String lineText = text.subSequence(ls, le).trim();
                 // Match common patterns: function/def/fn/func/class/impl/pub fn/public/private/protected
                 if (lineText.matches("^(public|private|protected|static|async|export|default)?\\s*(class|interface|enum|struct|impl|trait)\\s+\\w+.*")
                         || lineText.matches("^(public|private|protected|static|abstract|final)?\\s*(\\w+\\s+)*\\w+\\s*\\([^)]*\\).*\\{?\\s*$")
@@ -345,13 +347,13 @@ final class SyntaxUiController {
 
         char bracket = text.charAt(bracketPos);
         if (length <= MAX_FULL_SYNTAX_CHARS) {
-            addMatchingBracketHighlights(highlighter, bracketPos, findMatchingBracketPos(text.text(), bracketPos, bracket));
+            addMatchingBracketHighlights(highlighter, bracketPos, findMatchingBracketPos(text.charSequence(), bracketPos, bracket));
             return;
         }
         BracketRequest request = new BracketRequest(buffer, text, caret, bracketPos, bracket, ++bracketGeneration);
         if (bracketJobId >= 0) editor.asyncJobService.cancel(bracketJobId);
         bracketJobId = editor.asyncJobService.submit("Bracket match", token -> {
-            int match = findMatchingBracketPos(request.text().text(), request.bracketPosition(), request.bracket());
+            int match = findMatchingBracketPos(request.text().charSequence(), request.bracketPosition(), request.bracket());
             return new BracketResult(request, match);
         }, (snapshot, result, error) -> applyBracketMatch(snapshot, result, error));
     }
@@ -381,7 +383,7 @@ final class SyntaxUiController {
     }
 
 
-    int findMatchingBracketPos(String text, int pos, char bracket) {
+    int findMatchingBracketPos(CharSequence text, int pos, char bracket) {
         char match;
         int direction;
         switch (bracket) {
@@ -469,7 +471,11 @@ final class SyntaxUiController {
 
     void applySyntaxHighlighting() {
         FileBuffer buffer = editor.getCurrentBuffer();
-        if (buffer == null || buffer.isLargeFile()) {
+        if (buffer != null && buffer.isLargeFile()) {
+            applyLargeFileSyntaxHighlighting(buffer);
+            return;
+        }
+        if (buffer == null) {
             clearSyntaxHighlighting();
             editor.writingArea.repaint();
             return;
@@ -484,23 +490,55 @@ final class SyntaxUiController {
         boolean virtualized = text.length() > MAX_FULL_SYNTAX_CHARS || text.lineCount() > MAX_FULL_SYNTAX_LINES;
         SyntaxRequest request = new SyntaxRequest(buffer, text, buffer.getFileType(), syntaxColors(),
             editor.configManager.getShowWhitespace(), virtualized, visible.start(), visible.end(), ++syntaxGeneration);
+        GrammarHighlightService grammar = editor.grammarHighlightService;
+        Supplier<TokenBuffer> lexer;
+        if (virtualized) {
+            GrammarHighlightService.ViewportCheckpoints checkpoints = grammar.viewportCheckpoints(buffer, buffer.getFileType(), text);
+            lexer = () -> grammar.highlightViewport(request.text(), request.fileType(), request.visibleStart(),
+                request.visibleEnd(), checkpoints);
+        } else {
+            // The buffer's line cache replays the edits recorded since its last pass instead of lexing the whole text.
+            GrammarHighlightService.Cache cache = grammar.cache(buffer, buffer.getFileType());
+            lexer = () -> cache.highlight(request.text());
+        }
         if (syntaxJobId >= 0) editor.asyncJobService.cancel(syntaxJobId);
-        syntaxJobId = editor.asyncJobService.submit("Syntax highlighting", token -> highlightSnapshot(request, token),
+        syntaxJobId = editor.asyncJobService.submit("Syntax highlighting", token -> highlightSnapshot(request, lexer, token),
             (snapshot, result, error) -> applySyntaxSnapshot(snapshot, result, error));
     }
 
-    private SyntaxResult highlightSnapshot(SyntaxRequest request, AsyncJobService.JobToken token) {
-        long started = System.nanoTime();
-        List<SyntaxSpan> spans = new ArrayList<>();
-        GrammarHighlightService grammar = new GrammarHighlightService();
-        List<GrammarHighlightService.Token> tokens = request.virtualized()
-            ? grammar.highlightViewport(request.text().text(), request.fileType(), request.visibleStart(), request.visibleEnd())
-            : grammar.highlightSnapshot(request.text().text(), request.fileType());
-        for (GrammarHighlightService.Token value : tokens) {
-            if (token.isCancelled()) return null;
-            Color color = request.colors().get(value.scope());
-            if (color != null) spans.add(new SyntaxSpan(value.start(), value.end(), color));
+    // Lexes only the projected window, starting from lexer state carried forward from the nearest checkpoint.
+    private void applyLargeFileSyntaxHighlighting(FileBuffer buffer) {
+        EditorPane pane = editor.getActivePane();
+        LargeFilePieceTable.Snapshot source = buffer.committedLargeFileSnapshot();
+        VersionedTextSnapshot text = buffer.textSnapshot();
+        if (pane == null || pane.getLargeFileProjection() == null || source == null || text.length() == 0) {
+            clearSyntaxHighlighting();
+            editor.writingArea.repaint();
+            return;
         }
+        long firstLine = pane.getLargeFileProjection().firstLine();
+        if (firstLine != largeFileSyntaxFirstLine) {
+            // Spans from another window would land on unrelated text while the new one is lexed.
+            clearSyntaxHighlighting();
+            editor.writingArea.repaint();
+            largeFileSyntaxFirstLine = firstLine;
+        }
+        LargeFileSyntaxCheckpoints checkpoints = editor.grammarHighlightService.largeFileCheckpoints(buffer, buffer.getFileType());
+        SyntaxRequest request = new SyntaxRequest(buffer, text, buffer.getFileType(), syntaxColors(),
+            editor.configManager.getShowWhitespace(), false, 0, text.length(), ++syntaxGeneration);
+        if (syntaxJobId >= 0) editor.asyncJobService.cancel(syntaxJobId);
+        syntaxJobId = editor.asyncJobService.submit("Large-file syntax highlighting", token -> {
+            GrammarHighlightService.State state = checkpoints.stateAt(source, firstLine, token::isCancelled);
+            return state == null ? null
+                : highlightSnapshot(request, () -> new GrammarHighlightService().highlightFrom(request.text().text(), request.fileType(), state), token);
+        }, (snapshot, result, error) -> applySyntaxSnapshot(snapshot, result, error));
+    }
+
+    private SyntaxResult highlightSnapshot(SyntaxRequest request, Supplier<TokenBuffer> lexer, AsyncJobService.JobToken token) {
+        long started = System.nanoTime();
+        // Runs keep the scope ordinal as their style, so the lexer's buffer is painted as is.
+        TokenBuffer tokens = lexer.get();
+        if (token.isCancelled()) return null;
         List<Range> trailingWhitespace = request.showWhitespace()
             ? trailingWhitespace(request.text(), request.virtualized() ? request.visibleStart() : 0,
                 request.virtualized() ? request.visibleEnd() : request.text().length()) : List.of();
@@ -508,7 +546,7 @@ final class SyntaxUiController {
             editor.perfService.recordDuration("syntax.highlight", started,
                 "chars=" + request.text().length() + " lines=" + request.text().lineCount());
         }
-        return new SyntaxResult(request, List.copyOf(spans), trailingWhitespace);
+        return new SyntaxResult(request, tokens, trailingWhitespace);
     }
 
     private void applySyntaxSnapshot(AsyncJobService.JobSnapshot job, SyntaxResult result, Exception error) {
@@ -518,7 +556,7 @@ final class SyntaxUiController {
         if (request.generation() != syntaxGeneration || request.buffer() != editor.getCurrentBuffer()
             || request.buffer().textSnapshot() != request.text()) return;
         clearSyntaxHighlighting();
-        editor.syntaxForegroundSpans.addAll(result.spans());
+        editor.syntaxForegroundSpans.set(result.tokens(), request.colors());
         Highlighter highlighter = editor.writingArea.getHighlighter();
         for (Range range : result.trailingWhitespace()) {
             try {
@@ -530,12 +568,11 @@ final class SyntaxUiController {
         editor.writingArea.repaint();
     }
 
-    private EnumMap<GrammarHighlightService.Scope, Color> syntaxColors() {
-        EnumMap<GrammarHighlightService.Scope, Color> colors = new EnumMap<>(GrammarHighlightService.Scope.class);
-        for (GrammarHighlightService.Scope scope : GrammarHighlightService.Scope.values()) {
-            Color color = colorFor(scope);
-            if (color != null) colors.put(scope, color);
-        }
+    // Indexed by scope ordinal, the style grammar runs carry.
+    private Color[] syntaxColors() {
+        GrammarHighlightService.Scope[] scopes = GrammarHighlightService.Scope.values();
+        Color[] colors = new Color[scopes.length];
+        for (GrammarHighlightService.Scope scope : scopes) colors[scope.ordinal()] = colorFor(scope);
         return colors;
     }
 
@@ -585,9 +622,9 @@ final class SyntaxUiController {
     }
 
     private record SyntaxRequest(FileBuffer buffer, VersionedTextSnapshot text, FileType fileType,
-                                 EnumMap<GrammarHighlightService.Scope, Color> colors, boolean showWhitespace,
+                                 Color[] colors, boolean showWhitespace,
                                  boolean virtualized, int visibleStart, int visibleEnd, long generation) { }
-    private record SyntaxResult(SyntaxRequest request, List<SyntaxSpan> spans, List<Range> trailingWhitespace) { }
+    private record SyntaxResult(SyntaxRequest request, TokenBuffer tokens, List<Range> trailingWhitespace) { }
     private record SymbolRequest(FileBuffer buffer, VersionedTextSnapshot text, FileType fileType, long generation) { }
     private record SymbolResult(SymbolRequest request, List<SymbolService.Symbol> symbols) { }
     private record BracketRequest(FileBuffer buffer, VersionedTextSnapshot text, int caret, int bracketPosition, char bracket, long generation) { }
@@ -818,7 +855,7 @@ final class SyntaxUiController {
                     case "number": color = editor.configManager.getSyntaxNumberColor(); break;
                     default: continue;
                 }
-                editor.syntaxForegroundSpans.add(new SyntaxSpan(start, Math.min(end, text.length()), color));
+                editor.syntaxForegroundSpans.add(start, Math.min(end, text.length()), color);
             }
         }
     }
@@ -875,7 +912,7 @@ final class SyntaxUiController {
         if (isMasked(masked, start, safeEnd)) {
             return;
         }
-        editor.syntaxForegroundSpans.add(new SyntaxSpan(start, safeEnd, color));
+        editor.syntaxForegroundSpans.add(start, safeEnd, color);
         markMasked(masked, start, safeEnd);
     }
 
@@ -941,8 +978,7 @@ final class SyntaxUiController {
             int startOffset = editor.writingArea.getLineStartOffset(Math.max(0, preview.startLine));
             int endLine = Math.min(editor.writingArea.getLineCount() - 1, preview.endLine);
             int endOffset = editor.writingArea.getLineEndOffset(endLine);
-            String text = editor.writingArea.getText();
-            String region = text.substring(startOffset, endOffset);
+            String region = new DocumentText(editor.writingArea.getDocument()).subSequence(startOffset, endOffset);
             Highlighter highlighter = editor.writingArea.getHighlighter();
             try {
                 java.util.regex.Matcher m = java.util.regex.Pattern.compile(preview.pattern).matcher(region);
@@ -955,8 +991,9 @@ final class SyntaxUiController {
             } catch (java.util.regex.PatternSyntaxException e) {
                 int searchFrom = startOffset;
                 while (searchFrom <= endOffset - preview.pattern.length()) {
-                    int match = text.indexOf(preview.pattern, searchFrom);
-                    if (match < 0 || match >= endOffset) break;
+                    int match = region.indexOf(preview.pattern, searchFrom - startOffset);
+                    if (match < 0) break;
+                    match += startOffset;
                     editor.substitutePreviewTags.add(highlighter.addHighlight(match, match + preview.pattern.length(), editor.substitutePreviewPainter));
                     searchFrom = match + Math.max(1, preview.pattern.length());
                 }
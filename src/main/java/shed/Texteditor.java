@@ -107,6 +107,7 @@ public class Texteditor extends JFrame implements KeyListener {
     WorkspaceController workspaceController;
     RecoveryController recoveryController;
     SearchReplaceController searchReplaceController;
+    LargeFileSearchController largeFileSearchController;
     PerfService perfService;
     ApplicationErrorReporter errorReporter;
 
@@ -153,8 +154,8 @@ public class Texteditor extends JFrame implements KeyListener {
     Timer recoverySnapshotTimer;
     boolean reloadPromptActive;
     List<Object> syntaxHighlightTags;
-    List<SyntaxSpan> syntaxForegroundSpans;
-    List<SyntaxSpan> lspSemanticSpans;
+    SyntaxSpans syntaxForegroundSpans;
+    SyntaxSpans lspSemanticSpans;
     List<LspInlayHintOverlay> lspInlayHintOverlays;
     Color syntaxKeywordColor;
     Color syntaxStringColor;
@@ -287,8 +288,8 @@ public class Texteditor extends JFrame implements KeyListener {
         reloadPromptActive = false;
         recoverySnapshotTimer = null;
         syntaxHighlightTags = new ArrayList<>();
-        syntaxForegroundSpans = new ArrayList<>();
-        lspSemanticSpans = new ArrayList<>();
+        syntaxForegroundSpans = new SyntaxSpans();
+        lspSemanticSpans = new SyntaxSpans();
         lspInlayHintOverlays = new ArrayList<>();
         syntaxKeywordColor = configManager.getSyntaxKeywordColor();
         syntaxStringColor = configManager.getSyntaxStringColor();
@@ -358,6 +359,7 @@ public class Texteditor extends JFrame implements KeyListener {
         editorUiController = new EditorUiController(this);
         recoveryController = new RecoveryController(this);
         searchReplaceController = new SearchReplaceController(this);
+        largeFileSearchController = new LargeFileSearchController(this);
         perfService = new PerfService();
 
         // Initialize UI
@@ -376,7 +378,7 @@ public class Texteditor extends JFrame implements KeyListener {
         if (args.length > 0) {
             try {
                 File file = new File(args[0]);
-                openFile(file);
+                openFileInBackground(file);
             } catch (Exception e) {
                 showMessage("Error opening file: " + e.getMessage());
             }
@@ -2231,10 +2233,6 @@ public class Texteditor extends JFrame implements KeyListener {
         persistRecoverySnapshotsSafely();
     }
 
-    void pollLspNotifications(FileBuffer buffer) {
-        lspController.pollLspNotifications(buffer);
-    }
-
     LspClient existingLspClient(FileBuffer buffer) {
         return lspController.existingLspClient(buffer);
     }
@@ -2536,6 +2534,10 @@ public class Texteditor extends JFrame implements KeyListener {
         paneBufferController.handleLargeFileResize(pane);
     }
 
+    boolean stepLargeFileHistory(boolean forward) {
+        return paneBufferController.stepLargeFileHistory(forward);
+    }
+
     void persistCurrentBufferState() {
         paneBufferController.persistCurrentBufferState();
     }
@@ -2571,6 +2573,10 @@ public class Texteditor extends JFrame implements KeyListener {
         paneBufferController.openFile(file);
     }
 
+    boolean openFileInBackground(File file) throws IOException {
+        return paneBufferController.openFileInBackground(file);
+    }
+
     // Buffer management methods (called by CommandHandler)
     public FileBuffer getCurrentBuffer() {
         return paneBufferController.getCurrentBuffer();
@@ -3142,14 +3148,6 @@ public class Texteditor extends JFrame implements KeyListener {
         editorUiController.refreshDiagnosticRanges();
     }
 
-    void paintSyntaxForegroundOverlay(Graphics g, JTextArea area) {
-        editorUiController.paintSyntaxForegroundOverlay(g, area);
-    }
-
-    void paintLspSemanticOverlay(Graphics g, JTextArea area) {
-        editorUiController.paintLspSemanticOverlay(g, area);
-    }
-
     void paintLspInlayHintOverlay(Graphics g, JTextArea area) {
         editorUiController.paintLspInlayHintOverlay(g, area);
     }
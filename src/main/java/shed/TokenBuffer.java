@@ -0,0 +1,127 @@
+package shed;
+
+import java.util.Arrays;
+
+// Token runs packed as start, end, and style triples in one int[], so highlighting holds no per-token objects. Not final
+// only so SyntaxTokenStorageBenchmark can collect the lexer's runs as the Token records it used to build.
+class TokenBuffer {
+    private static final int STRIDE = 3;
+    private static final int[] EMPTY = new int[0];
+
+    private int[] runs;
+    private int size;
+
+    TokenBuffer() {
+        runs = EMPTY;
+    }
+
+    TokenBuffer(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("token capacity must not be negative");
+        }
+        runs = capacity == 0 ? EMPTY : new int[capacity * STRIDE];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int start(int index) {
+        return runs[checked(index) * STRIDE];
+    }
+
+    int end(int index) {
+        return runs[checked(index) * STRIDE + 1];
+    }
+
+    int style(int index) {
+        return runs[checked(index) * STRIDE + 2];
+    }
+
+    void add(int start, int end, int style) {
+        ensureCapacity(size + 1);
+        int base = size * STRIDE;
+        runs[base] = start;
+        runs[base + 1] = end;
+        runs[base + 2] = style;
+        size++;
+    }
+
+    // Appends every run of other moved right by offset.
+    void addAll(TokenBuffer other, int offset) {
+        ensureCapacity(size + other.size);
+        int base = size * STRIDE;
+        for (int index = 0; index < other.size * STRIDE; index += STRIDE) {
+            runs[base + index] = other.runs[index] + offset;
+            runs[base + index + 1] = other.runs[index + 1] + offset;
+            runs[base + index + 2] = other.runs[index + 2];
+        }
+        size += other.size;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    // An exact-size copy, for buffers kept long after they are built.
+    TokenBuffer trimmed() {
+        TokenBuffer copy = new TokenBuffer();
+        copy.runs = size == 0 ? EMPTY : Arrays.copyOf(runs, size * STRIDE);
+        copy.size = size;
+        return copy;
+    }
+
+    long retainedBytes() {
+        return (long) runs.length * Integer.BYTES;
+    }
+
+    // Index of the first run ending after offset; runs must be sorted and non-overlapping.
+    int firstEndingAfter(int offset) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (runs[middle * STRIDE + 1] <= offset) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    // Stable sort by start; a no-op for the already ordered output of a lexer.
+    void sortByStart() {
+        boolean sorted = true;
+        for (int index = 1; index < size && sorted; index++) {
+            sorted = runs[(index - 1) * STRIDE] <= runs[index * STRIDE];
+        }
+        if (sorted) {
+            return;
+        }
+        Integer[] order = new Integer[size];
+        for (int index = 0; index < size; index++) {
+            order[index] = index;
+        }
+        Arrays.sort(order, (left, right) -> Integer.compare(runs[left * STRIDE], runs[right * STRIDE]));
+        int[] reordered = new int[runs.length];
+        for (int index = 0; index < size; index++) {
+            System.arraycopy(runs, order[index] * STRIDE, reordered, index * STRIDE, STRIDE);
+        }
+        runs = reordered;
+    }
+
+    private void ensureCapacity(int tokens) {
+        if (tokens * STRIDE > runs.length) {
+            runs = Arrays.copyOf(runs, Math.max(tokens, Math.max(16, runs.length / STRIDE * 2)) * STRIDE);
+        }
+    }
+
+    private int checked(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("token=" + index + " size=" + size);
+        }
+        return index;
+    }
+}
@@ -54,8 +54,7 @@ final class TreeGitController {
         String selected = editor.showPaletteDialog("Find File", files);
         if (selected == null) return "File finder cancelled";
         try {
-            editor.openFile(new File(projectRoot, selected));
-            return "Opened: " + selected;
+            return (editor.openFileInBackground(new File(projectRoot, selected)) ? "Opening: " : "Opened: ") + selected;
         } catch (IOException e) {
             return "Error opening file: " + e.getMessage();
         }
@@ -94,8 +93,7 @@ final class TreeGitController {
         }
 
         try {
-            editor.openFile(selection);
-            return "Opened: " + selection.getAbsolutePath();
+            return (editor.openFileInBackground(selection) ? "Opening: " : "Opened: ") + selection.getAbsolutePath();
         } catch (IOException e) {
             return "Error opening file: " + e.getMessage();
         }
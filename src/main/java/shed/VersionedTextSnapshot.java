@@ -1,17 +1,35 @@
 package shed;
 
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
- * Immutable piece-tree snapshot used by background editor work. It keeps Swing
+ * Immutable rope snapshot used by background editor work. It keeps Swing
  * documents on the EDT while allowing workers to read a stable text revision.
+ * The rope is a B-tree whose leaves all sit at the same depth and hold between
+ * {@code MIN_LEAF} and {@code CHUNK_SIZE} characters, so edits coalesce small
+ * leaves into their neighbours and line and offset lookups stay logarithmic
+ * however long the editing session runs. Every node also keeps its newline
+ * count and a polynomial hash of its characters, so callers can compare, scan,
+ * or stream a revision through {@link #charSequence()}, {@link #contentEquals},
+ * and {@link #forEachChunk} without building the whole text as one String.
  */
 final class VersionedTextSnapshot {
     private static final int CHUNK_SIZE = 8 * 1024;
-    private static final AtomicLong PRIORITY_SEED = new AtomicLong(0x6A09E667F3BCC909L);
+    private static final int MIN_LEAF = CHUNK_SIZE / 4;
+    private static final int MIN_CHILDREN = 4;
+    private static final int MAX_CHILDREN = 16;
+    // Odd, so the hash of a concatenation is hash(left) * HASH_BASE^length(right) + hash(right) modulo 2^64.
+    private static final long HASH_BASE = 0x100000001B3L;
 
     record Position(int line, int character) { }
 
+    // Receives text[start, end) of one leaf; returning false stops the walk.
+    interface ChunkVisitor {
+        boolean visit(String text, int start, int end);
+    }
+
     private final Node root;
     private final long version;
 
@@ -25,12 +43,14 @@ final class VersionedTextSnapshot {
     }
 
     static VersionedTextSnapshot of(String text) {
-        String value = text == null ? "" : text;
-        Node built = null;
-        for (int offset = 0; offset < value.length(); offset += CHUNK_SIZE) {
-            built = merge(built, leaf(value.substring(offset, Math.min(value.length(), offset + CHUNK_SIZE))));
-        }
-        return new VersionedTextSnapshot(built, 0L);
+        return new VersionedTextSnapshot(build(text), 0L);
+    }
+
+    // Joins snapshots built apart, such as the segments of a file decoded in parallel, in order.
+    static VersionedTextSnapshot concat(List<VersionedTextSnapshot> parts) {
+        Node root = null;
+        for (VersionedTextSnapshot part : parts) root = concat(root, part.root);
+        return new VersionedTextSnapshot(root, 0L);
     }
 
     long version() {
@@ -50,7 +70,7 @@ final class VersionedTextSnapshot {
         int remove = Math.max(0, Math.min(removedLength, length() - start));
         Parts first = split(root, start);
         Parts second = split(first.right, remove);
-        return new VersionedTextSnapshot(merge(merge(first.left, nodes(insertedText)), second.right), version + 1L);
+        return new VersionedTextSnapshot(concat(concat(first.left, build(insertedText)), second.right), version + 1L);
     }
 
     Position positionAt(int offset) {
@@ -69,14 +89,14 @@ final class VersionedTextSnapshot {
     int lineStartOffset(int line) {
         if (line <= 0) return 0;
         if (line >= lineCount()) return length();
-        int newline = offsetOfNewline(root, line - 1, 0);
+        int newline = offsetOfNewline(root, line - 1);
         return newline < 0 ? length() : newline + 1;
     }
 
     int lineEndOffset(int line) {
         if (line < 0) return 0;
         if (line >= lineCount() - 1) return length();
-        int newline = offsetOfNewline(root, line, 0);
+        int newline = offsetOfNewline(root, line);
         return newline < 0 ? length() : newline;
     }
 
@@ -95,7 +115,10 @@ final class VersionedTextSnapshot {
         int start = Math.max(0, Math.min(offset, length()));
         int end = Math.max(start, Math.min(length(), start + Math.max(0, requestedLength)));
         StringBuilder text = new StringBuilder(end - start);
-        append(root, start, end, 0, text);
+        visit(root, start, end, 0, (chunk, from, to) -> {
+            text.append(chunk, from, to);
+            return true;
+        });
         return text.toString();
     }
 
@@ -103,94 +126,215 @@ final class VersionedTextSnapshot {
         return substring(0, length());
     }
 
-    private static Node nodes(String value) {
+    // Equal snapshots have equal hashes however their edits split them into leaves.
+    long contentHash() {
+        return root == null ? 0L : root.hash;
+    }
+
+    // A read-only view that reads leaves in place; sequential access costs O(1) per character.
+    CharSequence charSequence() {
+        return new Chars();
+    }
+
+    // Visits the leaves covering [from, to) in order; false when the visitor stopped early.
+    boolean forEachChunk(int from, int to, ChunkVisitor visitor) {
+        int start = Math.max(0, Math.min(from, length()));
+        int end = Math.max(start, Math.min(to, length()));
+        return start == end || visit(root, start, end, 0, visitor);
+    }
+
+    boolean regionMatches(int offset, CharSequence other, int otherOffset, int regionLength) {
+        if (other == null || offset < 0 || otherOffset < 0 || regionLength < 0
+            || offset > length() - regionLength || otherOffset > other.length() - regionLength) {
+            return false;
+        }
+        int[] position = {otherOffset};
+        return forEachChunk(offset, offset + regionLength, (text, start, end) -> {
+            for (int index = start; index < end; index++) {
+                if (text.charAt(index) != other.charAt(position[0]++)) return false;
+            }
+            return true;
+        });
+    }
+
+    boolean contentEquals(CharSequence other) {
+        return other != null && other.length() == length() && regionMatches(0, other, 0, length());
+    }
+
+    boolean contentEquals(VersionedTextSnapshot other) {
+        if (other == null) return false;
+        if (other.root == root) return true;
+        if (other.length() != length() || other.contentHash() != contentHash()) return false;
+        return regionMatches(0, other.charSequence(), 0, length());
+    }
+
+    // Evenly sized leaves of at most CHUNK_SIZE characters, grouped level by level into nodes of at most MAX_CHILDREN.
+    private static Node build(String value) {
         if (value == null || value.isEmpty()) return null;
-        Node result = null;
-        for (int offset = 0; offset < value.length(); offset += CHUNK_SIZE) {
-            result = merge(result, leaf(value.substring(offset, Math.min(value.length(), offset + CHUNK_SIZE))));
+        int count = (value.length() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        Node[] level = new Node[count];
+        for (int index = 0; index < count; index++) {
+            level[index] = new Node(value.substring(slice(value.length(), count, index), slice(value.length(), count, index + 1)));
         }
-        return result;
+        return tree(level);
     }
 
-    private static Node leaf(String text) {
-        return text == null || text.isEmpty() ? null : new Node(null, null, text, priority());
+    private static Node tree(Node[] leaves) {
+        if (leaves.length == 0) return null;
+        Node[] level = leaves;
+        while (level.length > 1) {
+            int groups = (level.length + MAX_CHILDREN - 1) / MAX_CHILDREN;
+            Node[] parents = new Node[groups];
+            for (int group = 0; group < groups; group++) {
+                parents[group] = new Node(Arrays.copyOfRange(level, slice(level.length, groups, group), slice(level.length, groups, group + 1)));
+            }
+            level = parents;
+        }
+        return level[0];
     }
 
-    private static long priority() {
-        long value = PRIORITY_SEED.updateAndGet(previous -> previous * 6364136223846793005L + 1442695040888963407L);
-        return value ^ (value >>> 33);
+    private static int slice(int total, int parts, int index) {
+        return (int) ((long) total * index / parts);
     }
 
-    private static Node merge(Node left, Node right) {
+    // Joins two trees by walking down the taller one's facing edge to the other's height, then merging back up.
+    private static Node concat(Node left, Node right) {
         if (left == null) return right;
         if (right == null) return left;
-        if (left.priority >= right.priority) return new Node(left.left, merge(left.right, right), left.text, left.priority);
-        return new Node(merge(left, right.left), right.right, right.text, right.priority);
+        if (left.height == right.height) return join(left, right);
+        boolean leftTaller = left.height > right.height;
+        Node taller = leftTaller ? left : right;
+        Node shorter = leftTaller ? right : left;
+        Node[] edge = new Node[taller.height + 1];
+        Node current = taller;
+        while (current.height > shorter.height) {
+            edge[current.height] = current;
+            current = leftTaller ? current.children[current.children.length - 1] : current.children[0];
+        }
+        Node merged = leftTaller ? join(current, shorter) : join(shorter, current);
+        for (int height = shorter.height + 1; height <= taller.height; height++) {
+            Node[] siblings = edge[height].children;
+            Node[] replacement = merged.height == height - 1 ? new Node[] {merged} : merged.children;
+            merged = mergeChildren(leftTaller
+                ? joined(siblings, 0, siblings.length - 1, replacement, 0, replacement.length)
+                : joined(replacement, 0, replacement.length, siblings, 1, siblings.length));
+        }
+        return merged;
+    }
+
+    // Joins two trees of equal height, coalescing leaves or nodes that are below their minimum size.
+    private static Node join(Node left, Node right) {
+        if (left.children == null) {
+            if (left.text.length() >= MIN_LEAF && right.text.length() >= MIN_LEAF) return new Node(new Node[] {left, right});
+            String text = left.text + right.text;
+            if (text.length() <= CHUNK_SIZE) return new Node(text);
+            int half = text.length() / 2;
+            return new Node(new Node[] {new Node(text.substring(0, half)), new Node(text.substring(half))});
+        }
+        if (left.children.length >= MIN_CHILDREN && right.children.length >= MIN_CHILDREN) return new Node(new Node[] {left, right});
+        return mergeChildren(joined(left.children, 0, left.children.length, right.children, 0, right.children.length));
+    }
+
+    // One node over children, or two under a new parent when there are more than MAX_CHILDREN.
+    private static Node mergeChildren(Node[] children) {
+        if (children.length <= MAX_CHILDREN) return new Node(children);
+        int half = children.length / 2;
+        return new Node(new Node[] {
+            new Node(Arrays.copyOfRange(children, 0, half)), new Node(Arrays.copyOfRange(children, half, children.length))});
     }
 
+    private static Node[] joined(Node[] first, int firstFrom, int firstTo, Node[] second, int secondFrom, int secondTo) {
+        Node[] result = new Node[firstTo - firstFrom + secondTo - secondFrom];
+        System.arraycopy(first, firstFrom, result, 0, firstTo - firstFrom);
+        System.arraycopy(second, secondFrom, result, firstTo - firstFrom, secondTo - secondFrom);
+        return result;
+    }
+
+    // children[from, to) as one subtree: null, the only child itself, or a new node over them.
+    private static Node group(Node[] children, int from, int to) {
+        if (from >= to) return null;
+        if (to - from == 1) return children[from];
+        return new Node(Arrays.copyOfRange(children, from, to));
+    }
+
+    // Records the path to the leaf holding offset, cuts that leaf, then concatenates each level's siblings onto the two halves.
     private static Parts split(Node node, int offset) {
-        if (node == null) return new Parts(null, null);
-        int leftChars = chars(node.left);
-        if (offset < leftChars) {
-            Parts split = split(node.left, offset);
-            return new Parts(split.left, new Node(split.right, node.right, node.text, node.priority));
+        if (node == null || offset <= 0) return new Parts(null, node);
+        if (offset >= node.chars) return new Parts(node, null);
+        Node[] path = new Node[node.height];
+        int[] indexes = new int[node.height];
+        int depth = 0;
+        int local = offset;
+        while (node.children != null) {
+            int index = 0;
+            while (local >= node.children[index].chars) local -= node.children[index++].chars;
+            path[depth] = node;
+            indexes[depth++] = index;
+            node = node.children[index];
         }
-        int textEnd = leftChars + node.text.length();
-        if (offset > textEnd) {
-            Parts split = split(node.right, offset - textEnd);
-            return new Parts(new Node(node.left, split.left, node.text, node.priority), split.right);
+        Node left = local == 0 ? null : new Node(node.text.substring(0, local));
+        Node right = local == 0 ? node : new Node(node.text.substring(local));
+        while (depth-- > 0) {
+            Node[] children = path[depth].children;
+            left = concat(group(children, 0, indexes[depth]), left);
+            right = concat(right, group(children, indexes[depth] + 1, children.length));
         }
-        int within = offset - leftChars;
-        if (within == 0) return new Parts(node.left, new Node(null, node.right, node.text, node.priority));
-        if (within == node.text.length()) return new Parts(new Node(node.left, null, node.text, node.priority), node.right);
-        Node left = merge(node.left, leaf(node.text.substring(0, within)));
-        Node right = merge(leaf(node.text.substring(within)), node.right);
         return new Parts(left, right);
     }
 
-    private static int offsetOfNewline(Node node, int target, int base) {
-        if (node == null || target < 0 || target >= newlines(node)) return -1;
-        int leftNewlines = newlines(node.left);
-        int leftChars = chars(node.left);
-        if (target < leftNewlines) return offsetOfNewline(node.left, target, base);
-        int localTarget = target - leftNewlines;
-        if (localTarget < countNewlines(node.text)) {
-            int seen = 0;
-            for (int index = 0; index < node.text.length(); index++) {
-                if (node.text.charAt(index) == '\n' && seen++ == localTarget) return base + leftChars + index;
+    private static int offsetOfNewline(Node node, int target) {
+        if (node == null || target < 0 || target >= node.newlines) return -1;
+        int base = 0;
+        while (node.children != null) {
+            int index = 0;
+            while (target >= node.children[index].newlines) {
+                target -= node.children[index].newlines;
+                base += node.children[index++].chars;
             }
+            node = node.children[index];
         }
-        return offsetOfNewline(node.right, localTarget - countNewlines(node.text), base + leftChars + node.text.length());
+        int newline = node.text.indexOf('\n');
+        for (int seen = 0; seen < target; seen++) newline = node.text.indexOf('\n', newline + 1);
+        return base + newline;
     }
 
     private static char charAt(Node node, int offset) {
-        int leftChars = chars(node.left);
-        if (offset < leftChars) return charAt(node.left, offset);
-        int textOffset = offset - leftChars;
-        if (textOffset < node.text.length()) return node.text.charAt(textOffset);
-        return charAt(node.right, textOffset - node.text.length());
+        while (node.children != null) {
+            int index = 0;
+            while (offset >= node.children[index].chars) offset -= node.children[index++].chars;
+            node = node.children[index];
+        }
+        return node.text.charAt(offset);
     }
 
-    private static void append(Node node, int from, int to, int base, StringBuilder target) {
-        if (node == null || from >= base + chars(node) || to <= base) return;
-        int leftChars = chars(node.left);
-        append(node.left, from, to, base, target);
-        int textBase = base + leftChars;
-        int start = Math.max(0, from - textBase);
-        int end = Math.min(node.text.length(), to - textBase);
-        if (end > start) target.append(node.text, start, end);
-        append(node.right, from, to, textBase + node.text.length(), target);
+    private static boolean visit(Node node, int from, int to, int base, ChunkVisitor visitor) {
+        if (node == null || from >= base + node.chars || to <= base) return true;
+        if (node.children == null) {
+            int start = Math.max(0, from - base);
+            int end = Math.min(node.text.length(), to - base);
+            return end <= start || visitor.visit(node.text, start, end);
+        }
+        for (Node child : node.children) {
+            if (!visit(child, from, to, base, visitor)) return false;
+            base += child.chars;
+        }
+        return true;
     }
 
     private static Stats prefix(Node node, int requested) {
-        if (node == null || requested <= 0) return Stats.EMPTY;
-        int leftChars = chars(node.left);
-        if (requested <= leftChars) return prefix(node.left, requested);
-        Stats result = stats(node.left);
-        int textChars = Math.min(node.text.length(), requested - leftChars);
-        result = combine(result, stats(node.text, textChars));
-        if (requested <= leftChars + node.text.length()) return result;
-        return combine(result, prefix(node.right, requested - leftChars - node.text.length()));
+        Stats result = Stats.EMPTY;
+        int remaining = requested;
+        while (node != null && remaining > 0) {
+            if (remaining >= node.chars) return combine(result, stats(node));
+            if (node.children == null) return combine(result, stats(node.text, remaining));
+            int index = 0;
+            while (remaining >= node.children[index].chars) {
+                result = combine(result, stats(node.children[index]));
+                remaining -= node.children[index++].chars;
+            }
+            node = node.children[index];
+        }
+        return result;
     }
 
     private static Stats stats(Node node) {
@@ -220,39 +364,145 @@ final class VersionedTextSnapshot {
         return node == null ? 0 : node.chars;
     }
 
-    private static int newlines(Node node) {
-        return node == null ? 0 : node.newlines;
+    private record Parts(Node left, Node right) { }
+    private record Stats(int newlines, int trailingCharacters) {
+        private static final Stats EMPTY = new Stats(0, 0);
     }
 
-    private static int countNewlines(String value) {
-        int count = 0;
-        for (int index = 0; index < value.length(); index++) if (value.charAt(index) == '\n') count++;
-        return count;
+    // Reads through the leaf that served the previous index until an index falls outside it.
+    private final class Chars implements CharSequence {
+        private Node leaf;
+        private int leafStart;
+
+        @Override
+        public int length() {
+            return VersionedTextSnapshot.this.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (leaf == null || index < leafStart || index >= leafStart + leaf.text.length()) {
+                if (index < 0 || index >= length()) throw new IndexOutOfBoundsException("offset=" + index);
+                Node node = root;
+                int base = 0;
+                while (node.children != null) {
+                    int child = 0;
+                    while (index >= base + node.children[child].chars) base += node.children[child++].chars;
+                    node = node.children[child];
+                }
+                leaf = node;
+                leafStart = base;
+            }
+            return leaf.text.charAt(index - leafStart);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > length() || start > end) {
+                throw new IndexOutOfBoundsException("start=" + start + " end=" + end + " length=" + length());
+            }
+            return substring(start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return text();
+        }
     }
 
-    private record Parts(Node left, Node right) { }
-    private record Stats(int newlines, int trailingCharacters) {
-        private static final Stats EMPTY = new Stats(0, 0);
+    // Packs text into full leaves as it arrives, so a decoder can build a snapshot without the whole text as one String.
+    static final class Builder {
+        private final List<Node> leaves = new ArrayList<>();
+        private final char[] pending = new char[CHUNK_SIZE];
+        private int filled;
+
+        void append(char[] chars, int from, int to) {
+            int position = from;
+            while (position < to) {
+                if (filled == CHUNK_SIZE) {
+                    leaves.add(new Node(new String(pending)));
+                    filled = 0;
+                }
+                int count = Math.min(CHUNK_SIZE - filled, to - position);
+                System.arraycopy(chars, position, pending, filled, count);
+                filled += count;
+                position += count;
+            }
+        }
+
+        // A last leaf below MIN_LEAF shares the previous leaf's text, so every leaf but a lone one stays in bounds.
+        VersionedTextSnapshot build() {
+            if (filled > 0 && filled < MIN_LEAF && !leaves.isEmpty()) {
+                String text = leaves.remove(leaves.size() - 1).text + new String(pending, 0, filled);
+                leaves.add(new Node(text.substring(0, text.length() / 2)));
+                leaves.add(new Node(text.substring(text.length() / 2)));
+            } else if (filled > 0) {
+                leaves.add(new Node(new String(pending, 0, filled)));
+            }
+            filled = 0;
+            Node root = tree(leaves.toArray(new Node[0]));
+            leaves.clear();
+            return new VersionedTextSnapshot(root, 0L);
+        }
     }
 
+    // A leaf holds text; an inner node holds children that are all one level below it.
     private static final class Node {
-        final Node left;
-        final Node right;
         final String text;
-        final long priority;
+        final Node[] children;
+        final int height;
         final int chars;
         final int newlines;
         final int trailingCharacters;
+        final long hash;
+        // HASH_BASE^chars, so a parent can shift the hashes of the children before each one.
+        final long power;
 
-        Node(Node left, Node right, String text, long priority) {
-            this.left = left;
-            this.right = right;
+        Node(String text) {
             this.text = text;
-            this.priority = priority;
-            this.chars = chars(left) + text.length() + chars(right);
-            Stats result = combine(combine(stats(left), stats(text, text.length())), stats(right));
-            this.newlines = result.newlines;
-            this.trailingCharacters = result.trailingCharacters;
+            this.children = null;
+            this.height = 0;
+            this.chars = text.length();
+            int newlines = 0;
+            int trailing = 0;
+            long hash = 0L;
+            long power = 1L;
+            for (int index = 0; index < text.length(); index++) {
+                char character = text.charAt(index);
+                if (character == '\n') {
+                    newlines++;
+                    trailing = 0;
+                } else {
+                    trailing++;
+                }
+                hash = hash * HASH_BASE + character;
+                power *= HASH_BASE;
+            }
+            this.newlines = newlines;
+            this.trailingCharacters = trailing;
+            this.hash = hash;
+            this.power = power;
+        }
+
+        Node(Node[] children) {
+            this.text = null;
+            this.children = children;
+            this.height = children[0].height + 1;
+            int chars = 0;
+            Stats stats = Stats.EMPTY;
+            long hash = 0L;
+            long power = 1L;
+            for (Node child : children) {
+                chars += child.chars;
+                stats = combine(stats, stats(child));
+                hash = hash * child.power + child.hash;
+                power *= child.power;
+            }
+            this.chars = chars;
+            this.newlines = stats.newlines;
+            this.trailingCharacters = stats.trailingCharacters;
+            this.hash = hash;
+            this.power = power;
         }
     }
 }
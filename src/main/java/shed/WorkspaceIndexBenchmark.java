@@ -3,11 +3,15 @@ package shed;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 
 final class WorkspaceIndexBenchmark {
+    static final List<Integer> THREAD_COUNTS = List.of(1, 2, 4, 8);
+
     private final WorkspaceIndexService indexService;
 
     WorkspaceIndexBenchmark(WorkspaceIndexService indexService) {
@@ -22,8 +26,28 @@ final class WorkspaceIndexBenchmark {
         long cacheBytes = cacheBytes(result.persistedPath());
         long inputBytes = result.index() == null ? 0L : result.index().entries().stream().mapToLong(WorkspaceIndexService.Entry::size).sum();
         int outputFiles = result.index() == null ? 0 : result.index().entries().size();
-        return new Report(result.status().workspaceRoot(), result.status().state(), elapsedNanos, heapBefore, usedHeapBytes(),
-            result.status().visited(), result.status().ignored(), inputBytes, outputFiles, cacheBytes, result.status().message());
+        long heapAfter = usedHeapBytes();
+        // Full scans of the same root with each thread count, which must all list the built index's entries in order.
+        List<ThreadScaling> scaling = new ArrayList<>();
+        boolean sameIndex = result.index() != null;
+        for (int threads : THREAD_COUNTS) {
+            if (result.index() == null || cancellation != null && cancellation.isCancelled()) {
+                break;
+            }
+            long scanStartedAt = System.nanoTime();
+            WorkspaceIndexService.BuildResult scan = indexService.withParallelism(threads).scan(workspaceRoot, cancellation,
+                WorkspaceIndexService.Observer.NO_OP);
+            long scanNanos = System.nanoTime() - scanStartedAt;
+            if (scan.index() == null) {
+                sameIndex = false;
+                break;
+            }
+            scaling.add(new ThreadScaling(threads, scanNanos, scan.index().entries().size()));
+            sameIndex &= scan.index().entries().equals(result.index().entries());
+        }
+        return new Report(result.status().workspaceRoot(), result.status().state(), elapsedNanos, heapBefore, heapAfter,
+            result.status().visited(), result.status().ignored(), inputBytes, outputFiles, cacheBytes, result.status().message(),
+            scaling, sameIndex);
     }
 
     private static long usedHeapBytes() {
@@ -42,10 +66,14 @@ final class WorkspaceIndexBenchmark {
         }
     }
 
+    record ThreadScaling(int threads, long durationNanos, int files) {
+    }
+
     record Report(String workspaceRoot, WorkspaceIndexService.State state, long durationNanos, long heapBeforeBytes,
                   long heapAfterBytes, long inputFiles, long ignoredFiles, long inputBytes, int outputFiles,
-                  long cacheBytes, String message) {
+                  long cacheBytes, String message, List<ThreadScaling> threadScaling, boolean sameIndexAcrossThreads) {
         Report {
+            threadScaling = List.copyOf(threadScaling);
             if (durationNanos < 0 || heapBeforeBytes < 0 || heapAfterBytes < 0 || inputFiles < 0 || ignoredFiles < 0
                 || inputBytes < 0 || outputFiles < 0 || cacheBytes < 0) {
                 throw new IllegalArgumentException("benchmark counters must be non-negative");
@@ -70,6 +98,10 @@ final class WorkspaceIndexBenchmark {
             values.put("outputFiles", outputFiles);
             values.put("cacheBytes", cacheBytes);
             values.put("message", message);
+            for (ThreadScaling scaling : threadScaling) {
+                values.put("threads" + scaling.threads() + "DurationNanos", scaling.durationNanos());
+            }
+            values.put("sameIndexAcrossThreads", sameIndexAcrossThreads);
             return values;
         }
 
@@ -1,19 +1,19 @@
 package shed;
 
 import java.io.IOException;
-import java.io.ByteArrayOutputStream;
-import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.FileVisitResult;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
-import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -21,22 +21,36 @@ import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 final class WorkspaceIndexService {
-    static final int VERSION = 1;
+    static final int VERSION = 3;
 
     private final Path storageDirectory;
     private final IgnoreMatcher ignoreMatcher;
+    private final int parallelism;
     private volatile Status status;
 
     WorkspaceIndexService(Path storageDirectory) {
-        this(storageDirectory, new GitIgnoreMatcher());
+        this(storageDirectory, new GitIgnoreRules());
     }
 
     WorkspaceIndexService(Path storageDirectory, IgnoreMatcher ignoreMatcher) {
+        this(storageDirectory, ignoreMatcher, ParallelDirectoryWalker.defaultParallelism());
+    }
+
+    WorkspaceIndexService(Path storageDirectory, IgnoreMatcher ignoreMatcher, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
         this.storageDirectory = Objects.requireNonNull(storageDirectory, "storageDirectory").toAbsolutePath().normalize();
         this.ignoreMatcher = Objects.requireNonNull(ignoreMatcher, "ignoreMatcher");
+        this.parallelism = parallelism;
         this.status = Status.disabled();
     }
 
+    // The same storage and ignore rules walked with a different number of threads, as the benchmark compares.
+    WorkspaceIndexService withParallelism(int threads) {
+        return new WorkspaceIndexService(storageDirectory, ignoreMatcher, threads);
+    }
+
     BuildResult build(boolean enabled, Path workspaceRoot, Observer observer) {
         return build(enabled, workspaceRoot, Cancellation.NONE, observer);
     }
@@ -58,103 +72,65 @@ final class WorkspaceIndexService {
     }
 
     private BuildResult scanWorkspace(Path workspaceRoot, Cancellation cancellation, Observer observer, boolean persist) {
-        Cancellation effectiveCancellation = cancellation;
-        Observer effectiveObserver = observer;
+        return scanWorkspace(workspaceRoot, cancellation, observer, persist, null);
+    }
+
+    // Walks the workspace, reusing what a previous index of the same root already knows: a directory whose
+    // modification time still matches is not listed again, and paths it already classified keep their ignore result
+    // unless a .gitignore above them or a global ignore source changed. Ignored directories are not entered. Files are
+    // still stat'ed, since writing a file's content does not touch its directory.
+    private BuildResult scanWorkspace(Path workspaceRoot, Cancellation cancellation, Observer observer, boolean persist,
+                                      WorkspaceIndex previous) {
         Progress progress = new Progress();
+        String activity = persist ? "indexing" : "scanning";
         try {
             Path root = normalizedDirectory(workspaceRoot);
             progress.root = root;
-            String activity = persist ? "indexing" : "scanning";
-            publish(progress.status(State.BUILDING, activity), effectiveObserver);
-            List<Entry> candidates = new ArrayList<>();
-            Files.walkFileTree(root, new SimpleFileVisitor<>() {
-                @Override
-                public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) {
-                    if (effectiveCancellation.isCancelled()) {
-                        return FileVisitResult.TERMINATE;
-                    }
-                    if (!directory.equals(root) && ".git".equals(directory.getFileName().toString())) {
-                        progress.excludedDirectories++;
-                        publish(progress.status(State.BUILDING, activity), effectiveObserver);
-                        return FileVisitResult.SKIP_SUBTREE;
-                    }
-                    return FileVisitResult.CONTINUE;
-                }
-
-                @Override
-                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
-                    if (effectiveCancellation.isCancelled()) {
-                        return FileVisitResult.TERMINATE;
-                    }
-                    Path normalized = file.toAbsolutePath().normalize();
-                    if (".git".equals(normalized.getFileName().toString())) {
-                        progress.skipped++;
-                    } else if (!normalized.startsWith(root)) {
-                        progress.outsideBoundary++;
-                    } else if (!attributes.isRegularFile() || attributes.isSymbolicLink()) {
-                        progress.skipped++;
-                    } else {
-                        progress.visited++;
-                        Path relative = root.relativize(normalized);
-                        candidates.add(new Entry(relativePath(relative), attributes.size(), attributes.lastModifiedTime().toMillis()));
-                    }
-                    publish(progress.status(State.BUILDING, activity), effectiveObserver);
-                    return FileVisitResult.CONTINUE;
-                }
-
-                @Override
-                public FileVisitResult visitFileFailed(Path file, IOException error) {
-                    progress.unreadable++;
-                    publish(progress.status(State.BUILDING, activity), effectiveObserver);
-                    return FileVisitResult.CONTINUE;
-                }
-            });
-            if (effectiveCancellation.isCancelled()) {
-                Status cancelled = progress.status(State.CANCELLED, activity + " cancelled");
-                publish(cancelled, effectiveObserver);
-                return new BuildResult(null, cancelled, null);
-            }
-            Set<String> ignored = ignoredPaths(root, candidates, effectiveCancellation);
-            if (effectiveCancellation.isCancelled()) {
-                Status cancelled = progress.status(State.CANCELLED, activity + " cancelled");
-                publish(cancelled, effectiveObserver);
-                return new BuildResult(null, cancelled, null);
-            }
-            List<Entry> entries = new ArrayList<>();
-            for (Entry candidate : candidates) {
-                if (effectiveCancellation.isCancelled()) {
-                    Status cancelled = progress.status(State.CANCELLED, activity + " cancelled");
-                    publish(cancelled, effectiveObserver);
-                    return new BuildResult(null, cancelled, null);
-                }
-                if (ignored.contains(candidate.relativePath())) {
-                    progress.ignored++;
-                } else {
-                    entries.add(candidate);
-                    progress.indexed++;
-                }
+            publish(progress.status(State.BUILDING, activity), observer);
+            long scannedAtMillis = System.currentTimeMillis();
+            GitIgnoreRules.Evaluator rules = ignoreMatcher instanceof GitIgnoreRules gitRules ? gitRules.evaluator(root) : null;
+            String ignoreSources = ignoreSources(rules == null ? List.of() : rules.sources());
+            boolean recheckAll = previous == null || !previous.ignoreSources().equals(ignoreSources);
+            Walk walk = new Walk(root, previous, rules, cancellation, observer, progress, activity);
+            walk.walk(recheckAll);
+            if (cancellation.isCancelled()) {
+                return cancelled(progress, activity, observer);
             }
-            WorkspaceIndex index = new WorkspaceIndex(root.toString(), entries);
+            WorkspaceIndex index = new WorkspaceIndex(root.toString(), walk.entries, walk.directories, walk.ignored,
+                walk.ignoredDirectories, ignoreSources, scannedAtMillis);
             Path target = null;
             if (persist) {
                 target = indexPath(root);
-                Files.createDirectories(storageDirectory);
-                AtomicFileWriter.write(target, MiniJson.stringify(index.toMap()).getBytes(StandardCharsets.UTF_8));
+                if (previous != null && !walk.relistedRecentDirectory && index.sameContents(previous)) {
+                    // Nothing changed, so the persisted index stands as written, scan time included.
+                    index = previous;
+                } else {
+                    Files.createDirectories(storageDirectory);
+                    AtomicFileWriter.write(target, new JsonWriter().value(index.toMap()).toByteArray());
+                }
             }
             Status ready = progress.status(State.READY, persist ? "indexed" : "scanned");
-            publish(ready, effectiveObserver);
+            publish(ready, observer);
             return new BuildResult(index, ready, target);
         } catch (IOException | SecurityException error) {
             Status failed = progress.status(State.FAILED, failureMessage(error));
-            publish(failed, effectiveObserver);
+            publish(failed, observer);
             return new BuildResult(null, failed, null);
         }
     }
 
+    private BuildResult cancelled(Progress progress, String activity, Observer observer) {
+        Status cancelled = progress.status(State.CANCELLED, activity + " cancelled");
+        publish(cancelled, observer);
+        return new BuildResult(null, cancelled, null);
+    }
+
     BuildResult recover(boolean enabled, Path workspaceRoot, Cancellation cancellation, Observer observer) {
         if (!enabled) {
             return build(false, workspaceRoot, cancellation, observer);
         }
+        Cancellation effectiveCancellation = cancellation == null ? Cancellation.NONE : cancellation;
+        Observer effectiveObserver = observer == null ? Observer.NO_OP : observer;
         WorkspaceIndex previous = null;
         String priorState = "missing";
         try {
@@ -165,16 +141,15 @@ final class WorkspaceIndexService {
         } catch (IOException error) {
             priorState = "incomplete";
         }
-        BuildResult rebuilt = build(true, workspaceRoot, cancellation, observer);
+        BuildResult rebuilt = scanWorkspace(workspaceRoot, effectiveCancellation, effectiveObserver, true, previous);
         if (rebuilt.status().state() != State.READY) {
             return rebuilt;
         }
         String message = previous == null ? "rebuilt " + priorState + " index"
-            : previous.equals(rebuilt.index()) ? "revalidated persisted index" : "rebuilt stale index";
+            : previous.sameContents(rebuilt.index()) ? "revalidated persisted index" : "rebuilt stale index";
         Status recovered = new Status(State.READY, rebuilt.status().workspaceRoot(), rebuilt.status().visited(), rebuilt.status().indexed(),
             rebuilt.status().ignored(), rebuilt.status().skipped(), rebuilt.status().unreadable(), rebuilt.status().outsideBoundary(),
             rebuilt.status().excludedDirectories(), message);
-        Observer effectiveObserver = observer == null ? Observer.NO_OP : observer;
         publish(recovered, effectiveObserver);
         return new BuildResult(rebuilt.index(), recovered, rebuilt.persistedPath());
     }
@@ -195,8 +170,12 @@ final class WorkspaceIndexService {
             return null;
         }
         try {
-            return WorkspaceIndex.fromMap(MiniJson.asObject(MiniJson.parse(Files.readString(target, StandardCharsets.UTF_8))), root);
-        } catch (RuntimeException error) {
+            byte[] bytes = Files.readAllBytes(target);
+            JsonReader json = new JsonReader(bytes, 0, bytes.length);
+            WorkspaceIndex index = WorkspaceIndex.read(json, root);
+            json.finish();
+            return index;
+        } catch (IOException | RuntimeException error) {
             throw new IOException("workspace index is invalid: " + error.getMessage(), error);
         }
     }
@@ -206,42 +185,36 @@ final class WorkspaceIndexService {
         observer.onStatus(next);
     }
 
-    private Set<String> ignoredPaths(Path root, List<Entry> candidates, Cancellation cancellation) throws IOException {
-        if (candidates.isEmpty()) {
-            return Set.of();
-        }
-        if (ignoreMatcher instanceof GitIgnoreMatcher matcher) {
-            return matcher.ignoredPaths(root, candidates, cancellation);
-        }
-        Set<String> ignored = new LinkedHashSet<>();
-        for (Entry candidate : candidates) {
-            if (cancellation.isCancelled()) {
-                return ignored;
-            }
-            Path relative = Path.of(candidate.relativePath());
-            if (ignoreMatcher.isIgnored(root, relative)) {
-                ignored.add(candidate.relativePath());
+    private static String parentPath(String relativePath) {
+        int slash = relativePath.lastIndexOf('/');
+        return slash < 0 ? "" : relativePath.substring(0, slash);
+    }
+
+    // Size and modification time of the ignore inputs outside the tree, so a change to them re-checks every path.
+    private static String ignoreSources(List<Path> sources) {
+        StringBuilder fingerprint = new StringBuilder();
+        for (Path source : sources) {
+            fingerprint.append(source).append('=');
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+                fingerprint.append(attributes.size()).append('@').append(attributes.lastModifiedTime().toMillis());
+            } catch (IOException | SecurityException error) {
+                fingerprint.append('-');
             }
+            fingerprint.append(';');
         }
-        return ignored;
+        return fingerprint.toString();
     }
 
     private static Path normalizedDirectory(Path root) throws IOException {
         Path normalized = Objects.requireNonNull(root, "workspaceRoot").toAbsolutePath().normalize();
-        BasicFileAttributes attributes = Files.readAttributes(normalized, BasicFileAttributes.class, java.nio.file.LinkOption.NOFOLLOW_LINKS);
+        BasicFileAttributes attributes = Files.readAttributes(normalized, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
         if (!attributes.isDirectory() || attributes.isSymbolicLink()) {
             throw new IOException("workspace root must be a non-symbolic directory: " + normalized);
         }
         return normalized;
     }
 
-    private static String relativePath(Path relative) throws IOException {
-        if (relative.isAbsolute() || relative.toString().isBlank() || relative.startsWith("..")) {
-            throw new IOException("index path is outside workspace boundary");
-        }
-        return relative.toString().replace(java.io.File.separatorChar, '/');
-    }
-
     private static String sha256(String value) throws IOException {
         try {
             return java.util.HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8)));
@@ -255,6 +228,7 @@ final class WorkspaceIndexService {
         return message == null || message.isBlank() ? error.getClass().getSimpleName() : message;
     }
 
+    // Decides ignored files one path at a time. GitIgnoreRules, the default, also prunes ignored directories.
     interface IgnoreMatcher {
         boolean isIgnored(Path workspaceRoot, Path relativePath) throws IOException;
     }
@@ -312,35 +286,97 @@ final class WorkspaceIndexService {
             }
         }
 
+        // Scans segments in place; a large index checks every path on load.
         private static boolean validRelativePath(String value) {
-            if (value == null || value.isBlank() || value.startsWith("/") || value.contains("\\")) {
+            if (value == null || value.isBlank() || value.startsWith("/") || value.indexOf('\\') >= 0) {
                 return false;
             }
-            for (String segment : value.split("/")) {
-                if (segment.isEmpty() || segment.equals(".") || segment.equals("..")) {
+            int start = 0;
+            while (start <= value.length()) {
+                int end = value.indexOf('/', start);
+                if (end < 0) {
+                    end = value.length();
+                }
+                int length = end - start;
+                if (length == 0 && end < value.length()
+                    || length == 1 && value.charAt(start) == '.'
+                    || length == 2 && value.charAt(start) == '.' && value.charAt(start + 1) == '.') {
                     return false;
                 }
+                start = end + 1;
             }
             return true;
         }
     }
 
-    record WorkspaceIndex(String root, List<Entry> entries) {
+    // The root directory's path is empty. A directory that is not reusable is always listed again.
+    record Directory(String relativePath, long modifiedAtMillis, boolean reusable) {
+        Directory {
+            if (relativePath == null || !relativePath.isEmpty() && !Entry.validRelativePath(relativePath)) {
+                throw new IllegalArgumentException("index directory path is invalid");
+            }
+            if (modifiedAtMillis < 0) {
+                throw new IllegalArgumentException("index directory metadata is invalid");
+            }
+        }
+    }
+
+    // Entries are the indexed files. Directories and ignored paths let the next recovery skip unchanged directories and
+    // reuse ignore results; ignored directories were not entered. ignoreSources fingerprints the ignore files outside
+    // the tree.
+    record WorkspaceIndex(String root, List<Entry> entries, List<Directory> directories, List<String> ignored,
+                          List<String> ignoredDirectories, String ignoreSources, long scannedAtMillis) {
         WorkspaceIndex {
             root = Objects.requireNonNull(root, "root");
             entries = List.copyOf(Objects.requireNonNull(entries, "entries"));
-            Set<String> paths = new LinkedHashSet<>();
+            directories = List.copyOf(Objects.requireNonNull(directories, "directories"));
+            ignored = List.copyOf(Objects.requireNonNull(ignored, "ignored"));
+            ignoredDirectories = List.copyOf(Objects.requireNonNull(ignoredDirectories, "ignoredDirectories"));
+            ignoreSources = Objects.requireNonNull(ignoreSources, "ignoreSources");
+            Set<String> paths = HashSet.newHashSet(entries.size() + ignored.size() + ignoredDirectories.size());
             for (Entry entry : entries) {
                 if (!paths.add(entry.relativePath())) {
                     throw new IllegalArgumentException("index entry paths must be unique");
                 }
             }
+            for (String path : ignored) {
+                if (!Entry.validRelativePath(path) || !paths.add(path)) {
+                    throw new IllegalArgumentException("index ignored paths must be valid and unique");
+                }
+            }
+            for (String path : ignoredDirectories) {
+                if (!Entry.validRelativePath(path) || !paths.add(path)) {
+                    throw new IllegalArgumentException("index ignored directories must be valid and unique");
+                }
+            }
+            if (scannedAtMillis < 0) {
+                throw new IllegalArgumentException("index scan time is invalid");
+            }
+        }
+
+        // Whether both describe the same files, whenever each was scanned.
+        boolean sameContents(WorkspaceIndex other) {
+            return other != null && root.equals(other.root) && entries.equals(other.entries) && ignored.equals(other.ignored)
+                && ignoredDirectories.equals(other.ignoredDirectories) && directories.equals(other.directories) && ignoreSources.equals(other.ignoreSources);
         }
 
         Map<String, Object> toMap() {
             Map<String, Object> values = new LinkedHashMap<>();
             values.put("version", VERSION);
             values.put("root", root);
+            values.put("scannedAtMillis", scannedAtMillis);
+            values.put("ignoreSources", ignoreSources);
+            List<Object> encodedDirectories = new ArrayList<>();
+            for (Directory directory : directories) {
+                Map<String, Object> encoded = new LinkedHashMap<>();
+                encoded.put("path", directory.relativePath());
+                encoded.put("modifiedAtMillis", directory.modifiedAtMillis());
+                encoded.put("reusable", directory.reusable());
+                encodedDirectories.add(encoded);
+            }
+            values.put("directories", encodedDirectories);
+            values.put("ignored", new ArrayList<Object>(ignored));
+            values.put("ignoredDirectories", new ArrayList<Object>(ignoredDirectories));
             List<Object> encodedEntries = new ArrayList<>();
             for (Entry entry : entries) {
                 Map<String, Object> encoded = new LinkedHashMap<>();
@@ -353,31 +389,106 @@ final class WorkspaceIndexService {
             return values;
         }
 
-        static WorkspaceIndex fromMap(Map<String, Object> values, Path expectedRoot) {
-            if (values == null || !values.keySet().equals(Set.of("version", "root", "entries"))) {
+        // Decodes the persisted form field by field, so a large index never becomes a map tree.
+        static WorkspaceIndex read(JsonReader json, Path expectedRoot) throws IOException {
+            if (json.peek() != JsonReader.Kind.OBJECT) {
                 throw new IllegalArgumentException("index fields are invalid");
             }
-            if (integer(values.get("version"), "index version") != VERSION) {
-                throw new IllegalArgumentException("index version is unsupported");
+            Set<String> fields = new HashSet<>();
+            String root = null;
+            String ignoreSources = null;
+            long scannedAtMillis = 0;
+            List<Directory> directories = new ArrayList<>();
+            List<String> ignored = new ArrayList<>();
+            List<String> ignoredDirectories = new ArrayList<>();
+            List<Entry> entries = new ArrayList<>();
+            json.beginObject();
+            while (json.nextField()) {
+                String field = json.fieldName();
+                if (!fields.add(field)) {
+                    throw new IllegalArgumentException("index fields are invalid");
+                }
+                switch (field) {
+                    case "version" -> {
+                        if (integer(json.readValue(), "index version") != VERSION) {
+                            throw new IllegalArgumentException("index version is unsupported");
+                        }
+                    }
+                    case "root" -> root = string(json.readValue(), "index root");
+                    case "scannedAtMillis" -> scannedAtMillis = nonNegativeLong(json.readValue(), "index scan time");
+                    case "ignoreSources" -> ignoreSources = string(json.readValue(), "index ignore sources");
+                    case "directories" -> {
+                        beginArray(json, "index directories");
+                        while (json.nextElement()) {
+                            Map<String, Object> directory = MiniJson.asObject(json.readValue());
+                            if (directory == null || !directory.keySet().equals(Set.of("path", "modifiedAtMillis", "reusable"))
+                                || !(directory.get("reusable") instanceof Boolean reusable)) {
+                                throw new IllegalArgumentException("index directory fields are invalid");
+                            }
+                            directories.add(new Directory(string(directory.get("path"), "index directory path"),
+                                nonNegativeLong(directory.get("modifiedAtMillis"), "index directory modification time"), reusable));
+                        }
+                    }
+                    case "ignored" -> {
+                        beginArray(json, "index ignored paths");
+                        while (json.nextElement()) {
+                            ignored.add(string(json.readValue(), "index ignored path"));
+                        }
+                    }
+                    case "ignoredDirectories" -> {
+                        beginArray(json, "index ignored directories");
+                        while (json.nextElement()) {
+                            ignoredDirectories.add(string(json.readValue(), "index ignored directory"));
+                        }
+                    }
+                    case "entries" -> {
+                        beginArray(json, "index entries");
+                        while (json.nextElement()) {
+                            entries.add(readEntry(json));
+                        }
+                    }
+                    default -> throw new IllegalArgumentException("index fields are invalid");
+                }
+            }
+            if (fields.size() != 8) {
+                throw new IllegalArgumentException("index fields are invalid");
             }
-            String root = string(values.get("root"), "index root");
             if (!Path.of(root).toAbsolutePath().normalize().equals(expectedRoot)) {
                 throw new IllegalArgumentException("index root does not match workspace");
             }
-            List<Object> encodedEntries = MiniJson.asArray(values.get("entries"));
-            if (encodedEntries == null) {
-                throw new IllegalArgumentException("index entries must be an array");
+            return new WorkspaceIndex(root, entries, directories, ignored, ignoredDirectories, ignoreSources, scannedAtMillis);
+        }
+
+        private static Entry readEntry(JsonReader json) throws IOException {
+            if (json.peek() != JsonReader.Kind.OBJECT) {
+                throw new IllegalArgumentException("index entry fields are invalid");
             }
-            List<Entry> entries = new ArrayList<>();
-            for (Object encoded : encodedEntries) {
-                Map<String, Object> entry = MiniJson.asObject(encoded);
-                if (entry == null || !entry.keySet().equals(Set.of("path", "size", "modifiedAtMillis"))) {
+            String path = null;
+            long size = -1;
+            long modifiedAtMillis = -1;
+            json.beginObject();
+            while (json.nextField()) {
+                if (json.fieldIs("path") && path == null) {
+                    path = string(json.readValue(), "index entry path");
+                } else if (json.fieldIs("size") && size < 0) {
+                    size = nonNegativeLong(json.readValue(), "index entry size");
+                } else if (json.fieldIs("modifiedAtMillis") && modifiedAtMillis < 0) {
+                    modifiedAtMillis = nonNegativeLong(json.readValue(), "index entry modification time");
+                } else {
                     throw new IllegalArgumentException("index entry fields are invalid");
                 }
-                entries.add(new Entry(string(entry.get("path"), "index entry path"), nonNegativeLong(entry.get("size"), "index entry size"),
-                    nonNegativeLong(entry.get("modifiedAtMillis"), "index entry modification time")));
             }
-            return new WorkspaceIndex(root, entries);
+            if (path == null || size < 0 || modifiedAtMillis < 0) {
+                throw new IllegalArgumentException("index entry fields are invalid");
+            }
+            return new Entry(path, size, modifiedAtMillis);
+        }
+
+        private static void beginArray(JsonReader json, String field) throws IOException {
+            if (json.peek() != JsonReader.Kind.ARRAY) {
+                throw new IllegalArgumentException(field + " must be an array");
+            }
+            json.beginArray();
         }
 
         private static String string(Object value, String field) {
@@ -403,89 +514,399 @@ final class WorkspaceIndexService {
         }
     }
 
-    private static final class Progress {
-        private Path root;
-        private long visited;
-        private long indexed;
-        private long ignored;
-        private long skipped;
-        private long unreadable;
-        private long outsideBoundary;
-        private long excludedDirectories;
+    // What the previous index recorded directly inside one directory, each list in name order.
+    private static final class KnownDirectory {
+        private long modifiedAtMillis = -1;
+        private final List<Entry> files = new ArrayList<>();
+        private final List<String> ignored = new ArrayList<>();
+        private final List<String> directories = new ArrayList<>();
+        private final List<String> ignoredDirectories = new ArrayList<>();
+        private Map<String, Entry> filesByName;
+        private Map<String, Boolean> ignoredByName;
+
+        private Entry file(String name) {
+            if (filesByName == null) {
+                filesByName = new HashMap<>();
+                for (Entry file : files) {
+                    filesByName.put(name(file.relativePath()), file);
+                }
+            }
+            return filesByName.get(name);
+        }
 
-        private Status status(State state, String message) {
-            return new Status(state, root == null ? null : root.toString(), visited, indexed, ignored, skipped, unreadable, outsideBoundary,
-                excludedDirectories, message);
+        // Whether a child was ignored, not ignored, or unknown (null) last time; files and directories are kept apart.
+        private Boolean priorIgnored(String name, boolean directory) {
+            if (ignoredByName == null) {
+                ignoredByName = new HashMap<>();
+                for (String path : ignored) {
+                    ignoredByName.put(name(path), Boolean.TRUE);
+                }
+                for (String path : directories) {
+                    ignoredByName.put("/" + path, Boolean.FALSE);
+                }
+                for (String path : ignoredDirectories) {
+                    ignoredByName.put("/" + path, Boolean.TRUE);
+                }
+            }
+            if (!directory) {
+                return file(name) != null ? Boolean.FALSE : ignoredByName.get(name);
+            }
+            return ignoredByName.get("/" + name);
         }
     }
 
-    private static final class GitIgnoreMatcher implements IgnoreMatcher {
-        @Override
-        public boolean isIgnored(Path workspaceRoot, Path relativePath) throws IOException {
-            Process process = new ProcessBuilder("git", "-C", workspaceRoot.toString(), "check-ignore", "--no-index", "--quiet", "--stdin", "-z")
-                .redirectErrorStream(true)
-                .start();
-            try (OutputStream input = process.getOutputStream()) {
-                input.write(relativePath(relativePath).getBytes(StandardCharsets.UTF_8));
-                input.write(0);
+    // Depth-first walk in name order, so the index lists paths the same way whichever directories were reused and however
+    // many threads listed them. Ignore results are worked out as the walk goes, so an ignored directory is recorded
+    // without being entered.
+    private final class Walk {
+        // Modification times this close to the previous scan may hide a change made in the same clock tick.
+        private static final long RECENT_MILLIS = 2_000L;
+
+        private final Path root;
+        private final GitIgnoreRules.Evaluator rules;
+        private final Cancellation cancellation;
+        private final Observer observer;
+        private final Progress progress;
+        private final String activity;
+        private final Object matcherLock = new Object();
+        private final long previousScanMillis;
+        private final Map<String, KnownDirectory> known = new HashMap<>();
+        private final List<Entry> entries = new ArrayList<>();
+        private final List<String> ignored = new ArrayList<>();
+        private final List<String> ignoredDirectories = new ArrayList<>();
+        private final List<Directory> directories = new ArrayList<>();
+        private boolean relistedRecentDirectory;
+
+        private Walk(Path root, WorkspaceIndex previous, GitIgnoreRules.Evaluator rules, Cancellation cancellation, Observer observer,
+                     Progress progress, String activity) {
+            this.root = root;
+            this.rules = rules;
+            this.cancellation = cancellation;
+            this.observer = observer;
+            this.progress = progress;
+            this.activity = activity;
+            this.previousScanMillis = previous == null ? 0L : previous.scannedAtMillis();
+            if (previous == null) {
+                return;
             }
-            try {
-                int exitCode = process.waitFor();
-                byte[] output = process.getInputStream().readAllBytes();
-                if (exitCode == 0) {
-                    return true;
+            for (Directory directory : previous.directories()) {
+                if (directory.reusable()) {
+                    knownDirectory(directory.relativePath()).modifiedAtMillis = directory.modifiedAtMillis();
                 }
-                if (exitCode == 1) {
-                    return false;
+                if (!directory.relativePath().isEmpty()) {
+                    knownDirectory(parentPath(directory.relativePath())).directories.add(name(directory.relativePath()));
                 }
-                throw new IOException("git check-ignore failed: " + new String(output, StandardCharsets.UTF_8).trim());
-            } catch (InterruptedException error) {
-                Thread.currentThread().interrupt();
-                throw new IOException("git check-ignore interrupted", error);
+            }
+            for (String path : previous.ignoredDirectories()) {
+                knownDirectory(parentPath(path)).ignoredDirectories.add(name(path));
+            }
+            // Paths arrive grouped by directory, so the lookup only runs when the directory changes.
+            KnownDirectory current = null;
+            for (Entry entry : previous.entries()) {
+                current = sameParent(current, entry.relativePath());
+                current.files.add(entry);
+            }
+            current = null;
+            for (String path : previous.ignored()) {
+                current = sameParent(current, path);
+                current.ignored.add(path);
+            }
+        }
+
+        private String currentParent;
+
+        private KnownDirectory sameParent(KnownDirectory current, String path) {
+            int slash = path.lastIndexOf('/');
+            int length = Math.max(slash, 0);
+            if (current == null || currentParent.length() != length || !path.startsWith(currentParent)) {
+                currentParent = path.substring(0, length);
+                current = knownDirectory(currentParent);
+            }
+            return current;
+        }
+
+        private KnownDirectory knownDirectory(String relativePath) {
+            return known.computeIfAbsent(relativePath, key -> new KnownDirectory());
+        }
+
+        // Walks the tree on the shared parallel walker, then reads each directory's listing back depth-first on this
+        // thread, so paths come out in the same order for any number of threads and progress is published here.
+        private void walk(boolean recheck) throws IOException {
+            BasicFileAttributes attributes = Files.readAttributes(root, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            try (ParallelDirectoryWalker.Walk<Listing> walk = ParallelDirectoryWalker.start(new Visit(root, "", attributes, recheck),
+                this::visit, parallelism, cancellation::isCancelled)) {
+                collect(walk.root());
             }
         }
 
-        Set<String> ignoredPaths(Path workspaceRoot, List<Entry> candidates, Cancellation cancellation) throws IOException {
-            Process process = new ProcessBuilder("git", "-C", workspaceRoot.toString(), "check-ignore", "--no-index", "-z", "--stdin")
-                .redirectErrorStream(true).start();
-            ByteArrayOutputStream output = new ByteArrayOutputStream();
-            Thread reader = Thread.startVirtualThread(() -> {
-                try (java.io.InputStream input = process.getInputStream()) {
-                    input.transferTo(output);
-                } catch (IOException ignored) {
+        private void collect(ParallelDirectoryWalker.Node<Listing> node) throws IOException {
+            Listing listing = node.result();
+            if (listing == null) {
+                return;
+            }
+            progress.add(listing);
+            relistedRecentDirectory |= listing.relistedRecentDirectory;
+            if (listing.directory != null) {
+                directories.add(listing.directory);
+            }
+            int child = 0;
+            for (Item item : listing.items) {
+                switch (item.kind) {
+                    case FILE -> entries.add(item.entry);
+                    case IGNORED_FILE -> ignored.add(item.path);
+                    case IGNORED_DIRECTORY -> ignoredDirectories.add(item.path);
+                    case DIRECTORY -> collect(node.children().get(child++));
                 }
-            });
-            try (OutputStream input = process.getOutputStream()) {
-                for (Entry candidate : candidates) {
-                    if (cancellation.isCancelled()) {
-                        process.destroyForcibly();
-                        return Set.of();
-                    }
-                    input.write(candidate.relativePath().getBytes(StandardCharsets.UTF_8));
-                    input.write(0);
+                if (cancellation.isCancelled()) {
+                    return;
                 }
             }
-            try {
-                int exitCode = process.waitFor();
-                reader.join();
-                if (exitCode == 1) {
-                    return Set.of();
+            publish(progress.status(State.BUILDING, activity), observer);
+        }
+
+        // Lists one directory on a walker thread. Known children keep their ignore result unless recheck is set,
+        // which a changed .gitignore passes down; subdirectories to enter are added to subdirectories in name order.
+        private Listing visit(Visit visit, List<Visit> subdirectories) throws IOException {
+            Listing listing = new Listing();
+            long modified = visit.attributes.lastModifiedTime().toMillis();
+            KnownDirectory previous = known.get(visit.relative);
+            List<Child> children = null;
+            if (previous != null && previous.modifiedAtMillis == modified) {
+                if (modified + RECENT_MILLIS < previousScanMillis) {
+                    children = knownChildren(visit.directory, visit.relative, previous);
+                } else {
+                    listing.relistedRecentDirectory = true;
+                }
+            }
+            boolean reusable = true;
+            if (children == null) {
+                children = listChildren(visit.directory, visit.relative, previous);
+                if (children == null) {
+                    listing.unreadable++;
+                    return listing;
                 }
-                if (exitCode != 0) {
-                    throw new IOException("git check-ignore failed: " + output.toString(StandardCharsets.UTF_8).trim());
+                for (Child child : children) {
+                    reusable &= child.kind == ChildKind.FILE || child.kind == ChildKind.DIRECTORY;
                 }
-                Set<String> ignored = new LinkedHashSet<>();
-                for (String value : output.toString(StandardCharsets.UTF_8).split("\\u0000")) {
-                    if (!value.isBlank()) {
-                        ignored.add(value);
+            }
+            // A directory holding links, Git metadata, or unreadable entries is listed again each time so they stay counted.
+            listing.directory = new Directory(visit.relative, modified, reusable);
+            boolean recheckChildren = visit.recheck || ignoreFileChanged(previous, children);
+            for (Child child : children) {
+                if (cancellation.isCancelled()) {
+                    return listing;
+                }
+                switch (child.kind) {
+                    case DIRECTORY -> {
+                        if (recheckChildren || child.priorIgnored == null ? isIgnored(visit.relative, child.path, true) : child.priorIgnored) {
+                            listing.items.add(new Item(ItemKind.IGNORED_DIRECTORY, child.path, null));
+                            listing.excludedDirectories++;
+                            continue;
+                        }
+                        Path directory = visit.directory.resolve(child.name);
+                        BasicFileAttributes attributes = child.attributes != null ? child.attributes : attributes(directory);
+                        if (attributes == null || !attributes.isDirectory()) {
+                            listing.unreadable++;
+                        } else {
+                            listing.items.add(new Item(ItemKind.DIRECTORY, child.path, null));
+                            subdirectories.add(new Visit(directory, child.path, attributes, recheckChildren));
+                        }
+                    }
+                    case FILE -> {
+                        listing.visited++;
+                        if (recheckChildren || child.priorIgnored == null ? isIgnored(visit.relative, child.path, false) : child.priorIgnored) {
+                            listing.items.add(new Item(ItemKind.IGNORED_FILE, child.path, null));
+                            listing.ignored++;
+                            continue;
+                        }
+                        Entry entry = child.entry != null ? child.entry : stat(child.path);
+                        if (entry != null) {
+                            listing.items.add(new Item(ItemKind.FILE, child.path, entry));
+                            listing.indexed++;
+                        } else {
+                            listing.visited--;
+                            listing.unreadable++;
+                        }
                     }
+                    case EXCLUDED_DIRECTORY -> listing.excludedDirectories++;
+                    case SKIPPED -> listing.skipped++;
+                    case UNREADABLE -> listing.unreadable++;
                 }
-                return ignored;
-            } catch (InterruptedException error) {
-                process.destroyForcibly();
-                Thread.currentThread().interrupt();
-                throw new IOException("git check-ignore interrupted", error);
             }
+            return listing;
+        }
+
+        // GitIgnoreRules is safe to share between walker threads; any other matcher sees one call at a time.
+        private boolean isIgnored(String parent, String relativePath, boolean directory) throws IOException {
+            if (rules != null) {
+                return rules.scope(parent).isIgnored(relativePath, directory);
+            }
+            if (directory) {
+                return false;
+            }
+            synchronized (matcherLock) {
+                return ignoreMatcher.isIgnored(root, Path.of(relativePath));
+            }
+        }
+
+        // Whether this directory's .gitignore appeared, disappeared, or changed since the previous index. An unchanged
+        // file keeps its previous entry instance, and Git reads a .gitignore even when it is itself ignored.
+        private static boolean ignoreFileChanged(KnownDirectory previous, List<Child> children) {
+            if (previous == null) {
+                return false;
+            }
+            Child current = null;
+            for (Child child : children) {
+                if (child.kind == ChildKind.FILE && child.name.equals(".gitignore")) {
+                    current = child;
+                }
+            }
+            Boolean wasIgnored = previous.priorIgnored(".gitignore", false);
+            if (current == null) {
+                return wasIgnored != null;
+            }
+            return Boolean.TRUE.equals(wasIgnored) || current.entry != previous.file(".gitignore");
+        }
+
+        // Children of an unchanged directory from the previous index, or null when one of them has since gone or
+        // changed kind, in which case the directory is listed after all. Previously ignored paths are not stat'ed.
+        private List<Child> knownChildren(Path directory, String relative, KnownDirectory previous) {
+            List<Child> children = new ArrayList<>(previous.files.size() + previous.ignored.size() + previous.directories.size()
+                + previous.ignoredDirectories.size());
+            for (Entry file : previous.files) {
+                String name = name(file.relativePath());
+                BasicFileAttributes attributes = attributes(directory.resolve(name));
+                if (attributes == null || !attributes.isRegularFile()) {
+                    return null;
+                }
+                children.add(new Child(name, ChildKind.FILE, null, file.relativePath(), entry(file.relativePath(), attributes, file), Boolean.FALSE));
+            }
+            for (String path : previous.ignored) {
+                children.add(new Child(name(path), ChildKind.FILE, null, path, null, Boolean.TRUE));
+            }
+            for (String name : previous.directories) {
+                BasicFileAttributes attributes = attributes(directory.resolve(name));
+                if (attributes == null || !attributes.isDirectory()) {
+                    return null;
+                }
+                children.add(new Child(name, ChildKind.DIRECTORY, attributes, child(relative, name), null, Boolean.FALSE));
+            }
+            for (String name : previous.ignoredDirectories) {
+                children.add(new Child(name, ChildKind.DIRECTORY, null, child(relative, name), null, Boolean.TRUE));
+            }
+            children.sort(Comparator.comparing(Child::name));
+            return children;
+        }
+
+        private List<Child> listChildren(Path directory, String relative, KnownDirectory previous) {
+            List<String> names = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path child : stream) {
+                    names.add(child.getFileName().toString());
+                }
+            } catch (IOException | SecurityException error) {
+                return null;
+            }
+            names.sort(null);
+            List<Child> children = new ArrayList<>(names.size());
+            for (String name : names) {
+                BasicFileAttributes attributes = attributes(directory.resolve(name));
+                if (attributes == null) {
+                    children.add(new Child(name, ChildKind.UNREADABLE, null, null, null, null));
+                } else if (".git".equals(name)) {
+                    children.add(new Child(name, attributes.isDirectory() ? ChildKind.EXCLUDED_DIRECTORY : ChildKind.SKIPPED, null, null, null, null));
+                } else if (attributes.isDirectory()) {
+                    Boolean priorIgnored = previous == null ? null : previous.priorIgnored(name, true);
+                    children.add(new Child(name, ChildKind.DIRECTORY, attributes, child(relative, name), null, priorIgnored));
+                } else if (attributes.isRegularFile()) {
+                    String path = child(relative, name);
+                    Entry prior = previous == null ? null : previous.file(name);
+                    Boolean priorIgnored = previous == null ? null : previous.priorIgnored(name, false);
+                    children.add(new Child(name, ChildKind.FILE, null, path, entry(path, attributes, prior), priorIgnored));
+                } else {
+                    children.add(new Child(name, ChildKind.SKIPPED, null, null, null, null));
+                }
+            }
+            return children;
+        }
+
+        private Entry stat(String relativePath) {
+            BasicFileAttributes attributes = attributes(root.resolve(relativePath));
+            return attributes == null || !attributes.isRegularFile() ? null : entry(relativePath, attributes, null);
+        }
+
+        private BasicFileAttributes attributes(Path path) {
+            try {
+                return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            } catch (IOException | SecurityException error) {
+                return null;
+            }
+        }
+    }
+
+    // Reuses the previous entry when the file looks the same, which also makes comparing unchanged indexes cheap.
+    private static Entry entry(String relativePath, BasicFileAttributes attributes, Entry prior) {
+        long size = attributes.size();
+        long modified = attributes.lastModifiedTime().toMillis();
+        return prior != null && prior.size() == size && prior.modifiedAtMillis() == modified ? prior : new Entry(relativePath, size, modified);
+    }
+
+    private static String child(String parent, String name) {
+        return parent.isEmpty() ? name : parent + "/" + name;
+    }
+
+    private static String name(String relativePath) {
+        return relativePath.substring(relativePath.lastIndexOf('/') + 1);
+    }
+
+    private enum ChildKind { FILE, DIRECTORY, EXCLUDED_DIRECTORY, SKIPPED, UNREADABLE }
+
+    private enum ItemKind { FILE, IGNORED_FILE, IGNORED_DIRECTORY, DIRECTORY }
+
+    private record Visit(Path directory, String relative, BasicFileAttributes attributes, boolean recheck) { }
+
+    // One path a directory contributes to the index, in name order; a DIRECTORY item stands for its whole subtree.
+    private record Item(ItemKind kind, String path, Entry entry) { }
+
+    // What one directory's visit found, counted on the walker thread and added to the progress by the reader.
+    private static final class Listing {
+        private Directory directory;
+        private final List<Item> items = new ArrayList<>();
+        private boolean relistedRecentDirectory;
+        private long visited;
+        private long indexed;
+        private long ignored;
+        private long skipped;
+        private long unreadable;
+        private long excludedDirectories;
+    }
+
+    // Directories carry their attributes for the walk to descend, unless they were ignored before; files carry their entry.
+    // Both carry their path and prior ignore result.
+    private record Child(String name, ChildKind kind, BasicFileAttributes attributes, String path, Entry entry, Boolean priorIgnored) { }
+
+    private static final class Progress {
+        private Path root;
+        private long visited;
+        private long indexed;
+        private long ignored;
+        private long skipped;
+        private long unreadable;
+        private long outsideBoundary;
+        private long excludedDirectories;
+
+        private void add(Listing listing) {
+            visited += listing.visited;
+            indexed += listing.indexed;
+            ignored += listing.ignored;
+            skipped += listing.skipped;
+            unreadable += listing.unreadable;
+            excludedDirectories += listing.excludedDirectories;
+        }
+
+        private Status status(State state, String message) {
+            return new Status(state, root == null ? null : root.toString(), visited, indexed, ignored, skipped, unreadable, outsideBoundary,
+                excludedDirectories, message);
         }
     }
 }
@@ -15,17 +15,24 @@ final class WorkspaceSearchCoordinator {
     }
 
     String search(String argument) {
-        String query = argument == null ? "" : argument.trim();
-        if (!validQuery(query)) {
-            return "Usage: :grep <text>";
+        WorkspaceTextSearchService.Query searchQuery;
+        try {
+            searchQuery = query(argument);
+        } catch (IllegalArgumentException error) {
+            return "Workspace search: " + error.getMessage();
         }
+        if (searchQuery == null) {
+            return "Usage: :grep [-i] [-E] [--] <text>";
+        }
+        String query = searchQuery.text();
         List<Path> roots = workspaceRoots();
         if (roots.isEmpty()) {
             return "Workspace search requires a directory";
         }
-        String title = "grep " + query + (roots.size() == 1 ? "" : " (" + roots.size() + " folders)");
+        String title = "grep " + argument.trim() + (roots.size() == 1 ? "" : " (" + roots.size() + " folders)");
         long request = ++activeRequest;
         boolean persistentIndexEnabled = editor.configManager.getWorkspaceIndexEnabled();
+        WorkspaceTrigramIndex trigramIndex = editor.configManager.getWorkspaceTrigramIndexEnabled() ? new WorkspaceTrigramIndex() : null;
         List<QuickfixService.Entry> partialEntries = new ArrayList<>();
         editor.problemsController.clearQuickfixSource("workspace-search");
         editor.updateQuickfixEntries(title, List.of());
@@ -34,7 +41,7 @@ final class WorkspaceSearchCoordinator {
             token -> {
                 token.onCancel(cancellation::cancel);
                 WorkspaceIndexService index = new WorkspaceIndexService(Path.of(editor.configManager.getShedDirectoryPath(), "workspace-index"));
-                return new WorkspaceTextSearchService(index).search(persistentIndexEnabled, roots, query, cancellation,
+                return new WorkspaceTextSearchService(index, trigramIndex).search(persistentIndexEnabled, roots, searchQuery, cancellation,
                     matches -> SwingUtilities.invokeLater(() -> appendMatches(request, title, partialEntries, matches)));
             },
             (snapshot, result, error) -> complete(request, title, query, snapshot, result, error));
@@ -113,6 +120,28 @@ final class WorkspaceSearchCoordinator {
         return entries;
     }
 
+    // Leading -i ignores case and -E reads the text as a regular expression; -- ends the options. Returns null for an
+    // empty or multi-line query.
+    private static WorkspaceTextSearchService.Query query(String argument) {
+        String text = argument == null ? "" : argument.trim();
+        boolean ignoreCase = false;
+        boolean regex = false;
+        while (true) {
+            int space = text.indexOf(' ');
+            String option = space < 0 ? text : text.substring(0, space);
+            if (!option.equals("-i") && !option.equals("-E") && !option.equals("--")) {
+                break;
+            }
+            text = space < 0 ? "" : text.substring(space + 1).trim();
+            if (option.equals("--")) {
+                break;
+            }
+            ignoreCase |= option.equals("-i");
+            regex |= option.equals("-E");
+        }
+        return validQuery(text) ? new WorkspaceTextSearchService.Query(text, regex, ignoreCase) : null;
+    }
+
     private static boolean validQuery(String value) {
         return !value.isEmpty() && value.indexOf('\0') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0;
     }
@@ -0,0 +1,239 @@
+package shed;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Finds one workspace search query in a file. Literal queries run Boyer-Moore-Horspool over the raw UTF-8 bytes and
+// decode only the lines holding a match; regular expressions, and case-insensitive queries outside ASCII, decode each
+// line and match it with java.util.regex. Lines end at \n, \r, or \r\n, as for BufferedReader.readLine, and columns
+// count UTF-16 units from one. Malformed UTF-8 in a matching line is decoded as replacement characters.
+final class WorkspaceTextMatcher {
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final byte[] FOLD = new byte[256];
+
+    static {
+        for (int value = 0; value < FOLD.length; value++) {
+            FOLD[value] = (byte) (value >= 'A' && value <= 'Z' ? value + ('a' - 'A') : value);
+        }
+    }
+
+    private final byte[] needle;
+    private final boolean foldCase;
+    private final int[] shift;
+    private final Pattern pattern;
+    // Each reader thread keeps its buffer between files; most files fit in it without growing.
+    private final ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[BUFFER_BYTES]);
+
+    WorkspaceTextMatcher(WorkspaceTextSearchService.Query query) {
+        if (query.regex() || query.ignoreCase() && !ascii(query.text())) {
+            needle = null;
+            foldCase = false;
+            shift = null;
+            int flags = query.ignoreCase() ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0;
+            pattern = Pattern.compile(query.regex() ? query.text() : Pattern.quote(query.text()), flags);
+            return;
+        }
+        foldCase = query.ignoreCase();
+        needle = query.text().getBytes(StandardCharsets.UTF_8);
+        if (foldCase) {
+            for (int index = 0; index < needle.length; index++) {
+                needle[index] = FOLD[needle[index] & 0xFF];
+            }
+        }
+        // Horspool's bad-character table: how far the window may move when its last byte is the index byte.
+        shift = new int[256];
+        Arrays.fill(shift, needle.length);
+        for (int index = 0; index < needle.length - 1; index++) {
+            shift[needle[index] & 0xFF] = needle.length - 1 - index;
+        }
+        pattern = null;
+    }
+
+    // Whether matches are found on raw bytes, so a trigram index over folded bytes can rule files out.
+    boolean bytewise() {
+        return needle != null;
+    }
+
+    // Matches in file order, stopping once limit are found or the cancellation fires.
+    List<WorkspaceTextSearchService.Match> search(Path file, int limit, WorkspaceIndexService.Cancellation cancellation) throws IOException {
+        List<WorkspaceTextSearchService.Match> matches = new ArrayList<>();
+        String filePath = file.toString();
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = buffers.get();
+            int length = 0;
+            int start = 0;
+            int line = 1;
+            boolean skipLineFeed = false;
+            boolean end = false;
+            while (!end && matches.size() < limit && !cancellation.isCancelled()) {
+                if (start > 0) {
+                    System.arraycopy(buffer, start, buffer, 0, length - start);
+                    length -= start;
+                    start = 0;
+                }
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                int read = in.read(buffer, length, buffer.length - length);
+                if (read < 0) {
+                    end = true;
+                } else {
+                    length += read;
+                }
+                // A \r that ended the previous block may be the first half of \r\n.
+                if (skipLineFeed && start < length) {
+                    if (buffer[start] == '\n') {
+                        start++;
+                    }
+                    skipLineFeed = false;
+                }
+                // Only whole lines are searched; a partial last line waits for the next read.
+                int complete = end ? length : lastLineEnd(buffer, start, length);
+                if (complete > start) {
+                    line = needle != null ? scanBytes(buffer, start, complete, line, filePath, matches, limit)
+                        : scanLines(buffer, start, complete, line, filePath, matches, limit);
+                    skipLineFeed = buffer[complete - 1] == '\r';
+                    start = complete;
+                }
+            }
+        }
+        return matches;
+    }
+
+    // Returns the line number at to.
+    private int scanBytes(byte[] buffer, int from, int to, int line, String filePath, List<WorkspaceTextSearchService.Match> matches,
+                          int limit) {
+        int counted = from;
+        int lineStart = from;
+        int position = from;
+        while (matches.size() < limit) {
+            int hit = indexOf(buffer, position, to);
+            if (hit < 0) {
+                break;
+            }
+            for (; counted < hit; counted++) {
+                if (buffer[counted] == '\n' || buffer[counted] == '\r') {
+                    line += lineBreak(buffer, from, counted) ? 1 : 0;
+                    lineStart = counted + 1;
+                }
+            }
+            int lineEnd = hit;
+            while (lineEnd < to && buffer[lineEnd] != '\n' && buffer[lineEnd] != '\r') {
+                lineEnd++;
+            }
+            String preview = WorkspaceTextSearchService.preview(new String(buffer, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8));
+            while (hit >= 0 && matches.size() < limit) {
+                matches.add(new WorkspaceTextSearchService.Match(filePath, line, column(buffer, lineStart, hit), preview));
+                hit = indexOf(buffer, hit + needle.length, lineEnd);
+            }
+            counted = lineEnd;
+            position = lineEnd;
+        }
+        for (; counted < to; counted++) {
+            if (lineBreak(buffer, from, counted)) {
+                line++;
+            }
+        }
+        return line;
+    }
+
+    private int scanLines(byte[] buffer, int from, int to, int line, String filePath, List<WorkspaceTextSearchService.Match> matches,
+                          int limit) {
+        int lineStart = from;
+        for (int index = from; index <= to && matches.size() < limit; index++) {
+            if (index < to && buffer[index] != '\n' && buffer[index] != '\r') {
+                continue;
+            }
+            if (index < to && !lineBreak(buffer, from, index)) {
+                lineStart = index + 1;
+                continue;
+            }
+            if (index == to && lineStart == to) {
+                break;
+            }
+            String text = new String(buffer, lineStart, index - lineStart, StandardCharsets.UTF_8);
+            Matcher matcher = pattern.matcher(text);
+            String preview = null;
+            while (matches.size() < limit && matcher.find()) {
+                preview = preview == null ? WorkspaceTextSearchService.preview(text) : preview;
+                matches.add(new WorkspaceTextSearchService.Match(filePath, line, matcher.start() + 1, preview));
+            }
+            line++;
+            lineStart = index + 1;
+        }
+        return line;
+    }
+
+    // Index of the first match starting in [from, to), or -1.
+    int indexOf(byte[] haystack, int from, int to) {
+        int last = needle.length - 1;
+        if (last == 0) {
+            byte wanted = needle[0];
+            for (int index = from; index < to; index++) {
+                if (wanted == (foldCase ? FOLD[haystack[index] & 0xFF] : haystack[index])) {
+                    return index;
+                }
+            }
+            return -1;
+        }
+        for (int window = from; window <= to - needle.length; ) {
+            byte tail = foldCase ? FOLD[haystack[window + last] & 0xFF] : haystack[window + last];
+            if (tail == needle[last] && regionMatches(haystack, window, last)) {
+                return window;
+            }
+            window += shift[tail & 0xFF];
+        }
+        return -1;
+    }
+
+    private boolean regionMatches(byte[] haystack, int window, int length) {
+        for (int index = 0; index < length; index++) {
+            byte value = foldCase ? FOLD[haystack[window + index] & 0xFF] : haystack[window + index];
+            if (value != needle[index]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // A \n directly after \r closes the same line, so it is not counted again.
+    private static boolean lineBreak(byte[] buffer, int from, int index) {
+        byte value = buffer[index];
+        return value == '\r' || value == '\n' && (index == from || buffer[index - 1] != '\r');
+    }
+
+    private static int lastLineEnd(byte[] buffer, int from, int to) {
+        for (int index = to - 1; index >= from; index--) {
+            if (buffer[index] == '\n' || buffer[index] == '\r') {
+                return index + 1;
+            }
+        }
+        return from;
+    }
+
+    private static int column(byte[] buffer, int lineStart, int offset) {
+        for (int index = lineStart; index < offset; index++) {
+            if (buffer[index] < 0) {
+                return new String(buffer, lineStart, offset - lineStart, StandardCharsets.UTF_8).length() + 1;
+            }
+        }
+        return offset - lineStart + 1;
+    }
+
+    private static boolean ascii(String text) {
+        for (int index = 0; index < text.length(); index++) {
+            if (text.charAt(index) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,153 +1,242 @@
 package shed;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
+// Searches the files of one or more workspace roots. Roots are indexed concurrently and files are read by a bounded
+// pool of reader threads a few files ahead of the one being reported; results are taken back in index order, so
+// matches and Observer batches come out in the same order for any number of readers.
 final class WorkspaceTextSearchService {
     static final int DEFAULT_MAX_RESULTS = 200;
     static final int DEFAULT_BATCH_SIZE = 25;
+    private static final int READ_AHEAD_PER_READER = 4;
 
     private final WorkspaceIndexService indexService;
+    private final WorkspaceTrigramIndex trigramIndex;
     private final int maxResults;
     private final int batchSize;
+    private final int readers;
 
     WorkspaceTextSearchService(WorkspaceIndexService indexService) {
-        this(indexService, DEFAULT_MAX_RESULTS, DEFAULT_BATCH_SIZE);
+        this(indexService, null);
+    }
+
+    // With a trigram index, persistent searches read only the files whose trigrams cover the query.
+    WorkspaceTextSearchService(WorkspaceIndexService indexService, WorkspaceTrigramIndex trigramIndex) {
+        this(indexService, trigramIndex, DEFAULT_MAX_RESULTS, DEFAULT_BATCH_SIZE);
     }
 
     WorkspaceTextSearchService(WorkspaceIndexService indexService, int maxResults, int batchSize) {
+        this(indexService, null, maxResults, batchSize);
+    }
+
+    WorkspaceTextSearchService(WorkspaceIndexService indexService, WorkspaceTrigramIndex trigramIndex, int maxResults, int batchSize) {
+        this(indexService, trigramIndex, maxResults, batchSize, ParallelDirectoryWalker.defaultParallelism());
+    }
+
+    private WorkspaceTextSearchService(WorkspaceIndexService indexService, WorkspaceTrigramIndex trigramIndex, int maxResults, int batchSize,
+                                       int readers) {
         this.indexService = Objects.requireNonNull(indexService, "indexService");
+        this.trigramIndex = trigramIndex;
         this.maxResults = positive(maxResults, "maxResults");
         this.batchSize = positive(batchSize, "batchSize");
+        this.readers = positive(readers, "readers");
+    }
+
+    // The same search read by a different number of threads.
+    WorkspaceTextSearchService withReaders(int threads) {
+        return new WorkspaceTextSearchService(indexService, trigramIndex, maxResults, batchSize, threads);
     }
 
     SearchResult search(boolean persistentIndexEnabled, Path workspaceRoot, String query, WorkspaceIndexService.Cancellation cancellation,
                         Observer observer) {
-        String needle = requireQuery(query);
-        WorkspaceIndexService.Cancellation effectiveCancellation = cancellation == null ? WorkspaceIndexService.Cancellation.NONE : cancellation;
-        Observer effectiveObserver = observer == null ? Observer.NO_OP : observer;
-        Source source = persistentIndexEnabled ? Source.PERSISTENT_INDEX : Source.AD_HOC;
+        return search(persistentIndexEnabled, workspaceRoot, Query.literal(query), cancellation, observer);
+    }
+
+    SearchResult search(boolean persistentIndexEnabled, Path workspaceRoot, Query query, WorkspaceIndexService.Cancellation cancellation,
+                        Observer observer) {
+        return run(persistentIndexEnabled, List.of(workspaceRoot), Objects.requireNonNull(query, "query"), cancellation, observer, false);
+    }
+
+    SearchResult search(boolean persistentIndexEnabled, List<Path> workspaceRoots, String query, WorkspaceIndexService.Cancellation cancellation,
+                        Observer observer) {
+        return search(persistentIndexEnabled, workspaceRoots, Query.literal(query), cancellation, observer);
+    }
+
+    SearchResult search(boolean persistentIndexEnabled, List<Path> workspaceRoots, Query query, WorkspaceIndexService.Cancellation cancellation,
+                        Observer observer) {
+        Objects.requireNonNull(query, "query");
+        List<Path> roots = workspaceRoots == null ? List.of() : workspaceRoots.stream().filter(Objects::nonNull).distinct().toList();
+        if (roots.isEmpty()) {
+            return new SearchResult(persistentIndexEnabled ? Source.PERSISTENT_INDEX : Source.AD_HOC, State.FAILED, List.of(), false, 0, 0, 0,
+                "no workspace folders");
+        }
+        return run(persistentIndexEnabled, roots, query, cancellation, observer, true);
+    }
+
+    private SearchResult run(boolean persistentIndexEnabled, List<Path> roots, Query query, WorkspaceIndexService.Cancellation cancellation,
+                             Observer observer, boolean multipleRoots) {
+        WorkspaceIndexService.Cancellation requested = cancellation == null ? WorkspaceIndexService.Cancellation.NONE : cancellation;
+        Progress progress = new Progress(persistentIndexEnabled ? Source.PERSISTENT_INDEX : Source.AD_HOC,
+            observer == null ? Observer.NO_OP : observer);
+        WorkspaceTextMatcher matcher = new WorkspaceTextMatcher(query);
+        // Stops indexing and reads that are still running once the result is settled.
+        AtomicBoolean settled = new AtomicBoolean();
+        WorkspaceIndexService.Cancellation halted = () -> settled.get() || requested.isCancelled();
+        ExecutorService pool = Executors.newFixedThreadPool(readers, task -> {
+            Thread thread = new Thread(task, "shed-search-reader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<Prepared>> prepared = new ArrayList<>();
+            for (Path root : roots) {
+                prepared.add(pool.submit(() -> prepare(persistentIndexEnabled, root, query, matcher, halted)));
+            }
+            for (int index = 0; index < roots.size(); index++) {
+                String prefix = multipleRoots ? roots.get(index) + ": " : "";
+                if (requested.isCancelled()) {
+                    return progress.result(State.CANCELLED, false, "search cancelled");
+                }
+                if (index > 0 && progress.matches.size() >= maxResults) {
+                    return progress.result(State.COMPLETE, true, "result limit reached");
+                }
+                Prepared root = await(prepared.get(index));
+                if (root == null) {
+                    return progress.result(State.CANCELLED, false, prefix + "search cancelled");
+                }
+                if (root.state() != null) {
+                    return progress.result(root.state(), false, prefix + root.message());
+                }
+                progress.indexedFiles += root.entries().size();
+                State state = read(pool, root, matcher, progress, halted, requested);
+                if (state == State.CANCELLED) {
+                    return progress.result(State.CANCELLED, false, prefix + "search cancelled");
+                }
+                if (progress.truncated) {
+                    return progress.result(State.COMPLETE, true, "result limit reached");
+                }
+            }
+            return progress.result(State.COMPLETE, false, progress.matches.isEmpty() ? "no matches" : "search complete");
+        } finally {
+            settled.set(true);
+            pool.shutdownNow();
+        }
+    }
+
+    // Indexes one root and, for a persistent byte-level search with a trigram index, narrows its files to candidates.
+    private Prepared prepare(boolean persistentIndexEnabled, Path workspaceRoot, Query query, WorkspaceTextMatcher matcher,
+                             WorkspaceIndexService.Cancellation cancellation) {
         WorkspaceIndexService.BuildResult indexed = persistentIndexEnabled
-            ? indexService.recover(true, workspaceRoot, effectiveCancellation, WorkspaceIndexService.Observer.NO_OP)
-            : indexService.scan(workspaceRoot, effectiveCancellation, WorkspaceIndexService.Observer.NO_OP);
+            ? indexService.recover(true, workspaceRoot, cancellation, WorkspaceIndexService.Observer.NO_OP)
+            : indexService.scan(workspaceRoot, cancellation, WorkspaceIndexService.Observer.NO_OP);
         if (indexed.status().state() == WorkspaceIndexService.State.CANCELLED) {
-            return new SearchResult(source, State.CANCELLED, List.of(), false, 0, 0, 0, indexed.status().message());
+            return new Prepared(null, List.of(), null, State.CANCELLED, indexed.status().message());
         }
         if (indexed.status().state() != WorkspaceIndexService.State.READY || indexed.index() == null) {
-            return new SearchResult(source, State.FAILED, List.of(), false, 0, 0, 0, indexed.status().message());
-        }
-
-        Path root = Path.of(indexed.index().root()).toAbsolutePath().normalize();
-        List<Match> matches = new ArrayList<>();
-        List<Match> batch = new ArrayList<>();
-        int filesRead = 0;
-        int unreadableFiles = 0;
-        boolean truncated = false;
-        for (WorkspaceIndexService.Entry entry : indexed.index().entries()) {
-            if (effectiveCancellation.isCancelled()) {
-                publish(batch, effectiveObserver);
-                return new SearchResult(source, State.CANCELLED, matches, false, filesRead, unreadableFiles, indexed.index().entries().size(),
-                    "search cancelled");
-            }
-            Path file = root.resolve(entry.relativePath()).normalize();
-            if (!file.startsWith(root) || !readableRegularFile(file)) {
-                unreadableFiles++;
-                continue;
-            }
-            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
-                filesRead++;
-                int lineNumber = 0;
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    lineNumber++;
-                    int offset = 0;
-                    while (offset < line.length()) {
-                        if (effectiveCancellation.isCancelled()) {
-                            publish(batch, effectiveObserver);
-                            return new SearchResult(source, State.CANCELLED, matches, false, filesRead, unreadableFiles,
-                                indexed.index().entries().size(), "search cancelled");
-                        }
-                        int matchOffset = line.indexOf(needle, offset);
-                        if (matchOffset < 0) {
-                            break;
-                        }
-                        if (matches.size() >= maxResults) {
-                            truncated = true;
-                            break;
-                        }
-                        Match match = new Match(file.toString(), lineNumber, matchOffset + 1, preview(line));
-                        matches.add(match);
-                        batch.add(match);
-                        if (batch.size() >= batchSize) {
-                            publish(batch, effectiveObserver);
-                        }
-                        offset = matchOffset + needle.length();
-                    }
-                    if (truncated) {
-                        break;
-                    }
+            return new Prepared(null, List.of(), null, State.FAILED, indexed.status().message());
+        }
+        BitSet candidates = null;
+        if (persistentIndexEnabled && trigramIndex != null && indexed.persistedPath() != null && matcher.bytewise()) {
+            try (WorkspaceTrigramIndex.Snapshot trigrams = trigramIndex.update(indexed.index(), indexed.persistedPath(), cancellation)) {
+                if (trigrams == null) {
+                    return new Prepared(null, List.of(), null, State.CANCELLED, "search cancelled");
                 }
+                candidates = trigrams.candidates(query.text());
             } catch (IOException | SecurityException error) {
-                unreadableFiles++;
-            }
-            if (truncated) {
-                break;
+                // The trigram index only narrows the search; without it every file is read.
+                candidates = null;
             }
         }
-        publish(batch, effectiveObserver);
-        String message = matches.isEmpty() ? "no matches" : truncated ? "result limit reached" : "search complete";
-        return new SearchResult(source, State.COMPLETE, matches, truncated, filesRead, unreadableFiles, indexed.index().entries().size(), message);
+        return new Prepared(Path.of(indexed.index().root()).toAbsolutePath().normalize(), indexed.index().entries(), candidates, null, null);
     }
 
-    SearchResult search(boolean persistentIndexEnabled, List<Path> workspaceRoots, String query, WorkspaceIndexService.Cancellation cancellation,
-                        Observer observer) {
-        String needle = requireQuery(query);
-        WorkspaceIndexService.Cancellation effectiveCancellation = cancellation == null ? WorkspaceIndexService.Cancellation.NONE : cancellation;
-        Observer effectiveObserver = observer == null ? Observer.NO_OP : observer;
-        List<Path> roots = workspaceRoots == null ? List.of() : workspaceRoots.stream().filter(Objects::nonNull).distinct().toList();
-        if (roots.isEmpty()) {
-            return new SearchResult(persistentIndexEnabled ? Source.PERSISTENT_INDEX : Source.AD_HOC, State.FAILED, List.of(), false, 0, 0, 0,
-                "no workspace folders");
-        }
-        List<Match> matches = new ArrayList<>();
-        int filesRead = 0;
-        int unreadableFiles = 0;
-        int indexedFiles = 0;
-        for (Path root : roots) {
-            if (effectiveCancellation.isCancelled()) {
-                return new SearchResult(persistentIndexEnabled ? Source.PERSISTENT_INDEX : Source.AD_HOC, State.CANCELLED, matches, false,
-                    filesRead, unreadableFiles, indexedFiles, "search cancelled");
+    // Reads a root's files on the pool, keeping a bounded window of reads ahead, and reports them in index order.
+    // Returns CANCELLED when the caller cancelled, and COMPLETE otherwise, with progress.truncated set at the limit.
+    private State read(ExecutorService pool, Prepared root, WorkspaceTextMatcher matcher, Progress progress,
+                       WorkspaceIndexService.Cancellation halted, WorkspaceIndexService.Cancellation requested) {
+        BitSet candidates = root.candidates();
+        List<WorkspaceIndexService.Entry> entries = root.entries();
+        // One match past the remaining budget shows whether the limit cut the results short.
+        int limit = maxResults - progress.matches.size() + 1;
+        ArrayDeque<Future<FileResult>> window = new ArrayDeque<>();
+        int next = candidates == null ? 0 : candidates.nextSetBit(0);
+        while (next >= 0 && next < entries.size() || !window.isEmpty()) {
+            while (next >= 0 && next < entries.size() && window.size() < readers * READ_AHEAD_PER_READER) {
+                WorkspaceIndexService.Entry entry = entries.get(next);
+                window.add(pool.submit(() -> readFile(root.root(), entry, matcher, limit, halted)));
+                next = candidates == null ? next + 1 : candidates.nextSetBit(next + 1);
             }
-            int remaining = maxResults - matches.size();
-            if (remaining <= 0) {
-                return new SearchResult(persistentIndexEnabled ? Source.PERSISTENT_INDEX : Source.AD_HOC, State.COMPLETE, matches, true,
-                    filesRead, unreadableFiles, indexedFiles, "result limit reached");
+            if (requested.isCancelled()) {
+                return State.CANCELLED;
             }
-            SearchResult result = new WorkspaceTextSearchService(indexService, remaining, batchSize)
-                .search(persistentIndexEnabled, root, needle, effectiveCancellation, effectiveObserver);
-            matches.addAll(result.matches());
-            filesRead += result.filesRead();
-            unreadableFiles += result.unreadableFiles();
-            indexedFiles += result.indexedFiles();
-            if (result.state() != State.COMPLETE) {
-                return new SearchResult(result.source(), result.state(), matches, false, filesRead, unreadableFiles, indexedFiles,
-                    root + ": " + result.message());
+            FileResult file = await(window.poll());
+            if (file == null) {
+                return State.CANCELLED;
+            }
+            if (file.readable()) {
+                progress.filesRead++;
+            } else {
+                progress.unreadableFiles++;
+            }
+            for (Match match : file.matches()) {
+                if (requested.isCancelled()) {
+                    return State.CANCELLED;
+                }
+                if (progress.matches.size() >= maxResults) {
+                    progress.truncated = true;
+                    return State.COMPLETE;
+                }
+                progress.add(match);
+            }
+        }
+        return State.COMPLETE;
+    }
+
+    private static FileResult readFile(Path root, WorkspaceIndexService.Entry entry, WorkspaceTextMatcher matcher, int limit,
+                                       WorkspaceIndexService.Cancellation cancellation) {
+        Path file = root.resolve(entry.relativePath()).normalize();
+        if (!file.startsWith(root) || !readableRegularFile(file)) {
+            return new FileResult(false, List.of());
+        }
+        try {
+            return new FileResult(true, matcher.search(file, limit, cancellation));
+        } catch (IOException | SecurityException error) {
+            return new FileResult(false, List.of());
+        }
+    }
+
+    // Waits for a pooled task; null when this thread is interrupted, which the search treats as cancellation.
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException error) {
+            if (error.getCause() instanceof RuntimeException failure) {
+                throw failure;
             }
-            if (result.truncated()) {
-                return new SearchResult(result.source(), State.COMPLETE, matches, true, filesRead, unreadableFiles, indexedFiles,
-                    "result limit reached");
+            if (error.getCause() instanceof Error failure) {
+                throw failure;
             }
+            throw new IllegalStateException(error.getCause());
         }
-        return new SearchResult(persistentIndexEnabled ? Source.PERSISTENT_INDEX : Source.AD_HOC, State.COMPLETE, matches, false,
-            filesRead, unreadableFiles, indexedFiles, matches.isEmpty() ? "no matches" : "search complete");
     }
 
     private static boolean readableRegularFile(Path file) {
@@ -159,15 +248,7 @@ final class WorkspaceTextSearchService {
         }
     }
 
-    private static void publish(List<Match> batch, Observer observer) {
-        if (batch.isEmpty()) {
-            return;
-        }
-        observer.onMatches(List.copyOf(batch));
-        batch.clear();
-    }
-
-    private static String preview(String line) {
+    static String preview(String line) {
         String normalized = line.strip();
         return normalized.length() <= 240 ? normalized : normalized.substring(0, 239) + "…";
     }
@@ -187,6 +268,50 @@ final class WorkspaceTextSearchService {
         return value;
     }
 
+    // Matches, Observer batches, and counters gathered so far, in reporting order.
+    private final class Progress {
+        private final Source source;
+        private final Observer observer;
+        private final List<Match> matches = new ArrayList<>();
+        private final List<Match> batch = new ArrayList<>();
+        private int filesRead;
+        private int unreadableFiles;
+        private int indexedFiles;
+        private boolean truncated;
+
+        private Progress(Source source, Observer observer) {
+            this.source = source;
+            this.observer = observer;
+        }
+
+        private void add(Match match) {
+            matches.add(match);
+            batch.add(match);
+            if (batch.size() >= batchSize) {
+                publish();
+            }
+        }
+
+        private void publish() {
+            if (batch.isEmpty()) {
+                return;
+            }
+            observer.onMatches(List.copyOf(batch));
+            batch.clear();
+        }
+
+        private SearchResult result(State state, boolean limited, String message) {
+            publish();
+            return new SearchResult(source, state, matches, limited, filesRead, unreadableFiles, indexedFiles, message);
+        }
+    }
+
+    private record Prepared(Path root, List<WorkspaceIndexService.Entry> entries, BitSet candidates, State state, String message) {
+    }
+
+    private record FileResult(boolean readable, List<Match> matches) {
+    }
+
     interface Observer {
         Observer NO_OP = matches -> { };
 
@@ -204,6 +329,24 @@ final class WorkspaceTextSearchService {
         FAILED
     }
 
+    // A single-line query. Literal text matches exactly, or ignoring case; a regular expression matches within one line.
+    record Query(String text, boolean regex, boolean ignoreCase) {
+        Query {
+            text = requireQuery(text);
+            if (regex) {
+                try {
+                    Pattern.compile(text);
+                } catch (PatternSyntaxException error) {
+                    throw new IllegalArgumentException("invalid regular expression: " + error.getDescription(), error);
+                }
+            }
+        }
+
+        static Query literal(String text) {
+            return new Query(text, false, false);
+        }
+    }
+
     record Match(String filePath, int line, int column, String preview) {
         Match {
             filePath = Objects.requireNonNull(filePath, "filePath");
@@ -0,0 +1,726 @@
+package shed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+// Trigram posting lists over the content of the files in a persisted workspace index, stored beside that index. Each
+// file is listed under every three-byte sequence it contains (ASCII letters folded to lower case, none spanning a line
+// break), so a literal query of three or more bytes can only match in files listed under all of its trigrams. An update
+// reads only the files whose size or modification time changed and merges their postings into the stored lists.
+final class WorkspaceTrigramIndex {
+    static final int VERSION = 1;
+    static final long DEFAULT_MAX_FILE_BYTES = 16L * 1024 * 1024;
+    static final long DEFAULT_SPILL_BYTES = 64L * 1024 * 1024;
+
+    private static final int MAGIC = 0x53544749;
+    private static final long RECENT_MILLIS = 2_000L;
+    private static final byte INDEXED = 0;
+    // Indexed, but modified so close to the read that an edit in the same clock tick would not show; read again next time.
+    private static final byte RECENT = 1;
+    // Too large or unreadable when indexed; always a candidate.
+    private static final byte UNINDEXED = 2;
+
+    private final long maxFileBytes;
+    private final long spillBytes;
+
+    WorkspaceTrigramIndex() {
+        this(DEFAULT_MAX_FILE_BYTES, DEFAULT_SPILL_BYTES);
+    }
+
+    // Files above maxFileBytes are not indexed; new postings go to a temporary run file whenever they pass spillBytes.
+    WorkspaceTrigramIndex(long maxFileBytes, long spillBytes) {
+        if (maxFileBytes <= 0 || spillBytes <= 0) {
+            throw new IllegalArgumentException("trigram index limits must be positive");
+        }
+        this.maxFileBytes = maxFileBytes;
+        this.spillBytes = spillBytes;
+    }
+
+    static Path indexPath(Path workspaceIndexPath) {
+        String name = Objects.requireNonNull(workspaceIndexPath, "workspaceIndexPath").getFileName().toString();
+        String stem = name.endsWith(".json") ? name.substring(0, name.length() - ".json".length()) : name;
+        return workspaceIndexPath.resolveSibling(stem.replace("workspace-index-", "workspace-trigrams-") + ".bin");
+    }
+
+    // Brings the trigram index beside workspaceIndexPath in line with index and opens it, or returns null when cancelled.
+    // A missing, malformed, or older stored index is rebuilt from scratch; an unchanged one is not rewritten.
+    Snapshot update(WorkspaceIndexService.WorkspaceIndex index, Path workspaceIndexPath, WorkspaceIndexService.Cancellation cancellation)
+        throws IOException {
+        Objects.requireNonNull(index, "index");
+        WorkspaceIndexService.Cancellation effectiveCancellation = cancellation == null ? WorkspaceIndexService.Cancellation.NONE : cancellation;
+        Path target = indexPath(workspaceIndexPath);
+        Snapshot previous;
+        try {
+            previous = Snapshot.open(target, index.root(), 0);
+        } catch (IOException error) {
+            previous = null;
+        }
+        Snapshot updated = null;
+        try {
+            updated = rebuild(index, target, previous, effectiveCancellation);
+            return updated;
+        } finally {
+            if (previous != null && previous != updated) {
+                previous.close();
+            }
+        }
+    }
+
+    private Snapshot rebuild(WorkspaceIndexService.WorkspaceIndex index, Path target, Snapshot previous,
+                             WorkspaceIndexService.Cancellation cancellation) throws IOException {
+        List<WorkspaceIndexService.Entry> entries = index.entries();
+        int[] previousToCurrent = new int[previous == null ? 0 : previous.documents.size()];
+        Arrays.fill(previousToCurrent, -1);
+        int[] currentToPrevious = new int[entries.size()];
+        Arrays.fill(currentToPrevious, -1);
+        boolean unchanged = previous != null && previous.documents.size() == entries.size();
+        if (previous != null) {
+            // Both lists follow the workspace index's order, so paths usually line up and the map is rarely needed.
+            Map<String, Integer> previousIds = null;
+            for (int id = 0; id < entries.size(); id++) {
+                String path = entries.get(id).relativePath();
+                Integer previousId;
+                if (id < previous.documents.size() && previous.documents.get(id).path().equals(path)) {
+                    previousId = id;
+                } else {
+                    if (previousIds == null) {
+                        previousIds = new HashMap<>();
+                        for (int known = 0; known < previous.documents.size(); known++) {
+                            previousIds.put(previous.documents.get(known).path(), known);
+                        }
+                    }
+                    previousId = previousIds.get(path);
+                }
+                if (previousId != null && previous.documents.get(previousId).current(entries.get(id))) {
+                    previousToCurrent[previousId] = id;
+                    currentToPrevious[id] = previousId;
+                }
+                unchanged &= currentToPrevious[id] == id;
+            }
+        }
+        if (unchanged) {
+            return previous;
+        }
+
+        Path root = Path.of(index.root());
+        List<Document> documents = new ArrayList<>(entries.size());
+        int filesIndexed = 0;
+        try (Builder builder = new Builder(target.getParent())) {
+            for (int id = 0; id < entries.size(); id++) {
+                WorkspaceIndexService.Entry entry = entries.get(id);
+                if (currentToPrevious[id] >= 0) {
+                    documents.add(previous.documents.get(currentToPrevious[id]));
+                    continue;
+                }
+                if (cancellation.isCancelled()) {
+                    return null;
+                }
+                documents.add(new Document(entry.relativePath(), entry.size(), entry.modifiedAtMillis(), builder.add(id, root, entry)));
+                filesIndexed++;
+            }
+            List<PostingSource> sources = new ArrayList<>(builder.runs());
+            if (previous != null) {
+                sources.add(previous.postings(previousToCurrent));
+            }
+            sources.add(builder.remaining());
+            if (!write(target, index.root(), documents, sources, cancellation)) {
+                return null;
+            }
+        }
+        return Snapshot.open(target, index.root(), filesIndexed);
+    }
+
+    private static boolean write(Path target, String root, List<Document> documents, List<PostingSource> sources,
+                                 WorkspaceIndexService.Cancellation cancellation) throws IOException {
+        Path temporary = Files.createTempFile(target.getParent(), ".shed-trigrams-", ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(root);
+                out.writeInt(documents.size());
+                for (Document document : documents) {
+                    out.writeUTF(document.path());
+                    out.writeLong(document.size());
+                    out.writeLong(document.modifiedAtMillis());
+                    out.writeByte(document.state());
+                }
+                // The header stays far below 2 GiB, so its int size is exact; postings are counted from here on.
+                long position = out.size();
+                int[] keys = new int[1024];
+                long[] offsets = new long[1024];
+                int[] lengths = new int[1024];
+                int trigrams = 0;
+                Postings ids = new Postings();
+                while (true) {
+                    int key = Integer.MAX_VALUE;
+                    for (PostingSource source : sources) {
+                        key = Math.min(key, source.key());
+                    }
+                    if (key == Integer.MAX_VALUE) {
+                        break;
+                    }
+                    if ((trigrams & 0xFFF) == 0 && cancellation.isCancelled()) {
+                        return false;
+                    }
+                    ids.size = 0;
+                    for (PostingSource source : sources) {
+                        if (source.key() == key) {
+                            source.drainInto(ids);
+                        }
+                    }
+                    if (ids.size == 0) {
+                        continue;
+                    }
+                    Arrays.sort(ids.values, 0, ids.size);
+                    if (trigrams == keys.length) {
+                        keys = Arrays.copyOf(keys, trigrams * 2);
+                        offsets = Arrays.copyOf(offsets, trigrams * 2);
+                        lengths = Arrays.copyOf(lengths, trigrams * 2);
+                    }
+                    int length = writeVarint(out, ids.size);
+                    int previousId = 0;
+                    for (int index = 0; index < ids.size; index++) {
+                        length += writeVarint(out, ids.values[index] - previousId);
+                        previousId = ids.values[index];
+                    }
+                    keys[trigrams] = key;
+                    offsets[trigrams] = position;
+                    lengths[trigrams] = length;
+                    trigrams++;
+                    position += length;
+                }
+                out.writeInt(trigrams);
+                for (int index = 0; index < trigrams; index++) {
+                    out.writeInt(keys[index]);
+                    out.writeLong(offsets[index]);
+                    out.writeInt(lengths[index]);
+                }
+                out.writeLong(position);
+            }
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            temporary = null;
+            return true;
+        } finally {
+            if (temporary != null) {
+                Files.deleteIfExists(temporary);
+            }
+        }
+    }
+
+    // Distinct folded trigrams of a query, or an empty array when it is shorter than three bytes.
+    static int[] trigrams(String query) {
+        byte[] bytes = query.getBytes(StandardCharsets.UTF_8);
+        int[] keys = new int[Math.max(0, bytes.length - 2)];
+        int count = 0;
+        int key = 0;
+        int run = 0;
+        for (byte value : bytes) {
+            int folded = fold(value);
+            if (folded == '\n' || folded == '\r') {
+                run = 0;
+                continue;
+            }
+            key = (key << 8 | folded) & 0xFFFFFF;
+            if (++run >= 3) {
+                keys[count++] = key;
+            }
+        }
+        return Arrays.stream(keys, 0, count).distinct().toArray();
+    }
+
+    private static int fold(byte value) {
+        int unsigned = value & 0xFF;
+        return unsigned >= 'A' && unsigned <= 'Z' ? unsigned + ('a' - 'A') : unsigned;
+    }
+
+    private static int[] emptyTable(int capacity) {
+        int[] keys = new int[capacity];
+        Arrays.fill(keys, -1);
+        return keys;
+    }
+
+    private static int writeVarint(DataOutputStream out, int value) throws IOException {
+        int length = 1;
+        while ((value & ~0x7F) != 0) {
+            out.writeByte(value & 0x7F | 0x80);
+            value >>>= 7;
+            length++;
+        }
+        out.writeByte(value);
+        return length;
+    }
+
+    private static int readVarint(InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int next = in.read();
+            if (next < 0) {
+                throw new EOFException("trigram postings are truncated");
+            }
+            value |= (next & 0x7F) << shift;
+            if ((next & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("trigram postings are malformed");
+    }
+
+    private static int readVarint(ByteBuffer buffer) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35 && buffer.hasRemaining(); shift += 7) {
+            int next = buffer.get();
+            value |= (next & 0x7F) << shift;
+            if ((next & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("trigram postings are malformed");
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("trigram index is truncated");
+            }
+        }
+        return buffer.flip();
+    }
+
+    // An opened trigram index whose documents line up with the entries of the workspace index it was updated from.
+    static final class Snapshot implements AutoCloseable {
+        private final FileChannel channel;
+        private final List<Document> documents;
+        private final int[] keys;
+        private final long[] offsets;
+        private final int[] lengths;
+        private final BitSet unindexed;
+        private final int filesIndexed;
+
+        private Snapshot(FileChannel channel, List<Document> documents, int[] keys, long[] offsets, int[] lengths, int filesIndexed) {
+            this.channel = channel;
+            this.documents = documents;
+            this.keys = keys;
+            this.offsets = offsets;
+            this.lengths = lengths;
+            this.filesIndexed = filesIndexed;
+            this.unindexed = new BitSet(documents.size());
+            for (int id = 0; id < documents.size(); id++) {
+                if (documents.get(id).state() == UNINDEXED) {
+                    unindexed.set(id);
+                }
+            }
+        }
+
+        // Returns null when the file is missing. The channel stays open, so a concurrent replacement cannot move
+        // postings out from under the directory read here.
+        private static Snapshot open(Path file, String root, int filesIndexed) throws IOException {
+            if (!Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS)) {
+                return null;
+            }
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+            try {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    throw new IOException("unsupported format");
+                }
+                if (!in.readUTF().equals(root)) {
+                    throw new IOException("index belongs to another root");
+                }
+                int count = in.readInt();
+                if (count < 0) {
+                    throw new IOException("negative document count");
+                }
+                List<Document> documents = new ArrayList<>(count);
+                for (int id = 0; id < count; id++) {
+                    documents.add(new Document(in.readUTF(), in.readLong(), in.readLong(), in.readByte()));
+                }
+                long size = channel.size();
+                long directoryOffset = readFully(channel, size - Long.BYTES, Long.BYTES).getLong();
+                if (directoryOffset < 0 || directoryOffset > size - Long.BYTES - Integer.BYTES) {
+                    throw new IOException("directory offset is out of range");
+                }
+                int trigrams = readFully(channel, directoryOffset, Integer.BYTES).getInt();
+                if (trigrams < 0 || (long) trigrams * 16 != size - directoryOffset - Long.BYTES - Integer.BYTES) {
+                    throw new IOException("directory size does not match");
+                }
+                ByteBuffer directory = readFully(channel, directoryOffset + Integer.BYTES, trigrams * 16);
+                int[] keys = new int[trigrams];
+                long[] offsets = new long[trigrams];
+                int[] lengths = new int[trigrams];
+                for (int index = 0; index < trigrams; index++) {
+                    keys[index] = directory.getInt();
+                    offsets[index] = directory.getLong();
+                    lengths[index] = directory.getInt();
+                    if (index > 0 && keys[index] <= keys[index - 1] || lengths[index] <= 0 || offsets[index] < 0
+                        || offsets[index] + lengths[index] > directoryOffset) {
+                        throw new IOException("directory entry " + index + " is invalid");
+                    }
+                }
+                return new Snapshot(channel, List.copyOf(documents), keys, offsets, lengths, filesIndexed);
+            } catch (IOException | RuntimeException error) {
+                channel.close();
+                throw new IOException("trigram index is invalid: " + error.getMessage(), error);
+            }
+        }
+
+        int documentCount() {
+            return documents.size();
+        }
+
+        // Files read by the update that produced this snapshot.
+        int filesIndexed() {
+            return filesIndexed;
+        }
+
+        int trigramCount() {
+            return keys.length;
+        }
+
+        // Document ids that may contain query, or null when the query is too short to narrow anything down. Files
+        // that could not be indexed are always included.
+        BitSet candidates(String query) throws IOException {
+            int[] wanted = trigrams(query);
+            if (wanted.length == 0) {
+                return null;
+            }
+            int[] slots = new int[wanted.length];
+            for (int index = 0; index < wanted.length; index++) {
+                slots[index] = Arrays.binarySearch(keys, wanted[index]);
+                if (slots[index] < 0) {
+                    return (BitSet) unindexed.clone();
+                }
+            }
+            // Shortest lists first, so the intersection shrinks as early as possible.
+            Integer[] order = new Integer[slots.length];
+            for (int index = 0; index < slots.length; index++) {
+                order[index] = slots[index];
+            }
+            Arrays.sort(order, (left, right) -> Integer.compare(lengths[left], lengths[right]));
+            BitSet result = null;
+            for (int slot : order) {
+                BitSet ids = read(slot);
+                if (result == null) {
+                    result = ids;
+                } else {
+                    result.and(ids);
+                }
+                if (result.isEmpty()) {
+                    break;
+                }
+            }
+            result.or(unindexed);
+            return result;
+        }
+
+        private BitSet read(int slot) throws IOException {
+            ByteBuffer buffer = readFully(channel, offsets[slot], lengths[slot]);
+            int count = readVarint(buffer);
+            BitSet ids = new BitSet(documents.size());
+            int id = 0;
+            for (int index = 0; index < count; index++) {
+                id += readVarint(buffer);
+                if (id < 0 || id >= documents.size()) {
+                    throw new IOException("trigram posting is out of range");
+                }
+                ids.set(id);
+            }
+            return ids;
+        }
+
+        // Streams the stored lists in key order with each id renumbered through previousToCurrent; -1 drops it.
+        private PostingSource postings(int[] previousToCurrent) throws IOException {
+            if (keys.length == 0) {
+                return PostingSource.EMPTY;
+            }
+            channel.position(offsets[0]);
+            InputStream in = new BufferedInputStream(Channels.newInputStream(channel), 1 << 16);
+            return new PostingSource() {
+                private int slot;
+
+                @Override
+                public int key() {
+                    return slot < keys.length ? keys[slot] : Integer.MAX_VALUE;
+                }
+
+                @Override
+                public void drainInto(Postings target) throws IOException {
+                    int count = readVarint(in);
+                    int id = 0;
+                    for (int index = 0; index < count; index++) {
+                        id += readVarint(in);
+                        if (id < 0 || id >= previousToCurrent.length) {
+                            throw new IOException("trigram posting is out of range");
+                        }
+                        if (previousToCurrent[id] >= 0) {
+                            target.add(previousToCurrent[id]);
+                        }
+                    }
+                    slot++;
+                }
+            };
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    record Document(String path, long size, long modifiedAtMillis, byte state) {
+        private boolean current(WorkspaceIndexService.Entry entry) {
+            return state != RECENT && size == entry.size() && modifiedAtMillis == entry.modifiedAtMillis();
+        }
+    }
+
+    // Trigram lists in ascending key order, each read once.
+    private interface PostingSource {
+        PostingSource EMPTY = new PostingSource() {
+            @Override
+            public int key() {
+                return Integer.MAX_VALUE;
+            }
+
+            @Override
+            public void drainInto(Postings target) {
+            }
+        };
+
+        // The current key, or Integer.MAX_VALUE once exhausted.
+        int key();
+
+        // Appends the current key's ids to target and moves to the next key.
+        void drainInto(Postings target) throws IOException;
+    }
+
+    private static final class Postings {
+        private int[] values = new int[4];
+        private int size;
+
+        private void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+
+    // Collects postings for newly read files, spilling sorted runs to temporary files beside the index when they grow
+    // past the budget; closing it deletes the runs.
+    private final class Builder implements Closeable {
+        private final Path directory;
+        private final long[] seen = new long[1 << 18];
+        // Open addressing from trigram to its postings; keys are 24-bit, so -1 marks a free slot.
+        private int[] tableKeys = emptyTable(1 << 12);
+        private Postings[] tableValues = new Postings[1 << 12];
+        private int tableSize;
+        private final List<Path> runFiles = new ArrayList<>();
+        private final List<DataInputStream> runStreams = new ArrayList<>();
+        private int[] touched = new int[4096];
+        private long buffered;
+
+        private Builder(Path directory) {
+            this.directory = directory;
+        }
+
+        private byte add(int id, Path root, WorkspaceIndexService.Entry entry) throws IOException {
+            if (entry.size() > maxFileBytes) {
+                return UNINDEXED;
+            }
+            Path file = root.resolve(entry.relativePath()).normalize();
+            long readAt = System.currentTimeMillis();
+            byte[] content;
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                if (!file.startsWith(root) || !attributes.isRegularFile() || attributes.size() > maxFileBytes) {
+                    return UNINDEXED;
+                }
+                content = Files.readAllBytes(file);
+            } catch (IOException | SecurityException error) {
+                return UNINDEXED;
+            }
+            int distinct = 0;
+            int key = 0;
+            int run = 0;
+            for (byte value : content) {
+                int folded = fold(value);
+                if (folded == '\n' || folded == '\r') {
+                    run = 0;
+                    continue;
+                }
+                key = (key << 8 | folded) & 0xFFFFFF;
+                if (++run >= 3 && (seen[key >>> 6] & 1L << key) == 0) {
+                    seen[key >>> 6] |= 1L << key;
+                    if (distinct == touched.length) {
+                        touched = Arrays.copyOf(touched, distinct * 2);
+                    }
+                    touched[distinct++] = key;
+                }
+            }
+            for (int index = 0; index < distinct; index++) {
+                int trigram = touched[index];
+                seen[trigram >>> 6] &= ~(1L << trigram);
+                postings(trigram).add(id);
+            }
+            buffered += (long) distinct * Integer.BYTES;
+            if (buffered >= spillBytes) {
+                spill();
+            }
+            return entry.modifiedAtMillis() >= readAt - RECENT_MILLIS ? RECENT : INDEXED;
+        }
+
+        private Postings postings(int key) {
+            int mask = tableKeys.length - 1;
+            int slot = key * 0x9E3779B1 >>> 7 & mask;
+            while (tableKeys[slot] != key) {
+                if (tableKeys[slot] < 0) {
+                    if (++tableSize * 2 > tableKeys.length) {
+                        grow();
+                        return postings(key);
+                    }
+                    tableKeys[slot] = key;
+                    tableValues[slot] = new Postings();
+                    break;
+                }
+                slot = slot + 1 & mask;
+            }
+            return tableValues[slot];
+        }
+
+        private void grow() {
+            int[] keys = tableKeys;
+            Postings[] values = tableValues;
+            tableKeys = emptyTable(keys.length * 2);
+            tableValues = new Postings[keys.length * 2];
+            int mask = tableKeys.length - 1;
+            for (int index = 0; index < keys.length; index++) {
+                if (keys[index] >= 0) {
+                    int slot = keys[index] * 0x9E3779B1 >>> 7 & mask;
+                    while (tableKeys[slot] >= 0) {
+                        slot = slot + 1 & mask;
+                    }
+                    tableKeys[slot] = keys[index];
+                    tableValues[slot] = values[index];
+                }
+            }
+        }
+
+        private Postings get(int key) {
+            int mask = tableKeys.length - 1;
+            int slot = key * 0x9E3779B1 >>> 7 & mask;
+            while (tableKeys[slot] != key) {
+                slot = slot + 1 & mask;
+            }
+            return tableValues[slot];
+        }
+
+        private void spill() throws IOException {
+            Path run = Files.createTempFile(directory, ".shed-trigrams-run-", ".tmp");
+            runFiles.add(run);
+            int[] keys = sortedKeys();
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), 1 << 16))) {
+                out.writeInt(keys.length);
+                for (int key : keys) {
+                    Postings ids = get(key);
+                    out.writeInt(key);
+                    out.writeInt(ids.size);
+                    for (int index = 0; index < ids.size; index++) {
+                        out.writeInt(ids.values[index]);
+                    }
+                }
+            }
+            tableKeys = emptyTable(1 << 12);
+            tableValues = new Postings[1 << 12];
+            tableSize = 0;
+            buffered = 0;
+        }
+
+        private int[] sortedKeys() {
+            int[] keys = Arrays.stream(tableKeys).filter(key -> key >= 0).toArray();
+            Arrays.sort(keys);
+            return keys;
+        }
+
+        private List<PostingSource> runs() throws IOException {
+            List<PostingSource> sources = new ArrayList<>();
+            for (Path run : runFiles) {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), 1 << 16));
+                runStreams.add(in);
+                int keys = in.readInt();
+                sources.add(new PostingSource() {
+                    private int remaining = keys;
+                    private int key = remaining > 0 ? in.readInt() : Integer.MAX_VALUE;
+
+                    @Override
+                    public int key() {
+                        return key;
+                    }
+
+                    @Override
+                    public void drainInto(Postings target) throws IOException {
+                        int count = in.readInt();
+                        for (int index = 0; index < count; index++) {
+                            target.add(in.readInt());
+                        }
+                        key = --remaining > 0 ? in.readInt() : Integer.MAX_VALUE;
+                    }
+                });
+            }
+            return sources;
+        }
+
+        private PostingSource remaining() {
+            int[] keys = sortedKeys();
+            return new PostingSource() {
+                private int slot;
+
+                @Override
+                public int key() {
+                    return slot < keys.length ? keys[slot] : Integer.MAX_VALUE;
+                }
+
+                @Override
+                public void drainInto(Postings target) {
+                    Postings ids = get(keys[slot++]);
+                    for (int index = 0; index < ids.size; index++) {
+                        target.add(ids.values[index]);
+                    }
+                }
+            };
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (DataInputStream in : runStreams) {
+                in.close();
+            }
+            for (Path run : runFiles) {
+                Files.deleteIfExists(run);
+            }
+        }
+    }
+}
@@ -70,6 +70,7 @@ public class ConfigManagerTest {
         assertEquals("Terminal", terminalRestore.category());
         assertEquals("Live: checked when saving or loading a session", terminalRestore.applyBehavior());
         assertFalse(config.getWorkspaceIndexEnabled());
+        assertFalse(config.getWorkspaceTrigramIndexEnabled());
         assertTrue(config.getGitAutoRefreshEnabled());
         assertEquals(1500, config.getGitAutoRefreshIntervalMs());
         assertFalse(config.getBackupPolicy().enabled());
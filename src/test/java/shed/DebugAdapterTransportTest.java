@@ -36,7 +36,7 @@ public class DebugAdapterTransportTest {
                 catch (Exception error) { throw new java.util.concurrent.CompletionException(error); }
             });
             await(() -> clientOutput.size() > 0);
-            Map<String, Object> outbound = DebugAdapterTransport.readMessage(new ByteArrayInputStream(clientOutput.toByteArray()));
+            Map<String, Object> outbound = new DebugAdapterTransport.MessageReader(new ByteArrayInputStream(clientOutput.toByteArray())).next();
             assertEquals("request", MiniJson.asString(outbound.get("type")));
             assertEquals("initialize", MiniJson.asString(outbound.get("command")));
             DebugAdapterTransport.writeMessage(adapterWriter, Map.of("seq", 1, "type", "response", "request_seq", 1, "success", true,
@@ -73,16 +73,16 @@ public class DebugAdapterTransportTest {
                 catch (Exception error) { throw new java.util.concurrent.CompletionException(error); }
             });
             await(() -> clientOutput.size() > 0);
-            DebugAdapterTransport.readMessage(new ByteArrayInputStream(clientOutput.toByteArray()));
+            new DebugAdapterTransport.MessageReader(new ByteArrayInputStream(clientOutput.toByteArray())).next();
             clientOutput.reset();
             DebugAdapterTransport.writeMessage(adapterWriter, Map.of("seq", 1, "type", "response", "request_seq", 1, "success", true,
                 "command", "initialize", "body", Map.of("supportsCancelRequest", true)));
             assertTrue(initialize.get(1, TimeUnit.SECONDS).success());
             assertThrows(TimeoutException.class, () -> transport.request("threads", Map.of(), Duration.ofMillis(80)));
             await(() -> clientOutput.size() > 0);
-            ByteArrayInputStream frames = new ByteArrayInputStream(clientOutput.toByteArray());
-            Map<String, Object> request = DebugAdapterTransport.readMessage(frames);
-            Map<String, Object> cancel = DebugAdapterTransport.readMessage(frames);
+            DebugAdapterTransport.MessageReader messages = new DebugAdapterTransport.MessageReader(new ByteArrayInputStream(clientOutput.toByteArray()));
+            Map<String, Object> request = messages.next();
+            Map<String, Object> cancel = messages.next();
             assertEquals("threads", MiniJson.asString(request.get("command")));
             assertEquals("cancel", MiniJson.asString(cancel.get("command")));
             assertEquals(2, MiniJson.asInt(MiniJson.asObject(cancel.get("arguments")).get("requestId")));
@@ -100,10 +100,10 @@ public class DebugAdapterTransportTest {
         DebugAdapterTransport transport = DebugAdapterTransport.forStreams(adapterOutput, clientOutput, null);
         try {
             assertThrows(TimeoutException.class, () -> transport.request("threads", Map.of(), Duration.ofMillis(80)));
-            ByteArrayInputStream frames = new ByteArrayInputStream(clientOutput.toByteArray());
-            Map<String, Object> request = DebugAdapterTransport.readMessage(frames);
+            DebugAdapterTransport.MessageReader messages = new DebugAdapterTransport.MessageReader(new ByteArrayInputStream(clientOutput.toByteArray()));
+            Map<String, Object> request = messages.next();
             assertEquals("threads", MiniJson.asString(request.get("command")));
-            assertNull(DebugAdapterTransport.readMessage(frames));
+            assertNull(messages.next());
         } finally {
             transport.close();
             adapterWriter.close();
@@ -141,7 +141,7 @@ public class DebugAdapterTransportTest {
         byte[] frame = new byte[header.length + body.length];
         System.arraycopy(header, 0, frame, 0, header.length);
         System.arraycopy(body, 0, frame, header.length, body.length);
-        assertThrows(java.io.IOException.class, () -> DebugAdapterTransport.readMessage(new ByteArrayInputStream(frame)));
+        assertThrows(java.io.IOException.class, () -> new DebugAdapterTransport.MessageReader(new ByteArrayInputStream(frame)).next());
     }
 
     @Test
@@ -166,7 +166,7 @@ public class DebugAdapterTransportTest {
         DebugAdapterTransport transport = DebugAdapterTransport.forStreams(adapterOutput, clientOutput, process, null);
         try {
             transport.close();
-            Map<String, Object> disconnect = DebugAdapterTransport.readMessage(new ByteArrayInputStream(clientOutput.toByteArray()));
+            Map<String, Object> disconnect = new DebugAdapterTransport.MessageReader(new ByteArrayInputStream(clientOutput.toByteArray())).next();
             assertEquals("disconnect", MiniJson.asString(disconnect.get("command")));
             assertTrue(process.destroyed);
             assertEquals(DebugAdapterTransport.State.CLOSED, transport.state());
@@ -0,0 +1,82 @@
+package shed;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import javax.swing.text.PlainDocument;
+import org.junit.jupiter.api.Test;
+
+public class DocumentTextTest {
+    @Test
+    void readsAcrossTheGapOfAnEditedDocument() throws Exception {
+        PlainDocument document = new PlainDocument();
+        String line = "word\tnext é 👩‍💻\n";
+        document.insertString(0, line.repeat(400), null);
+        document.insertString(3000, "inserted", null);
+        String expected = document.getText(0, document.getLength());
+
+        DocumentText text = new DocumentText(document);
+        StringBuilder forward = new StringBuilder();
+        for (int index = 0; index < text.length(); index++) forward.append(text.charAt(index));
+        char[] backward = new char[text.length()];
+        for (int index = text.length() - 1; index >= 0; index--) backward[index] = text.charAt(index);
+
+        assertEquals(expected, forward.toString());
+        assertEquals(expected, new String(backward));
+        assertEquals(expected.substring(2990, 3020), text.subSequence(2990, 3020));
+        assertEquals(expected.indexOf('\n', 3000), text.indexOf('\n', 3000));
+        assertEquals(expected.lastIndexOf('\n', 3000), text.lastIndexOf('\n', 3000));
+        assertEquals(-1, text.indexOf('\n', text.length()));
+    }
+
+    @Test
+    void motionsOnTheViewMatchMotionsOnACopy() throws Exception {
+        PlainDocument document = new PlainDocument();
+        document.insertString(0, "alpha beta_1 (gamma) 🇸🇬🇺🇸 étude\n  delta".repeat(50), null);
+        document.insertString(40, "x", null);
+        String copy = document.getText(0, document.getLength());
+        MotionService motions = new MotionService();
+
+        for (int caret = 0; caret < copy.length(); caret += 7) {
+            DocumentText text = new DocumentText(document);
+            assertEquals(motions.moveWordForward(copy, caret), motions.moveWordForward(text, caret));
+            assertEquals(motions.moveWordBackward(copy, caret), motions.moveWordBackward(text, caret));
+            assertEquals(motions.moveWordEnd(copy, caret), motions.moveWordEnd(text, caret));
+        }
+    }
+
+    @Test
+    void viewsOfOneRevisionShareGraphemeWindowsUntilAnEdit() throws Exception {
+        SnapshotDocument document = new SnapshotDocument();
+        document.insertString(0, "cafe 👩‍💻 flag 🇸🇬 end\n".repeat(40), null);
+        DocumentText first = new DocumentText(document);
+        DocumentText second = new DocumentText(document);
+        assertSame(first.revision(), second.revision());
+        int caret = first.length() - 1;
+        for (int step = 0; step < 20; step++) caret = GraphemeBoundary.previous(second, caret);
+
+        // A combining accent after the window's last "e" must not be answered from boundaries of the old revision.
+        int accent = "cafe 👩‍💻 flag 🇸🇬 end\n".repeat(39).length() + 4;
+        document.insertString(accent, "\u0301", null);
+        DocumentText edited = new DocumentText(document);
+        String copy = document.getText(0, document.getLength());
+
+        assertNotSame(first.revision(), edited.revision());
+        for (int offset = accent - 6; offset <= accent + 6; offset++) {
+            assertEquals(GraphemeBoundary.previous(copy, offset), GraphemeBoundary.previous(edited, offset));
+            assertEquals(GraphemeBoundary.next(copy, offset), GraphemeBoundary.next(edited, offset));
+        }
+    }
+
+    @Test
+    void rejectsIndexesOutsideTheDocument() throws Exception {
+        PlainDocument document = new PlainDocument();
+        document.insertString(0, "abc", null);
+        DocumentText text = new DocumentText(document);
+
+        assertThrows(IndexOutOfBoundsException.class, () -> text.charAt(3));
+        assertThrows(IndexOutOfBoundsException.class, () -> text.subSequence(2, 4));
+    }
+}
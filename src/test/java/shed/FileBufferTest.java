@@ -1,8 +1,10 @@
 package shed;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -47,6 +49,37 @@ public class FileBufferTest {
         assertThrows(IllegalStateException.class, buffer::getFullContent);
     }
 
+    @Test
+    void largeFileWindowEditsFoldIntoPieceTableAndSaveWithUndo() throws Exception {
+        Path file = tempDir.resolve("editable-large.txt");
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 50001; i++) {
+            builder.append("line ").append(i).append('\n');
+        }
+        String original = builder.toString();
+        Files.writeString(file, original, StandardCharsets.UTF_8);
+        FileBuffer buffer = new FileBuffer(file.toFile(), boundedPreviewPolicy());
+        assertFalse(buffer.isLargeFileEditable());
+
+        buffer.showLargeFileWindow(25_000L, 64);
+        assertTrue(buffer.isLargeFileEditable());
+        assertTrue(buffer.getContent().startsWith("line 24999\n"));
+        buffer.getDocument().insertString(0, "edited ", null);
+        buffer.showLargeFileWindow(1L, 64);
+
+        assertTrue(buffer.isModified());
+        assertTrue(buffer.getLargeFileStatus().contains("bounded edit"));
+        assertTrue(buffer.undoLargeFileEdit());
+        assertFalse(buffer.isModified());
+        assertTrue(buffer.redoLargeFileEdit());
+        buffer.save();
+        assertFalse(buffer.isModified());
+        assertFalse(buffer.undoLargeFileEdit());
+        assertEquals(original.replace("\nline 24999\n", "\nedited line 24999\n"), Files.readString(file, StandardCharsets.UTF_8));
+        assertEquals(50002, buffer.getLargeFileLineCount());
+        assertThrows(IllegalStateException.class, () -> buffer.setContent("replacement"));
+    }
+
     @Test
     void largeFileWithMalformedUtf8PreservesUnavailableStateWithoutFallback() throws Exception {
         Path file = tempDir.resolve("malformed-large.txt");
@@ -114,6 +147,60 @@ public class FileBufferTest {
         assertEquals(new VersionedTextSnapshot.Position(1, 1), change.get().after().positionAt(5));
     }
 
+    @Test
+    void documentEditsAndUndoPublishTheDocumentsOwnSnapshot() throws Exception {
+        FileBuffer buffer = new FileBuffer(tempDir.resolve("shared.txt").toString());
+        buffer.setContent("one\ntwo", false);
+        AtomicReference<FileBuffer.DocumentTextChange> change = new AtomicReference<>();
+        DocumentListener listener = new DocumentListener() {
+            @Override public void insertUpdate(DocumentEvent event) { change.set(buffer.applyDocumentChange(event)); }
+            @Override public void removeUpdate(DocumentEvent event) { change.set(buffer.applyDocumentChange(event)); }
+            @Override public void changedUpdate(DocumentEvent event) { change.set(buffer.applyDocumentChange(event)); }
+        };
+        buffer.getDocument().addDocumentListener(listener);
+
+        buffer.getDocument().remove(0, 4);
+        VersionedTextSnapshot removed = buffer.textSnapshot();
+        assertEquals("two", removed.text());
+        assertTrue(change.get().incremental());
+
+        buffer.getUndoManager().undo();
+        assertTrue(change.get().incremental());
+        assertSame(removed, change.get().before());
+        assertEquals("one\ntwo", buffer.textSnapshot().text());
+        assertEquals(2, buffer.getDocument().getDefaultRootElement().getElementCount());
+
+        buffer.getDocument().removeDocumentListener(listener);
+        buffer.getDocument().insertString(0, "missed ", null);
+        buffer.getDocument().addDocumentListener(listener);
+        buffer.getDocument().insertString(0, "seen ", null);
+        assertFalse(change.get().incremental());
+        assertEquals("seen missed one\ntwo", change.get().after().text());
+    }
+
+    @Test
+    void savesTheCapturedSnapshotAndStaysModifiedForEditsMadeDuringTheWrite() throws Exception {
+        Path file = tempDir.resolve("crlf.txt");
+        Files.write(file, "one\r\ntwo\r\n".getBytes(StandardCharsets.UTF_8));
+        FileBuffer buffer = new FileBuffer(file.toFile());
+        buffer.getDocument().insertString(4, "middle\n", null);
+
+        FileBuffer.SaveRequest request = buffer.prepareSave(null);
+        buffer.getDocument().insertString(0, "later ", null);
+        long bytes = FileBuffer.write(request);
+        buffer.completeSave(request, bytes);
+
+        assertArrayEquals("one\r\nmiddle\r\ntwo\r\n".getBytes(StandardCharsets.UTF_8), Files.readAllBytes(file));
+        assertEquals(Files.size(file), bytes);
+        assertEquals(Files.size(file), buffer.getFileSizeBytes());
+        assertEquals("one\nmiddle\ntwo\n", buffer.getSavedContent());
+        assertTrue(buffer.isModified());
+
+        buffer.save();
+        assertFalse(buffer.isModified());
+        assertEquals("later one\r\nmiddle\r\ntwo\r\n", Files.readString(file, StandardCharsets.UTF_8));
+    }
+
     private static ConfigManager boundedPreviewPolicy() {
         ConfigManager config = new ConfigManager();
         config.set("large.file.threshold.mb", "1");
@@ -121,6 +208,32 @@ public class FileBufferTest {
         return config;
     }
 
+    @Test
+    void undoingBackToTheSavedTextMakesTheBufferCleanAgain() throws Exception {
+        Path file = tempDir.resolve("undo-clean.txt");
+        Files.writeString(file, "alpha\nbeta\n".repeat(2000), StandardCharsets.UTF_8);
+        FileBuffer buffer = new FileBuffer(file.toFile());
+        assertSame(buffer.savedText(), buffer.textSnapshot());
+
+        buffer.getDocument().insertString(6, "X", null);
+        assertTrue(buffer.isModified());
+        buffer.getUndoManager().undo();
+        assertFalse(buffer.isModified());
+        buffer.getUndoManager().redo();
+        assertTrue(buffer.isModified());
+        buffer.getDocument().remove(6, 1);
+        assertFalse(buffer.isModified());
+
+        buffer.setModified(true);
+        assertTrue(buffer.isModified());
+        buffer.getDocument().insertString(0, "saved later ", null);
+        buffer.save();
+        assertFalse(buffer.isModified());
+        assertSame(buffer.savedText(), ((SnapshotDocument) buffer.getDocument()).content().snapshot());
+        buffer.getUndoManager().undo();
+        assertTrue(buffer.isModified());
+    }
+
     @Test
     void failedScratchSaveRemainsDirty() {
         FileBuffer scratch = FileBuffer.createScratch("[draft]", "draft\n");
@@ -146,6 +259,26 @@ public class FileBufferTest {
         assertEquals("recovered\n", Files.readString(file, StandardCharsets.UTF_8));
     }
 
+    @Test
+    void recoveryIntoAnUnchangedFileStaysDirtyWhileAPlainReplacementFollowsTheText() throws Exception {
+        Path file = tempDir.resolve("recovered-same.txt");
+        Files.writeString(file, "saved\n", StandardCharsets.UTF_8);
+        FileBuffer recovered = new FileBuffer(file.toFile());
+
+        recovered.setContent("saved\n", true);
+        assertTrue(recovered.isModified());
+        recovered.getDocument().insertString(0, "x", null);
+        recovered.getDocument().remove(0, 1);
+        assertTrue(recovered.isModified());
+        recovered.save();
+        assertFalse(recovered.isModified());
+
+        recovered.setContent("other\n");
+        assertTrue(recovered.isModified());
+        recovered.setContent("saved\n");
+        assertFalse(recovered.isModified());
+    }
+
     @Test
     void externalFileStatesAreDeterministicAndPreserveBufferContent() throws Exception {
         Path file = tempDir.resolve("external.txt");
@@ -0,0 +1,155 @@
+package shed;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class GitIgnoreRulesTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void matchesGitCheckIgnoreAcrossACorpusOfPatterns() throws Exception {
+        Path home = Files.createDirectory(tempDir.resolve("home"));
+        Path repository = Files.createDirectory(tempDir.resolve("repository"));
+        git(home, repository, "init", "--quiet");
+        write(home.resolve(".gitconfig"), "[user]\n\tname = test\n[core]\n\texcludesFile = ~/global-ignore ; trailing comment\n");
+        write(home.resolve("global-ignore"), "*.global\n!kept.global\n");
+        write(repository.resolve(".git/info/exclude"), "*.exclude\n/output/\n");
+        write(repository.resolve(".gitignore"), String.join("\n",
+            "# a comment", "", "*.log", "!important.log", "/root-only.txt", "build/", "doc/**/*.pdf", "**/cache", "logs/**",
+            "a/**/z.txt", "\\#hash.txt", "\\!bang.txt", "trailing.txt   ", "escaped\\ ", "[abc]?.dat", "[!x-z]*.bin",
+            "[[:digit:]]*.num", "*.o", "!/src/*.o", "nested/deep/", "foo/bar", "ab**cd.txt", "*.global", "!keep-dir/",
+            "keep-dir/*.txt", "!keep-dir/yes.txt") + "\n");
+        write(repository.resolve("src/.gitignore"), "!*.log\n*.tmp\n/local.txt\ngen/\n");
+        write(repository.resolve("src/gen/.gitignore"), "!kept.tmp\n");
+        write(repository.resolve("nested/.gitignore"), "*.txt\n!/deep/\n");
+        write(repository.resolve("allow/.gitignore"), "**\n!*/\n!*.c\n!Makefile\n");
+        write(repository.resolve("crlf/.gitignore"), "*.tmp\r\nout/\r\n!keep.tmp\r\nspaced.txt  \r\nlast.txt\r");
+        write(repository.resolve("reversed/.gitignore"), "[z-a]\n[!z-a].x\nab[z-a]c\n[z-ab].y\n*.log\n");
+        for (String path : List.of("app.log", "app.log.old", "important.log", "src/app.log", "src/sub/app.log", "root-only.txt", "src/root-only.txt",
+            "build/out.class", "src/build/out.class", "build.txt", "doc/a.pdf", "doc/x/y/b.pdf", "docs/c.pdf", "cache/data.bin",
+            "src/cache/data", "src/x/cache", "logs/a/b.txt", "logs.txt", "a/z.txt", "a/b/c/z.txt", "b/a/z.txt", "#hash.txt",
+            "!bang.txt", "trailing.txt", "escaped ", "escaped", "a1.dat", "d1.dat", "ab.dat", "a.bin", "x.bin", "yy.bin", "1.num",
+            "n1.num", "main.o", "src/main.o", "src/lib/main.o", "nested/deep/file", "nested/deeper/file.txt", "nested/file.txt",
+            "foo/bar/baz.c", "x/foo/bar", "Makefile", "src/Makefile", "README", "src/README", "abcd.txt", "abXcd.txt",
+            "ab/cd.txt", "src/local.txt", "src/sub/local.txt", "src/a.tmp", "src/gen/kept.tmp", "src/gen/other.c", "notes.exclude",
+            "output/result.txt", "src/output/result.txt", "file.global", "kept.global", "keep-dir/no.txt", "keep-dir/yes.txt",
+            "keep-dir/other.c", "space dir/file name.c", "allow/a.c", "allow/b.txt", "allow/sub/Makefile", "allow/sub/x.h",
+            "crlf/a.tmp", "crlf/keep.tmp", "crlf/out/x.c", "crlf/spaced.txt", "crlf/last.txt", "crlf/other.c",
+            "reversed/z", "reversed/a", "reversed/-", "reversed/q.x", "reversed/qq.x", "reversed/abc", "reversed/abzc", "reversed/b.y",
+            "reversed/a.y", "reversed/r.log")) {
+            write(repository.resolve(path), path);
+        }
+        GitIgnoreRules rules = new GitIgnoreRules(home, home.resolve(".config"));
+
+        assertMatchesGit(rules, home, repository);
+        assertMatchesGit(rules, home, repository.resolve("src"));
+        assertMatchesGit(rules, home, repository.resolve("nested"));
+        assertMatchesGit(rules, home, repository.resolve("crlf"));
+        assertMatchesGit(rules, home, repository.resolve("reversed"));
+    }
+
+    @Test
+    void walksOnlyUsedRulesAndPrunesIgnoredDirectories() throws Exception {
+        Path home = Files.createDirectory(tempDir.resolve("home"));
+        Path root = Files.createDirectory(tempDir.resolve("workspace"));
+        git(home, root, "init", "--quiet");
+        write(root.resolve(".gitignore"), "node_modules/\n*.class\n");
+        write(root.resolve("node_modules/pkg/index.js"), "x");
+        write(root.resolve("node_modules/.gitignore"), "!*.class\n");
+        write(root.resolve("src/Main.class"), "x");
+        write(root.resolve("src/Main.java"), "x");
+        WorkspaceIndexService service = new WorkspaceIndexService(tempDir.resolve("index-store"), new GitIgnoreRules(home, home.resolve(".config")));
+
+        WorkspaceIndexService.BuildResult result = service.build(true, root, WorkspaceIndexService.Observer.NO_OP);
+
+        assertEquals(List.of(".gitignore", "src/Main.java"), result.index().entries().stream().map(WorkspaceIndexService.Entry::relativePath).toList());
+        assertEquals(List.of("src/Main.class"), result.index().ignored());
+        assertEquals(List.of("node_modules"), result.index().ignoredDirectories());
+        assertEquals(3, result.status().visited());
+        assertEquals(2, result.status().excludedDirectories());
+        assertTrue(new GitIgnoreRules(home, home.resolve(".config")).isIgnored(root, Path.of("node_modules/pkg/index.js")));
+        assertFalse(new GitIgnoreRules(home, home.resolve(".config")).isIgnored(root, Path.of("src")));
+    }
+
+    // Lists every file and directory below root and compares the in-process result with Git's for each of them.
+    private static void assertMatchesGit(GitIgnoreRules rules, Path home, Path root) throws Exception {
+        List<String> paths = new ArrayList<>();
+        try (Stream<Path> walk = Files.walk(root)) {
+            walk.filter(path -> !path.equals(root))
+                .map(path -> root.relativize(path).toString())
+                .filter(path -> !path.equals(".git") && !path.startsWith(".git/"))
+                .forEach(paths::add);
+        }
+        TreeSet<String> expected = new TreeSet<>(checkIgnore(home, root, paths));
+        TreeSet<String> actual = new TreeSet<>();
+        for (String path : paths) {
+            if (rules.isIgnored(root, Path.of(path))) {
+                actual.add(path);
+            }
+        }
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, actual, root.toString());
+    }
+
+    private static List<String> checkIgnore(Path home, Path root, List<String> paths) throws Exception {
+        Process process = gitProcess(home, root, "check-ignore", "--no-index", "--stdin", "-z");
+        try (OutputStream input = process.getOutputStream()) {
+            for (String path : paths) {
+                input.write(path.getBytes(StandardCharsets.UTF_8));
+                input.write(0);
+            }
+        }
+        byte[] output = process.getInputStream().readAllBytes();
+        int exitCode = process.waitFor();
+        if (exitCode > 1) {
+            throw new IOException("git check-ignore failed: " + new String(output, StandardCharsets.UTF_8));
+        }
+        List<String> ignored = new ArrayList<>();
+        for (String path : new String(output, StandardCharsets.UTF_8).split("\u0000")) {
+            if (!path.isEmpty()) {
+                ignored.add(path);
+            }
+        }
+        return ignored;
+    }
+
+    private static void git(Path home, Path directory, String... arguments) throws Exception {
+        Process process = gitProcess(home, directory, arguments);
+        byte[] output = process.getInputStream().readAllBytes();
+        if (process.waitFor() != 0) {
+            throw new IOException("git failed: " + new String(output, StandardCharsets.UTF_8));
+        }
+    }
+
+    // Runs Git against the test's own home directory so the user's global ignore rules stay out of the comparison.
+    private static Process gitProcess(Path home, Path directory, String... arguments) throws IOException {
+        List<String> command = new ArrayList<>(List.of("git", "-C", directory.toString()));
+        command.addAll(List.of(arguments));
+        ProcessBuilder builder = new ProcessBuilder(command).redirectErrorStream(true);
+        Map<String, String> environment = builder.environment();
+        environment.put("HOME", home.toString());
+        environment.put("XDG_CONFIG_HOME", home.resolve(".config").toString());
+        environment.put("GIT_CONFIG_NOSYSTEM", "1");
+        return builder.start();
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+    }
+}
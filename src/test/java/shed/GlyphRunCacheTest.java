@@ -0,0 +1,78 @@
+package shed;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.font.FontRenderContext;
+import org.junit.jupiter.api.Test;
+
+public class GlyphRunCacheTest {
+    private static final Font FONT = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+    private static final FontRenderContext CONTEXT = new FontRenderContext(null, false, false);
+
+    @Test
+    void evictsTheLeastRecentlyUsedEntry() {
+        GlyphRunCache cache = new GlyphRunCache(2);
+        cache.put(key("one", Color.BLACK), entry());
+        cache.put(key("two", Color.BLACK), entry());
+        assertNotNull(cache.get(key("one", Color.BLACK)));
+
+        cache.put(key("six", Color.BLACK), entry());
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get(key("one", Color.BLACK)));
+        assertNull(cache.get(key("two", Color.BLACK)));
+        assertNotNull(cache.get(key("six", Color.BLACK)));
+    }
+
+    @Test
+    void countsHitsAndMissesUntilReset() {
+        GlyphRunCache cache = new GlyphRunCache(4);
+        cache.put(key("text", Color.BLACK), entry());
+
+        cache.get(key("text", Color.BLACK));
+        cache.get(key("text", Color.RED));
+        cache.get(key("next", Color.BLACK));
+
+        assertEquals(1, cache.hits());
+        assertEquals(2, cache.misses());
+        cache.resetCounts();
+        assertEquals(0, cache.hits());
+        assertEquals(0, cache.misses());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void comparesCharactersRatherThanHashesAndRetainsThemFromAReusedBuffer() {
+        GlyphRunCache cache = new GlyphRunCache(4);
+        char[] buffer = "xxAayy".toCharArray();
+        GlyphRunCache.Key lookup = new GlyphRunCache.Key(buffer, 2, 2, new int[] {2}, new Color[] {Color.BLACK}, FONT, CONTEXT, 0f);
+        cache.put(lookup.retain(), entry());
+        buffer[2] = 'Z';
+
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        assertNull(cache.get(key("BB", Color.BLACK)));
+        assertNotNull(cache.get(key("Aa", Color.BLACK)));
+        assertNull(cache.get(new GlyphRunCache.Key("Aa".toCharArray(), 0, 2, new int[] {1, 2}, new Color[] {Color.BLACK, Color.BLACK},
+            FONT, CONTEXT, 0f)));
+    }
+
+    @Test
+    void rejectsEmptyCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new GlyphRunCache(0));
+    }
+
+    private static GlyphRunCache.Key key(String text, Color color) {
+        return new GlyphRunCache.Key(text.toCharArray(), 0, text.length(), new int[] {text.length()}, new Color[] {color}, FONT, CONTEXT, 0f);
+    }
+
+    private static GlyphRunCache.Entry entry() {
+        return new GlyphRunCache.Entry(new GlyphRunCache.Run[] {
+            new GlyphRunCache.Run(FONT.createGlyphVector(CONTEXT, "text"), Color.BLACK, 0f)
+        }, 28f);
+    }
+}
@@ -1,5 +1,6 @@
 package shed;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -32,7 +33,7 @@ class GrammarHighlightServiceTest {
         service.highlight(buffer, buffer.getContent(), FileType.JAVA);
 
         String updated = "/* open */\nclass Demo {}";
-        List<GrammarHighlightService.Token> tokens = service.highlight(buffer, updated, FileType.JAVA);
+        List<GrammarHighlightService.Token> tokens = GrammarHighlightService.unpack(service.highlight(buffer, updated, FileType.JAVA));
 
         assertTrue(has(tokens, updated, "class", GrammarHighlightService.Scope.KEYWORD));
     }
@@ -52,14 +53,77 @@ class GrammarHighlightServiceTest {
         int start = text.indexOf("still comment");
         int end = start + "still comment".length();
 
-        List<GrammarHighlightService.Token> tokens = new GrammarHighlightService().highlightViewport(text, FileType.JAVA, start, end);
+        List<GrammarHighlightService.Token> tokens = GrammarHighlightService.unpack(new GrammarHighlightService().highlightViewport(text, FileType.JAVA, start, end));
 
         assertTrue(has(tokens, text, "still comment", GrammarHighlightService.Scope.COMMENT));
     }
 
+    @Test
+    void viewportCheckpointsMatchAFullPassAndSurviveEditsBelowThem() throws Exception {
+        StringBuilder builder = new StringBuilder();
+        for (int line = 0; line < 2000; line++) builder.append("int value").append(line).append(" = ").append(line).append(";\n");
+        String text = builder.toString();
+        FileBuffer buffer = buffer("Viewport.java", text);
+        GrammarHighlightService service = new GrammarHighlightService();
+        VersionedTextSnapshot before = VersionedTextSnapshot.of(text);
+        int start = text.indexOf("int value1900 ");
+        int end = text.indexOf("int value1950 ");
+
+        GrammarHighlightService.ViewportCheckpoints checkpoints = service.viewportCheckpoints(buffer, FileType.JAVA, before);
+        List<GrammarHighlightService.Token> resumed = GrammarHighlightService.unpack(service.highlightViewport(before, FileType.JAVA, start, end, checkpoints));
+        assertEquals(GrammarHighlightService.unpack(service.highlightViewport(text, FileType.JAVA, start, end)), resumed);
+        assertEquals(1 + 1900 / GrammarHighlightService.VIEWPORT_CHECKPOINT_LINES, checkpoints.size());
+
+        int editOffset = text.indexOf("int value600 ");
+        VersionedTextSnapshot after = before.replace(editOffset, 0, "/*");
+        service.recordEdit(buffer, new FileBuffer.DocumentTextChange(before, after, editOffset, 0, "/*", true));
+        assertEquals(1 + 600 / GrammarHighlightService.VIEWPORT_CHECKPOINT_LINES, checkpoints.size());
+
+        String edited = after.text();
+        List<GrammarHighlightService.Token> commented = GrammarHighlightService.unpack(service.highlightViewport(after, FileType.JAVA, start + 2,
+            end + 2, service.viewportCheckpoints(buffer, FileType.JAVA, after)));
+        assertEquals(GrammarHighlightService.unpack(service.highlightViewport(edited, FileType.JAVA, start + 2, end + 2)), commented);
+        assertEquals(GrammarHighlightService.Scope.COMMENT, commented.get(0).scope());
+
+        // A job still holding the old revision neither reuses nor extends checkpoints for the new one.
+        int size = checkpoints.size();
+        service.highlightViewport(before, FileType.JAVA, start, end, checkpoints);
+        assertEquals(size, checkpoints.size());
+    }
+
+    @Test
+    void replaysRecordedEditsUntilLexicalStateConverges() throws Exception {
+        StringBuilder builder = new StringBuilder();
+        for (int line = 0; line < 500; line++) builder.append("int value").append(line).append(" = ").append(line).append(";\n");
+        FileBuffer buffer = buffer("Cache.java", builder.toString());
+        GrammarHighlightService service = new GrammarHighlightService();
+        VersionedTextSnapshot text = VersionedTextSnapshot.of(builder.toString());
+        service.highlight(buffer, text, FileType.JAVA);
+
+        int open = builder.indexOf("int value100 ");
+        int close = builder.indexOf("int value300 ");
+        text = edit(service, buffer, text, open, 0, "/* ");
+        text = edit(service, buffer, text, close + 3, 0, "*/\nclass Extra {}\n");
+        assertEquals(GrammarHighlightService.unpack(service.highlightSnapshot(text.text(), FileType.JAVA)),
+            GrammarHighlightService.unpack(service.highlight(buffer, text, FileType.JAVA)));
+
+        text = edit(service, buffer, text, open, 3, "");
+        text = edit(service, buffer, text, text.lineStartOffset(40), text.lineStartOffset(42) - text.lineStartOffset(40), "");
+        List<GrammarHighlightService.Token> tokens = GrammarHighlightService.unpack(service.highlight(buffer, text, FileType.JAVA));
+        assertEquals(GrammarHighlightService.unpack(service.highlightSnapshot(text.text(), FileType.JAVA)), tokens);
+        assertTrue(has(tokens, text.text(), "class", GrammarHighlightService.Scope.KEYWORD));
+    }
+
+    private VersionedTextSnapshot edit(GrammarHighlightService service, FileBuffer buffer, VersionedTextSnapshot before,
+                                       int offset, int removed, String inserted) {
+        VersionedTextSnapshot after = before.replace(offset, removed, inserted);
+        service.recordEdit(buffer, new FileBuffer.DocumentTextChange(before, after, offset, removed, inserted, true));
+        return after;
+    }
+
     private List<GrammarHighlightService.Token> highlight(String name, String text) throws Exception {
         FileBuffer buffer = buffer(name, text);
-        return new GrammarHighlightService().highlight(buffer, text, buffer.getFileType());
+        return GrammarHighlightService.unpack(new GrammarHighlightService().highlight(buffer, text, buffer.getFileType()));
     }
 
     private FileBuffer buffer(String name, String text) throws Exception {
@@ -4,6 +4,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.Random;
 import org.junit.jupiter.api.Test;
 
 public class GraphemeBoundaryTest {
@@ -46,4 +47,49 @@ public class GraphemeBoundaryTest {
         assertEquals(0, GraphemeBoundary.floor(text, 1));
         assertEquals(2, GraphemeBoundary.ceiling(text, 1));
     }
+
+    @Test
+    void anchoredQueriesMatchAWalkFromTheStart() {
+        String[] pieces = {"a", " ", "\r\n", "\n", "e\u0301", "\u0301", "\u200D", "👩", "🏽", "💻", "🇸", "🇬", "\u1100", "\u1161",
+            "\u11A8", "\u0600", "\uD83D", "\t", "©", "\uFE0F", "é"};
+        Random random = new Random(11);
+        StringBuilder builder = new StringBuilder();
+        for (int piece = 0; piece < 4000; piece++) builder.append(pieces[random.nextInt(pieces.length)]);
+        String walked = builder.toString();
+        boolean[] boundaries = new boolean[walked.length() + 1];
+        for (int offset = 0; offset < walked.length(); offset = GraphemeBoundary.next(walked, offset)) boundaries[offset] = true;
+        boundaries[walked.length()] = true;
+
+        // A distinct instance, so no query reuses the window built by the walk above.
+        String text = new String(walked.toCharArray());
+        for (int query = 0; query < 3000; query++) {
+            int offset = random.nextInt(text.length() + 1);
+            int floor = offset;
+            while (!boundaries[floor]) floor--;
+            int ceiling = offset;
+            while (!boundaries[ceiling]) ceiling++;
+            int previous = offset == 0 ? 0 : offset - 1;
+            while (previous > 0 && !boundaries[previous]) previous--;
+            int next = ceiling;
+            if (ceiling == offset && offset < text.length()) {
+                next++;
+                while (!boundaries[next]) next++;
+            }
+
+            assertEquals(boundaries[offset], GraphemeBoundary.isBoundary(text, offset), "offset " + offset);
+            assertEquals(floor, GraphemeBoundary.floor(text, offset), "offset " + offset);
+            assertEquals(ceiling, GraphemeBoundary.ceiling(text, offset), "offset " + offset);
+            assertEquals(previous, GraphemeBoundary.previous(text, offset), "offset " + offset);
+            assertEquals(next, GraphemeBoundary.next(text, offset), "offset " + offset);
+        }
+    }
+
+    @Test
+    void anchorsAtTheNearestContextFreeBreak() {
+        String text = "abc\n👩\u200D💻\u0301x";
+
+        assertEquals(2, GraphemeBoundary.anchor(text, 2));
+        assertEquals(4, GraphemeBoundary.anchor(text, 8));
+        assertEquals(text.length(), GraphemeBoundary.anchor(text, text.length()));
+    }
 }
@@ -0,0 +1,34 @@
+package shed;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+public class GraphemeMotionBenchmarkTest {
+    @Test
+    void reportsMotionCostsAtTheStartMiddleAndEnd() {
+        String fixture = "  int value = 1; // é 👩‍💻\n".repeat(2000);
+
+        GraphemeMotionBenchmark.Report report = GraphemeMotionBenchmark.measure(fixture, 1);
+
+        assertEquals(3, report.sites().size());
+        assertEquals(fixture.length() - 1, report.sites().get(2).offset());
+        assertTrue(report.format().contains("start.wordBackward.us="));
+        assertTrue(report.format().contains("end.isolatedFloor.us="));
+        assertTrue(report.format().contains("end.documentWordBackward.us="));
+    }
+
+    @Test
+    void rejectsNonPositiveSampleCounts() {
+        ByteArrayOutputStream error = new ByteArrayOutputStream();
+        int status = GraphemeMotionBenchmark.run(new String[] {"--samples=0"}, System.out,
+            new PrintStream(error, true, StandardCharsets.UTF_8));
+
+        assertEquals(2, status);
+        assertTrue(error.toString(StandardCharsets.UTF_8).contains("Usage:"));
+    }
+}
@@ -0,0 +1,174 @@
+package shed;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+public class JsonCodecTest {
+    @Test
+    void readerBuildsTheSameTreeAsMiniJson() throws IOException {
+        String json = " {\"a\":[1,-2,3.5,1e3,-0,9223372036854775807,true,false,null],"
+            + "\"s\":\"tab\\tquote\\\"slash\\/u\\u00e9 \u00e9 \uD83D\uDE00 \\ud83d\\ude00\",\"o\":{\"\":{},\"e\":[]}} ";
+        assertEquals(MiniJson.parse(json), parse(json));
+        assertEquals(1.2345678901234567e19, parse("12345678901234567890"));
+    }
+
+    @Test
+    void readerWalksFieldsAndKeepsRawValues() throws IOException {
+        byte[] bytes = "{\"skip\":{\"x\":[1,{\"y\":\"\\\"\"}]},\"na\\u006de\":\"v\",\"item\":{\"k\":1} }".getBytes(StandardCharsets.UTF_8);
+        JsonReader json = new JsonReader(bytes, 0, bytes.length);
+        json.beginObject();
+        assertTrue(json.nextField());
+        assertTrue(json.fieldIs("skip"));
+        json.skipValue();
+        assertTrue(json.nextField());
+        assertTrue(json.fieldIs("name"));
+        assertEquals(null, json.optionalInt());
+        assertTrue(json.nextField());
+        int start = json.valueStart();
+        json.skipValue();
+        assertEquals("{\"k\":1}", new String(bytes, start, json.position() - start, StandardCharsets.UTF_8));
+        assertFalse(json.nextField());
+        json.finish();
+    }
+
+    @Test
+    void readerRejectsMalformedInput() throws IOException {
+        for (String json : List.of("", "{", "[1,]", "{\"a\":1,}", "[01]", "{\"a\" 1}", "\"\\x\"", "\"a\nb\"", "\"\\u12\"",
+            "tru", "nul", "1.", "-", "1e", "[1 2]", "{} {}", "{1:2}", "]")) {
+            assertThrows(IOException.class, () -> parse(json), json);
+        }
+        byte[][] invalidUtf8 = {{'"', (byte) 0xc0, (byte) 0x80, '"'}, {'"', (byte) 0xed, (byte) 0xa0, (byte) 0x80, '"'},
+            {'"', (byte) 0xe2, (byte) 0x82, '"'}, {'"', (byte) 0xff, '"'}};
+        for (byte[] bytes : invalidUtf8) {
+            assertThrows(IOException.class, () -> JsonReader.parse(bytes, 0, bytes.length));
+        }
+        assertTrue(parse("[".repeat(64) + "]".repeat(64)) instanceof List);
+        String deep = "[".repeat(65) + "]".repeat(65);
+        assertThrows(IOException.class, () -> parse(deep));
+    }
+
+    @Test
+    void readerCanReplaceMalformedUtf8AsStringDecodingDoes() throws IOException {
+        byte[][] invalidUtf8 = {{'"', (byte) 0xc0, (byte) 0x80, '"'}, {'"', (byte) 0xed, (byte) 0xa0, (byte) 0x80, '"'},
+            {'"', (byte) 0xe2, (byte) 0x82, '"'}, {'"', 'a', (byte) 0xff, '\\', 'n', (byte) 0xf0, '"'}};
+        for (byte[] bytes : invalidUtf8) {
+            JsonReader json = new JsonReader(bytes, 0, bytes.length, true);
+            assertEquals(MiniJson.parse(new String(bytes, StandardCharsets.UTF_8)), json.readValue());
+            json.finish();
+        }
+        byte[] name = {'{', '"', 'k', (byte) 0xff, '"', ':', '1', '}'};
+        assertEquals(Map.of("k\uFFFD", 1L), new JsonReader(name, 0, name.length, true).readValue());
+    }
+
+    @Test
+    void writerRoundTripsTextAcrossItsEncodingChunks() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int index = 0; index < 20_000; index++) {
+            text.append(switch (index % 7) {
+                case 0 -> "\uD83D\uDE00";
+                case 1 -> "\u0001";
+                case 2 -> "\"\\";
+                case 3 -> "\u00e9";
+                case 4 -> "\u2028";
+                case 5 -> "\n";
+                default -> "x";
+            });
+        }
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("text", text.toString());
+        message.put("list", List.of(1L, 2.5, true, "y"));
+        message.put("none", null);
+        JsonWriter writer = new JsonWriter();
+        byte[] written = writer.reset().value(message).toByteArray();
+        assertEquals(message, JsonReader.parse(written, 0, written.length));
+        assertEquals(message, MiniJson.parse(new String(written, StandardCharsets.UTF_8)));
+        assertEquals(written.length, writer.size());
+    }
+
+    @Test
+    void writerReplacesLoneSurrogatesAndCopiesRawValues() throws IOException {
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("lone", "a\uD800b\uDC00");
+        message.put("raw", new JsonWriter.Raw("{\"kept\":[1]}".getBytes(StandardCharsets.UTF_8)));
+        byte[] written = new JsonWriter().value(message).toByteArray();
+        assertEquals("{\"lone\":\"a\uFFFDb\uFFFD\",\"raw\":{\"kept\":[1]}}", new String(written, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void frameReaderSplitsFramesDeliveredAByteAtATime() throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        JsonWriter writer = new JsonWriter();
+        List<Object> sent = new ArrayList<>();
+        for (int index = 0; index < 5; index++) {
+            Object message = Map.of("n", (long) index, "pad", "p".repeat(index * 40_000));
+            sent.add(message);
+            writer.reset().value(message).writeFrame(stream);
+        }
+        MessageFrameReader frames = new MessageFrameReader(new TrickleInputStream(stream.toByteArray()), LspClient::contentLength, 1024, 1 << 20);
+        List<Object> received = new ArrayList<>();
+        while (frames.next()) {
+            received.add(JsonReader.parse(frames.buffer(), frames.bodyOffset(), frames.bodyLength()));
+        }
+        assertEquals(sent, received);
+    }
+
+    @Test
+    void frameReaderRejectsTruncatedAndOversizedFrames() throws IOException {
+        byte[] truncated = "Content-Length: 10\r\n\r\n{}".getBytes(StandardCharsets.US_ASCII);
+        MessageFrameReader frames = new MessageFrameReader(new ByteArrayInputStream(truncated), LspClient::contentLength, 1024, 1024);
+        assertThrows(IOException.class, frames::next);
+
+        byte[] oversized = "Content-Length: 2048\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+        MessageFrameReader tooLong = new MessageFrameReader(new ByteArrayInputStream(oversized), LspClient::contentLength, 1024, 1024);
+        assertThrows(IOException.class, tooLong::next);
+
+        byte[] header = ("X-Pad: " + "x".repeat(2000)).getBytes(StandardCharsets.US_ASCII);
+        MessageFrameReader noHeaderEnd = new MessageFrameReader(new ByteArrayInputStream(header), LspClient::contentLength, 1024, 1024);
+        assertThrows(IOException.class, noHeaderEnd::next);
+
+        MessageFrameReader empty = new MessageFrameReader(new ByteArrayInputStream(new byte[0]), LspClient::contentLength, 1024, 1024);
+        assertFalse(empty.next());
+    }
+
+    private static Object parse(String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        return JsonReader.parse(bytes, 0, bytes.length);
+    }
+
+    // Hands out one byte per read, the worst case for finding headers that arrive in pieces.
+    private static final class TrickleInputStream extends InputStream {
+        private final byte[] bytes;
+        private int index;
+
+        TrickleInputStream(byte[] bytes) {
+            this.bytes = Arrays.copyOf(bytes, bytes.length);
+        }
+
+        @Override
+        public int read() {
+            return index < bytes.length ? bytes[index++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] target, int offset, int length) {
+            if (length == 0) return 0;
+            if (index >= bytes.length) return -1;
+            target[offset] = bytes[index++];
+            return 1;
+        }
+    }
+}
@@ -39,7 +39,7 @@ public class LargeFileBenchmarkTest {
     }
 
     @Test
-    void recordsLargeFileScrollAndStreamedSaveWithExplicitUnavailableEdit() throws Exception {
+    void recordsLargeFileScrollBoundedEditAndStreamedSave() throws Exception {
         Path input = tempDir.resolve("large.txt");
         Files.writeString(input, "line\n".repeat(500_001), StandardCharsets.UTF_8);
 
@@ -49,8 +49,7 @@ public class LargeFileBenchmarkTest {
         assertEquals(LargeFileBenchmark.OperationState.PASS, report.operations().get("coldOpen").state());
         assertEquals(LargeFileBenchmark.OperationState.PASS, report.operations().get("warmOpen").state());
         assertEquals(LargeFileBenchmark.OperationState.PASS, report.operations().get("scroll").state());
-        assertEquals(LargeFileBenchmark.OperationState.UNSUPPORTED, report.operations().get("edit").state());
-        assertEquals("large-file bounded editing is unavailable", report.operations().get("edit").reason());
+        assertEquals(LargeFileBenchmark.OperationState.PASS, report.operations().get("edit").state());
         assertEquals(LargeFileBenchmark.OperationState.PASS, report.operations().get("save").state());
         assertTrue(report.failures().isEmpty());
     }
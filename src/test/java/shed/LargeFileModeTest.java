@@ -21,7 +21,9 @@ public class LargeFileModeTest {
 
         assertTrue(report.contains("State: active"));
         assertTrue(report.contains("streamed atomic save"));
-        assertTrue(report.contains("editing, undo/redo, save-as"));
+        assertTrue(report.contains("editing inside the bounded window"));
+        assertTrue(report.contains("undo/redo of committed window edits"));
+        assertTrue(report.contains("save and save-as"));
         assertTrue(report.contains("Remediation:"));
     }
 }
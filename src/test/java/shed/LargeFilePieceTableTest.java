@@ -0,0 +1,91 @@
+package shed;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class LargeFilePieceTableTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void replacesLineRangesWithoutRewritingUntouchedSourceBytes() throws Exception {
+        LargeFilePieceTable table = open("numbered.txt", numberedLines(3000));
+
+        table.replaceLines(1500L, 2L, "edited\n");
+
+        assertTrue(table.edited());
+        assertEquals(3000L, table.lineCount());
+        assertEquals(3, table.pieceCount());
+        assertEquals("edited\n".length(), table.addedBytes());
+        assertEquals("line 1498\nedited\nline 1501\n", table.readWindow(1499L, 3).content());
+        assertEquals("line 0\n", table.readWindow(1L, 1).content());
+        assertEquals("line 2999\n", table.readWindow(2999L, 1).content());
+    }
+
+    @Test
+    void undoAndRedoRestorePieceSequences() throws Exception {
+        String original = numberedLines(2100);
+        LargeFilePieceTable table = open("history.txt", original);
+
+        table.replaceLines(1025L, 1L, "");
+        table.replaceLines(1L, 0L, "header\n");
+        assertEquals(2101L, table.lineCount());
+        assertEquals("header\nline 0\n", table.readWindow(1L, 2).content());
+
+        assertTrue(table.undo());
+        assertTrue(table.undo());
+        assertFalse(table.canUndo());
+        assertFalse(table.edited());
+        assertEquals(original, written(table));
+
+        assertTrue(table.redo());
+        assertEquals("line 1023\nline 1025\n", table.readWindow(1024L, 2).content());
+        table.replaceLines(1L, 1L, "first\n");
+        assertFalse(table.canRedo());
+    }
+
+    @Test
+    void keepsCrLfAsOneLineBreakAndStreamsTheEditedSequence() throws Exception {
+        LargeFilePieceTable table = open("crlf.txt", "one\r\ntwo\r\nthree");
+
+        table.replaceLines(2L, 1L, "TWO\r\nand a half\r\n");
+
+        assertEquals(4L, table.lineCount());
+        assertEquals("and a half\r\nthree", table.readWindow(3L, 2).content());
+        assertEquals("one\r\nTWO\r\nand a half\r\nthree", written(table));
+        assertEquals(table.byteLength(), written(table).getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    private LargeFilePieceTable open(String name, String content) throws Exception {
+        Path file = tempDir.resolve(name);
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+        LargeFileStore.OpenResult result = LargeFileStore.open(file, 10);
+        assertTrue(result.opened());
+        return new LargeFilePieceTable(result.store());
+    }
+
+    private String written(LargeFilePieceTable table) throws Exception {
+        Path target = Files.createTempFile(tempDir, "pieces-", ".txt");
+        try (FileChannel output = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            table.writeTo(output);
+        }
+        return Files.readString(target, StandardCharsets.UTF_8);
+    }
+
+    private static String numberedLines(int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int index = 0; index < count; index++) {
+            builder.append("line ").append(index).append('\n');
+        }
+        return builder.toString();
+    }
+}
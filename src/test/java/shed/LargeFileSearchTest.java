@@ -0,0 +1,85 @@
+package shed;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class LargeFileSearchTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void streamsLiteralMatchesFromTheCaretAndWrapsAcrossPages() throws Exception {
+        StringBuilder content = new StringBuilder();
+        for (int index = 0; index < 20_000; index++) {
+            content.append(index % 5000 == 0 ? "needle at " + index : "line " + index).append('\n');
+        }
+        LargeFilePieceTable table = open("pages.txt", content.toString());
+
+        List<LargeFileSearch.Match> matches = new ArrayList<>();
+        LargeFileSearch.Summary summary = LargeFileSearch.scan(table.snapshot(), LargeFileSearch.Query.of("needle"),
+            7000L, 0, () -> false, matches::add);
+
+        assertTrue(summary.complete());
+        assertEquals(4, summary.matches());
+        assertEquals(List.of(10_001L, 15_001L, 1L, 5001L), matches.stream().map(LargeFileSearch.Match::line).toList());
+        assertFalse(matches.get(0).wrapped());
+        assertTrue(matches.get(2).wrapped());
+    }
+
+    @Test
+    void splitsTheCaretLineAroundTheStartColumn() throws Exception {
+        LargeFilePieceTable table = open("caret.txt", "ab ab ab\r\nxx\r\nab");
+
+        List<LargeFileSearch.Match> matches = new ArrayList<>();
+        LargeFileSearch.scan(table.snapshot(), LargeFileSearch.Query.of("ab"), 1L, 3, () -> false, matches::add);
+
+        assertEquals(List.of(new LargeFileSearch.Match(1L, 6, 2, false), new LargeFileSearch.Match(3L, 0, 2, false),
+            new LargeFileSearch.Match(1L, 0, 2, true), new LargeFileSearch.Match(1L, 3, 2, true)), matches);
+    }
+
+    @Test
+    void reportsRegexColumnsInCharsAndSearchesEditedSequences() throws Exception {
+        LargeFilePieceTable table = open("regex.txt", "héllo wörld\nplain\n");
+        table.replaceLines(2L, 1L, "𝄞 x42\n");
+
+        List<LargeFileSearch.Match> matches = new ArrayList<>();
+        LargeFileSearch.scan(table.snapshot(), LargeFileSearch.Query.of("x[0-9]+"), 1L, -1, () -> false, matches::add);
+        LargeFileSearch.scan(table.snapshot(), LargeFileSearch.Query.of("wö"), 1L, -1, () -> false, matches::add);
+
+        assertEquals(List.of(new LargeFileSearch.Match(2L, 3, 3, false), new LargeFileSearch.Match(1L, 6, 2, false)), matches);
+        assertEquals(4, LargeFileLineReader.charCount("𝄞 x".getBytes(StandardCharsets.UTF_8), 0, 6));
+    }
+
+    @Test
+    void stopsWhenCancelledOrCapped() throws Exception {
+        LargeFilePieceTable table = open("many.txt", "hit\n".repeat(LargeFileSearch.MAX_MATCHES + 10));
+
+        List<LargeFileSearch.Match> capped = new ArrayList<>();
+        LargeFileSearch.Summary summary = LargeFileSearch.scan(table.snapshot(), LargeFileSearch.Query.of("hit"), 1L, -1,
+            () -> false, capped::add);
+        assertFalse(summary.complete());
+        assertEquals(LargeFileSearch.MAX_MATCHES, capped.size());
+
+        List<LargeFileSearch.Match> cancelled = new ArrayList<>();
+        summary = LargeFileSearch.scan(table.snapshot(), LargeFileSearch.Query.of("hit"), 1L, -1, () -> true, cancelled::add);
+        assertFalse(summary.complete());
+        assertTrue(cancelled.isEmpty());
+    }
+
+    private LargeFilePieceTable open(String name, String content) throws Exception {
+        Path file = tempDir.resolve(name);
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+        LargeFileStore.OpenResult result = LargeFileStore.open(file, 10);
+        assertTrue(result.opened());
+        return new LargeFilePieceTable(result.store());
+    }
+}
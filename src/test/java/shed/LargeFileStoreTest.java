@@ -2,11 +2,16 @@ package shed;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
@@ -77,4 +82,93 @@ public class LargeFileStoreTest {
             + (LargeFileStore.CHECKPOINT_LINES + 2) + "\nline-" + (LargeFileStore.CHECKPOINT_LINES + 3) + "\n", window.content());
         assertFalse(window.truncated());
     }
+
+    @Test
+    void fusedScanPlacesCheckpointsAtMixedLineEndings() throws Exception {
+        Path file = tempDir.resolve("mixed.txt");
+        StringBuilder content = new StringBuilder();
+        String[] endings = {"\n", "\r\n", "\r"};
+        for (int line = 1; line <= LargeFileStore.CHECKPOINT_LINES * 3; line++) {
+            content.append("row ").append(line).append(endings[line % endings.length]);
+        }
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+        LargeFileStore store = LargeFileStore.open(file, 2).store();
+
+        assertEquals(LargeFileStore.CHECKPOINT_LINES * 3 + 1L, store.lineCount());
+        long checkpointLine = LargeFileStore.CHECKPOINT_LINES * 2 + 1L;
+        String expectedPrefix = content.substring(0, content.indexOf("row " + checkpointLine + endings[(int) (checkpointLine % endings.length)]));
+        assertEquals(expectedPrefix.getBytes(StandardCharsets.UTF_8).length, store.lineOffset(checkpointLine));
+        assertEquals("row 2\r", store.readWindow(2L, 1).content());
+    }
+
+    @Test
+    void reopensUnchangedSourceFromPersistedIndexWithoutRescanning() throws Exception {
+        Path file = tempDir.resolve("indexed.txt");
+        StringBuilder content = new StringBuilder();
+        for (int line = 1; line <= LargeFileStore.CHECKPOINT_LINES * 10; line++) {
+            content.append("line-").append(line).append('\n');
+        }
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+        LargeFileIndexCache cache = new LargeFileIndexCache(tempDir.resolve("index"));
+        LargeFileStore scanned = LargeFileStore.open(file, 2, cache).store();
+        assertTrue(Files.isRegularFile(cache.entryPath(file.toAbsolutePath().normalize())));
+
+        // Same size and timestamp: the sidecar is trusted, so even bytes that would fail validation are not rescanned.
+        FileTime modified = Files.getLastModifiedTime(file);
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 2] = (byte) 0xFF;
+        Files.write(file, bytes);
+        Files.setLastModifiedTime(file, modified);
+        LargeFileStore.OpenResult cached = LargeFileStore.open(file, 2, cache);
+
+        assertTrue(cached.opened());
+        assertEquals(scanned.lineCount(), cached.store().lineCount());
+        assertEquals(scanned.preview(), cached.store().preview());
+        assertEquals(scanned.previewTruncated(), cached.store().previewTruncated());
+        assertEquals("line-1026\n", cached.store().readWindow(1026L, 1).content());
+
+        Files.setLastModifiedTime(file, FileTime.fromMillis(modified.toMillis() + 5_000L));
+        LargeFileStore.OpenResult rescanned = LargeFileStore.open(file, 2, cache);
+        assertFalse(rescanned.opened());
+        assertTrue(rescanned.error().contains("well-formed UTF-8"));
+    }
+
+    @Test
+    void segmentScanMatchesSequentialScanAcrossSplitLineEndingsAndCodePoints() throws Exception {
+        Path file = tempDir.resolve("segmented.txt");
+        java.util.Random random = new java.util.Random(42L);
+        String[] pieces = {"a", "bc", "é", "€", "😀", "\n", "\r", "\r\n", "\r\r", "\n\r"};
+        StringBuilder content = new StringBuilder("\ufeff");
+        while (content.length() < 60_000) {
+            content.append(pieces[random.nextInt(pieces.length)]);
+        }
+        content.append('\r');
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+        LargeFileStore sequential = LargeFileStore.open(file, 2).store();
+
+        for (int segmentBytes : new int[] {8, 13, 4096}) {
+            LargeFileSegmentScanner.Result segmented;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                segmented = LargeFileSegmentScanner.scan(channel, Files.size(file), segmentBytes);
+            }
+            assertEquals(sequential.lineCount(), segmented.lineCount());
+            assertEquals(sequential.lineEnding(), segmented.lineEnding());
+            assertEquals((sequential.lineCount() - 1L) / LargeFileStore.CHECKPOINT_LINES + 1L, segmented.checkpointOffsets().length);
+            for (int index = 0; index < segmented.checkpointOffsets().length; index++) {
+                assertEquals(sequential.lineOffset(1L + (long) index * LargeFileStore.CHECKPOINT_LINES), segmented.checkpointOffsets()[index]);
+            }
+        }
+    }
+
+    @Test
+    void segmentScanRejectsMalformedUtf8InAnySegment() throws Exception {
+        Path file = tempDir.resolve("segmented-malformed.txt");
+        byte[] content = "line\n".repeat(4000).getBytes(StandardCharsets.UTF_8);
+        content[content.length - 3] = (byte) 0xC3;
+        Files.write(file, content);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            assertThrows(CharacterCodingException.class, () -> LargeFileSegmentScanner.scan(channel, content.length, 64));
+        }
+    }
 }
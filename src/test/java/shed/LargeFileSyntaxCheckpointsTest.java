@@ -0,0 +1,86 @@
+package shed;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class LargeFileSyntaxCheckpointsTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void carriesBlockCommentStateAcrossCheckpointsIntoAWindow() throws Exception {
+        LargeFilePieceTable table = open("Dump.java", source(3000, 1500, 2100));
+        GrammarHighlightService grammar = new GrammarHighlightService();
+        LargeFileSyntaxCheckpoints checkpoints = new LargeFileSyntaxCheckpoints(grammar, FileType.JAVA);
+
+        GrammarHighlightService.State state = checkpoints.stateAt(table.snapshot(), 2050L, () -> false);
+        String window = table.readWindow(2050L, 2).content();
+        List<GrammarHighlightService.Token> tokens = GrammarHighlightService.unpack(grammar.highlightFrom(window, FileType.JAVA, state));
+
+        assertEquals(3, checkpoints.checkpointCount());
+        assertEquals(GrammarHighlightService.Scope.COMMENT, tokens.get(0).scope());
+        assertEquals(0, tokens.get(0).start());
+    }
+
+    @Test
+    void editsDropOnlyCheckpointsBelowTheChangedLine() throws Exception {
+        LargeFilePieceTable table = open("Edit.java", source(5000, 1500, 2100));
+        GrammarHighlightService grammar = new GrammarHighlightService();
+        LargeFileSyntaxCheckpoints checkpoints = new LargeFileSyntaxCheckpoints(grammar, FileType.JAVA);
+        checkpoints.stateAt(table.snapshot(), 4500L, () -> false);
+        assertEquals(5, checkpoints.checkpointCount());
+
+        table.replaceLines(1500L, 1L, "int opened = 1;\n");
+        GrammarHighlightService.State state = checkpoints.stateAt(table.snapshot(), 1030L, () -> false);
+        assertEquals(2, checkpoints.checkpointCount());
+        assertEquals(GrammarHighlightService.State.normal(), state);
+
+        state = checkpoints.stateAt(table.snapshot(), 2050L, () -> false);
+        List<GrammarHighlightService.Token> tokens = GrammarHighlightService.unpack(grammar.highlightFrom("int value = 2;", FileType.JAVA, state));
+        assertEquals(GrammarHighlightService.Scope.KEYWORD, tokens.get(0).scope());
+    }
+
+    @Test
+    void keepsCheckpointsReachedBeforeCancellation() throws Exception {
+        LargeFilePieceTable table = open("Cancel.java", source(40_000, 1, 2));
+        LargeFileSyntaxCheckpoints checkpoints = new LargeFileSyntaxCheckpoints(new GrammarHighlightService(), FileType.JAVA);
+        int[] pages = {0};
+
+        assertNull(checkpoints.stateAt(table.snapshot(), 39_000L, () -> ++pages[0] > 4));
+        int reached = checkpoints.checkpointCount();
+        assertTrue(reached > 1 && reached < 39);
+
+        assertEquals(GrammarHighlightService.State.normal(), checkpoints.stateAt(table.snapshot(), 39_000L, () -> false));
+        assertEquals(39, checkpoints.checkpointCount());
+    }
+
+    private LargeFilePieceTable open(String name, String content) throws Exception {
+        Path file = tempDir.resolve(name);
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+        LargeFileStore.OpenResult result = LargeFileStore.open(file, 10);
+        assertTrue(result.opened());
+        return new LargeFilePieceTable(result.store());
+    }
+
+    private static String source(int lines, int commentOpens, int commentCloses) {
+        StringBuilder builder = new StringBuilder();
+        for (int line = 1; line <= lines; line++) {
+            if (line == commentOpens) {
+                builder.append("/* opened\n");
+            } else if (line == commentCloses) {
+                builder.append("closed */\n");
+            } else {
+                builder.append("int value").append(line).append(" = ").append(line).append(";\n");
+            }
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,301 @@
+package shed;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class LspClientTest {
+    @TempDir
+    Path root;
+
+    @Test
+    void keepsSeveralRequestsInFlightAndCancelsTheOneGivenUp() throws Exception {
+        try (FakeServer server = new FakeServer()) {
+            LspClient client = server.connect(root);
+            CompletableFuture<Map<String, Object>> slow = client.request("test/slow", Map.of());
+            CompletableFuture<Map<String, Object>> fast = client.request("test/fast", Map.of());
+            Map<String, Object> slowRequest = server.next();
+            Map<String, Object> fastRequest = server.next();
+            assertEquals("test/slow", MiniJson.asString(slowRequest.get("method")));
+            assertEquals("test/fast", MiniJson.asString(fastRequest.get("method")));
+
+            server.respond(fastRequest.get("id"), "fast");
+            assertEquals("fast", fast.get(1, TimeUnit.SECONDS).get("result"));
+            assertFalse(slow.isDone());
+            assertEquals(1, client.pendingRequestCount());
+
+            slow.cancel(false);
+            Map<String, Object> cancel = server.next();
+            assertEquals("$/cancelRequest", MiniJson.asString(cancel.get("method")));
+            assertEquals(slowRequest.get("id"), MiniJson.asObject(cancel.get("params")).get("id"));
+            server.respond(slowRequest.get("id"), "late");
+            CompletableFuture<Map<String, Object>> after = client.request("test/after", Map.of());
+            server.respond(server.next().get("id"), "after");
+            assertEquals("after", after.get(1, TimeUnit.SECONDS).get("result"));
+            assertEquals(0, client.pendingRequestCount());
+        }
+    }
+
+    @Test
+    void failsOutstandingRequestsWhenTheServerCloses() throws Exception {
+        FakeServer server = new FakeServer();
+        LspClient client = server.connect(root);
+        CompletableFuture<Map<String, Object>> pending = client.request("test/never", Map.of());
+        server.next();
+
+        server.close();
+
+        ExecutionException error = assertThrows(ExecutionException.class, () -> pending.get(1, TimeUnit.SECONDS));
+        assertTrue(error.getCause() instanceof IOException);
+        CompletableFuture<Map<String, Object>> refused = client.request("test/refused", Map.of());
+        assertTrue(refused.isCompletedExceptionally());
+        assertFalse(client.isAlive());
+    }
+
+    @Test
+    void completesEveryRequestIssuedWhileTheClientStops() throws Exception {
+        FakeServer server = new FakeServer();
+        LspClient client = server.connect(root);
+        List<CompletableFuture<Map<String, Object>>> requests = new CopyOnWriteArrayList<>();
+        List<Thread> senders = new ArrayList<>();
+        for (int sender = 0; sender < 4; sender++) {
+            Thread thread = new Thread(() -> {
+                CompletableFuture<Map<String, Object>> request;
+                do {
+                    request = client.request("test/race", Map.of());
+                    requests.add(request);
+                } while (!request.isCompletedExceptionally());
+            });
+            senders.add(thread);
+            thread.start();
+        }
+
+        client.stop();
+        server.close();
+        for (Thread sender : senders) {
+            sender.join(TimeUnit.SECONDS.toMillis(5));
+            assertFalse(sender.isAlive());
+        }
+
+        for (CompletableFuture<Map<String, Object>> request : requests) {
+            assertThrows(ExecutionException.class, () -> request.get(1, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void decodesCompletionItemsAsTheTreeParserDoesAndResolvesWithTheItemAsSent() throws Exception {
+        String items = "{\"isIncomplete\":false,\"items\":["
+            + "{\"label\":\"caf\\u00e9\",\"kind\":3,\"labelDetails\":{\"detail\":\"(x)\",\"description\":\"pkg \u2192 mod\"},"
+            + "\"documentation\":{\"kind\":\"markdown\",\"value\":\"a\\nb\"},\"insertText\":\"cafe($1)\",\"insertTextFormat\":2,"
+            + "\"textEdit\":{\"insert\":{},\"replace\":{\"start\":{\"line\":1,\"character\":2},\"end\":{\"line\":1,\"character\":4}},\"newText\":\"cafe\"},"
+            + "\"additionalTextEdits\":[{\"range\":{\"start\":{\"line\":0,\"character\":0},\"end\":{\"line\":0,\"character\":0}},\"newText\":\"import x\\n\"}],"
+            + "\"commitCharacters\":[\".\",\"\"],\"preselect\":true,\"data\":{\"id\":[1,2.5,null],\"note\":\"\\\"q\\\"\"}},"
+            + "{\"label\":\"\",\"kind\":1},"
+            + "{\"label\":\"plain\",\"sortText\":\"0001\",\"filterText\":\"pl\"}]}";
+        try (FakeServer server = new FakeServer(Map.of("completionProvider", Map.of("resolveProvider", true)))) {
+            LspClient client = server.connect(root);
+            CompletableFuture<List<LspClient.CompletionItem>> completion =
+                CompletableFuture.supplyAsync(() -> client.completion("file:///a.ts", 1, 4));
+            server.respondRaw(server.next().get("id"), items);
+            List<LspClient.CompletionItem> decoded = completion.get(1, TimeUnit.SECONDS);
+            List<LspClient.CompletionItem> expected = LspClient.parseCompletionItems(MiniJson.parse(items));
+
+            assertEquals(2, decoded.size());
+            for (int index = 0; index < expected.size(); index++) {
+                assertSameItem(expected.get(index), decoded.get(index));
+            }
+
+            CompletableFuture<LspClient.CompletionItem> resolve =
+                CompletableFuture.supplyAsync(() -> client.resolveCompletionItem(decoded.get(0)));
+            Map<String, Object> request = server.next();
+            assertEquals("completionItem/resolve", request.get("method"));
+            Map<String, Object> sentItem = MiniJson.asObject(MiniJson.asArray(MiniJson.asObject(MiniJson.parse(items)).get("items")).get(0));
+            assertEquals(sentItem, request.get("params"));
+            server.respond(request.get("id"), Map.of("label", "café", "detail", "resolved"));
+            assertEquals("resolved", resolve.get(1, TimeUnit.SECONDS).getDetail());
+        }
+    }
+
+    @Test
+    void decodesSemanticTokensAndPublishedDiagnosticsFromTheMessageBytes() throws Exception {
+        Map<String, Object> semanticTokens = Map.of("legend", Map.of("tokenTypes", List.of("a", "b"), "tokenModifiers", List.of()), "full", true);
+        try (FakeServer server = new FakeServer(Map.of("semanticTokensProvider", semanticTokens))) {
+            LspClient client = server.connect(root);
+            CompletableFuture<List<LspClient.SemanticToken>> tokens =
+                CompletableFuture.supplyAsync(() -> client.semanticTokens("file:///a.ts"));
+            server.respondRaw(server.next().get("id"), "{\"resultId\":\"1\",\"data\":[0,2,3,1,0,1,4,2,5,0]}");
+            assertEquals(LspClient.parseSemanticTokens(MiniJson.parse("{\"data\":[0,2,3,1,0,1,4,2,5,0]}")), tokens.get(1, TimeUnit.SECONDS));
+
+            CompletableFuture<Void> changed = new CompletableFuture<>();
+            client.setDiagnosticsChangedHandler(() -> changed.complete(null));
+            server.notifyRaw("textDocument/publishDiagnostics", "{\"uri\":\"file:///a.ts\",\"version\":3,\"diagnostics\":["
+                + "{\"range\":{\"start\":{\"line\":2,\"character\":1},\"end\":{\"line\":2,\"character\":5}},\"severity\":1,\"message\":\"bad \\\"x\\\"\",\"code\":7},"
+                + "{\"message\":\"no range\"}]}");
+            changed.get(1, TimeUnit.SECONDS);
+            assertEquals(List.of("2:1-2:5 1 bad \"x\"", "0:0-0:1 0 no range"),
+                client.getDiagnostics("file:///a.ts").stream().map(diagnostic -> diagnostic.getLine() + ":" + diagnostic.getCharacter()
+                    + "-" + diagnostic.getEndLine() + ":" + diagnostic.getEndCharacter() + " " + diagnostic.getSeverity()
+                    + " " + diagnostic.getMessage()).toList());
+        }
+    }
+
+    @Test
+    void decodesMalformedUtf8FromTheServerAsReplacementCharacters() throws Exception {
+        try (FakeServer server = new FakeServer()) {
+            LspClient client = server.connect(root);
+            CompletableFuture<Map<String, Object>> first = client.request("test/first", Map.of());
+            server.respondRaw(server.next().get("id"), new byte[] {'"', 'a', (byte) 0xff, 'b', (byte) 0xe2, (byte) 0x82, '"'});
+            assertEquals("a\uFFFDb\uFFFD", first.get(1, TimeUnit.SECONDS).get("result"));
+
+            CompletableFuture<Map<String, Object>> second = client.request("test/second", Map.of());
+            server.respond(server.next().get("id"), "ok");
+            assertEquals("ok", second.get(1, TimeUnit.SECONDS).get("result"));
+            assertTrue(client.isAlive());
+        }
+    }
+
+    @Test
+    void aResponseNestedPastTheDebugAdapterLimitNeitherFailsNorEndsTheSession() throws Exception {
+        try (FakeServer server = new FakeServer()) {
+            LspClient client = server.connect(root);
+            CompletableFuture<Map<String, Object>> deep = client.request("test/deep", Map.of());
+            server.respondRaw(server.next().get("id"), "[".repeat(200) + "]".repeat(200));
+            Object result = deep.get(1, TimeUnit.SECONDS).get("result");
+            for (int level = 1; level < 200; level++) result = ((List<?>) result).get(0);
+            assertEquals(List.of(), result);
+
+            CompletableFuture<Map<String, Object>> hostile = client.request("test/hostile", Map.of());
+            server.respondRaw(server.next().get("id"), "[".repeat(5000) + "]".repeat(5000));
+            ExecutionException failed = assertThrows(ExecutionException.class, () -> hostile.get(1, TimeUnit.SECONDS));
+            assertTrue(failed.getCause() instanceof IOException);
+
+            CompletableFuture<Map<String, Object>> next = client.request("test/next", Map.of());
+            server.respond(server.next().get("id"), "ok");
+            assertEquals("ok", next.get(1, TimeUnit.SECONDS).get("result"));
+            assertTrue(client.isAlive());
+        }
+    }
+
+    @Test
+    void readsContentLengthAmongOtherHeaders() throws IOException {
+        assertEquals(12, LspClient.contentLength("Content-Type: application/vscode-jsonrpc\r\ncontent-length: 12\r\n\r\n"));
+        assertThrows(IOException.class, () -> LspClient.contentLength("Content-Type: x\r\n\r\n"));
+        assertThrows(IOException.class, () -> LspClient.contentLength("Content-Length: twelve\r\n\r\n"));
+    }
+
+    private static void assertSameItem(LspClient.CompletionItem expected, LspClient.CompletionItem actual) {
+        assertEquals(expected.getLabel(), actual.getLabel());
+        assertEquals(expected.getDetail(), actual.getDetail());
+        assertEquals(expected.getKind(), actual.getKind());
+        assertEquals(expected.getDocumentation(), actual.getDocumentation());
+        assertEquals(expected.getInsertText(), actual.getInsertText());
+        assertEquals(expected.isSnippet(), actual.isSnippet());
+        assertEquals(describeEdits(expected.getTextEdits()), describeEdits(actual.getTextEdits()));
+        assertEquals(expected.getFilterText(), actual.getFilterText());
+        assertEquals(expected.getSortText(), actual.getSortText());
+        assertEquals(expected.isPreselect(), actual.isPreselect());
+        assertEquals(expected.getCommitCharacters(), actual.getCommitCharacters());
+        assertEquals(expected.getResolvePayload(),
+            MiniJson.parse(new String(((JsonWriter.Raw) actual.getResolvePayload()).json(), StandardCharsets.UTF_8)));
+    }
+
+    private static List<String> describeEdits(List<LspClient.CompletionTextEdit> edits) {
+        return edits.stream().map(edit -> edit.getStartLine() + ":" + edit.getStartCharacter() + "-" + edit.getEndLine()
+            + ":" + edit.getEndCharacter() + " " + edit.getNewText()).toList();
+    }
+
+    // Completes the initialize handshake on its own and hands every later message to the test.
+    private static final class FakeServer implements AutoCloseable {
+        private final PipedInputStream serverOutput = new PipedInputStream();
+        private final PipedOutputStream serverWriter;
+        private final PipedInputStream clientOutput = new PipedInputStream();
+        private final PipedOutputStream clientWriter;
+        private final BlockingQueue<Map<String, Object>> received = new LinkedBlockingQueue<>();
+
+        FakeServer() throws IOException {
+            this(Map.of());
+        }
+
+        FakeServer(Map<String, Object> capabilities) throws IOException {
+            serverWriter = new PipedOutputStream(serverOutput);
+            clientWriter = new PipedOutputStream(clientOutput);
+            Thread reader = new Thread(() -> {
+                MessageFrameReader frames = new MessageFrameReader(clientOutput, LspClient::contentLength, 4096, 1 << 20);
+                try {
+                    while (frames.next()) {
+                        Map<String, Object> message = MiniJson.asObject(JsonReader.parse(frames.buffer(), frames.bodyOffset(), frames.bodyLength()));
+                        String method = MiniJson.asString(message.get("method"));
+                        if ("initialize".equals(method)) {
+                            respond(message.get("id"), Map.of("capabilities", capabilities));
+                        } else if (!"initialized".equals(method)) {
+                            received.add(message);
+                        }
+                    }
+                } catch (IOException ignored) {
+                }
+            }, "fake-lsp-server");
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        LspClient connect(Path root) throws IOException {
+            return LspClient.forStreams(serverOutput, clientWriter, root, LspFeatureSettings.defaults());
+        }
+
+        Map<String, Object> next() throws InterruptedException {
+            Map<String, Object> message = received.poll(1, TimeUnit.SECONDS);
+            assertTrue(message != null, "server received no message");
+            return message;
+        }
+
+        // Puts the id before the result, as servers do, which is what lets the client decode the result as it reads.
+        synchronized void respond(Object id, Object result) throws IOException {
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("jsonrpc", "2.0");
+            response.put("id", id);
+            response.put("result", result);
+            DebugAdapterTransport.writeMessage(serverWriter, response);
+        }
+
+        // Sends the result exactly as given, so the client decodes the bytes a real server would produce.
+        void respondRaw(Object id, String resultJson) throws IOException {
+            respondRaw(id, resultJson.getBytes(StandardCharsets.UTF_8));
+        }
+
+        void respondRaw(Object id, byte[] resultJson) throws IOException {
+            respond(id, new JsonWriter.Raw(resultJson));
+        }
+
+        synchronized void notifyRaw(String method, String paramsJson) throws IOException {
+            Map<String, Object> notification = new LinkedHashMap<>();
+            notification.put("jsonrpc", "2.0");
+            notification.put("method", method);
+            notification.put("params", new JsonWriter.Raw(paramsJson.getBytes(StandardCharsets.UTF_8)));
+            DebugAdapterTransport.writeMessage(serverWriter, notification);
+        }
+
+        @Override
+        public void close() throws IOException {
+            serverWriter.close();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package shed;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+public class ParallelDirectoryWalkerTest {
+    @Test
+    void readsTheSameTreeInTheSameOrderForAnyThreadCount() throws IOException {
+        List<String> expected = depthFirst(1);
+        assertEquals(1 + 6 + 36 + 216, expected.size());
+        for (int threads : List.of(2, 4, 8)) {
+            assertEquals(expected, depthFirst(threads));
+        }
+        assertEquals("r", expected.getFirst());
+        assertEquals("r/0", expected.get(1));
+        assertEquals("r/0/0", expected.get(2));
+    }
+
+    @Test
+    void stopsStartingDirectoriesOnceCancelled() throws IOException {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        AtomicInteger visited = new AtomicInteger();
+        ParallelDirectoryWalker.Visitor<String, String> visitor = (directory, children) -> {
+            visited.incrementAndGet();
+            cancelled.set(true);
+            children.add(directory + "/0");
+            return directory;
+        };
+        try (ParallelDirectoryWalker.Walk<String> walk = ParallelDirectoryWalker.start("r", visitor, 4, cancelled::get)) {
+            assertEquals("r", walk.root().result());
+            assertNull(walk.root().children().getFirst().result());
+        }
+        assertEquals(1, visited.get());
+    }
+
+    @Test
+    void rethrowsAVisitFailureWhereItsResultIsRead() throws IOException {
+        ParallelDirectoryWalker.Visitor<String, String> visitor = (directory, children) -> {
+            if (directory.length() > 1) {
+                throw new IOException("unreadable " + directory);
+            }
+            children.add(directory + "/a");
+            return directory;
+        };
+        try (ParallelDirectoryWalker.Walk<String> walk = ParallelDirectoryWalker.start("r", visitor, 2, () -> false)) {
+            ParallelDirectoryWalker.Node<String> child = walk.root().children().getFirst();
+            IOException error = assertThrows(IOException.class, child::result);
+            assertTrue(error.getMessage().contains("r/a"));
+        }
+        assertThrows(IllegalArgumentException.class, () -> ParallelDirectoryWalker.start("r", (directory, children) -> directory, 0, () -> false));
+    }
+
+    // A synthetic tree three levels deep with six children per directory; some visits yield to shuffle timing.
+    private static List<String> depthFirst(int threads) throws IOException {
+        ParallelDirectoryWalker.Visitor<String, String> visitor = (directory, children) -> {
+            if (directory.chars().filter(character -> character == '/').count() < 3) {
+                for (int index = 0; index < 6; index++) {
+                    children.add(directory + "/" + index);
+                }
+            }
+            if (Math.floorMod(directory.hashCode(), 7) == 0) {
+                Thread.onSpinWait();
+                Thread.yield();
+            }
+            return directory;
+        };
+        List<String> order = new ArrayList<>();
+        try (ParallelDirectoryWalker.Walk<String> walk = ParallelDirectoryWalker.start("r", visitor, threads, () -> false)) {
+            collect(walk.root(), order);
+        }
+        return order;
+    }
+
+    private static void collect(ParallelDirectoryWalker.Node<String> node, List<String> order) throws IOException {
+        order.add(node.result());
+        for (ParallelDirectoryWalker.Node<String> child : node.children()) {
+            collect(child, order);
+        }
+    }
+}
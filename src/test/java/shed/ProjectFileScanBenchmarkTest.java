@@ -6,6 +6,7 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
@@ -29,6 +30,10 @@ public class ProjectFileScanBenchmarkTest {
         assertTrue(report.legacyDurationNanos() >= 0);
         assertTrue(report.optimizedDurationNanos() >= 0);
         assertTrue(report.format().contains("equivalentFileSet=true\n"));
+        assertEquals(List.of(1, 2, 4, 8), report.threadScaling().stream().map(ProjectFileScanBenchmark.ThreadScaling::threads).toList());
+        assertTrue(report.threadScaling().stream().allMatch(scaling -> scaling.files() == 3));
+        assertTrue(report.sameOrderAcrossThreads());
+        assertTrue(report.format().contains("threads8DurationNanos="));
     }
 
     private void write(String relativePath) throws Exception {
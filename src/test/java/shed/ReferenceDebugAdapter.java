@@ -62,8 +62,9 @@ final class ReferenceDebugAdapter implements AutoCloseable {
             return;
         }
         try {
+            DebugAdapterTransport.MessageReader requests = new DebugAdapterTransport.MessageReader(adapterInput);
             while (!closed) {
-                Map<String, Object> request = DebugAdapterTransport.readMessage(adapterInput);
+                Map<String, Object> request = requests.next();
                 if (request == null) return;
                 String command = MiniJson.asString(request.get("command"));
                 int requestSeq = number(request.get("seq"));
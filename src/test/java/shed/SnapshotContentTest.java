@@ -0,0 +1,161 @@
+package shed;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.GapContent;
+import javax.swing.text.PlainDocument;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.undo.UndoManager;
+import org.junit.jupiter.api.Test;
+
+public class SnapshotContentTest {
+    @Test
+    void matchesGapContentLinesPositionsAndUndoAcrossRandomEdits() throws Exception {
+        Random random = new Random(51_603L);
+        SnapshotContent content = new SnapshotContent();
+        PlainDocument snapshotDocument = new PlainDocument(content);
+        PlainDocument gapDocument = new PlainDocument(new GapContent());
+        UndoManager snapshotUndo = new UndoManager();
+        UndoManager gapUndo = new UndoManager();
+        snapshotUndo.setLimit(-1);
+        gapUndo.setLimit(-1);
+        snapshotDocument.addUndoableEditListener(snapshotUndo);
+        gapDocument.addUndoableEditListener(gapUndo);
+        String seed = "alpha\nbeta\n\ngamma delta\n".repeat(800);
+        snapshotDocument.insertString(0, seed, null);
+        gapDocument.insertString(0, seed, null);
+        List<Position> snapshotPositions = new ArrayList<>();
+        List<Position> gapPositions = new ArrayList<>();
+
+        for (int iteration = 0; iteration < 1500; iteration++) {
+            int length = gapDocument.getLength();
+            int action = random.nextInt(10);
+            if (action < 4) {
+                int offset = random.nextInt(length + 1);
+                String inserted = random.nextInt(5) == 0 ? "x\n".repeat(random.nextInt(3000)) : random.nextBoolean() ? "q" : "\n";
+                snapshotDocument.insertString(offset, inserted, null);
+                gapDocument.insertString(offset, inserted, null);
+            } else if (action < 7 && length > 0) {
+                int offset = random.nextInt(length);
+                int removed = random.nextInt(Math.min(length - offset, random.nextInt(6) == 0 ? 12_000 : 40) + 1);
+                snapshotDocument.remove(offset, removed);
+                gapDocument.remove(offset, removed);
+            } else if (action < 8) {
+                int offset = random.nextInt(length + 1);
+                snapshotPositions.add(snapshotDocument.createPosition(offset));
+                gapPositions.add(gapDocument.createPosition(offset));
+            } else if (action < 9 && gapUndo.canUndo()) {
+                for (int step = random.nextInt(4); step >= 0 && gapUndo.canUndo(); step--) {
+                    snapshotUndo.undo();
+                    gapUndo.undo();
+                }
+            } else if (gapUndo.canRedo()) {
+                snapshotUndo.redo();
+                gapUndo.redo();
+            }
+
+            String expected = gapDocument.getText(0, gapDocument.getLength());
+            assertTrue(content.snapshot().contentEquals(expected), "iteration=" + iteration);
+            assertEquals(expected.length(), snapshotDocument.getLength(), "iteration=" + iteration);
+            assertSameLines(gapDocument, snapshotDocument, iteration);
+            for (int index = 0; index < gapPositions.size(); index++) {
+                assertEquals(gapPositions.get(index).getOffset(), snapshotPositions.get(index).getOffset(),
+                    "position " + index + " iteration=" + iteration);
+            }
+        }
+    }
+
+    @Test
+    void partialReadsStopAtTheEndOfALeafAndIncludeTheImpliedNewline() throws Exception {
+        SnapshotContent content = new SnapshotContent();
+        String text = "0123456789".repeat(4000);
+        content.insertString(0, text);
+        Segment segment = new Segment();
+        segment.setPartialReturn(true);
+
+        content.getChars(10, text.length() - 10, segment);
+
+        assertTrue(segment.count > 0 && segment.count < text.length() - 10);
+        assertEquals(text.substring(10, 10 + segment.count), segment.toString());
+
+        segment.setPartialReturn(false);
+        content.getChars(text.length() - 3, 4, segment);
+        assertEquals("789\n", segment.toString());
+        assertEquals("89\n", content.getString(text.length() - 2, 3));
+        assertThrows(BadLocationException.class, () -> content.getString(text.length(), 2));
+        assertThrows(BadLocationException.class, () -> content.remove(0, text.length() + 1));
+    }
+
+    @Test
+    void editsReplaceTheSnapshotAndRememberTheRevisionTheyReplaced() throws Exception {
+        SnapshotContent content = new SnapshotContent();
+        PlainDocument document = new PlainDocument(content);
+        document.insertString(0, "one\ntwo", null);
+        VersionedTextSnapshot before = content.snapshot();
+
+        document.remove(3, 1);
+
+        assertSame(before, content.previous());
+        assertEquals("onetwo", content.snapshot().text());
+        assertEquals(1, document.getDefaultRootElement().getElementCount());
+    }
+
+    @Test
+    void loadingASnapshotMatchesInsertingItsTextAndKeepsItsLeaves() throws Exception {
+        SnapshotDocument loaded = new SnapshotDocument();
+        PlainDocument inserted = new PlainDocument(new GapContent());
+        loaded.insertString(0, "previous\ntext", null);
+        inserted.insertString(0, "previous\ntext", null);
+        Position end = loaded.content().createPosition(loaded.getLength() + 1);
+        VersionedTextSnapshot text = VersionedTextSnapshot.of("alpha\n\nbeta gamma\n".repeat(3000) + "tail");
+        List<String> events = new ArrayList<>();
+        loaded.addDocumentListener(new javax.swing.event.DocumentListener() {
+            @Override
+            public void insertUpdate(javax.swing.event.DocumentEvent event) {
+                events.add("insert " + event.getOffset() + " " + event.getLength());
+            }
+
+            @Override
+            public void removeUpdate(javax.swing.event.DocumentEvent event) {
+                events.add("remove " + event.getOffset() + " " + event.getLength());
+            }
+
+            @Override
+            public void changedUpdate(javax.swing.event.DocumentEvent event) {
+            }
+        });
+
+        loaded.setText(text);
+        inserted.remove(0, inserted.getLength());
+        inserted.insertString(0, text.text(), null);
+
+        assertSame(text, loaded.content().snapshot());
+        assertEquals(List.of("remove 0 13", "insert 0 " + text.length()), events);
+        assertSameLines(inserted, loaded, 0);
+        assertEquals(text.length() + 1, end.getOffset());
+        loaded.insertString(6, "x\n", null);
+        inserted.insertString(6, "x\n", null);
+        assertSameLines(inserted, loaded, 1);
+    }
+
+    private static void assertSameLines(PlainDocument expected, PlainDocument actual, int iteration) {
+        Element expectedRoot = expected.getDefaultRootElement();
+        Element actualRoot = actual.getDefaultRootElement();
+        assertEquals(expectedRoot.getElementCount(), actualRoot.getElementCount(), "lines iteration=" + iteration);
+        for (int line = 0; line < expectedRoot.getElementCount(); line++) {
+            assertEquals(expectedRoot.getElement(line).getStartOffset(), actualRoot.getElement(line).getStartOffset(),
+                "line " + line + " start iteration=" + iteration);
+            assertEquals(expectedRoot.getElement(line).getEndOffset(), actualRoot.getElement(line).getEndOffset(),
+                "line " + line + " end iteration=" + iteration);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package shed;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class SnapshotFileReaderTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void normalizesLineBreaksAndMultibyteTextAcrossSegmentCuts() throws Exception {
+        Random random = new Random(17_017L);
+        String[] pieces = {"\r\n", "\r", "\n", "é", "日本", "😀", "plain text ", "\r\r\n"};
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 60_000) text.append(pieces[random.nextInt(pieces.length)]);
+        Path file = write(text.toString().getBytes(StandardCharsets.UTF_8));
+        String expected = text.toString().replace("\r\n", "\n").replace('\r', '\n');
+
+        for (int segmentBytes : new int[] {4, 5, 7, 1000, SnapshotFileReader.SEGMENT_BYTES}) {
+            SnapshotFileReader.Result result = SnapshotFileReader.read(file, segmentBytes);
+
+            assertTrue(result.text().contentEquals(expected), "segment=" + segmentBytes);
+            assertEquals(expected.split("\n", -1).length, result.text().lineCount(), "segment=" + segmentBytes);
+            assertEquals(StandardCharsets.UTF_8, result.charset());
+            assertEquals("\r\n", result.lineEnding());
+            assertLeavesBounded(result.text());
+        }
+        assertEquals("\r", SnapshotFileReader.read(write("a\rb\rc".getBytes(StandardCharsets.UTF_8)), 4).lineEnding());
+        assertEquals("\n", SnapshotFileReader.read(write("a\nb\n".getBytes(StandardCharsets.UTF_8)), 4).lineEnding());
+    }
+
+    @Test
+    void carriesSequencesSplitBetweenReadsOfOneSegment() throws Exception {
+        String line = "héllo 日本 😀\r\n";
+        String expected = line.repeat(20_000).replace("\r\n", "\n");
+        Path utf8 = write(line.repeat(20_000).getBytes(StandardCharsets.UTF_8));
+        ByteArrayOutputStream big = new ByteArrayOutputStream();
+        big.write(new byte[] {(byte) 0xfe, (byte) 0xff});
+        big.write(line.repeat(20_000).getBytes(StandardCharsets.UTF_16BE));
+
+        assertTrue(SnapshotFileReader.read(utf8).text().contentEquals(expected));
+        assertTrue(SnapshotFileReader.read(write(big.toByteArray())).text().contentEquals("\uFEFF" + expected));
+    }
+
+    @Test
+    void dropsTheUtf8ByteOrderMarkAndKeepsUtf16Ones() throws Exception {
+        ByteArrayOutputStream marked = new ByteArrayOutputStream();
+        marked.write(new byte[] {(byte) 0xef, (byte) 0xbb, (byte) 0xbf});
+        marked.write("héllo\r\nworld".getBytes(StandardCharsets.UTF_8));
+        SnapshotFileReader.Result utf8 = SnapshotFileReader.read(write(marked.toByteArray()), 4);
+        assertEquals("héllo\nworld", utf8.text().text());
+        assertEquals(StandardCharsets.UTF_8, utf8.charset());
+
+        ByteArrayOutputStream little = new ByteArrayOutputStream();
+        little.write(new byte[] {(byte) 0xff, (byte) 0xfe});
+        little.write("one\rtwo".getBytes(StandardCharsets.UTF_16LE));
+        SnapshotFileReader.Result utf16 = SnapshotFileReader.read(write(little.toByteArray()), 4);
+        assertEquals("\uFEFFone\ntwo", utf16.text().text());
+        assertEquals(StandardCharsets.UTF_16LE, utf16.charset());
+        assertEquals("\r", utf16.lineEnding());
+
+        SnapshotFileReader.Result empty = SnapshotFileReader.read(write(new byte[0]));
+        assertEquals(0, empty.text().length());
+        assertEquals("\n", empty.lineEnding());
+    }
+
+    @Test
+    void fallsBackToLatin1WhenAnySegmentIsMalformed() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write("valid line ü\n".repeat(500).getBytes(StandardCharsets.UTF_8));
+        bytes.write(new byte[] {'c', 'a', 'f', (byte) 0xe9, '\r', '\n'});
+        byte[] content = bytes.toByteArray();
+
+        SnapshotFileReader.Result result = SnapshotFileReader.read(write(content), 64);
+
+        assertEquals(StandardCharsets.ISO_8859_1, result.charset());
+        assertEquals(new String(content, StandardCharsets.ISO_8859_1).replace("\r\n", "\n"), result.text().text());
+        assertEquals("\r\n", result.lineEnding());
+    }
+
+    private Path write(byte[] bytes) throws Exception {
+        Path file = Files.createTempFile(directory, "load", ".txt");
+        Files.write(file, bytes);
+        return file;
+    }
+
+    private static void assertLeavesBounded(VersionedTextSnapshot snapshot) {
+        List<Integer> leaves = new ArrayList<>();
+        snapshot.forEachChunk(0, snapshot.length(), (text, start, end) -> leaves.add(text.length()));
+        for (int leaf : leaves) {
+            assertTrue(leaf <= 8 * 1024, "leaf of " + leaf + " characters");
+            assertTrue(leaves.size() == 1 || leaf >= 2 * 1024, "leaf of " + leaf + " characters among " + leaves.size());
+        }
+    }
+}
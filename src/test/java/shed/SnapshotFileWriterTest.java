@@ -0,0 +1,65 @@
+package shed;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+public class SnapshotFileWriterTest {
+    @Test
+    void translatesLineEndingsWhileStreamingEveryLeaf() throws Exception {
+        String text = "first line\nsecond\n\n" + "long line of text ".repeat(3000) + "\nlast";
+        VersionedTextSnapshot snapshot = VersionedTextSnapshot.of(text).replace(7, 0, "\n");
+        String expected = snapshot.text();
+
+        assertArrayEquals(expected.replace("\n", "\r\n").getBytes(StandardCharsets.UTF_8),
+            write(snapshot, "\r\n", StandardCharsets.UTF_8));
+        assertArrayEquals(expected.replace("\n", "\r").getBytes(StandardCharsets.UTF_8),
+            write(snapshot, "\r", StandardCharsets.UTF_8));
+        assertArrayEquals(expected.getBytes(StandardCharsets.UTF_8), write(snapshot, "\n", StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void keepsSurrogatePairsWholeAcrossBufferAndLeafBoundaries() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int index = 0; index < 40_000; index++) text.append(index % 7 == 0 ? "\n" : "x😀");
+        VersionedTextSnapshot snapshot = VersionedTextSnapshot.of(text.toString());
+
+        assertArrayEquals(text.toString().replace("\n", "\r\n").getBytes(StandardCharsets.UTF_8),
+            write(snapshot, "\r\n", StandardCharsets.UTF_8));
+        assertArrayEquals(text.toString().getBytes(StandardCharsets.UTF_16), write(snapshot, "\n", StandardCharsets.UTF_16));
+    }
+
+    @Test
+    void replacesUnmappableCharactersLikeStringGetBytes() throws Exception {
+        VersionedTextSnapshot snapshot = VersionedTextSnapshot.of("café ☃ \uD800 end\n");
+        Charset latin = StandardCharsets.ISO_8859_1;
+
+        byte[] written = write(snapshot, "\n", latin);
+
+        assertArrayEquals(snapshot.text().getBytes(latin), written);
+    }
+
+    @Test
+    void reportsTheBytesItWrote() throws Exception {
+        VersionedTextSnapshot snapshot = VersionedTextSnapshot.of("a\nb\n");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (WritableByteChannel channel = Channels.newChannel(bytes)) {
+            assertEquals(6L, SnapshotFileWriter.write(snapshot, "\r\n", StandardCharsets.UTF_8, channel));
+        }
+        assertEquals("a\r\nb\r\n", bytes.toString(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] write(VersionedTextSnapshot snapshot, String lineEnding, Charset charset) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (WritableByteChannel channel = Channels.newChannel(bytes)) {
+            SnapshotFileWriter.write(snapshot, lineEnding, charset, channel);
+        }
+        return bytes.toByteArray();
+    }
+}
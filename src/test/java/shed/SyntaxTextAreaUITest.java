@@ -0,0 +1,193 @@
+package shed;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import javax.swing.JTextArea;
+import javax.swing.text.JTextComponent;
+import org.junit.jupiter.api.Test;
+
+public class SyntaxTextAreaUITest {
+    private static final Color KEYWORD = new Color(200, 0, 0);
+    private static final Color SEMANTIC = new Color(0, 0, 200);
+
+    @Test
+    void drawsEachRunInItsColorWithSemanticRunsOnTop() {
+        SyntaxSpans syntax = new SyntaxSpans();
+        syntax.add(0, 5, KEYWORD);
+        syntax.add(6, 12, KEYWORD);
+        SyntaxSpans semantic = new SyntaxSpans();
+        semantic.add(6, 12, SEMANTIC);
+        int[] paints = {0};
+        JTextArea area = area("MMMMM MMMMMM MMMMM", new SyntaxTextAreaUI.Styles() {
+            @Override
+            public SyntaxSpans syntax(JTextComponent component) {
+                return syntax;
+            }
+
+            @Override
+            public SyntaxSpans semantic(JTextComponent component) {
+                return semantic;
+            }
+
+            @Override
+            public void painted(JTextComponent component, long startedNanos, int reused, int laidOut) {
+                paints[0]++;
+            }
+        });
+
+        BufferedImage image = paint(area);
+        int cell = area.getFontMetrics(area.getFont()).charWidth('M');
+
+        assertTrue(contains(image, 0, 5 * cell, KEYWORD));
+        assertTrue(contains(image, 6 * cell, 12 * cell, SEMANTIC));
+        assertFalse(contains(image, 6 * cell, 12 * cell, KEYWORD));
+        assertTrue(contains(image, 13 * cell, 18 * cell, Color.BLACK));
+        assertEquals(1, paints[0]);
+    }
+
+    @Test
+    void wrappedLinesKeepTheirRunColors() {
+        SyntaxSpans syntax = new SyntaxSpans();
+        syntax.add(0, 3, KEYWORD);
+        JTextArea area = area("MMM MMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMMM", new SyntaxTextAreaUI.Styles() {
+            @Override
+            public SyntaxSpans syntax(JTextComponent component) {
+                return syntax;
+            }
+
+            @Override
+            public SyntaxSpans semantic(JTextComponent component) {
+                return null;
+            }
+
+            @Override
+            public void painted(JTextComponent component, long startedNanos, int reused, int laidOut) {
+            }
+        });
+        area.setLineWrap(true);
+
+        BufferedImage image = paint(area);
+
+        assertTrue(contains(image, 0, 3 * area.getFontMetrics(area.getFont()).charWidth('M'), KEYWORD));
+    }
+
+    @Test
+    void repaintReusesGlyphRunsUntilTheRunsChange() {
+        SyntaxSpans syntax = new SyntaxSpans();
+        syntax.add(0, 5, KEYWORD);
+        int[] counts = {0, 0};
+        JTextArea area = area("MMMMM\tMMM\nMMMMM", new SyntaxTextAreaUI.Styles() {
+            @Override
+            public SyntaxSpans syntax(JTextComponent component) {
+                return syntax;
+            }
+
+            @Override
+            public SyntaxSpans semantic(JTextComponent component) {
+                return null;
+            }
+
+            @Override
+            public void painted(JTextComponent component, long startedNanos, int reused, int laidOut) {
+                counts[0] = reused;
+                counts[1] = laidOut;
+            }
+        });
+
+        paint(area);
+        assertEquals(0, counts[0]);
+        assertEquals(2, counts[1]);
+
+        BufferedImage image = paint(area);
+        assertEquals(2, counts[0]);
+        assertEquals(0, counts[1]);
+        assertTrue(contains(image, 0, 5 * area.getFontMetrics(area.getFont()).charWidth('M'), KEYWORD));
+
+        syntax.add(6, 9, SEMANTIC);
+        paint(area);
+        assertEquals(1, counts[0]);
+        assertEquals(1, counts[1]);
+    }
+
+    @Test
+    void reusesLinesMovedByAnEditAboveAndRedrawsSameLengthReplacements() throws Exception {
+        int[] counts = {0, 0};
+        JTextArea area = area("Aa\nplain line\nother line", unstyled(counts));
+        paint(area);
+
+        area.getDocument().insertString(0, "x", null);
+        paint(area);
+        assertEquals(2, counts[0]);
+        assertEquals(1, counts[1]);
+
+        // "Aa" and "BB" share a String hash code, so only comparing the characters tells them apart.
+        area.getDocument().remove(0, 3);
+        area.getDocument().insertString(0, "Aa", null);
+        paint(area);
+        area.getDocument().remove(0, 2);
+        area.getDocument().insertString(0, "BB", null);
+        BufferedImage actual = paint(area);
+        BufferedImage expected = paint(area("BB\nplain line\nother line", unstyled(new int[2])));
+
+        assertEquals(1, counts[1]);
+        for (int x = 0; x < expected.getWidth(); x++) {
+            for (int y = 0; y < 24; y++) {
+                assertEquals(expected.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+
+    private static SyntaxTextAreaUI.Styles unstyled(int[] counts) {
+        return new SyntaxTextAreaUI.Styles() {
+            @Override
+            public SyntaxSpans syntax(JTextComponent component) {
+                return null;
+            }
+
+            @Override
+            public SyntaxSpans semantic(JTextComponent component) {
+                return null;
+            }
+
+            @Override
+            public void painted(JTextComponent component, long startedNanos, int reused, int laidOut) {
+                counts[0] = reused;
+                counts[1] = laidOut;
+            }
+        };
+    }
+
+    private static JTextArea area(String text, SyntaxTextAreaUI.Styles styles) {
+        JTextArea area = new JTextArea(text);
+        area.setUI(new SyntaxTextAreaUI(styles));
+        area.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 16));
+        area.setForeground(Color.BLACK);
+        area.setBackground(Color.WHITE);
+        area.setSize(300, 200);
+        return area;
+    }
+
+    private static BufferedImage paint(JTextArea area) {
+        area.doLayout();
+        BufferedImage image = new BufferedImage(area.getWidth(), area.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        area.paint(graphics);
+        graphics.dispose();
+        return image;
+    }
+
+    private static boolean contains(BufferedImage image, int fromX, int toX, Color color) {
+        for (int x = Math.max(0, fromX); x < Math.min(image.getWidth(), toX); x++) {
+            for (int y = 0; y < 24; y++) {
+                if ((image.getRGB(x, y) & 0xffffff) == (color.getRGB() & 0xffffff)) return true;
+            }
+        }
+        return false;
+    }
+}
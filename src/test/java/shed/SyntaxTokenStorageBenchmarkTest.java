@@ -0,0 +1,35 @@
+package shed;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+public class SyntaxTokenStorageBenchmarkTest {
+    @Test
+    void packedRunsAllocateLessThanTheFormerObjectLists() {
+        String fixture = "class Sample {\n  int value = 1; // note\n  String name = \"x\";\n}\n".repeat(200);
+
+        SyntaxTokenStorageBenchmark.Report report = SyntaxTokenStorageBenchmark.measure(fixture, 1);
+
+        assertTrue(report.tokens() > 1000);
+        if (report.packed().allocatedBytes() >= 0L) {
+            assertTrue(report.packed().allocatedBytes() < report.objects().allocatedBytes());
+        }
+        assertTrue(report.format().contains("packed.allocatedBytes="));
+        assertTrue(report.format().contains("objects.gcCount="));
+    }
+
+    @Test
+    void rejectsNonPositiveSampleCounts() {
+        ByteArrayOutputStream error = new ByteArrayOutputStream();
+        int status = SyntaxTokenStorageBenchmark.run(new String[] {"--samples=0"}, System.out,
+            new PrintStream(error, true, StandardCharsets.UTF_8));
+
+        assertEquals(2, status);
+        assertTrue(error.toString(StandardCharsets.UTF_8).contains("Usage:"));
+    }
+}
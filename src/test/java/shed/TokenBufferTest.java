@@ -0,0 +1,48 @@
+package shed;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import org.junit.jupiter.api.Test;
+
+public class TokenBufferTest {
+    @Test
+    void packsShiftedRunsAndFindsTheFirstVisibleOne() {
+        TokenBuffer line = new TokenBuffer();
+        line.add(0, 5, 2);
+        line.add(6, 9, 0);
+        TokenBuffer file = new TokenBuffer(1);
+        file.add(0, 3, 1);
+        file.addAll(line, 10);
+
+        assertEquals(3, file.size());
+        assertEquals(16, file.start(2));
+        assertEquals(19, file.end(2));
+        assertEquals(2, file.style(1));
+        assertEquals(1, file.firstEndingAfter(3));
+        assertEquals(3, file.firstEndingAfter(19));
+        assertEquals(9L * Integer.BYTES, file.trimmed().retainedBytes());
+    }
+
+    @Test
+    void spansCopyAdoptedRunsBeforeAddingAndSortByStart() {
+        TokenBuffer lexed = new TokenBuffer();
+        lexed.add(4, 8, 0);
+        lexed.add(10, 12, 1);
+        SyntaxSpans spans = new SyntaxSpans();
+        spans.set(lexed, new Color[] {Color.RED, null});
+
+        assertNull(spans.color(1));
+        spans.add(0, 2, Color.BLUE);
+        spans.sortByStart();
+
+        assertEquals(2, lexed.size());
+        assertEquals(3, spans.size());
+        assertEquals(0, spans.start(0));
+        assertEquals(Color.BLUE, spans.color(0));
+        assertEquals(Color.RED, spans.color(1));
+        assertTrue(spans.firstEndingAfter(8) == 2);
+    }
+}
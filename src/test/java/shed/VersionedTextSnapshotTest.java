@@ -1,7 +1,12 @@
 package shed;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 import org.junit.jupiter.api.Test;
 
@@ -52,6 +57,124 @@ class VersionedTextSnapshotTest {
         }
     }
 
+    @Test
+    void comparesAndHashesContentRegardlessOfChunking() {
+        String source = "head\n" + "y".repeat(12_000) + "\ntail";
+        VersionedTextSnapshot whole = VersionedTextSnapshot.of(source);
+        VersionedTextSnapshot edited = VersionedTextSnapshot.of("head\ntail")
+            .replace(5, 0, "y".repeat(7000))
+            .replace(7005, 0, "y".repeat(5000) + "\n");
+
+        assertEquals(source, edited.text());
+        assertEquals(whole.contentHash(), edited.contentHash());
+        assertTrue(whole.contentEquals(edited));
+        assertTrue(edited.contentEquals(source));
+        assertTrue(edited.contentEquals(new StringBuilder(source)));
+
+        VersionedTextSnapshot changed = edited.replace(9000, 1, "z");
+        assertNotEquals(whole.contentHash(), changed.contentHash());
+        assertFalse(whole.contentEquals(changed));
+        assertFalse(changed.contentEquals(source));
+        assertFalse(whole.contentEquals(source + "!"));
+        assertTrue(VersionedTextSnapshot.empty().contentEquals(VersionedTextSnapshot.of("")));
+    }
+
+    @Test
+    void readsRegionsAndChunksWithoutMaterializingText() {
+        String source = "alpha\n" + "0123456789".repeat(1500) + "\nomega";
+        VersionedTextSnapshot snapshot = VersionedTextSnapshot.of("alpha\nomega").replace(6, 0, "0123456789".repeat(1500) + "\n");
+        CharSequence chars = snapshot.charSequence();
+
+        assertEquals(source.length(), chars.length());
+        for (int offset = 0; offset < source.length(); offset += 997) assertEquals(source.charAt(offset), chars.charAt(offset));
+        assertEquals(source.substring(8190, 8210), chars.subSequence(8190, 8210).toString());
+        assertEquals(source, chars.toString());
+
+        assertTrue(snapshot.regionMatches(8190, "xx" + source.substring(8190, 8210), 2, 20));
+        assertFalse(snapshot.regionMatches(8190, source.substring(8191, 8211), 0, 20));
+        assertFalse(snapshot.regionMatches(source.length() - 3, "omega", 0, 5));
+        assertFalse(snapshot.regionMatches(-1, source, 0, 1));
+
+        StringBuilder visited = new StringBuilder();
+        List<Integer> starts = new ArrayList<>();
+        assertTrue(snapshot.forEachChunk(3, source.length() - 2, (text, start, end) -> {
+            starts.add(start);
+            visited.append(text, start, end);
+            return true;
+        }));
+        assertEquals(source.substring(3, source.length() - 2), visited.toString());
+        assertTrue(starts.size() > 1);
+
+        int[] calls = {0};
+        assertFalse(snapshot.forEachChunk(0, source.length(), (text, start, end) -> ++calls[0] < 2));
+        assertEquals(2, calls[0]);
+    }
+
+    @Test
+    void keepsLeavesBoundedAcrossLargeRandomizedEdits() {
+        Random random = new Random(90215L);
+        StringBuilder reference = new StringBuilder(bulk(random, 200_000));
+        VersionedTextSnapshot snapshot = VersionedTextSnapshot.of(reference.toString());
+
+        for (int iteration = 0; iteration < 400; iteration++) {
+            int offset = random.nextInt(reference.length() + 1);
+            int removedLength = random.nextInt(Math.min(30_000, reference.length() - offset) + 1);
+            String inserted = random.nextInt(4) == 0 ? bulk(random, random.nextInt(20_000)) : randomText(random);
+            reference.replace(offset, offset + removedLength, inserted);
+            snapshot = snapshot.replace(offset, removedLength, inserted);
+
+            String expected = reference.toString();
+            assertTrue(snapshot.contentEquals(expected), "iteration=" + iteration);
+            assertEquals(VersionedTextSnapshot.of(expected).contentHash(), snapshot.contentHash(), "iteration=" + iteration);
+            assertEquals(lineCount(expected), snapshot.lineCount(), "iteration=" + iteration);
+            int probe = random.nextInt(expected.length() + 1);
+            assertEquals(positionAt(expected, probe), snapshot.positionAt(probe), "iteration=" + iteration);
+            int line = random.nextInt(snapshot.lineCount());
+            assertEquals(lineStart(expected, line), snapshot.lineStartOffset(line), "iteration=" + iteration);
+            assertLeavesBounded(snapshot);
+        }
+    }
+
+    @Test
+    void coalescesKeystrokeLeavesDuringALongSession() {
+        String source = "0123456789\n".repeat(20_000);
+        VersionedTextSnapshot snapshot = VersionedTextSnapshot.of(source);
+        StringBuilder reference = new StringBuilder(source);
+        int caret = source.length() / 2;
+
+        for (int keystroke = 0; keystroke < 100_000; keystroke++) {
+            if (keystroke % 7 == 6 && caret > 0) {
+                snapshot = snapshot.replace(--caret, 1, "");
+                reference.deleteCharAt(caret);
+            } else {
+                String typed = keystroke % 13 == 0 ? "\n" : "k";
+                snapshot = snapshot.replace(caret, 0, typed);
+                reference.insert(caret++, typed);
+            }
+        }
+
+        String expected = reference.toString();
+        assertTrue(snapshot.contentEquals(expected));
+        assertEquals(lineCount(expected), snapshot.lineCount());
+        assertEquals(positionAt(expected, caret), snapshot.positionAt(caret));
+        assertLeavesBounded(snapshot);
+    }
+
+    private static void assertLeavesBounded(VersionedTextSnapshot snapshot) {
+        List<Integer> leaves = new ArrayList<>();
+        snapshot.forEachChunk(0, snapshot.length(), (text, start, end) -> leaves.add(text.length()));
+        for (int leaf : leaves) {
+            assertTrue(leaf <= 8 * 1024, "leaf of " + leaf + " characters");
+            assertTrue(leaves.size() == 1 || leaf >= 2 * 1024, "leaf of " + leaf + " characters among " + leaves.size());
+        }
+    }
+
+    private static String bulk(Random random, int length) {
+        StringBuilder result = new StringBuilder(length);
+        while (result.length() < length) result.append(random.nextInt(6) == 0 ? '\n' : (char) ('a' + random.nextInt(26)));
+        return result.toString();
+    }
+
     private static String randomText(Random random) {
         int length = random.nextInt(14);
         StringBuilder result = new StringBuilder(length);
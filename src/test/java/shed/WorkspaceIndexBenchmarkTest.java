@@ -6,6 +6,7 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
@@ -31,5 +32,8 @@ public class WorkspaceIndexBenchmarkTest {
         assertTrue(report.cacheBytes() > 0);
         assertTrue(report.format().contains("inputBytes=7\n"));
         assertTrue(report.format().contains("cacheBytes="));
+        assertEquals(List.of(1, 2, 4, 8), report.threadScaling().stream().map(WorkspaceIndexBenchmark.ThreadScaling::threads).toList());
+        assertTrue(report.sameIndexAcrossThreads());
+        assertTrue(report.format().contains("threads4DurationNanos="));
     }
 }
@@ -9,8 +9,10 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Stream;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
@@ -113,6 +115,99 @@ public class WorkspaceIndexServiceTest {
         assertEquals(incomplete.index(), restarted.load(root));
     }
 
+    @Test
+    void recoveryReusesUnchangedDirectoriesAndChecksOnlyNewPaths() throws Exception {
+        Path root = Files.createDirectory(tempDir.resolve("workspace"));
+        write(root.resolve("src/main.txt"), "main");
+        write(root.resolve("src/util.txt"), "util");
+        write(root.resolve("out/build.log"), "log");
+        write(root.resolve("docs/readme.txt"), "readme");
+        ageDirectories(root);
+        List<String> checked = new ArrayList<>();
+        WorkspaceIndexService.IgnoreMatcher matcher = (workspaceRoot, relativePath) -> {
+            String path = relativePath.toString().replace('\\', '/');
+            checked.add(path);
+            return path.startsWith("out/");
+        };
+        WorkspaceIndexService service = new WorkspaceIndexService(tempDir.resolve("index-store"), matcher);
+        WorkspaceIndexService.BuildResult initial = service.build(true, root, WorkspaceIndexService.Observer.NO_OP);
+        assertEquals(4, checked.size());
+        FileTime written = Files.getLastModifiedTime(initial.persistedPath());
+        checked.clear();
+
+        WorkspaceIndexService.BuildResult unchanged = service.recover(true, root, WorkspaceIndexService.Cancellation.NONE,
+            WorkspaceIndexService.Observer.NO_OP);
+
+        assertEquals("revalidated persisted index", unchanged.status().message());
+        assertEquals(List.of(), checked);
+        assertEquals(initial.status().ignored(), unchanged.status().ignored());
+        assertEquals(written, Files.getLastModifiedTime(initial.persistedPath()));
+        assertEquals(unchanged.index(), service.load(root));
+
+        Files.writeString(root.resolve("src/util.txt"), "util grew", StandardCharsets.UTF_8);
+        write(root.resolve("docs/guide.txt"), "guide");
+        WorkspaceIndexService.BuildResult changed = service.recover(true, root, WorkspaceIndexService.Cancellation.NONE,
+            WorkspaceIndexService.Observer.NO_OP);
+
+        assertEquals("rebuilt stale index", changed.status().message());
+        assertEquals(List.of("docs/guide.txt"), checked);
+        assertEquals(List.of("docs/guide.txt", "docs/readme.txt", "src/main.txt", "src/util.txt"), paths(changed));
+        assertEquals(9, changed.index().entries().get(3).size());
+        assertEquals(changed.index(), service.load(root));
+        assertEquals(service.build(true, root, WorkspaceIndexService.Observer.NO_OP).index().entries(), changed.index().entries());
+    }
+
+    @Test
+    void recoveryRechecksPathsBelowAChangedGitIgnore() throws Exception {
+        Path root = Files.createDirectory(tempDir.resolve("workspace"));
+        initializeGit(root);
+        Files.writeString(root.resolve(".gitignore"), "*.log\n", StandardCharsets.UTF_8);
+        write(root.resolve("app/.gitignore"), "");
+        write(root.resolve("app/cache.tmp"), "cache");
+        write(root.resolve("app/run.log"), "run");
+        write(root.resolve("lib/data.tmp"), "data");
+        ageDirectories(root);
+        WorkspaceIndexService service = new WorkspaceIndexService(tempDir.resolve("index-store"));
+        service.build(true, root, WorkspaceIndexService.Observer.NO_OP);
+
+        Files.writeString(root.resolve("app/.gitignore"), "*.tmp\n", StandardCharsets.UTF_8);
+        WorkspaceIndexService.BuildResult recovered = service.recover(true, root, WorkspaceIndexService.Cancellation.NONE,
+            WorkspaceIndexService.Observer.NO_OP);
+
+        assertEquals(List.of(".gitignore", "app/.gitignore", "lib/data.tmp"), paths(recovered));
+        assertEquals(List.of("app/cache.tmp", "app/run.log"), recovered.index().ignored());
+    }
+
+    @Test
+    void recoveryListsDirectoriesModifiedCloseToThePreviousScanAgain() throws Exception {
+        Path root = Files.createDirectory(tempDir.resolve("workspace"));
+        write(root.resolve("one.txt"), "one");
+        WorkspaceIndexService service = new WorkspaceIndexService(tempDir.resolve("index-store"), (workspaceRoot, relativePath) -> false);
+        service.build(true, root, WorkspaceIndexService.Observer.NO_OP);
+        long directoryTime = Files.getLastModifiedTime(root).toMillis();
+        write(root.resolve("two.txt"), "two");
+        Files.setLastModifiedTime(root, FileTime.fromMillis(directoryTime));
+
+        WorkspaceIndexService.BuildResult recovered = service.recover(true, root, WorkspaceIndexService.Cancellation.NONE,
+            WorkspaceIndexService.Observer.NO_OP);
+
+        assertEquals(List.of("one.txt", "two.txt"), paths(recovered));
+    }
+
+    private static List<String> paths(WorkspaceIndexService.BuildResult result) {
+        return result.index().entries().stream().map(WorkspaceIndexService.Entry::relativePath).toList();
+    }
+
+    // Puts every directory's modification time well before the next scan, as for a tree that has sat unchanged.
+    private static void ageDirectories(Path root) throws IOException {
+        FileTime old = FileTime.fromMillis(System.currentTimeMillis() - 3_600_000L);
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : paths.filter(Files::isDirectory).filter(path -> !path.getFileName().toString().equals(".git")).toList()) {
+                Files.setLastModifiedTime(path, old);
+            }
+        }
+    }
+
     private void initializeGit(Path root) throws Exception {
         Process process = new ProcessBuilder("git", "init", "--quiet", root.toString()).redirectErrorStream(true).start();
         int exitCode = process.waitFor();
@@ -0,0 +1,117 @@
+package shed;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class WorkspaceTextMatcherTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void byteSearchMatchesLineByLineDecodingAcrossLineEndingsAndBufferBoundaries() throws Exception {
+        Random random = new Random(42);
+        String[] pieces = {"needle", "need", "le", "x", " ", "é", "日本", "😀", "\n", "\r", "\r\n", "NEEDLE", "\t"};
+        for (int file = 0; file < 12; file++) {
+            StringBuilder content = new StringBuilder();
+            // Later files run past the 64 KiB read buffer, one of them in a single long line.
+            int length = file < 6 ? 200 : 90_000;
+            while (content.length() < length) {
+                String piece = pieces[random.nextInt(pieces.length)];
+                content.append(file == 11 && piece.indexOf('\n') + piece.indexOf('\r') > -2 ? "y" : piece);
+            }
+            Path path = tempDir.resolve("file" + file + ".txt");
+            Files.writeString(path, content.toString(), StandardCharsets.UTF_8);
+            for (String needle : List.of("needle", "n", "é日", "😀x", "le\tx")) {
+                assertEquals(readLineMatches(path, Pattern.compile(Pattern.quote(needle))), matcher(needle, false, false).search(path,
+                    Integer.MAX_VALUE, WorkspaceIndexService.Cancellation.NONE), path + " " + needle);
+            }
+            assertEquals(readLineMatches(path, Pattern.compile("ne+d(le)?|^$")), matcher("ne+d(le)?|^$", true, false).search(path,
+                Integer.MAX_VALUE, WorkspaceIndexService.Cancellation.NONE), path.toString());
+        }
+    }
+
+    @Test
+    void countsLinesLikeReadLineAndReportsUtf16Columns() throws Exception {
+        Path path = tempDir.resolve("lines.txt");
+        Files.writeString(path, "a\r\nb\rc\n\n😀 é needle needle\r\nneedle", StandardCharsets.UTF_8);
+
+        List<WorkspaceTextSearchService.Match> matches = matcher("needle", false, false).search(path, Integer.MAX_VALUE,
+            WorkspaceIndexService.Cancellation.NONE);
+
+        assertEquals(List.of(
+            new WorkspaceTextSearchService.Match(path.toString(), 5, 6, "😀 é needle needle"),
+            new WorkspaceTextSearchService.Match(path.toString(), 5, 13, "😀 é needle needle"),
+            new WorkspaceTextSearchService.Match(path.toString(), 6, 1, "needle")), matches);
+        assertEquals(2, matcher("needle", false, false).search(path, 2, WorkspaceIndexService.Cancellation.NONE).size());
+    }
+
+    @Test
+    void ignoresCaseAndMatchesRegularExpressionsWithinLines() throws Exception {
+        Path path = tempDir.resolve("modes.txt");
+        Files.writeString(path, "Needle NEEDLE\nÄrger ärger\nid42 = x7\n", StandardCharsets.UTF_8);
+
+        WorkspaceTextMatcher ascii = matcher("needle", false, true);
+        WorkspaceTextMatcher unicode = matcher("ÄRGER", false, true);
+        WorkspaceTextMatcher regex = matcher("[a-z]+\\d", true, false);
+
+        assertTrue(ascii.bytewise());
+        assertEquals(List.of(1, 8), columns(ascii.search(path, 10, WorkspaceIndexService.Cancellation.NONE)));
+        assertFalse(unicode.bytewise());
+        assertEquals(List.of(1, 7), columns(unicode.search(path, 10, WorkspaceIndexService.Cancellation.NONE)));
+        assertFalse(regex.bytewise());
+        assertEquals(List.of(1, 8), columns(regex.search(path, 10, WorkspaceIndexService.Cancellation.NONE)));
+        assertEquals(List.of(), matcher("needle", false, false).search(path, 10, WorkspaceIndexService.Cancellation.NONE));
+        assertThrows(IllegalArgumentException.class, () -> new WorkspaceTextSearchService.Query("(", true, false));
+    }
+
+    @Test
+    void horspoolFindsEveryOccurrenceInRange() {
+        byte[] haystack = "abcabcabd abcabd".getBytes(StandardCharsets.UTF_8);
+        WorkspaceTextMatcher matcher = matcher("abd", false, false);
+
+        assertEquals(6, matcher.indexOf(haystack, 0, haystack.length));
+        assertEquals(13, matcher.indexOf(haystack, 7, haystack.length));
+        assertEquals(-1, matcher.indexOf(haystack, 7, 15));
+        assertEquals(3, matcher("A", false, true).indexOf(haystack, 1, haystack.length));
+    }
+
+    private static WorkspaceTextMatcher matcher(String text, boolean regex, boolean ignoreCase) {
+        return new WorkspaceTextMatcher(new WorkspaceTextSearchService.Query(text, regex, ignoreCase));
+    }
+
+    private static List<Integer> columns(List<WorkspaceTextSearchService.Match> matches) {
+        return matches.stream().map(WorkspaceTextSearchService.Match::column).toList();
+    }
+
+    // The decoding search this matcher replaced: every line through readLine, then every match in it.
+    private static List<WorkspaceTextSearchService.Match> readLineMatches(Path path, Pattern pattern) throws Exception {
+        List<WorkspaceTextSearchService.Match> matches = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            int lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                Matcher matcher = pattern.matcher(line);
+                while (matcher.find()) {
+                    matches.add(new WorkspaceTextSearchService.Match(path.toString(), lineNumber, matcher.start() + 1,
+                        WorkspaceTextSearchService.preview(line)));
+                }
+            }
+        }
+        return matches;
+    }
+}
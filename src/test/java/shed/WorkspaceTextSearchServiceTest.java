@@ -55,6 +55,31 @@ public class WorkspaceTextSearchServiceTest {
         assertTrue(Files.isRegularFile(index.indexPath(root)));
     }
 
+    @Test
+    void trigramIndexReadsOnlyCandidateFilesAndFindsTheSameMatches() throws Exception {
+        Path root = Files.createDirectory(tempDir.resolve("workspace"));
+        Files.writeString(root.resolve("match.txt"), "first\nsay Needle and needle\n", StandardCharsets.UTF_8);
+        Files.writeString(root.resolve("near.txt"), "need less\nle needs\n", StandardCharsets.UTF_8);
+        Files.writeString(root.resolve("other.txt"), "unrelated\n", StandardCharsets.UTF_8);
+        WorkspaceIndexService index = new WorkspaceIndexService(tempDir.resolve("index-store"), (workspaceRoot, relativePath) -> false);
+
+        WorkspaceTextSearchService.SearchResult full = new WorkspaceTextSearchService(index)
+            .search(true, root, "needle", WorkspaceIndexService.Cancellation.NONE, WorkspaceTextSearchService.Observer.NO_OP);
+        WorkspaceTextSearchService.SearchResult narrowed = new WorkspaceTextSearchService(index, new WorkspaceTrigramIndex())
+            .search(true, root, "needle", WorkspaceIndexService.Cancellation.NONE, WorkspaceTextSearchService.Observer.NO_OP);
+        WorkspaceTextSearchService.SearchResult adHoc = new WorkspaceTextSearchService(index, new WorkspaceTrigramIndex())
+            .search(false, root, "needle", WorkspaceIndexService.Cancellation.NONE, WorkspaceTextSearchService.Observer.NO_OP);
+
+        assertEquals(List.of(new WorkspaceTextSearchService.Match(root.resolve("match.txt").toString(), 2, 16, "say Needle and needle")),
+            narrowed.matches());
+        assertEquals(full.matches(), narrowed.matches());
+        assertEquals(3, full.filesRead());
+        assertEquals(1, narrowed.filesRead());
+        assertEquals(3, narrowed.indexedFiles());
+        assertEquals(3, adHoc.filesRead());
+        assertTrue(Files.isRegularFile(WorkspaceTrigramIndex.indexPath(index.indexPath(root))));
+    }
+
     @Test
     void stopsAfterIncrementalObserverCancelsTheSearch() throws Exception {
         Path root = Files.createDirectory(tempDir.resolve("workspace"));
@@ -88,4 +113,51 @@ public class WorkspaceTextSearchServiceTest {
         assertTrue(result.matches().stream().anyMatch(match -> match.filePath().equals(first.resolve("one.txt").toString())));
         assertTrue(result.matches().stream().anyMatch(match -> match.filePath().equals(second.resolve("two.txt").toString())));
     }
+
+    @Test
+    void reportsTheSameOrderedMatchesAndBatchesForAnyNumberOfReaders() throws Exception {
+        List<Path> roots = List.of(Files.createDirectory(tempDir.resolve("first")), Files.createDirectory(tempDir.resolve("second")));
+        for (Path root : roots) {
+            for (int file = 0; file < 30; file++) {
+                Files.writeString(root.resolve("file" + (char) ('a' + file % 26) + file + ".txt"),
+                    "line\n".repeat(file % 5) + "needle " + file + "\nno match\nneedle again\n", StandardCharsets.UTF_8);
+            }
+        }
+        WorkspaceIndexService index = new WorkspaceIndexService(tempDir.resolve("index-store"), (workspaceRoot, relativePath) -> false);
+        List<List<WorkspaceTextSearchService.Match>> expected = new ArrayList<>();
+        WorkspaceTextSearchService.SearchResult first = new WorkspaceTextSearchService(index, 100, 7).withReaders(1)
+            .search(false, roots, "needle", WorkspaceIndexService.Cancellation.NONE, expected::add);
+
+        for (int readers : List.of(2, 8)) {
+            List<List<WorkspaceTextSearchService.Match>> batches = new ArrayList<>();
+            WorkspaceTextSearchService.SearchResult result = new WorkspaceTextSearchService(index, 100, 7).withReaders(readers)
+                .search(false, roots, "needle", WorkspaceIndexService.Cancellation.NONE, batches::add);
+
+            assertEquals(first, result);
+            assertEquals(expected, batches);
+        }
+        assertTrue(first.truncated());
+        assertEquals(100, first.matches().size());
+        assertEquals(roots.get(1).resolve("filea0.txt").toString(), first.matches().get(60).filePath());
+        assertEquals(60, first.indexedFiles());
+    }
+
+    @Test
+    void narrowsIgnoreCaseQueriesByTrigramsButReadsEveryFileForRegularExpressions() throws Exception {
+        Path root = Files.createDirectory(tempDir.resolve("workspace"));
+        Files.writeString(root.resolve("match.txt"), "A NEEDLE here\n", StandardCharsets.UTF_8);
+        Files.writeString(root.resolve("other.txt"), "nothing\n", StandardCharsets.UTF_8);
+        WorkspaceIndexService index = new WorkspaceIndexService(tempDir.resolve("index-store"), (workspaceRoot, relativePath) -> false);
+        WorkspaceTextSearchService service = new WorkspaceTextSearchService(index, new WorkspaceTrigramIndex());
+
+        WorkspaceTextSearchService.SearchResult ignoreCase = service.search(true, root, new WorkspaceTextSearchService.Query("needle", false, true),
+            WorkspaceIndexService.Cancellation.NONE, WorkspaceTextSearchService.Observer.NO_OP);
+        WorkspaceTextSearchService.SearchResult regex = service.search(true, root, new WorkspaceTextSearchService.Query("N[E]+DLE", true, false),
+            WorkspaceIndexService.Cancellation.NONE, WorkspaceTextSearchService.Observer.NO_OP);
+
+        assertEquals(List.of(3), ignoreCase.matches().stream().map(WorkspaceTextSearchService.Match::column).toList());
+        assertEquals(1, ignoreCase.filesRead());
+        assertEquals(ignoreCase.matches(), regex.matches());
+        assertEquals(2, regex.filesRead());
+    }
 }
@@ -0,0 +1,147 @@
+package shed;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.BitSet;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class WorkspaceTrigramIndexTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void narrowsCandidatesToFilesHoldingEveryQueryTrigram() throws Exception {
+        Path root = Files.createDirectory(tempDir.resolve("workspace"));
+        write(root.resolve("a.txt"), "the quick brown fox\n");
+        write(root.resolve("b.txt"), "QUICK thinking\nbrown\n");
+        write(root.resolve("c.txt"), "nothing here\n");
+        write(root.resolve("d.txt"), "x".repeat(64) + " quick brown");
+        WorkspaceIndexService service = new WorkspaceIndexService(tempDir.resolve("index-store"), (workspaceRoot, relativePath) -> false);
+        WorkspaceIndexService.BuildResult indexed = service.build(true, root, WorkspaceIndexService.Observer.NO_OP);
+
+        try (WorkspaceTrigramIndex.Snapshot snapshot = new WorkspaceTrigramIndex(32, WorkspaceTrigramIndex.DEFAULT_SPILL_BYTES)
+            .update(indexed.index(), indexed.persistedPath(), WorkspaceIndexService.Cancellation.NONE)) {
+            assertEquals(4, snapshot.filesIndexed());
+            assertEquals(bits(0, 1, 3), snapshot.candidates("quick"));
+            assertEquals(bits(0, 3), snapshot.candidates("quick brown"));
+            assertEquals(bits(3), snapshot.candidates("zebra"));
+            assertNull(snapshot.candidates("qu"));
+        }
+        assertTrue(Files.isRegularFile(WorkspaceTrigramIndex.indexPath(indexed.persistedPath())));
+    }
+
+    @Test
+    void updatesReadOnlyChangedFilesAndSkipUnchangedRewrites() throws Exception {
+        Path root = Files.createDirectory(tempDir.resolve("workspace"));
+        write(root.resolve("keep.txt"), "stable content");
+        write(root.resolve("edit.txt"), "before edit");
+        write(root.resolve("drop.txt"), "dropped content");
+        age(root.resolve("keep.txt"), root.resolve("edit.txt"), root.resolve("drop.txt"), root);
+        WorkspaceIndexService service = new WorkspaceIndexService(tempDir.resolve("index-store"), (workspaceRoot, relativePath) -> false);
+        WorkspaceTrigramIndex trigrams = new WorkspaceTrigramIndex();
+        WorkspaceIndexService.BuildResult initial = service.build(true, root, WorkspaceIndexService.Observer.NO_OP);
+        try (WorkspaceTrigramIndex.Snapshot snapshot = trigrams.update(initial.index(), initial.persistedPath(), WorkspaceIndexService.Cancellation.NONE)) {
+            assertEquals(3, snapshot.filesIndexed());
+        }
+        Path stored = WorkspaceTrigramIndex.indexPath(initial.persistedPath());
+        FileTime written = Files.getLastModifiedTime(stored);
+
+        WorkspaceIndexService.BuildResult same = service.recover(true, root, WorkspaceIndexService.Cancellation.NONE, WorkspaceIndexService.Observer.NO_OP);
+        try (WorkspaceTrigramIndex.Snapshot snapshot = trigrams.update(same.index(), same.persistedPath(), WorkspaceIndexService.Cancellation.NONE)) {
+            assertEquals(0, snapshot.filesIndexed());
+        }
+        assertEquals(written, Files.getLastModifiedTime(stored));
+
+        write(root.resolve("edit.txt"), "after the edit");
+        Files.delete(root.resolve("drop.txt"));
+        write(root.resolve("new.txt"), "new content");
+        age(root.resolve("edit.txt"), root.resolve("new.txt"), root);
+        WorkspaceIndexService.BuildResult changed = service.recover(true, root, WorkspaceIndexService.Cancellation.NONE, WorkspaceIndexService.Observer.NO_OP);
+        try (WorkspaceTrigramIndex.Snapshot snapshot = trigrams.update(changed.index(), changed.persistedPath(), WorkspaceIndexService.Cancellation.NONE)) {
+            assertEquals(2, snapshot.filesIndexed());
+            assertEquals(List.of("edit.txt", "keep.txt", "new.txt"), changed.index().entries().stream().map(WorkspaceIndexService.Entry::relativePath).toList());
+            assertEquals(bits(1, 2), snapshot.candidates("content"));
+            assertEquals(bits(0), snapshot.candidates("after"));
+            assertEquals(bits(), snapshot.candidates("before"));
+            assertEquals(bits(), snapshot.candidates("dropped"));
+        }
+        byte[] incremental = Files.readAllBytes(stored);
+        Files.delete(stored);
+        trigrams.update(changed.index(), changed.persistedPath(), WorkspaceIndexService.Cancellation.NONE).close();
+        assertArrayEquals(Files.readAllBytes(stored), incremental);
+    }
+
+    @Test
+    void spilledRunsMergeToTheSameIndexAndAreRemoved() throws Exception {
+        Path root = Files.createDirectory(tempDir.resolve("workspace"));
+        for (int file = 0; file < 40; file++) {
+            write(root.resolve("file" + file + ".txt"), "shared line\nvalue " + file * 7919 + " in file " + file + "\n");
+        }
+        WorkspaceIndexService service = new WorkspaceIndexService(tempDir.resolve("index-store"), (workspaceRoot, relativePath) -> false);
+        WorkspaceIndexService.BuildResult indexed = service.build(true, root, WorkspaceIndexService.Observer.NO_OP);
+        Path stored = WorkspaceTrigramIndex.indexPath(indexed.persistedPath());
+        new WorkspaceTrigramIndex().update(indexed.index(), indexed.persistedPath(), WorkspaceIndexService.Cancellation.NONE).close();
+        byte[] inMemory = Files.readAllBytes(stored);
+        Files.delete(stored);
+
+        new WorkspaceTrigramIndex(WorkspaceTrigramIndex.DEFAULT_MAX_FILE_BYTES, 64)
+            .update(indexed.index(), indexed.persistedPath(), WorkspaceIndexService.Cancellation.NONE).close();
+
+        assertArrayEquals(inMemory, Files.readAllBytes(stored));
+        try (Stream<Path> files = Files.list(stored.getParent())) {
+            assertEquals(List.of(indexed.persistedPath().getFileName().toString(), stored.getFileName().toString()),
+                files.map(path -> path.getFileName().toString()).sorted().toList());
+        }
+    }
+
+    @Test
+    void rebuildsAMalformedIndexAndStopsWhenCancelled() throws Exception {
+        Path root = Files.createDirectory(tempDir.resolve("workspace"));
+        write(root.resolve("one.txt"), "alpha beta");
+        WorkspaceIndexService service = new WorkspaceIndexService(tempDir.resolve("index-store"), (workspaceRoot, relativePath) -> false);
+        WorkspaceIndexService.BuildResult indexed = service.build(true, root, WorkspaceIndexService.Observer.NO_OP);
+        Path stored = WorkspaceTrigramIndex.indexPath(indexed.persistedPath());
+
+        assertNull(new WorkspaceTrigramIndex().update(indexed.index(), indexed.persistedPath(), () -> true));
+        assertTrue(Files.notExists(stored));
+
+        Files.writeString(stored, "broken", StandardCharsets.UTF_8);
+        try (WorkspaceTrigramIndex.Snapshot snapshot = new WorkspaceTrigramIndex()
+            .update(indexed.index(), indexed.persistedPath(), WorkspaceIndexService.Cancellation.NONE)) {
+            assertEquals(1, snapshot.filesIndexed());
+            assertEquals(bits(0), snapshot.candidates("beta"));
+        }
+    }
+
+    private static BitSet bits(int... ids) {
+        BitSet bits = new BitSet();
+        for (int id : ids) {
+            bits.set(id);
+        }
+        return bits;
+    }
+
+    // Moves modification times well into the past, so files are not read again as recently modified.
+    private static void age(Path... paths) throws IOException {
+        FileTime old = FileTime.fromMillis(System.currentTimeMillis() - 3_600_000L);
+        for (Path path : paths) {
+            Files.setLastModifiedTime(path, old);
+        }
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+    }
+}